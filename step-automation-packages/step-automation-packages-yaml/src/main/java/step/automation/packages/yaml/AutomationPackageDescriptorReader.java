@@ -94,7 +94,7 @@ public class AutomationPackageDescriptorReader {
             String version = null;
             if (jsonSchema != null) {
                 try {
-                    version = JsonSchemaValidator.validate(jsonSchema, yamlObjectMapper.readTree(yamlDescriptorString).toString());
+                    version = JsonSchemaValidator.validate(jsonSchema, yamlObjectMapper.readTree(yamlDescriptorString));
                 } catch (Exception ex) {
                     // add error details
                     String message = ex.getMessage();
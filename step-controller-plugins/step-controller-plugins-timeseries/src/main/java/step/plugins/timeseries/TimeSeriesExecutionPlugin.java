@@ -23,6 +23,10 @@ import java.util.TreeMap;
 public class TimeSeriesExecutionPlugin extends AbstractExecutionEnginePlugin {
 
     public static String TIMESERIES_FLAG = "hasTimeSeries";
+    /**
+     * Custom field of the execution holding the state of a pending time series rebuild (see {@link TimeSeriesRebuilder.PartitionPlan#toState(java.util.Set)})
+     */
+    public static final String TIMESERIES_REBUILD_STATE = "timeSeriesRebuildState";
 
     private final TimeSeries timeSeries;
 
@@ -27,10 +27,12 @@ import step.core.timeseries.bucket.BucketAttributes;
 import step.core.timeseries.query.OQLTimeSeriesFilterBuilder;
 import step.core.metrics.ExecutionMetricSample;
 import step.core.metrics.Measurement;
+import step.core.metrics.MetricHeartbeatRegistry;
 import step.core.metrics.MetricsExecutionPlugin;
 import step.plugins.timeseries.api.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
@@ -43,6 +45,7 @@ import static step.core.timeseries.TimeSeriesConstants.TIMESTAMP_ATTRIBUTE;
 import static step.core.metrics.StepMetricSample.METRIC_TYPE;
 import static step.core.metrics.MetricsExecutionPlugin.ATTRIBUTE_EXECUTION_ID;
 import static step.plugins.timeseries.TimeSeriesExecutionPlugin.TIMESERIES_FLAG;
+import static step.plugins.timeseries.TimeSeriesExecutionPlugin.TIMESERIES_REBUILD_STATE;
 
 public class TimeSeriesHandler {
 
@@ -89,6 +92,12 @@ public class TimeSeriesHandler {
     private final int resolution;
     private final int samplingLimit;
     private final long metricsSamplingIntervalMs;
+    private final TimeSeriesRebuilder rebuilder;
+    // Used to bucket the raw measurements of the requests which can't be served by the time series. Unlike the
+    // rebuilds, these are interactive requests and are therefore not throttled
+    private final TimeSeriesRebuilder rawMeasurementsRebuilder;
+    // The executions whose time series are currently being rebuilt by this controller
+    private final Set<String> runningRebuilds = ConcurrentHashMap.newKeySet();
 
     public TimeSeriesHandler(int resolution,
                              Set<String> timeSeriesIncludedAttributes,
@@ -101,6 +110,25 @@ public class TimeSeriesHandler {
                              AsyncTaskManager asyncTaskManager,
                              int samplingLimit,
                              long metricsSamplingIntervalMs) {
+        this(resolution, timeSeriesIncludedAttributes, timeSeriesExcludedAttributes, measurementCollection, metricSampleCollection,
+            executionAccessor, timeSeries, reportNodeTimeSeries, asyncTaskManager, samplingLimit, metricsSamplingIntervalMs, new TimeSeriesRebuilder());
+    }
+
+    public TimeSeriesHandler(int resolution,
+                             Set<String> timeSeriesIncludedAttributes,
+                             Set<String> timeSeriesExcludedAttributes,
+                             step.core.collections.Collection<Measurement> measurementCollection,
+                             step.core.collections.Collection<ExecutionMetricSample> metricSampleCollection,
+                             ExecutionAccessor executionAccessor,
+                             TimeSeries timeSeries,
+                             ReportNodeTimeSeries reportNodeTimeSeries,
+                             AsyncTaskManager asyncTaskManager,
+                             int samplingLimit,
+                             long metricsSamplingIntervalMs,
+                             TimeSeriesRebuilder rebuilder) {
+        this.rebuilder = rebuilder;
+        this.rawMeasurementsRebuilder = new TimeSeriesRebuilder(rebuilder.getPartitions(), rebuilder.getThreads(), 0,
+            "timeseries-raw-measurements-%d", Thread.NORM_PRIORITY);
         this.metricsSamplingIntervalMs = metricsSamplingIntervalMs;
         this.resolution = resolution;
         this.timeSeriesIncludedAttributes = timeSeriesIncludedAttributes;
@@ -137,12 +165,24 @@ public class TimeSeriesHandler {
             Set<String> standardAttributes = new HashSet<>(timeSeriesIncludedAttributes);
             standardAttributes.addAll(fields.stream().map(attributesPrefixRemoval).collect(Collectors.toList()));
             standardAttributes.addAll(request.getGroupDimensions());
+            Filter oqlFilterMeasurements = OQLTimeSeriesFilterBuilder.getFilter(request.getOqlFilter(), attributesPrefixRemoval, MEASUREMENTS_FILTER_IGNORE_ATTRIBUTES);
+            Filter oqlFilterMetricSamples = OQLTimeSeriesFilterBuilder.getFilter(request.getOqlFilter(), attributesPrefixRemovalSamples, MEASUREMENTS_FILTER_IGNORE_ATTRIBUTES);
+            Long start = request.getStart();
+            Long end = request.getEnd();
+            if (start != null && end != null && end > start) {
+                // Bounded requests are split into partitions ingested in parallel and merged into the local time series
+                TimeSeriesRebuilder.PartitionPlan plan = rawMeasurementsRebuilder.plan(start, end - 1, resolutionMs);
+                rawMeasurementsRebuilder.rebuild(plan, Set.of(), (partitionStart, partitionEnd) -> readRawSamples(
+                        Math.max(start, partitionStart), Math.min(end, partitionEnd), oqlFilterMeasurements, oqlFilterMetricSamples),
+                    ts -> new TimeSeriesMetricSamplesHandler(ts, standardAttributes, Set.of()), timeSeries, (partition, samples) -> {
+                    });
+                timeSeries.getIngestionPipeline().flush();
+                return mapToApiResponse(request, timeSeries.getAggregationPipeline().collect(mapToQuery(request)));
+            }
             TimeSeriesMetricSamplesHandler timeSeriesBucketingHandler = new TimeSeriesMetricSamplesHandler(timeSeries, standardAttributes, Set.of());
             LongAdder count = new LongAdder();
             Filter timestampClauses = Filters.empty();
             Filter samplesTimestampClauses = Filters.empty();
-            Long start = request.getStart();
-            Long end = request.getEnd();
             if (start != null && end != null) {
                 timestampClauses = Filters.and(List.of(Filters.gte(TIMESTAMP_ATTRIBUTE, start), Filters.lt(TIMESTAMP_ATTRIBUTE, end)));
                 samplesTimestampClauses = Filters.and(List.of(Filters.gte(SAMPLE_SAMPLE_TIME, start), Filters.lt(SAMPLE_SAMPLE_TIME, end)));
@@ -153,8 +193,6 @@ public class TimeSeriesHandler {
                 timestampClauses = Filters.lt(TIMESTAMP_ATTRIBUTE, end);
                 samplesTimestampClauses = Filters.lt(SAMPLE_SAMPLE_TIME, end);
             }
-            Filter oqlFilterMeasurements = OQLTimeSeriesFilterBuilder.getFilter(request.getOqlFilter(), attributesPrefixRemoval, MEASUREMENTS_FILTER_IGNORE_ATTRIBUTES);
-            Filter oqlFilterMetricSamples = OQLTimeSeriesFilterBuilder.getFilter(request.getOqlFilter(), attributesPrefixRemovalSamples, MEASUREMENTS_FILTER_IGNORE_ATTRIBUTES);
             Filter filterMeasurements = Filters.and(List.of(timestampClauses, oqlFilterMeasurements));
             Filter filterMetricSamples = Filters.and(List.of(samplesTimestampClauses, oqlFilterMetricSamples));
             SearchOrder searchOrder = new SearchOrder(TIMESTAMP_ATTRIBUTE, 1);
@@ -176,6 +214,7 @@ public class TimeSeriesHandler {
                 }
             }
             timeSeriesBucketingHandler.flush();
+            MetricHeartbeatRegistry.getInstance().unregisterHandler(timeSeriesBucketingHandler);
             TimeSeriesAggregationPipeline aggregationPipeline = timeSeries.getAggregationPipeline();
             TimeSeriesAggregationQuery query = mapToQuery(request);
             TimeSeriesAggregationResponse response = aggregationPipeline.collect(query);
@@ -184,6 +223,18 @@ public class TimeSeriesHandler {
         }
     }
 
+    private Stream<?> readRawSamples(long start, long end, Filter oqlFilterMeasurements, Filter oqlFilterMetricSamples) {
+        Filter filterMeasurements = Filters.and(List.of(Filters.gte(TIMESTAMP_ATTRIBUTE, start), Filters.lt(TIMESTAMP_ATTRIBUTE, end), oqlFilterMeasurements));
+        Stream<?> measurements = measurementCollection.findLazy(filterMeasurements, new SearchOrder(TIMESTAMP_ATTRIBUTE, 1), null, null, 0);
+        if (metricSampleCollection != null) {
+            Filter filterMetricSamples = Filters.and(List.of(Filters.gte(SAMPLE_SAMPLE_TIME, start), Filters.lt(SAMPLE_SAMPLE_TIME, end), oqlFilterMetricSamples));
+            Stream<ExecutionMetricSample> metricSamples = metricSampleCollection.findLazy(filterMetricSamples, new SearchOrder(SAMPLE_SAMPLE_TIME, 1), null, null, 0);
+            return Stream.concat(measurements, metricSamples.filter(Objects::nonNull));
+        } else {
+            return measurements;
+        }
+    }
+
     public List<Measurement> getRawMeasurements(String oqlFilter, int skip, int limit) {
         Filter filter = OQLTimeSeriesFilterBuilder.getFilter(oqlFilter, attributesPrefixRemoval, MEASUREMENTS_FILTER_IGNORE_ATTRIBUTES);
         return measurementCollection.find(filter, null, skip, limit, 0)
@@ -313,53 +364,127 @@ public class TimeSeriesHandler {
     }
 
     public boolean timeSeriesIsBuilt(String executionId) {
+        Execution execution = getExecution(executionId);
+        Boolean hasTimeSeries = execution.getCustomField(TIMESERIES_FLAG, Boolean.class);
+        // A rebuild that was interrupted (i.e. by a restart of the controller) leaves its state and can be resumed
+        return hasTimeSeries != null && hasTimeSeries && (!hasPendingRebuild(execution) || runningRebuilds.contains(executionId));
+    }
+
+    private Execution getExecution(String executionId) {
         Execution execution = executionAccessor.get(executionId);
         if (execution == null) {
             throw new ControllerServiceException("No execution found matching this execution id");
         }
-        Boolean hasTimeSeries = execution.getCustomField(TIMESERIES_FLAG, Boolean.class);
-        return hasTimeSeries != null && hasTimeSeries;
+        return execution;
+    }
+
+    private static boolean hasPendingRebuild(Execution execution) {
+        return execution.getCustomField(TIMESERIES_REBUILD_STATE, String.class) != null;
     }
 
+    /**
+     * Rebuilds the time series of an execution from its measurements. The time range of the execution is split into
+     * partitions which are ingested in parallel (see {@link TimeSeriesRebuilder}). The completed partitions are persisted
+     * in the execution so that an interrupted rebuild can be resumed by calling this method again. When resuming, the
+     * buckets of the execution already persisted for the pending partitions are deleted before re-ingesting them.
+     */
     public AsyncTaskStatus<Object> rebuildTimeSeries(String executionId) {
-        if (this.timeSeriesIsBuilt(executionId)) {
+        if (this.timeSeriesIsBuilt(executionId) || !runningRebuilds.add(executionId)) {
             throw new ControllerServiceException("Time series already exist for this execution. Unable to rebuild it");
-        } else {
-            //Update execution
-            Execution execution = executionAccessor.get(executionId);
-            execution.addCustomField(TIMESERIES_FLAG, true);
-            executionAccessor.save(execution);
-            // we need to check if measurements exists
+        }
+        try {
+            Execution execution = getExecution(executionId);
             Equals measurementFilter = Filters.equals(ATTRIBUTE_EXECUTION_ID, executionId);
-            Measurement firstMeasurement = measurementCollection.find(measurementFilter,
-                new SearchOrder(MetricsExecutionPlugin.BEGIN, 1), 0, 1, 0).findFirst().orElse(null);
-            Measurement lastMeasurement = measurementCollection.find(measurementFilter,
-                new SearchOrder(MetricsExecutionPlugin.BEGIN, -1), 0, 1, 0).findFirst().orElse(null);
-            if (firstMeasurement != null && lastMeasurement != null) {
-                return asyncTaskManager.scheduleAsyncTask(t -> {
-                    // the flushing period can be a big value, because we will force flush every time.
-                    TimeSeriesMetricSamplesHandler timeSeriesBucketingHandler = new TimeSeriesMetricSamplesHandler(timeSeries, timeSeriesIncludedAttributes, timeSeriesExcludedAttributes);
+            Set<Integer> completedPartitions = ConcurrentHashMap.newKeySet();
+            TimeSeriesRebuilder.PartitionPlan plan;
+            String pendingState = execution.getCustomField(TIMESERIES_REBUILD_STATE, String.class);
+            if (pendingState != null) {
+                plan = TimeSeriesRebuilder.PartitionPlan.fromState(pendingState, completedPartitions);
+                // A pending partition might have been partially merged into the time series before the interruption
+                removePendingPartitionsBuckets(executionId, plan, completedPartitions);
+            } else {
+                // we need to check if measurements exists
+                Measurement firstMeasurement = measurementCollection.find(measurementFilter,
+                    new SearchOrder(MetricsExecutionPlugin.BEGIN, 1), 0, 1, 0).findFirst().orElse(null);
+                Measurement lastMeasurement = measurementCollection.find(measurementFilter,
+                    new SearchOrder(MetricsExecutionPlugin.BEGIN, -1), 0, 1, 0).findFirst().orElse(null);
+                if (firstMeasurement == null || lastMeasurement == null) {
+                    throw new ControllerServiceException("No measurement found matching this execution id");
+                }
+                // Align the partitions on the coarsest collection handling the execution id so that each of its buckets
+                // belongs to a single partition
+                plan = rebuilder.plan(firstMeasurement.getBegin(), lastMeasurement.getBegin(), getExecutionCollectionsResolution());
+                //Update execution
+                execution.addCustomField(TIMESERIES_FLAG, true);
+                execution.addCustomField(TIMESERIES_REBUILD_STATE, plan.toState(completedPartitions));
+                executionAccessor.save(execution);
+            }
+            return asyncTaskManager.scheduleAsyncTask(t -> {
+                try {
                     LongAdder count = new LongAdder();
-                    SearchOrder searchOrder = new SearchOrder("begin", 1);
-                    // Iterate over each measurement and ingest it again
-                    try (Stream<Measurement> stream = measurementCollection.findLazy(measurementFilter, searchOrder, null, null, 0)) {
-                        stream.forEach(measurement -> {
-                            count.increment();
-                            timeSeriesBucketingHandler.ingestExistingMeasurement(measurement);
+                    int alreadyCompleted = completedPartitions.size();
+                    rebuilder.rebuild(plan, Set.copyOf(completedPartitions), (start, end) -> measurementCollection.findLazy(
+                            Filters.and(List.of(measurementFilter, Filters.gte(MetricsExecutionPlugin.BEGIN, start), Filters.lt(MetricsExecutionPlugin.BEGIN, end))),
+                            new SearchOrder(MetricsExecutionPlugin.BEGIN, 1), null, null, 0),
+                        ts -> new TimeSeriesMetricSamplesHandler(ts, timeSeriesIncludedAttributes, timeSeriesExcludedAttributes), timeSeries,
+                        (partition, samples) -> {
+                            count.add(samples);
+                            // flush only the collections that handle execution id, so that the completed partition is persisted
+                            flushExecutionCollections();
+                            synchronized (completedPartitions) {
+                                completedPartitions.add(partition);
+                                Execution e = executionAccessor.get(executionId);
+                                e.addCustomField(TIMESERIES_REBUILD_STATE, plan.toState(completedPartitions));
+                                executionAccessor.save(e);
+                                t.updateProgress((float) (completedPartitions.size() - alreadyCompleted) / (plan.getCount() - alreadyCompleted));
+                            }
                         });
-                    }
-                    timeSeries.getCollections().forEach(c -> {
-                        // flush only the collections that handle execution id
-                        if (CollectionUtils.isEmpty(c.getIgnoredAttributes()) || !c.getIgnoredAttributes().contains(ATTRIBUTE_EXECUTION_ID)) {
-                            c.getIngestionPipeline().flush();
-                        }
-                    });
+                    flushExecutionCollections();
+                    Execution e = executionAccessor.get(executionId);
+                    Optional.ofNullable(e.getCustomFields()).ifPresent(f -> f.remove(TIMESERIES_REBUILD_STATE));
+                    executionAccessor.save(e);
                     return new TimeSeriesRebuildResponse(count.longValue());
-                });
-            } else {
-                throw new ControllerServiceException("No measurement found matching this execution id");
+                } finally {
+                    runningRebuilds.remove(executionId);
+                }
+            });
+        } catch (RuntimeException e) {
+            runningRebuilds.remove(executionId);
+            throw e;
+        }
+    }
+
+    private void flushExecutionCollections() {
+        getExecutionCollections().forEach(c -> c.getIngestionPipeline().flush());
+    }
+
+    /**
+     * @return the collections that handle execution id
+     */
+    private List<TimeSeriesCollection> getExecutionCollections() {
+        return timeSeries.getCollections().stream()
+            .filter(c -> CollectionUtils.isEmpty(c.getIgnoredAttributes()) || !c.getIgnoredAttributes().contains(ATTRIBUTE_EXECUTION_ID))
+            .collect(Collectors.toList());
+    }
+
+    private long getExecutionCollectionsResolution() {
+        return getExecutionCollections().stream().mapToLong(TimeSeriesCollection::getResolutionMs).max().orElse(resolution);
+    }
+
+    private void removePendingPartitionsBuckets(String executionId, TimeSeriesRebuilder.PartitionPlan plan, Set<Integer> completedPartitions) {
+        // Persist the buckets of a previous attempt still pending in the ingestion pipelines before deleting them
+        flushExecutionCollections();
+        List<Filter> pendingRanges = new ArrayList<>();
+        for (int i = 0; i < plan.getCount(); i++) {
+            if (!completedPartitions.contains(i)) {
+                long start = plan.getPartitionStart(i);
+                pendingRanges.add(Filters.and(List.of(Filters.gte(TIMESTAMP_ATTRIBUTE, start), Filters.lt(TIMESTAMP_ATTRIBUTE, start + plan.getPartitionSize()))));
             }
         }
+        if (!pendingRanges.isEmpty()) {
+            Filter filter = Filters.and(List.of(Filters.equals(ATTRIBUTES_PREFIX + ATTRIBUTE_EXECUTION_ID, executionId), Filters.or(pendingRanges)));
+            getExecutionCollections().forEach(c -> c.removeData(filter));
+        }
     }
 
     private TimeSeriesAggregationQuery mapToQuery(FetchBucketsRequest request) {
@@ -0,0 +1,271 @@
+package step.plugins.timeseries;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.collections.Filters;
+import step.core.collections.inmemory.InMemoryCollection;
+import step.core.metrics.Measurement;
+import step.core.metrics.MetricHeartbeatRegistry;
+import step.core.metrics.StepMetricSample;
+import step.core.timeseries.TimeSeries;
+import step.core.timeseries.TimeSeriesBuilder;
+import step.core.timeseries.TimeSeriesCollection;
+import step.core.timeseries.bucket.Bucket;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Re-ingests raw measurements and metric samples into a time series.
+ * <p>
+ * The time range to be rebuilt is split into partitions aligned on the resolution of the time series. The partitions
+ * are read and ingested in parallel into partition-local in-memory buckets, which are then merged into the target
+ * time series. Completed partitions are reported to the {@link Listener}, which allows to resume an interrupted rebuild
+ * by skipping them (see {@link PartitionPlan}).
+ * <p>
+ * To avoid starving the live executions, the rebuild runs on a limited number of low priority threads and the
+ * number of samples ingested per second can be limited. The threads are shared by all the rebuilds performed by
+ * an instance and released when idle.
+ */
+public class TimeSeriesRebuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesRebuilder.class);
+
+    public static final String REBUILD_PARTITIONS_PROPERTY = "timeseries.rebuild.partitions";
+    public static final String REBUILD_THREADS_PROPERTY = "timeseries.rebuild.threads";
+    public static final String REBUILD_MAX_SAMPLES_PER_SECOND_PROPERTY = "timeseries.rebuild.samples.maxpersecond";
+
+    public static final int DEFAULT_PARTITIONS = 32;
+    public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    private static final int THROTTLING_BATCH_SIZE = 1000;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final int partitions;
+    private final int threads;
+    private final double maxSamplesPerSecond;
+    private final ThreadPoolExecutor executorService;
+
+    public TimeSeriesRebuilder() {
+        this(DEFAULT_PARTITIONS, DEFAULT_THREADS, 0);
+    }
+
+    /**
+     * @param partitions          the number of partitions in which the time range to be rebuilt is split
+     * @param threads             the number of partitions ingested in parallel
+     * @param maxSamplesPerSecond the maximum number of samples ingested per second by each rebuild. 0 for no limit
+     */
+    public TimeSeriesRebuilder(int partitions, int threads, double maxSamplesPerSecond) {
+        this(partitions, threads, maxSamplesPerSecond, "timeseries-rebuild-%d", Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * @param partitions          the number of partitions in which the time range to be rebuilt is split
+     * @param threads             the number of partitions ingested in parallel by all the rebuilds of this instance
+     * @param maxSamplesPerSecond the maximum number of samples ingested per second by each rebuild. 0 for no limit
+     * @param threadNameFormat    the name format of the ingestion threads
+     * @param threadPriority      the priority of the ingestion threads
+     */
+    public TimeSeriesRebuilder(int partitions, int threads, double maxSamplesPerSecond, String threadNameFormat, int threadPriority) {
+        if (partitions <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("The number of partitions and threads have to be higher than 0");
+        }
+        this.partitions = partitions;
+        this.threads = threads;
+        this.maxSamplesPerSecond = maxSamplesPerSecond;
+        this.executorService = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(threadNameFormat).setPriority(threadPriority).setDaemon(true).build());
+        this.executorService.allowCoreThreadTimeOut(true);
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param from       the timestamp of the first sample to be rebuilt
+     * @param to         the timestamp of the last sample to be rebuilt
+     * @param resolution the resolution of the time series in ms
+     * @return the partitioning of the provided time range
+     */
+    public PartitionPlan plan(long from, long to, long resolution) {
+        long start = Math.floorDiv(from, resolution) * resolution;
+        long range = Math.max(1, to + 1 - start);
+        long partitionSize = Math.max(1, (long) Math.ceil((double) range / partitions / resolution)) * resolution;
+        int count = (int) ((range + partitionSize - 1) / partitionSize);
+        return new PartitionPlan(start, partitionSize, count);
+    }
+
+    /**
+     * Ingests the partitions of the plan that haven't been completed yet
+     *
+     * @param plan                the partitioning of the time range to be rebuilt
+     * @param completedPartitions the indexes of the partitions already ingested, which are skipped
+     * @param reader              the reader of the samples of a partition. The returned stream may contain {@link Measurement} and {@link StepMetricSample}
+     * @param handlerFactory      the factory of the handlers used to ingest the samples into the partition-local time series
+     * @param target              the time series into which the partitions are merged
+     * @param listener            the listener notified of the completion of each partition
+     * @return the number of ingested samples
+     */
+    public long rebuild(PartitionPlan plan, Set<Integer> completedPartitions, PartitionReader reader,
+                        Function<TimeSeries, TimeSeriesMetricSamplesHandler> handlerFactory, TimeSeries target, Listener listener) {
+        long resolution = target.getIngestionPipeline().getResolution();
+        RateLimiter rateLimiter = maxSamplesPerSecond > 0 ? RateLimiter.create(maxSamplesPerSecond) : null;
+        List<Integer> pendingPartitions = new ArrayList<>();
+        for (int i = 0; i < plan.getCount(); i++) {
+            if (!completedPartitions.contains(i)) {
+                pendingPartitions.add(i);
+            }
+        }
+        List<Future<Long>> futures = pendingPartitions.stream().map(partition -> executorService.submit(() -> {
+            long start = plan.getPartitionStart(partition);
+            long end = start + plan.getPartitionSize();
+            long count = ingestPartition(start, end, resolution, reader, handlerFactory, target, rateLimiter);
+            listener.onPartitionCompleted(partition, count);
+            return count;
+        })).collect(Collectors.toList());
+        try {
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rebuilding the time series", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while rebuilding the time series", e.getCause());
+        } finally {
+            // Cancel the partitions of a failed rebuild which are still queued or running
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private long ingestPartition(long start, long end, long resolution, PartitionReader reader, Function<TimeSeries, TimeSeriesMetricSamplesHandler> handlerFactory,
+                                 TimeSeries target, RateLimiter rateLimiter) {
+        InMemoryCollection<Bucket> partitionBuckets = new InMemoryCollection<>();
+        long count = 0;
+        try (TimeSeries partitionTimeSeries = new TimeSeriesBuilder()
+            .registerCollection(new TimeSeriesCollection(partitionBuckets, resolution))
+            .build()) {
+            TimeSeriesMetricSamplesHandler handler = handlerFactory.apply(partitionTimeSeries);
+            try (Stream<?> samples = reader.read(start, end)) {
+                Iterator<?> iterator = samples.iterator();
+                while (iterator.hasNext()) {
+                    Object sample = iterator.next();
+                    if (sample instanceof Measurement) {
+                        handler.ingestExistingMeasurement((Measurement) sample);
+                    } else if (sample instanceof StepMetricSample) {
+                        handler.processMetric((StepMetricSample) sample);
+                    }
+                    if (++count % THROTTLING_BATCH_SIZE == 0 && rateLimiter != null) {
+                        rateLimiter.acquire(THROTTLING_BATCH_SIZE);
+                    }
+                }
+            } finally {
+                MetricHeartbeatRegistry.getInstance().unregisterHandler(handler);
+            }
+            handler.flush();
+        }
+        // Merge the partition-local buckets into the target time series
+        try (Stream<Bucket> buckets = partitionBuckets.find(Filters.empty(), null, null, null, 0)) {
+            buckets.forEach(bucket -> target.getIngestionPipeline().ingestBucket(bucket));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Rebuilt partition [" + start + "," + end + "[ of the time series: " + count + " samples");
+        }
+        return count;
+    }
+
+    /**
+     * Reads the samples of a partition
+     */
+    @FunctionalInterface
+    public interface PartitionReader {
+
+        /**
+         * @param start the start of the partition (inclusive)
+         * @param end   the end of the partition (exclusive)
+         * @return the {@link Measurement} and {@link StepMetricSample} of the partition
+         */
+        Stream<?> read(long start, long end);
+    }
+
+    public interface Listener {
+
+        /**
+         * Called concurrently by the rebuild threads after the samples of a partition have been merged
+         * into the target time series
+         *
+         * @param partition the index of the partition
+         * @param samples   the number of samples ingested for this partition
+         */
+        void onPartitionCompleted(int partition, long samples);
+    }
+
+    /**
+     * The partitioning of the time range of a rebuild. The partitions have the same size and are aligned on
+     * the resolution of the time series
+     */
+    public static class PartitionPlan {
+
+        private final long start;
+        private final long partitionSize;
+        private final int count;
+
+        public PartitionPlan(long start, long partitionSize, int count) {
+            this.start = start;
+            this.partitionSize = partitionSize;
+            this.count = count;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getPartitionSize() {
+            return partitionSize;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getPartitionStart(int partition) {
+            return start + partition * partitionSize;
+        }
+
+        /**
+         * @param completedPartitions the completed partitions
+         * @return a string representation of the plan and the completed partitions, used to persist the state of a rebuild
+         */
+        public String toState(Set<Integer> completedPartitions) {
+            return start + ":" + partitionSize + ":" + count + ":" + completedPartitions.stream().sorted().map(String::valueOf).collect(Collectors.joining(","));
+        }
+
+        /**
+         * @param state               the string representation of a rebuild returned by {@link #toState(Set)}
+         * @param completedPartitions the set to which the completed partitions are added
+         * @return the plan
+         */
+        public static PartitionPlan fromState(String state, Set<Integer> completedPartitions) {
+            String[] split = state.split(":", -1);
+            if (split.length != 4) {
+                throw new IllegalArgumentException("Invalid time series rebuild state: " + state);
+            }
+            if (!split[3].isEmpty()) {
+                Arrays.stream(split[3].split(",")).map(Integer::valueOf).forEach(completedPartitions::add);
+            }
+            return new PartitionPlan(Long.parseLong(split[0]), Long.parseLong(split[1]), Integer.parseInt(split[2]));
+        }
+    }
+}
@@ -62,7 +62,11 @@ public class TimeSeriesService extends AbstractStepServices {
         maxNumberOfSeries = configuration.getPropertyAsInteger(TIME_SERIES_MAX_NUMBER_OF_SERIES, 1000);
         ReportNodeTimeSeries reportNodeTimeSeries = context.require(ReportNodeTimeSeries.class);
         long metricsSamplingIntervalMs = MetricsControllerPlugin.getSamplingIntervalMs(configuration);
-        this.handler = new TimeSeriesHandler(resolution, handledAttributes, excludedAttributes, measurementCollection, metricSampleCollection, executionAccessor, timeSeries, reportNodeTimeSeries, asyncTaskManager, fieldsSamplingLimit, metricsSamplingIntervalMs);
+        TimeSeriesRebuilder rebuilder = new TimeSeriesRebuilder(
+            configuration.getPropertyAsInteger(TimeSeriesRebuilder.REBUILD_PARTITIONS_PROPERTY, TimeSeriesRebuilder.DEFAULT_PARTITIONS),
+            configuration.getPropertyAsInteger(TimeSeriesRebuilder.REBUILD_THREADS_PROPERTY, TimeSeriesRebuilder.DEFAULT_THREADS),
+            configuration.getPropertyAsInteger(TimeSeriesRebuilder.REBUILD_MAX_SAMPLES_PER_SECOND_PROPERTY, 0));
+        this.handler = new TimeSeriesHandler(resolution, handledAttributes, excludedAttributes, measurementCollection, metricSampleCollection, executionAccessor, timeSeries, reportNodeTimeSeries, asyncTaskManager, fieldsSamplingLimit, metricsSamplingIntervalMs, rebuilder);
     }
 
     @Secured(right = "execution-read")
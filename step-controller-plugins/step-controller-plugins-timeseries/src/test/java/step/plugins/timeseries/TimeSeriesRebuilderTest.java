@@ -0,0 +1,277 @@
+package step.plugins.timeseries;
+
+import ch.exense.commons.app.Configuration;
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.controller.services.async.AsyncTaskManager;
+import step.controller.services.async.AsyncTaskStatus;
+import step.core.artefacts.reports.aggregated.ReportNodeTimeSeries;
+import step.core.collections.Collection;
+import step.core.collections.Filters;
+import step.core.collections.inmemory.InMemoryCollection;
+import step.core.collections.inmemory.InMemoryCollectionFactory;
+import step.core.execution.model.Execution;
+import step.core.execution.model.InMemoryExecutionAccessor;
+import step.core.metrics.ExecutionMetricSample;
+import step.core.metrics.Measurement;
+import step.core.metrics.MetricHeartbeatRegistry;
+import step.core.timeseries.TimeSeries;
+import step.core.timeseries.TimeSeriesBuilder;
+import step.core.timeseries.TimeSeriesCollection;
+import step.core.timeseries.bucket.Bucket;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static step.plugins.timeseries.TimeSeriesExecutionPlugin.TIMESERIES_FLAG;
+import static step.plugins.timeseries.TimeSeriesExecutionPlugin.TIMESERIES_REBUILD_STATE;
+
+public class TimeSeriesRebuilderTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesRebuilderTest.class);
+
+    private static final int RESOLUTION = 200;
+    private static final Set<String> ATTRIBUTES = Set.of("key", "eId");
+
+    @Test
+    public void testPlan() {
+        TimeSeriesRebuilder rebuilder = new TimeSeriesRebuilder(8, 2, 0);
+        TimeSeriesRebuilder.PartitionPlan plan = rebuilder.plan(1050, 9999, RESOLUTION);
+        Assert.assertEquals(1000, plan.getStart());
+        Assert.assertEquals(0, plan.getPartitionSize() % RESOLUTION);
+        Assert.assertTrue(plan.getCount() <= 8);
+        // The partitions cover the whole range
+        Assert.assertTrue(plan.getPartitionStart(plan.getCount() - 1) + plan.getPartitionSize() > 9999);
+
+        // A range smaller than the resolution results in a single partition
+        plan = rebuilder.plan(1050, 1060, RESOLUTION);
+        Assert.assertEquals(1, plan.getCount());
+        Assert.assertEquals(RESOLUTION, plan.getPartitionSize());
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> new TimeSeriesRebuilder(0, 1, 0));
+    }
+
+    @Test
+    public void testPlanState() {
+        TimeSeriesRebuilder.PartitionPlan plan = new TimeSeriesRebuilder.PartitionPlan(1000, 400, 5);
+        String state = plan.toState(Set.of(3, 0));
+        Assert.assertEquals("1000:400:5:0,3", state);
+        Set<Integer> completedPartitions = new HashSet<>();
+        TimeSeriesRebuilder.PartitionPlan actual = TimeSeriesRebuilder.PartitionPlan.fromState(state, completedPartitions);
+        Assert.assertEquals(1000, actual.getStart());
+        Assert.assertEquals(400, actual.getPartitionSize());
+        Assert.assertEquals(5, actual.getCount());
+        Assert.assertEquals(Set.of(0, 3), completedPartitions);
+
+        completedPartitions.clear();
+        TimeSeriesRebuilder.PartitionPlan.fromState(plan.toState(Set.of()), completedPartitions);
+        Assert.assertTrue(completedPartitions.isEmpty());
+        Assert.assertThrows(IllegalArgumentException.class, () -> TimeSeriesRebuilder.PartitionPlan.fromState("1000:400", completedPartitions));
+    }
+
+    @Test
+    public void testRebuildMatchesSequentialIngestion() {
+        List<Measurement> measurements = generateMeasurements("exec", 20_000, 0, 100_000);
+
+        InMemoryCollection<Bucket> expectedBuckets = new InMemoryCollection<>();
+        try (TimeSeries timeSeries = newTimeSeries(expectedBuckets)) {
+            TimeSeriesMetricSamplesHandler handler = new TimeSeriesMetricSamplesHandler(timeSeries, ATTRIBUTES, Set.of());
+            measurements.forEach(handler::ingestExistingMeasurement);
+            handler.flush();
+            MetricHeartbeatRegistry.getInstance().unregisterHandler(handler);
+        }
+
+        InMemoryCollection<Bucket> actualBuckets = new InMemoryCollection<>();
+        long count;
+        try (TimeSeries timeSeries = newTimeSeries(actualBuckets)) {
+            TimeSeriesRebuilder rebuilder = new TimeSeriesRebuilder(16, 4, 0);
+            TimeSeriesRebuilder.PartitionPlan plan = rebuilder.plan(0, 100_000, RESOLUTION);
+            count = rebuilder.rebuild(plan, Set.of(), (start, end) -> measurements.stream().filter(m -> m.getBegin() >= start && m.getBegin() < end),
+                ts -> new TimeSeriesMetricSamplesHandler(ts, ATTRIBUTES, Set.of()), timeSeries, (partition, samples) -> {
+                });
+            timeSeries.getIngestionPipeline().flush();
+        }
+
+        Assert.assertEquals(measurements.size(), count);
+        Assert.assertEquals(toComparableBuckets(expectedBuckets), toComparableBuckets(actualBuckets));
+    }
+
+    @Test
+    public void testRebuildSkipsCompletedPartitions() {
+        List<Measurement> measurements = generateMeasurements("exec", 1_000, 0, 10_000);
+        TimeSeriesRebuilder rebuilder = new TimeSeriesRebuilder(10, 2, 0);
+        TimeSeriesRebuilder.PartitionPlan plan = rebuilder.plan(0, 9_999, RESOLUTION);
+        Set<Long> readPartitions = ConcurrentHashMap.newKeySet();
+        Set<Integer> completedPartitions = ConcurrentHashMap.newKeySet();
+        long count;
+        try (TimeSeries timeSeries = newTimeSeries(new InMemoryCollection<>())) {
+            count = rebuilder.rebuild(plan, Set.of(0, 1), (start, end) -> {
+                    readPartitions.add(start);
+                    return measurements.stream().filter(m -> m.getBegin() >= start && m.getBegin() < end);
+                }, ts -> new TimeSeriesMetricSamplesHandler(ts, ATTRIBUTES, Set.of()), timeSeries,
+                (partition, samples) -> completedPartitions.add(partition));
+        }
+
+        long expectedCount = measurements.stream().filter(m -> m.getBegin() >= plan.getPartitionStart(2)).count();
+        Assert.assertEquals(expectedCount, count);
+        Assert.assertEquals(plan.getCount() - 2, completedPartitions.size());
+        Assert.assertFalse(completedPartitions.contains(0));
+        Assert.assertFalse(readPartitions.contains(plan.getPartitionStart(0)));
+        Assert.assertFalse(readPartitions.contains(plan.getPartitionStart(1)));
+    }
+
+    @Test
+    public void testRebuildAndResumeTimeSeriesOfExecution() throws InterruptedException {
+        Collection<Measurement> measurementCollection = new InMemoryCollection<>();
+        InMemoryExecutionAccessor executionAccessor = new InMemoryExecutionAccessor();
+        InMemoryCollection<Bucket> buckets = new InMemoryCollection<>();
+        TimeSeries timeSeries = newTimeSeries(buckets);
+        TimeSeriesHandler handler = newHandler(measurementCollection, executionAccessor, timeSeries, new TimeSeriesRebuilder(8, 2, 0));
+
+        Execution execution = new Execution();
+        executionAccessor.save(execution);
+        String executionId = execution.getId().toString();
+        List<Measurement> measurements = generateMeasurements(executionId, 5_000, 0, 50_000);
+        measurementCollection.save(measurements);
+
+        AsyncTaskStatus<Object> status = handler.rebuildTimeSeries(executionId);
+        waitForTask(status);
+        Assert.assertNull(status.getError());
+        Assert.assertEquals(measurements.size(), ((TimeSeriesRebuildResponse) status.getResult()).getNumberOfMeasurementsProcessed());
+        Assert.assertEquals(1, status.getProgress(), 0);
+        Assert.assertTrue(handler.timeSeriesIsBuilt(executionId));
+        Assert.assertNull(executionAccessor.get(executionId).getCustomField(TIMESERIES_REBUILD_STATE));
+        Assert.assertEquals(measurements.size(), buckets.find(Filters.empty(), null, null, null, 0).mapToLong(Bucket::getCount).sum());
+        Assert.assertThrows(RuntimeException.class, () -> handler.rebuildTimeSeries(executionId));
+
+        // Simulate a rebuild interrupted after the first 2 partitions
+        Execution interruptedExecution = new Execution();
+        interruptedExecution.addCustomField(TIMESERIES_FLAG, true);
+        executionAccessor.save(interruptedExecution);
+        String interruptedExecutionId = interruptedExecution.getId().toString();
+        List<Measurement> interruptedMeasurements = generateMeasurements(interruptedExecutionId, 4_000, 0, 40_000);
+        measurementCollection.save(interruptedMeasurements);
+        TimeSeriesRebuilder.PartitionPlan plan = new TimeSeriesRebuilder(4, 1, 0).plan(0, 39_999, RESOLUTION);
+        interruptedExecution.addCustomField(TIMESERIES_REBUILD_STATE, plan.toState(Set.of(0, 1)));
+        executionAccessor.save(interruptedExecution);
+        Assert.assertFalse(handler.timeSeriesIsBuilt(interruptedExecutionId));
+        // Simulate the partition 2 merged into the time series before the interruption but not yet marked as completed
+        TimeSeriesMetricSamplesHandler samplesHandler = new TimeSeriesMetricSamplesHandler(timeSeries, ATTRIBUTES, Set.of());
+        interruptedMeasurements.stream().filter(m -> m.getBegin() >= plan.getPartitionStart(2) && m.getBegin() < plan.getPartitionStart(3))
+            .forEach(samplesHandler::ingestExistingMeasurement);
+        samplesHandler.flush();
+        MetricHeartbeatRegistry.getInstance().unregisterHandler(samplesHandler);
+
+        status = handler.rebuildTimeSeries(interruptedExecutionId);
+        waitForTask(status);
+        Assert.assertNull(status.getError());
+        long expectedCount = interruptedMeasurements.stream().filter(m -> m.getBegin() >= plan.getPartitionStart(2)).count();
+        Assert.assertEquals(expectedCount, ((TimeSeriesRebuildResponse) status.getResult()).getNumberOfMeasurementsProcessed());
+        Assert.assertTrue(handler.timeSeriesIsBuilt(interruptedExecutionId));
+        Assert.assertNull(executionAccessor.get(interruptedExecutionId).getCustomField(TIMESERIES_REBUILD_STATE));
+        // The buckets of the partially merged partition have been replaced and aren't counted twice
+        Assert.assertEquals(expectedCount, buckets.find(Filters.equals("attributes.eId", interruptedExecutionId), null, null, null, 0)
+            .mapToLong(Bucket::getCount).sum());
+    }
+
+    @Test
+    public void testThrottling() {
+        List<Measurement> measurements = generateMeasurements("exec", 12_000, 0, 10_000);
+        TimeSeriesRebuilder rebuilder = new TimeSeriesRebuilder(4, 4, 20_000);
+        long start = System.currentTimeMillis();
+        try (TimeSeries timeSeries = newTimeSeries(new InMemoryCollection<>())) {
+            rebuilder.rebuild(rebuilder.plan(0, 9_999, RESOLUTION), Set.of(), (s, e) -> measurements.stream().filter(m -> m.getBegin() >= s && m.getBegin() < e),
+                ts -> new TimeSeriesMetricSamplesHandler(ts, ATTRIBUTES, Set.of()), timeSeries, (partition, samples) -> {
+                });
+        }
+        // The permits are acquired by batches of 1000 samples: the first batch is granted immediately, the 11 following ones at 20000 samples/s
+        Assert.assertTrue(System.currentTimeMillis() - start >= 400);
+    }
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkRebuild() throws InterruptedException {
+        int measurementCount = 1_000_000;
+        Collection<Measurement> measurementCollection = new InMemoryCollection<>();
+        List<Measurement> measurements = generateMeasurements("exec", measurementCount, 0, 3_600_000);
+        measurementCollection.save(measurements);
+
+        long start = System.currentTimeMillis();
+        try (TimeSeries timeSeries = newTimeSeries(new InMemoryCollection<>())) {
+            TimeSeriesMetricSamplesHandler handler = new TimeSeriesMetricSamplesHandler(timeSeries, ATTRIBUTES, Set.of());
+            measurementCollection.find(Filters.equals("eId", "exec"), null, null, null, 0).forEach(handler::ingestExistingMeasurement);
+            handler.flush();
+            MetricHeartbeatRegistry.getInstance().unregisterHandler(handler);
+        }
+        logger.info("Sequential ingestion of " + measurementCount + " measurements: " + (System.currentTimeMillis() - start) + "ms");
+
+        for (int threads : List.of(1, 2, 4, 8)) {
+            TimeSeriesRebuilder rebuilder = new TimeSeriesRebuilder(32, threads, 0);
+            start = System.currentTimeMillis();
+            try (TimeSeries timeSeries = newTimeSeries(new InMemoryCollection<>())) {
+                rebuilder.rebuild(rebuilder.plan(0, 3_600_000, RESOLUTION), Set.of(), (s, e) -> measurementCollection.find(
+                        Filters.and(List.of(Filters.equals("eId", "exec"), Filters.gte("begin", s), Filters.lt("begin", e))), null, null, null, 0),
+                    ts -> new TimeSeriesMetricSamplesHandler(ts, ATTRIBUTES, Set.of()), timeSeries, (partition, samples) -> {
+                    });
+                timeSeries.getIngestionPipeline().flush();
+            }
+            logger.info("Partitioned rebuild of " + measurementCount + " measurements with " + threads + " threads: " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private static TimeSeries newTimeSeries(Collection<Bucket> buckets) {
+        return new TimeSeriesBuilder().registerCollection(new TimeSeriesCollection(buckets, RESOLUTION)).build();
+    }
+
+    private static TimeSeriesHandler newHandler(Collection<Measurement> measurementCollection, InMemoryExecutionAccessor executionAccessor,
+                                                TimeSeries timeSeries, TimeSeriesRebuilder rebuilder) {
+        Collection<ExecutionMetricSample> metricSampleCollection = new InMemoryCollection<>();
+        ReportNodeTimeSeries reportNodeTimeSeries = new ReportNodeTimeSeries(new InMemoryCollectionFactory(null), new Configuration());
+        return new TimeSeriesHandler(RESOLUTION, ATTRIBUTES, Set.of(), measurementCollection, metricSampleCollection, executionAccessor,
+            timeSeries, reportNodeTimeSeries, new AsyncTaskManager(), 1000, 15000L, rebuilder);
+    }
+
+    private static void waitForTask(AsyncTaskStatus<?> status) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 60_000;
+        while (!status.isReady() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(status.isReady());
+    }
+
+    private static List<Measurement> generateMeasurements(String executionId, int count, long from, long to) {
+        Random random = new Random(0);
+        AtomicInteger index = new AtomicInteger();
+        List<Measurement> measurements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Measurement measurement = new Measurement();
+            measurement.setExecId(executionId);
+            measurement.put("key", "key" + index.getAndIncrement() % 5);
+            measurement.setName("measurement");
+            measurement.setType("custom");
+            measurement.setBegin(from + (long) (random.nextDouble() * (to - from)));
+            measurement.setValue(random.nextInt(1000));
+            measurements.add(measurement);
+        }
+        return measurements;
+    }
+
+    private static Map<String, String> toComparableBuckets(Collection<Bucket> buckets) {
+        return buckets.find(Filters.empty(), null, null, null, 0).collect(Collectors.toMap(
+            b -> b.getBegin() + "|" + new TreeMap<>(b.getAttributes()),
+            b -> b.getCount() + "|" + b.getSum() + "|" + b.getMin() + "|" + b.getMax(),
+            // Buckets of a same interval and series might be persisted separately by successive flushes
+            (b1, b2) -> {
+                String[] s1 = b1.split("\\|");
+                String[] s2 = b2.split("\\|");
+                return (Long.parseLong(s1[0]) + Long.parseLong(s2[0])) + "|" + (Long.parseLong(s1[1]) + Long.parseLong(s2[1])) + "|"
+                    + Math.min(Long.parseLong(s1[2]), Long.parseLong(s2[2])) + "|" + Math.max(Long.parseLong(s1[3]), Long.parseLong(s2[3]));
+            }));
+    }
+}
@@ -19,9 +19,13 @@
 package step.core.export;
 
 import ch.exense.commons.io.FileHelper;
+import ch.exense.commons.test.categories.PerformanceTest;
 import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import step.artefacts.CallFunction;
 import step.artefacts.ForEachBlock;
 import step.artefacts.Sequence;
@@ -90,6 +94,8 @@ import static step.planbuilder.BaseArtefacts.sequence;
 
 public class ExportManagerTest {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExportManagerTest.class);
+
     private PlanAccessor planAccessor;
     private EntityManager entityManager;
     private MigrationManager migrationManager;
@@ -847,6 +853,92 @@ public class ExportManagerTest {
         }
     }
 
+    @Test
+    public void testExportResourcesArchiveLayout() throws Exception {
+        byte[] textContent = "Some text content".repeat(1000).getBytes();
+        byte[] archiveContent = new byte[100_000];
+        new Random(1).nextBytes(archiveContent);
+        Resource textResource = resourceManager.createResource(ResourceManager.RESOURCE_TYPE_DATASOURCE, new ByteArrayInputStream(textContent), "data.txt", null, "testUser");
+        Resource archiveResource = resourceManager.createResource(ResourceManager.RESOURCE_TYPE_DATASOURCE, new ByteArrayInputStream(archiveContent), "data.zip", null, "testUser");
+
+        File testExportFile = new File("testExport.zip");
+        try (FileOutputStream outputStream = new FileOutputStream(testExportFile)) {
+            ExportConfiguration exportConfig = new ExportConfiguration(outputStream, buildMetadata(), dummyObjectPredicate(), EntityConstants.resources, true, null);
+            ExportResult exportResult = new ExportManager(entityManager, resourceManager, 2).exportAll(exportConfig);
+            assertTrue(exportResult.getMessages().isEmpty());
+        }
+        try {
+            try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(testExportFile)) {
+                List<? extends java.util.zip.ZipEntry> entries = Collections.list(zipFile.entries());
+                assertEquals(3, entries.size());
+                // The entities are written first
+                assertEquals(ExportManager.EXPORT_JSON_FILE_NAME, entries.get(0).getName());
+                java.util.zip.ZipEntry textEntry = entries.stream().filter(e -> e.getName().endsWith("data.txt")).findFirst().orElseThrow();
+                java.util.zip.ZipEntry archiveEntry = entries.stream().filter(e -> e.getName().endsWith("data.zip")).findFirst().orElseThrow();
+                assertEquals(java.util.zip.ZipEntry.DEFLATED, textEntry.getMethod());
+                // Already compressed files are stored
+                assertEquals(java.util.zip.ZipEntry.STORED, archiveEntry.getMethod());
+                assertArrayEquals(archiveContent, zipFile.getInputStream(archiveEntry).readAllBytes());
+            }
+
+            resourceManager.deleteResource(textResource.getId().toHexString());
+            resourceManager.deleteResource(archiveResource.getId().toHexString());
+            ImportManager importManager = createNewContextAndGetImportManager();
+            ImportResult importResult = importManager.importAll(new ImportConfiguration(testExportFile, dummyObjectEnricher(), null, true));
+            assertTrue(importResult.getMessages().isEmpty());
+            try (InputStream inputStream = resourceManager.getResourceContent(textResource.getId().toHexString()).getResourceStream()) {
+                assertArrayEquals(textContent, inputStream.readAllBytes());
+            }
+            try (InputStream inputStream = resourceManager.getResourceContent(archiveResource.getId().toHexString()).getResourceStream()) {
+                assertArrayEquals(archiveContent, inputStream.readAllBytes());
+            }
+        } finally {
+            testExportFile.delete();
+        }
+    }
+
+    /**
+     * Measures the throughput of the export and import of many plans referencing large resources
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkExportImport() throws Exception {
+        int plans = 5000;
+        int resources = 20;
+        int resourceSize = 10 * 1024 * 1024;
+        byte[] content = "Resource content ".repeat(resourceSize / 17 + 1).substring(0, resourceSize).getBytes();
+        for (int i = 0; i < resources; i++) {
+            resourceManager.createResource(ResourceManager.RESOURCE_TYPE_DATASOURCE, new ByteArrayInputStream(content), "resource" + i + ".txt", null, "testUser");
+        }
+        for (int i = 0; i < plans; i++) {
+            Plan plan = PlanBuilder.create().startBlock(sequence()).add(sequence()).add(sequence()).endBlock().build();
+            plan.addAttribute(AbstractOrganizableObject.NAME, "Plan " + i);
+            planAccessor.save(plan);
+        }
+
+        File testExportFile = new File("testExport.zip");
+        try {
+            long t1 = System.currentTimeMillis();
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(testExportFile))) {
+                ExportConfiguration exportConfig = new ExportConfiguration(outputStream, buildMetadata(), dummyObjectPredicate(), EntityConstants.plans, false, List.of(EntityConstants.resources));
+                newExportManager().exportAll(exportConfig);
+            }
+            long exportDuration = Math.max(1, System.currentTimeMillis() - t1);
+            long totalBytes = (long) resources * resourceSize;
+            logger.info("Exported {} plans and {} resources ({}MB) in {}ms ({} MB/s). Archive size: {}MB", plans, resources,
+                totalBytes / (1024 * 1024), exportDuration, totalBytes / 1024 / 1024 * 1000 / exportDuration, testExportFile.length() / (1024 * 1024));
+
+            ImportManager importManager = createNewContextAndGetImportManager();
+            t1 = System.currentTimeMillis();
+            importManager.importAll(new ImportConfiguration(testExportFile, dummyObjectEnricher(), null, true));
+            long importDuration = Math.max(1, System.currentTimeMillis() - t1);
+            logger.info("Imported {} plans and {} resources in {}ms ({} MB/s)", plans, resources, importDuration,
+                totalBytes / 1024 / 1024 * 1000 / importDuration);
+        } finally {
+            testExportFile.delete();
+        }
+    }
+
     public String getResourceIdOfExcelDatapool(Plan newPlan) {
         ForEachBlock forEach = (ForEachBlock) newPlan.getRoot().getChildren().get(0).getChildren().get(0);
         ExcelDataPool dataPool = (ExcelDataPool) forEach.getDataSource();
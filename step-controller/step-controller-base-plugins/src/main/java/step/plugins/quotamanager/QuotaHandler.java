@@ -19,26 +19,46 @@
 package step.plugins.quotamanager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.codehaus.groovy.runtime.InvokerHelper;
 
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.Script;
+import step.core.metrics.ControllerMetricSample;
+import step.core.metrics.InstrumentType;
+import step.core.metrics.MetricSample;
 import step.plugins.quotamanager.config.Quota;
 
+import static step.core.metrics.MetricsConstants.QUOTA_ATTRIBUTE;
+import static step.core.metrics.MetricsConstants.QUOTA_KEY_ATTRIBUTE;
+
 public class QuotaHandler {
 
-    private ConcurrentHashMap<String, QuotaSemaphore> semaphores = new ConcurrentHashMap<>();
+    public static final int DEFAULT_MAX_METRICS_QUOTA_KEYS = 100;
+    // The quota key under which the keys exceeding the maximum number of keys reported in the metrics are merged
+    public static final String OTHER_QUOTA_KEYS = "Other";
+
+    private final ConcurrentHashMap<String, QuotaKeyState> quotaKeyStates = new ConcurrentHashMap<>();
+
+    private final Quota config;
 
-    private Quota config;
+    private final Class<?> scriptClass;
 
-    private Class<?> scriptClass;
+    // Null if the quota key function cannot be evaluated without running the script
+    private final QuotaKeyTemplate quotaKeyTemplate;
 
     public QuotaHandler(Quota config) {
         super();
@@ -52,6 +72,7 @@ public class QuotaHandler {
             } catch (IOException e) {
             }
         }
+        quotaKeyTemplate = QuotaKeyTemplate.parse(config.getQuotaKeyFunction());
     }
 
     public Quota getConfig() {
@@ -61,27 +82,9 @@ public class QuotaHandler {
     public String acquirePermit(Map<String, Object> bindingVariables) throws Exception {
         String quotaKey = computeQuotaKey(bindingVariables);
         if (quotaKey != null) {
-            QuotaSemaphore semaphore = getOrCreateSemaphore(quotaKey);
-
+            // Wait indefinitely if no timeout or a negative timeout is defined
             Long acquireTimeoutMs = config.getAcquireTimeoutMs();
-            if (acquireTimeoutMs != null) {
-                boolean acquired;
-                if (acquireTimeoutMs < 0) {
-                    semaphore.acquire();
-                    acquired = true;
-                } else {
-                    acquired = semaphore.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
-                }
-                if (!acquired) {
-                    throw new TimeoutException("A timeout occurred while trying to acquire permit for quota: " + config.toString());
-                } else {
-                    semaphore.incrementLoad();
-                }
-            } else {
-                semaphore.acquire();
-                semaphore.incrementLoad();
-            }
-
+            acquire(quotaKey, acquireTimeoutMs != null ? acquireTimeoutMs : -1);
         }
         return quotaKey;
     }
@@ -89,38 +92,84 @@ public class QuotaHandler {
     public String tryAcquirePermit(Map<String, Object> bindingVariables, long timeout) throws Exception {
         String quotaKey = computeQuotaKey(bindingVariables);
         if (quotaKey != null) {
-            QuotaSemaphore semaphore = getOrCreateSemaphore(quotaKey);
+            acquire(quotaKey, Math.max(0, timeout));
+        }
+        return quotaKey;
+    }
 
-            boolean acquired = semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    private void acquire(String quotaKey, long timeoutMs) throws InterruptedException, TimeoutException {
+        QuotaKeyState state = getOrCreateQuotaKeyState(quotaKey);
+        try {
+            acquire(state, timeoutMs);
+        } finally {
+            state.pendingAcquisitions.decrementAndGet();
+        }
+    }
+
+    private void acquire(QuotaKeyState state, long timeoutMs) throws InterruptedException, TimeoutException {
+        long start = System.nanoTime();
+        QuotaSemaphore semaphore = state.semaphore;
+        if (semaphore != null) {
+            boolean acquired;
+            if (timeoutMs < 0) {
+                semaphore.acquire();
+                acquired = true;
+            } else {
+                acquired = semaphore.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+            }
             if (!acquired) {
                 throw new TimeoutException("A timeout occurred while trying to acquire permit for quota: " + config.toString());
-            } else {
-                semaphore.incrementLoad();
             }
-
         }
-        return quotaKey;
+        if (state.rateLimiter != null) {
+            // The rate limiter is only given the remaining time if a permit had to be awaited
+            long remainingNanos = timeoutMs < 0 ? -1 : Math.max(0, TimeUnit.MILLISECONDS.toNanos(timeoutMs) - (System.nanoTime() - start));
+            boolean acquired;
+            try {
+                acquired = state.rateLimiter.tryAcquire(remainingNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                if (semaphore != null) {
+                    semaphore.release();
+                }
+                throw e;
+            }
+            if (!acquired) {
+                if (semaphore != null) {
+                    semaphore.release();
+                }
+                throw new TimeoutException("A timeout occurred while trying to acquire permit for quota: " + config.toString());
+            }
+        }
+        if (semaphore != null) {
+            semaphore.incrementLoad();
+        }
+        state.statistics.addAcquisition(System.nanoTime() - start);
     }
 
     public void releasePermit(String quotaKey) {
-        QuotaSemaphore semaphore = getOrCreateSemaphore(quotaKey);
-        semaphore.decrementLoad();
-        semaphore.release();
-    }
-
-    private QuotaSemaphore getOrCreateSemaphore(String key) {
-        QuotaSemaphore semaphore = semaphores.get(key);
-        if (semaphore == null) {
-            QuotaSemaphore newInstance = new QuotaSemaphore(config.getPermits(), false);
-            semaphore = semaphores.putIfAbsent(key, newInstance);
-            if (semaphore == null) {
-                semaphore = newInstance;
-            }
+        QuotaKeyState state = quotaKeyStates.get(quotaKey);
+        if (state != null && state.semaphore != null) {
+            state.semaphore.decrementLoad();
+            state.semaphore.release();
         }
-        return semaphore;
+    }
+
+    /**
+     * Gets the state of the quota key and registers a pending acquisition, which prevents the state from being evicted
+     * until the acquisition completes. The caller has to decrement {@link QuotaKeyState#pendingAcquisitions} when done
+     */
+    private QuotaKeyState getOrCreateQuotaKeyState(String key) {
+        return quotaKeyStates.compute(key, (k, state) -> {
+            QuotaKeyState result = state != null ? state : new QuotaKeyState(config);
+            result.pendingAcquisitions.incrementAndGet();
+            return result;
+        });
     }
 
     protected String computeQuotaKey(Map<String, Object> bindingVariables) throws Exception {
+        if (quotaKeyTemplate != null && quotaKeyTemplate.isApplicableTo(bindingVariables)) {
+            return quotaKeyTemplate.evaluate(bindingVariables);
+        }
         Binding binding = new Binding(bindingVariables);
         Script script = InvokerHelper.createScript(scriptClass, binding);
         Object result = script.run();
@@ -135,12 +184,160 @@ public class QuotaHandler {
         QuotaHandlerStatus status = new QuotaHandlerStatus();
         status.permitsByQuotaKey = config.getPermits();
         status.configuration = config;
-        for (Entry<String, QuotaSemaphore> entry : semaphores.entrySet()) {
-            int peak = entry.getValue().getPeak();
-            int usage = config.getPermits() - entry.getValue().availablePermits();
-            status.addEntry(entry.getKey(), usage, peak);
+        for (Entry<String, QuotaKeyState> entry : quotaKeyStates.entrySet()) {
+            QuotaSemaphore semaphore = entry.getValue().semaphore;
+            if (semaphore != null) {
+                int peak = semaphore.getPeak();
+                int usage = config.getPermits() - semaphore.availablePermits();
+                status.addEntry(entry.getKey(), usage, peak);
+            } else {
+                status.addEntry(entry.getKey(), 0, 0);
+            }
         }
         return status;
     }
 
+    /**
+     * Collects the wait time and the throughput of the quota keys since the last collection. To bound the cardinality
+     * of the metrics, only the quota keys with the most permits are reported individually (see
+     * {@link Quota#getMaxMetricsQuotaKeys()}), the other ones are merged under the key {@link #OTHER_QUOTA_KEYS}.
+     * The states of the quota keys that have been idle since the last collection are evicted.
+     *
+     * @param timestamp the timestamp of the samples
+     * @return the samples of the quota keys for which permits have been acquired since the last collection
+     */
+    public List<ControllerMetricSample> collectMetricSamples(long timestamp) {
+        List<QuotaKeySnapshot> snapshots = new ArrayList<>();
+        quotaKeyStates.forEach((quotaKey, state) -> {
+            QuotaKeySnapshot snapshot = state.statistics.snapshotAndReset(quotaKey);
+            if (snapshot.count > 0) {
+                snapshots.add(snapshot);
+            } else {
+                // The state is only removed if no acquisition is pending and no permit is held
+                quotaKeyStates.computeIfPresent(quotaKey, (k, s) -> s.isIdle() ? null : s);
+            }
+        });
+
+        int maxQuotaKeys = config.getMaxMetricsQuotaKeys() != null ? config.getMaxMetricsQuotaKeys() : DEFAULT_MAX_METRICS_QUOTA_KEYS;
+        List<ControllerMetricSample> samples = new ArrayList<>();
+        snapshots.sort(Comparator.comparingLong((QuotaKeySnapshot s) -> s.count).reversed());
+        QuotaKeySnapshot others = null;
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (i < maxQuotaKeys) {
+                addMetricSamples(samples, timestamp, snapshots.get(i));
+            } else {
+                others = snapshots.get(i).mergeInto(others, maxQuotaKeys > 0 ? OTHER_QUOTA_KEYS : null);
+            }
+        }
+        if (others != null) {
+            addMetricSamples(samples, timestamp, others);
+        }
+        return samples;
+    }
+
+    private void addMetricSamples(List<ControllerMetricSample> samples, long timestamp, QuotaKeySnapshot snapshot) {
+        TreeMap<String, String> labels = new TreeMap<>();
+        labels.put(QUOTA_ATTRIBUTE.getName(), config.getId() != null ? config.getId() : config.getQuotaKeyFunction());
+        if (snapshot.quotaKey != null) {
+            labels.put(QUOTA_KEY_ATTRIBUTE.getName(), snapshot.quotaKey);
+        }
+        // The minimum may have been reset by a concurrent acquisition
+        long minWaitMs = snapshot.minWaitNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(snapshot.minWaitNanos);
+        samples.add(new ControllerMetricSample(new MetricSample(timestamp, "quota_wait_time", labels, InstrumentType.HISTOGRAM,
+            snapshot.count, TimeUnit.NANOSECONDS.toMillis(snapshot.waitNanos), minWaitMs, TimeUnit.NANOSECONDS.toMillis(snapshot.maxWaitNanos),
+            TimeUnit.NANOSECONDS.toMillis(snapshot.lastWaitNanos), null), QuotaManager.QUOTA_WAIT_TIME_METRIC));
+        // Each permit is a single observation of value 1
+        samples.add(new ControllerMetricSample(new MetricSample(timestamp, "quota_permits", labels, InstrumentType.HISTOGRAM,
+            snapshot.count, snapshot.count, 1, 1, 1, null), QuotaManager.QUOTA_THROUGHPUT_METRIC));
+    }
+
+    int getQuotaKeyStateCount() {
+        return quotaKeyStates.size();
+    }
+
+    private static class QuotaKeyState {
+
+        // Null if the quota doesn't limit the number of concurrent permits
+        private final QuotaSemaphore semaphore;
+        // Null if the quota doesn't limit the rate
+        private final QuotaRateLimiter rateLimiter;
+        private final QuotaKeyStatistics statistics = new QuotaKeyStatistics();
+        // The number of threads which got this state and haven't completed their acquisition yet
+        private final AtomicInteger pendingAcquisitions = new AtomicInteger();
+        private final int permits;
+
+        private QuotaKeyState(Quota config) {
+            permits = config.getPermits();
+            semaphore = config.isConcurrencyLimited() ? new QuotaSemaphore(permits, false) : null;
+            rateLimiter = config.isRateLimited() ? new QuotaRateLimiter(config.getPermitsPerSecond(),
+                config.getBurst() != null ? config.getBurst() : 1) : null;
+        }
+
+        /**
+         * @return true if the state can be dropped and recreated later without any effect on the permits granted
+         */
+        private boolean isIdle() {
+            return pendingAcquisitions.get() == 0
+                && (semaphore == null || (semaphore.availablePermits() == permits && !semaphore.hasQueuedThreads()))
+                && (rateLimiter == null || rateLimiter.isIdle());
+        }
+    }
+
+    /**
+     * Wait time statistics of a quota key since the last collection. The counters are updated without locking as they
+     * are updated by every permit acquisition
+     */
+    private static class QuotaKeyStatistics {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong minWaitNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicLong lastWaitNanos = new AtomicLong();
+
+        private void addAcquisition(long waitNanos) {
+            count.increment();
+            this.waitNanos.add(waitNanos);
+            lastWaitNanos.set(waitNanos);
+            if (waitNanos < minWaitNanos.get()) {
+                minWaitNanos.accumulateAndGet(waitNanos, Math::min);
+            }
+            if (waitNanos > maxWaitNanos.get()) {
+                maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            }
+        }
+
+        private QuotaKeySnapshot snapshotAndReset(String quotaKey) {
+            return new QuotaKeySnapshot(quotaKey, count.sumThenReset(), waitNanos.sumThenReset(), minWaitNanos.getAndSet(Long.MAX_VALUE),
+                maxWaitNanos.getAndSet(0), lastWaitNanos.get());
+        }
+    }
+
+    private static class QuotaKeySnapshot {
+
+        // Null if the samples aren't reported per quota key
+        private final String quotaKey;
+        private final long count;
+        private final long waitNanos;
+        private final long minWaitNanos;
+        private final long maxWaitNanos;
+        private final long lastWaitNanos;
+
+        private QuotaKeySnapshot(String quotaKey, long count, long waitNanos, long minWaitNanos, long maxWaitNanos, long lastWaitNanos) {
+            this.quotaKey = quotaKey;
+            this.count = count;
+            this.waitNanos = waitNanos;
+            this.minWaitNanos = minWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.lastWaitNanos = lastWaitNanos;
+        }
+
+        private QuotaKeySnapshot mergeInto(QuotaKeySnapshot other, String quotaKey) {
+            if (other == null) {
+                return new QuotaKeySnapshot(quotaKey, count, waitNanos, minWaitNanos, maxWaitNanos, lastWaitNanos);
+            }
+            return new QuotaKeySnapshot(quotaKey, other.count + count, other.waitNanos + waitNanos, Math.min(other.minWaitNanos, minWaitNanos),
+                Math.max(other.maxWaitNanos, maxWaitNanos), lastWaitNanos);
+        }
+    }
 }
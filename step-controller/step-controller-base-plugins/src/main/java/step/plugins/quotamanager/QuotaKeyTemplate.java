@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.plugins.quotamanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pre-parsed form of the quota key functions that only concatenate binding variables and string literals like
+ * {@code user} or {@code "user_" + user + '_' + env}. Such functions are evaluated without running the Groovy script.
+ * <p>
+ * The evaluation is equivalent to the one of the script as long as the template is applicable to the bindings
+ * (see {@link #isApplicableTo(Map)}). Otherwise, the script has to be run.
+ */
+class QuotaKeyTemplate {
+
+    // Identifiers that aren't resolved from the bindings by Groovy
+    private static final Set<String> RESERVED_IDENTIFIERS = Set.of("null", "true", "false", "this", "super", "new", "binding", "it");
+
+    private final List<Part> parts;
+
+    private QuotaKeyTemplate(List<Part> parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * @param function the quota key function
+     * @return the template or null if the function isn't a simple concatenation of variables and literals
+     */
+    static QuotaKeyTemplate parse(String function) {
+        if (function == null) {
+            return null;
+        }
+        List<Part> parts = new ArrayList<>();
+        int length = function.length();
+        int i = skipWhitespaces(function, 0);
+        while (true) {
+            if (i >= length) {
+                return null;
+            }
+            char c = function.charAt(i);
+            if (c == '"' || c == '\'') {
+                int end = function.indexOf(c, i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                String literal = function.substring(i + 1, end);
+                // Escape sequences and interpolated strings (GString) aren't supported
+                if (literal.indexOf('\\') >= 0 || (c == '"' && literal.indexOf('$') >= 0)) {
+                    return null;
+                }
+                parts.add(new Part(literal, false));
+                i = end + 1;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < length && Character.isJavaIdentifierPart(function.charAt(end))) {
+                    end++;
+                }
+                String identifier = function.substring(i, end);
+                if (RESERVED_IDENTIFIERS.contains(identifier)) {
+                    return null;
+                }
+                parts.add(new Part(identifier, true));
+                i = end;
+            } else {
+                return null;
+            }
+            i = skipWhitespaces(function, i);
+            if (i >= length) {
+                return new QuotaKeyTemplate(parts);
+            } else if (function.charAt(i) == '+') {
+                i = skipWhitespaces(function, i + 1);
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private static int skipWhitespaces(String function, int i) {
+        while (i < function.length() && Character.isWhitespace(function.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param bindings the binding variables
+     * @return true if the template evaluates to the same key as the script for these bindings. This is the case if
+     * all the variables are bound and, for concatenations, if the concatenated values are rendered the same way by
+     * Groovy and Java and the first value is a string (Groovy adds numbers instead of concatenating them)
+     */
+    boolean isApplicableTo(Map<String, Object> bindings) {
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            if (part.variable) {
+                if (!bindings.containsKey(part.value)) {
+                    return false;
+                }
+                if (parts.size() > 1) {
+                    Object value = bindings.get(part.value);
+                    if (i == 0 ? !(value instanceof String) : !isRenderedLikeJava(value)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRenderedLikeJava(Object value) {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+            || value instanceof Character || value instanceof Enum;
+    }
+
+    /**
+     * @param bindings the binding variables, to which the template must be applicable
+     * @return the quota key
+     */
+    String evaluate(Map<String, Object> bindings) {
+        if (parts.size() == 1) {
+            Part part = parts.get(0);
+            Object value = part.variable ? bindings.get(part.value) : part.value;
+            return value != null ? value.toString() : null;
+        }
+        StringBuilder key = new StringBuilder();
+        for (Part part : parts) {
+            key.append(part.variable ? bindings.get(part.value) : part.value);
+        }
+        return key.toString();
+    }
+
+    private static class Part {
+
+        private final String value;
+        private final boolean variable;
+
+        private Part(String value, boolean variable) {
+            this.value = value;
+            this.variable = variable;
+        }
+    }
+}
@@ -24,12 +24,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import step.common.managedoperations.OperationManager;
+import step.core.metrics.ControllerMetricSample;
 import step.plugins.quotamanager.config.Quota;
 import step.plugins.quotamanager.config.QuotaManagerConfig;
 import step.plugins.quotamanager.config.QuotaManagerConfigParser;
@@ -38,6 +40,9 @@ public class QuotaManager {
 
     private static final Logger logger = LoggerFactory.getLogger(QuotaManager.class);
 
+    public static final String QUOTA_WAIT_TIME_METRIC = "quota/wait-time";
+    public static final String QUOTA_THROUGHPUT_METRIC = "quota/throughput";
+
     private volatile QuotaManagerConfig config;
     private volatile boolean enabled = false;
     private volatile List<QuotaHandler> quotaHandlers;
@@ -87,8 +92,8 @@ public class QuotaManager {
         quotaHandlers = new ArrayList<>();
         if (config.getQuotas() != null) {
             for (Quota quota : config.getQuotas()) {
-                // avoid adding handlers with 0 permit and no timeout
-                if (quota.getPermits() > 0 || quota.getAcquireTimeoutMs() != null) {
+                // avoid adding handlers with 0 permit, no timeout and no rate limit
+                if (quota.getPermits() > 0 || quota.getAcquireTimeoutMs() != null || quota.isRateLimited()) {
                     QuotaHandler quotaHandler = new QuotaHandler(quota);
                     quotaHandlers.add(quotaHandler);
                 }
@@ -106,7 +111,9 @@ public class QuotaManager {
             return permitID;
         }
 
-        logger.debug("Permit request. Binding variables: " + bindingVariables.toString());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Permit request. Binding variables: " + bindingVariables.toString());
+        }
         List<Permit> acquiredPermits = new ArrayList<>();
         try {
             for (QuotaHandler quotaHandler : quotaHandlers) {
@@ -116,8 +123,10 @@ public class QuotaManager {
                     OperationManager.getInstance().enter("Quota acquisition", quotaHandler.getConfig());
                     String quotaKey = quotaHandler.acquirePermit(bindingVariables);
                     if (quotaKey != null) {
-                        long duration = System.currentTimeMillis() - t1;
-                        logger.debug("Permit acquired in " + duration + "ms. QuotaKey: " + quotaKey);
+                        if (logger.isDebugEnabled()) {
+                            long duration = System.currentTimeMillis() - t1;
+                            logger.debug("Permit acquired in " + duration + "ms. QuotaKey: " + quotaKey);
+                        }
 
                         if (quotaKey != null) {
                             Permit permit = new Permit(quotaHandler, quotaKey);
@@ -136,10 +145,15 @@ public class QuotaManager {
             if (permitID instanceof UUID) {
                 id = permitID;
             } else {
-                id = UUID.randomUUID();
+                id = newPermitID();
+            }
+            // Nothing has to be released for requests that didn't match any quota
+            if (!acquiredPermits.isEmpty()) {
+                permits.put(id, acquiredPermits);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Permit request succeeded. Returning permitID: " + id);
             }
-            permits.put(id, acquiredPermits);
-            logger.debug("Permit request succeeded. Returning permitID: " + id);
             return id;
         } catch (Exception e) {
             releasePermits(acquiredPermits);
@@ -147,10 +161,24 @@ public class QuotaManager {
         }
     }
 
+    /**
+     * The permit IDs only have to be unique within this manager. Unlike {@link UUID#randomUUID()}, which relies on
+     * a shared {@link java.security.SecureRandom}, the IDs are generated without contention between the threads.
+     */
+    private static UUID newPermitID() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Set the version (4) and variant bits of random UUIDs
+        long mostSigBits = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+        long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
     public void releasePermit(UUID id) {
         List<Permit> permits = this.permits.remove(id);
         if (permits != null) {
-            logger.debug("Releasing permit. PermitID: " + id);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Releasing permit. PermitID: " + id);
+            }
             releasePermits(permits);
         }
     }
@@ -169,6 +197,20 @@ public class QuotaManager {
         return statusList;
     }
 
+    /**
+     * Collects the wait time and throughput metrics of all the quota keys since the last collection
+     *
+     * @return the metric samples, to be ingested as {@link #QUOTA_WAIT_TIME_METRIC} and {@link #QUOTA_THROUGHPUT_METRIC}
+     */
+    public List<ControllerMetricSample> collectMetricSamples() {
+        long now = System.currentTimeMillis();
+        List<ControllerMetricSample> samples = new ArrayList<>();
+        for (QuotaHandler quotaHandler : quotaHandlers) {
+            samples.addAll(quotaHandler.collectMetricSamples(now));
+        }
+        return samples;
+    }
+
     private class Permit {
         QuotaHandler handler;
 
@@ -20,21 +20,37 @@ package step.plugins.quotamanager;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.exense.commons.io.FileWatchService;
 import step.core.GlobalContext;
+import step.core.metrics.ControllerMetricSample;
+import step.core.metrics.MetricSampler;
+import step.core.metrics.MetricSamplerRegistry;
+import step.core.metrics.MetricTypeRegistry;
 import step.core.plugins.AbstractControllerPlugin;
 import step.core.plugins.Plugin;
+import step.core.timeseries.metric.MetricAggregation;
+import step.core.timeseries.metric.MetricAggregationType;
+import step.core.timeseries.metric.MetricRenderingSettings;
+import step.core.timeseries.metric.MetricType;
 import step.engine.plugins.ExecutionEnginePlugin;
 
+import static step.core.metrics.InstrumentType.HISTOGRAM;
+import static step.core.metrics.MetricsConstants.QUOTA_ATTRIBUTE;
+import static step.core.metrics.MetricsConstants.QUOTA_KEY_ATTRIBUTE;
+import static step.core.metrics.MetricsControllerPlugin.IS_CONTROLLER_METRIC;
+
 @Plugin
 public class QuotaManagerControllerPlugin extends AbstractControllerPlugin {
 
     private static final Logger logger = LoggerFactory.getLogger(QuotaManagerControllerPlugin.class);
 
+    private static final String QUOTA_SAMPLER_NAME = "quotamanager";
+
     private boolean active = false;
     private FileWatchService fileWatchService;
     private QuotaManager quotaManager;
@@ -48,9 +64,49 @@ public class QuotaManagerControllerPlugin extends AbstractControllerPlugin {
             active = true;
             QuotaManager manager = initQuotaManager(config);
             context.put(QuotaManager.class, manager);
+            configureQuotaMonitoring(manager, context.require(MetricTypeRegistry.class));
         }
     }
 
+    /**
+     * Feed the wait time and throughput of the quota keys into the time series and register the corresponding metric types
+     */
+    private void configureQuotaMonitoring(QuotaManager manager, MetricTypeRegistry metricTypeRegistry) {
+        MetricSamplerRegistry.getInstance().registerSampler(QUOTA_SAMPLER_NAME, new MetricSampler(QUOTA_SAMPLER_NAME,
+            "step quota manager wait time and throughput") {
+            @Override
+            public List<ControllerMetricSample> collectMetricSamples() {
+                return manager.collectMetricSamples();
+            }
+        });
+
+        MetricType waitTime = new MetricType()
+            .setName(QuotaManager.QUOTA_WAIT_TIME_METRIC)
+            .setDisplayName("Quota wait time")
+            .setDescription("Time in milliseconds spent waiting for the permits of the quota manager, broken down by quota and quota key.")
+            .setInstrumentType(HISTOGRAM.toLowerCase())
+            .setAttributes(List.of(QUOTA_ATTRIBUTE, QUOTA_KEY_ATTRIBUTE))
+            .setDefaultGroupingAttributes(List.of(QUOTA_KEY_ATTRIBUTE.getName()))
+            .setUnit("ms")
+            .setDefaultAggregation(new MetricAggregation(MetricAggregationType.AVG))
+            .setRenderingSettings(new MetricRenderingSettings());
+        waitTime.addCustomField(IS_CONTROLLER_METRIC, true);
+        metricTypeRegistry.registerMetricType(waitTime);
+
+        MetricType throughput = new MetricType()
+            .setName(QuotaManager.QUOTA_THROUGHPUT_METRIC)
+            .setDisplayName("Quota throughput")
+            .setDescription("Number of permits granted by the quota manager, broken down by quota and quota key.")
+            .setInstrumentType(HISTOGRAM.toLowerCase())
+            .setAttributes(List.of(QUOTA_ATTRIBUTE, QUOTA_KEY_ATTRIBUTE))
+            .setDefaultGroupingAttributes(List.of(QUOTA_KEY_ATTRIBUTE.getName()))
+            .setUnit("1")
+            .setDefaultAggregation(new MetricAggregation(MetricAggregationType.RATE))
+            .setRenderingSettings(new MetricRenderingSettings());
+        throughput.addCustomField(IS_CONTROLLER_METRIC, true);
+        metricTypeRegistry.registerMetricType(throughput);
+    }
+
 
     @Override
     public ExecutionEnginePlugin getExecutionEnginePlugin() {
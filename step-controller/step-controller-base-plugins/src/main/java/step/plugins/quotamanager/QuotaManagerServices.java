@@ -44,6 +44,10 @@ public class QuotaManagerServices extends AbstractStepServices {
             writer.write("QuotaManager status:\n");
             for (QuotaHandlerStatus status : quotaManager.getStatus()) {
                 writer.write("  Quota \"" + status.getConfiguration().getId() + "\" (" + status.getConfiguration().getDescription() + "):\n");
+                if (status.getConfiguration().isRateLimited()) {
+                    Integer burst = status.getConfiguration().getBurst();
+                    writer.write("    Rate limit: " + status.getConfiguration().getPermitsPerSecond() + " permits/s per key (Burst: " + (burst != null ? burst : 1) + ")\n");
+                }
                 for (QuotaHandlerStatusEntry quotaKeyStatus : status.getEntries()) {
                     String peakDisplay = quotaKeyStatus.getUsage() > quotaKeyStatus.getPeak() ? "n.a." : Integer.toString(quotaKeyStatus.getPeak());
                     writer.write("    Key \"" + quotaKeyStatus.getQuotaKey() + "\". Quota usage: " + quotaKeyStatus.getUsage() + "/" +
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.plugins.quotamanager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate at which the permits of a quota key are granted. The limiter implements the generic cell rate
+ * algorithm (GCRA), which behaves like a token bucket of capacity {@code burst} refilled at {@code permitsPerSecond}.
+ * <p>
+ * Each acquisition atomically reserves the next free slot and then waits for it without holding any lock. The
+ * waiters are therefore served in the order of their requests and a request that cannot be served within its
+ * timeout is rejected immediately instead of waiting for the timeout to elapse.
+ */
+class QuotaRateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final LongSupplier nanoTime;
+    // The theoretical arrival time of the next permit at the configured rate
+    private final AtomicLong theoreticalArrivalTime;
+
+    public QuotaRateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    QuotaRateLimiter(double permitsPerSecond, int burst, LongSupplier nanoTime) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("The permits per second and the burst of a quota have to be higher than 0");
+        }
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = (burst - 1) * intervalNanos;
+        this.nanoTime = nanoTime;
+        this.theoreticalArrivalTime = new AtomicLong(nanoTime.getAsLong());
+    }
+
+    /**
+     * Reserves the next permit without waiting
+     *
+     * @param timeoutNanos the maximum time to wait for the permit, negative to wait indefinitely
+     * @return the time in ns to wait before using the reserved permit or -1 if no permit could be reserved within the timeout
+     */
+    long reserve(long timeoutNanos) {
+        while (true) {
+            long now = nanoTime.getAsLong();
+            long current = theoreticalArrivalTime.get();
+            long waitNanos = Math.max(0, current - toleranceNanos - now);
+            if (timeoutNanos >= 0 && waitNanos > timeoutNanos) {
+                return -1;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, Math.max(current, now) + intervalNanos)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /**
+     * Acquires a permit, waiting if necessary
+     *
+     * @param timeout the maximum time to wait for the permit, negative to wait indefinitely
+     * @param unit    the unit of the timeout
+     * @return true if the permit has been acquired, false if no permit could be acquired within the timeout
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long waitNanos = reserve(timeout < 0 ? -1 : unit.toNanos(timeout));
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    public void acquire() throws InterruptedException {
+        tryAcquire(-1, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true if no permit has been reserved for the current burst, i.e. if this limiter is in the same state
+     * as a new one
+     */
+    boolean isIdle() {
+        return theoreticalArrivalTime.get() <= nanoTime.getAsLong();
+    }
+}
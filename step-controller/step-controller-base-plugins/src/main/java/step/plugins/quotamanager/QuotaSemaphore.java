@@ -24,8 +24,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 class QuotaSemaphore extends Semaphore {
     private static final long serialVersionUID = -3808791893658360762L;
 
-    private final Object lockCounterObject = new Object();
-
     AtomicInteger load = new AtomicInteger(0);
     AtomicInteger peak = new AtomicInteger(0);
 
@@ -43,11 +41,7 @@ class QuotaSemaphore extends Semaphore {
     }
 
     public void decrementLoad() {
-        synchronized (lockCounterObject) {
-            load.decrementAndGet();
-            load.set(Math.max(0, load.intValue()));
-            peak.set(Math.max(peak.intValue(), load.intValue()));
-        }
+        load.updateAndGet(l -> Math.max(0, l - 1));
     }
 
     public int getLoad() {
@@ -59,11 +53,8 @@ class QuotaSemaphore extends Semaphore {
     }
 
     public void incrementLoad() {
-        synchronized (lockCounterObject) {
-            load.incrementAndGet();
-            peak.set(Math.max(peak.intValue(), load.intValue()));
-        }
-
+        int currentLoad = load.incrementAndGet();
+        peak.accumulateAndGet(currentLoad, Math::max);
     }
 
     @Override
@@ -31,6 +31,15 @@ public class Quota {
 
     private Long acquireTimeoutMs;
 
+    // The maximum rate at which permits are granted per quota key. Null if the rate isn't limited
+    private Double permitsPerSecond;
+
+    // The number of permits that can be granted at once per quota key when the rate is limited. Defaults to 1
+    private Integer burst;
+
+    // The maximum number of quota keys reported individually in the metrics. Null for the default
+    private Integer maxMetricsQuotaKeys;
+
     public String getId() {
         return id;
     }
@@ -71,10 +80,52 @@ public class Quota {
         this.acquireTimeoutMs = acquireTimeoutMs;
     }
 
+    public Double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public void setPermitsPerSecond(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public Integer getBurst() {
+        return burst;
+    }
+
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    public Integer getMaxMetricsQuotaKeys() {
+        return maxMetricsQuotaKeys;
+    }
+
+    public void setMaxMetricsQuotaKeys(int maxMetricsQuotaKeys) {
+        this.maxMetricsQuotaKeys = maxMetricsQuotaKeys;
+    }
+
+    /**
+     * @return true if this quota limits the number of permits held concurrently per quota key. This is the case if
+     * permits are defined or, for quotas that don't limit the rate, if a timeout is defined (a quota with 0 permit
+     * and a timeout rejects all the requests)
+     */
+    public boolean isConcurrencyLimited() {
+        return permits > 0 || (acquireTimeoutMs != null && permitsPerSecond == null);
+    }
+
+    /**
+     * @return true if this quota limits the rate at which permits are granted per quota key
+     */
+    public boolean isRateLimited() {
+        return permitsPerSecond != null;
+    }
+
     @Override
     public String toString() {
         return "Quota [id=" + id + ", description=" + description
             + ", quotaKeyFunction=" + quotaKeyFunction + ", permits="
-            + permits + ", acquireTimeoutMs=" + acquireTimeoutMs + "]";
+            + permits + ", acquireTimeoutMs=" + acquireTimeoutMs
+            + ", permitsPerSecond=" + permitsPerSecond + ", burst=" + burst
+            + ", maxMetricsQuotaKeys=" + maxMetricsQuotaKeys + "]";
     }
 }
@@ -0,0 +1,115 @@
+package step.plugins.table;
+
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the value of an exported field like {@link PropertyUtils#getProperty(Object, String)} does. Unlike
+ * {@link PropertyUtils}, the getters of each nested property are looked up only once per class and are then invoked
+ * through method handles. As the rows of a table are usually of the same class, the last resolved getter of each
+ * nested property is additionally cached in the resolver itself.
+ * <p>
+ * Indexed and mapped properties (like {@code list[0]} or {@code map(key)}) are delegated to {@link PropertyUtils}.
+ * <p>
+ * Instances of this class aren't thread-safe.
+ */
+class TableExportPropertyResolver {
+
+    private static final ClassValue<Map<String, MethodHandle>> GETTERS = new ClassValue<>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private static final MethodHandle NO_GETTER = MethodHandles.constant(Object.class, null);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String field;
+    private final String[] properties;
+    private final boolean delegate;
+    private final Class<?>[] lastClasses;
+    private final MethodHandle[] lastGetters;
+
+    TableExportPropertyResolver(String field) {
+        this.field = field;
+        this.properties = field.split("\\.");
+        this.delegate = field.indexOf('[') >= 0 || field.indexOf('(') >= 0;
+        this.lastClasses = new Class<?>[properties.length];
+        this.lastGetters = new MethodHandle[properties.length];
+    }
+
+    /**
+     * @param bean the row
+     * @return the value of the field or null if the field or one of its parent properties doesn't exist or is null
+     */
+    Object getValue(Object bean) {
+        if (delegate) {
+            return getValueWithPropertyUtils(bean);
+        }
+        Object value = bean;
+        for (int i = 0; i < properties.length && value != null; i++) {
+            if (value instanceof Map) {
+                value = ((Map<?, ?>) value).get(properties[i]);
+            } else {
+                MethodHandle getter = getGetter(i, value.getClass());
+                if (getter == NO_GETTER) {
+                    return null;
+                }
+                try {
+                    value = (Object) getter.invokeExact(value);
+                } catch (Throwable e) {
+                    throw new RuntimeException("Error while writing column " + field, e);
+                }
+            }
+        }
+        return value;
+    }
+
+    private MethodHandle getGetter(int index, Class<?> type) {
+        if (lastClasses[index] != type) {
+            String property = properties[index];
+            lastGetters[index] = GETTERS.get(type).computeIfAbsent(property, p -> lookupGetter(type, p));
+            lastClasses[index] = type;
+        }
+        return lastGetters[index];
+    }
+
+    private static MethodHandle lookupGetter(Class<?> type, String property) {
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                if (descriptor.getName().equals(property) && descriptor.getReadMethod() != null) {
+                    // Like PropertyUtils, search for a public declaration of the getter if the class isn't public
+                    Method readMethod = MethodUtils.getAccessibleMethod(type, descriptor.getReadMethod());
+                    if (readMethod == null) {
+                        return NO_GETTER;
+                    }
+                    return MethodHandles.publicLookup().unreflect(readMethod).asType(GETTER_TYPE);
+                }
+            }
+            return NO_GETTER;
+        } catch (IntrospectionException | IllegalAccessException e) {
+            throw new RuntimeException("Error while resolving the getter of the property " + property + " of " + type.getName(), e);
+        }
+    }
+
+    private Object getValueWithPropertyUtils(Object bean) {
+        try {
+            return PropertyUtils.getProperty(bean, field);
+        } catch (NoSuchMethodException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Missing properties, null nested properties and out of bound indexes are exported as empty values
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error while writing column " + field, e);
+        }
+    }
+}
@@ -8,6 +8,7 @@ public class TableExportRequest {
 
     private TableRequest tableRequest;
     private List<String> fields;
+    private boolean compress;
 
     public TableRequest getTableRequest() {
         return tableRequest;
@@ -24,4 +25,15 @@ public class TableExportRequest {
     public void setFields(List<String> fields) {
         this.fields = fields;
     }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @param compress true to compress the exported CSV with gzip
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
 }
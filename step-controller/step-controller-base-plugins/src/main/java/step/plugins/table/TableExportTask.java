@@ -1,6 +1,7 @@
 package step.plugins.table;
 
-import org.apache.commons.beanutils.PropertyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import step.controller.services.async.AsyncTask;
 import step.controller.services.async.AsyncTaskHandle;
 import step.framework.server.Session;
@@ -9,15 +10,27 @@ import step.resources.Resource;
 import step.resources.ResourceManager;
 import step.resources.ResourceRevisionContainer;
 
-import java.io.PrintWriter;
-import java.lang.reflect.InvocationTargetException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 public class TableExportTask implements AsyncTask<Resource> {
 
+    private static final Logger logger = LoggerFactory.getLogger(TableExportTask.class);
+
     private static final String END_OF_LINE = "\n";
-    private static final String DELIMITER = ";";
+    private static final char DELIMITER = ';';
+    private static final char QUOTE = '"';
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_UPDATE_INTERVAL = 1000;
     private final TableExportRequest exportRequest;
     private final String tableName;
     private final ResourceManager resourceManager;
@@ -34,43 +47,92 @@ public class TableExportTask implements AsyncTask<Resource> {
 
     @Override
     public Resource apply(AsyncTaskHandle exportTaskHandle) throws Exception {
-        ResourceRevisionContainer resourceContainer = resourceManager.createResourceContainer(ResourceManager.RESOURCE_TYPE_TEMP, "export.csv", null);
-        PrintWriter writer = new PrintWriter(resourceContainer.getOutputStream());
+        boolean compress = exportRequest.isCompress();
+        ResourceRevisionContainer resourceContainer = resourceManager.createResourceContainer(ResourceManager.RESOURCE_TYPE_TEMP,
+            compress ? "export.csv.gz" : "export.csv", null);
 
         List<String> fields = exportRequest.getFields();
+        TableExportPropertyResolver[] resolvers = fields.stream().map(TableExportPropertyResolver::new).toArray(TableExportPropertyResolver[]::new);
+        long totalCount = countRows();
+        AtomicLong rowCount = new AtomicLong();
 
-        // Write headers
-        fields.forEach(field -> writer.append(field).append(DELIMITER));
-        writer.append(END_OF_LINE);
         try {
-            try (Stream results = tableService.export(tableName, exportRequest.getTableRequest(), session)) {
-                results.forEach(o -> {
-                    // Write row
-                    fields.forEach(field -> {
-                        Object property;
-                        String formattedValue;
+            OutputStream outputStream = resourceContainer.getOutputStream();
+            if (compress) {
+                outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                // Write headers
+                for (String field : fields) {
+                    writeValue(writer, field);
+                }
+                writer.write(END_OF_LINE);
+                try (Stream results = tableService.export(tableName, exportRequest.getTableRequest(), session)) {
+                    results.forEach(o -> {
                         try {
-                            property = PropertyUtils.getProperty(o, field);
-                            if (property != null) {
-                                formattedValue = property.toString();
-                            } else {
-                                formattedValue = "";
+                            // Write row
+                            for (TableExportPropertyResolver resolver : resolvers) {
+                                Object property = resolver.getValue(o);
+                                writeValue(writer, property != null ? property.toString() : "");
                             }
-                        } catch (NoSuchMethodException e) {
-                            formattedValue = "";
-                        } catch (IllegalAccessException | InvocationTargetException e) {
-                            throw new RuntimeException("Error while writing column " + field, e);
+                            writer.write(END_OF_LINE);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        long count = rowCount.incrementAndGet();
+                        if (totalCount > 0 && count % PROGRESS_UPDATE_INTERVAL == 0) {
+                            exportTaskHandle.updateProgress(Math.min(1f, (float) count / totalCount));
                         }
-                        writer.append(formattedValue).append(DELIMITER);
                     });
-                    writer.append(END_OF_LINE);
-                });
+                }
             }
         } finally {
-            writer.close();
             resourceContainer.save(null);
         }
+        exportTaskHandle.updateProgress(1f);
 
         return resourceContainer.getResource();
     }
+
+    private long countRows() {
+        try {
+            return tableService.request(tableName, exportRequest.getTableRequest(), session).getRecordsFiltered();
+        } catch (Exception e) {
+            // The count is only used to report the progress of the export
+            logger.warn("Unable to count the rows of the table " + tableName + ". The progress of the export won't be reported.", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the value followed by the delimiter. Values containing the delimiter, quotes or line breaks are quoted
+     * and their quotes are doubled as specified by RFC 4180.
+     */
+    private static void writeValue(Writer writer, String value) throws IOException {
+        if (requiresQuoting(value)) {
+            writer.write(QUOTE);
+            int start = 0;
+            int quoteIndex;
+            while ((quoteIndex = value.indexOf(QUOTE, start)) >= 0) {
+                writer.write(value, start, quoteIndex + 1 - start);
+                writer.write(QUOTE);
+                start = quoteIndex + 1;
+            }
+            writer.write(value, start, value.length() - start);
+            writer.write(QUOTE);
+        } else {
+            writer.write(value);
+        }
+        writer.write(DELIMITER);
+    }
+
+    private static boolean requiresQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == DELIMITER || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
 }
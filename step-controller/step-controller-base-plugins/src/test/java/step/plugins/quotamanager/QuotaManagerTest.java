@@ -21,17 +21,21 @@ package step.plugins.quotamanager;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import ch.exense.commons.io.FileHelper;
+import step.core.metrics.ControllerMetricSample;
 import step.plugins.quotamanager.config.Quota;
 import step.plugins.quotamanager.config.QuotaManagerConfig;
 
@@ -308,4 +312,201 @@ public class QuotaManagerTest {
         manager.releasePermit(id);
     }
 
+    @Test
+    public void testRateLimit() throws Exception {
+        QuotaManagerConfig config = new QuotaManagerConfig("testManager");
+        Quota quota = new Quota();
+        quota.setPermitsPerSecond(100);
+        quota.setBurst(10);
+        quota.setQuotaKeyFunction("key");
+        config.setQuotas(List.of(quota));
+
+        HashMap<String, Object> bindings = new HashMap<>();
+        bindings.put("key", "key1");
+
+        QuotaManager manager = new QuotaManager(config);
+        long t1 = System.currentTimeMillis();
+        // The burst is granted immediately
+        for (int i = 0; i < 10; i++) {
+            manager.releasePermit(manager.acquirePermit(bindings));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - t1 < 100);
+        // The next permits are granted at the configured rate
+        for (int i = 0; i < 20; i++) {
+            manager.releasePermit(manager.acquirePermit(bindings));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - t1 >= 180);
+
+        // Rate-only quotas don't limit the concurrency
+        UUID id1 = manager.acquirePermit(bindings);
+        UUID id2 = manager.acquirePermit(bindings);
+        Assert.assertNotEquals(id1, id2);
+        Assert.assertEquals(0, manager.getStatus().get(0).getEntries().get(0).getUsage());
+    }
+
+    @Test
+    public void testRateLimitTimeout() throws Exception {
+        QuotaManagerConfig config = new QuotaManagerConfig("testManager");
+        Quota quota = new Quota();
+        quota.setPermits(1);
+        quota.setPermitsPerSecond(0.1);
+        quota.setAcquireTimeoutMs(100);
+        quota.setQuotaKeyFunction("key");
+        config.setQuotas(List.of(quota));
+
+        HashMap<String, Object> bindings = new HashMap<>();
+        bindings.put("key", "key1");
+
+        QuotaManager manager = new QuotaManager(config);
+        manager.releasePermit(manager.acquirePermit(bindings));
+        // The next permit would only be granted in 10s: the request is rejected without waiting for the timeout
+        long t1 = System.currentTimeMillis();
+        Assert.assertThrows(TimeoutException.class, () -> manager.acquirePermit(bindings));
+        Assert.assertTrue(System.currentTimeMillis() - t1 < 100);
+        // The concurrency permit has been released
+        Assert.assertEquals(0, manager.getStatus().get(0).getEntries().get(0).getUsage());
+        // Other keys aren't affected
+        bindings.put("key", "key2");
+        Assert.assertNotNull(manager.acquirePermit(bindings));
+    }
+
+    @Test
+    public void testRateLimiterFairness() throws InterruptedException {
+        AtomicLong nanoTime = new AtomicLong();
+        // 10 permits per second: 1 permit every 100ms, with a burst of 2
+        QuotaRateLimiter rateLimiter = new QuotaRateLimiter(10, 2, nanoTime::get);
+        Assert.assertEquals(0, rateLimiter.reserve(-1));
+        Assert.assertEquals(0, rateLimiter.reserve(-1));
+        // The waiters are served in the order of their requests
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), rateLimiter.reserve(-1));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(200), rateLimiter.reserve(-1));
+        // A request that cannot be served within its timeout doesn't reserve any slot
+        Assert.assertEquals(-1, rateLimiter.reserve(TimeUnit.MILLISECONDS.toNanos(250)));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(300), rateLimiter.reserve(-1));
+        // The bucket refills up to the burst while idle
+        nanoTime.set(TimeUnit.SECONDS.toNanos(10));
+        Assert.assertEquals(0, rateLimiter.reserve(0));
+        Assert.assertEquals(0, rateLimiter.reserve(0));
+        Assert.assertEquals(-1, rateLimiter.reserve(0));
+    }
+
+    @Test
+    public void testQuotaKeyTemplate() throws Exception {
+        Assert.assertNull(QuotaKeyTemplate.parse("(key=='key1')?key:null"));
+        Assert.assertNull(QuotaKeyTemplate.parse("node.getName()"));
+        Assert.assertNull(QuotaKeyTemplate.parse("\"user_${user}\""));
+        Assert.assertNull(QuotaKeyTemplate.parse("user +"));
+        Assert.assertNull(QuotaKeyTemplate.parse("null"));
+
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("user", "user1");
+        bindings.put("count", 2);
+        bindings.put("empty", null);
+        for (String function : List.of("user", "count", "empty", "'constant'", "\"user_\" + user + '_' + count", "user + count + empty",
+            "count + user", "user + missing")) {
+            Quota quota = new Quota();
+            quota.setQuotaKeyFunction(function);
+            QuotaHandler handler = new QuotaHandler(quota);
+            QuotaKeyTemplate template = QuotaKeyTemplate.parse(function);
+            Assert.assertNotNull(function, template);
+            if (template.isApplicableTo(bindings)) {
+                Assert.assertEquals(function, runScript(function, bindings), template.evaluate(bindings));
+                Assert.assertEquals(function, template.evaluate(bindings), handler.computeQuotaKey(bindings));
+            }
+        }
+        // Numbers are added by Groovy and missing variables are reported by the script
+        Assert.assertFalse(QuotaKeyTemplate.parse("count + user").isApplicableTo(bindings));
+        Assert.assertFalse(QuotaKeyTemplate.parse("user + missing").isApplicableTo(bindings));
+        Assert.assertEquals("user_user1_2", QuotaKeyTemplate.parse("\"user_\" + user + '_' + count").evaluate(bindings));
+    }
+
+    private static String runScript(String function, Map<String, Object> bindings) {
+        Object result = new groovy.lang.GroovyShell(new groovy.lang.Binding(new HashMap<>(bindings))).evaluate(function);
+        return result != null ? result.toString() : null;
+    }
+
+    @Test
+    public void testMetricSamples() throws Exception {
+        QuotaManagerConfig config = new QuotaManagerConfig("testManager");
+        Quota quota = new Quota();
+        quota.setId("myQuota");
+        quota.setPermits(10);
+        quota.setQuotaKeyFunction("key");
+        config.setQuotas(List.of(quota));
+
+        HashMap<String, Object> bindings = new HashMap<>();
+        bindings.put("key", "key1");
+
+        QuotaManager manager = new QuotaManager(config);
+        for (int i = 0; i < 3; i++) {
+            manager.releasePermit(manager.acquirePermit(bindings));
+        }
+        List<ControllerMetricSample> samples = manager.collectMetricSamples();
+        Assert.assertEquals(2, samples.size());
+        ControllerMetricSample throughput = samples.stream().filter(s -> s.metricType.equals(QuotaManager.QUOTA_THROUGHPUT_METRIC)).findFirst().orElseThrow();
+        Assert.assertEquals(3, throughput.sample.getCount());
+        Assert.assertEquals(Map.of("quota", "myQuota", "quotaKey", "key1"), throughput.getEffectiveLabels());
+        ControllerMetricSample waitTime = samples.stream().filter(s -> s.metricType.equals(QuotaManager.QUOTA_WAIT_TIME_METRIC)).findFirst().orElseThrow();
+        Assert.assertEquals(3, waitTime.sample.getCount());
+
+        // The statistics are reset at each collection
+        Assert.assertTrue(manager.collectMetricSamples().isEmpty());
+    }
+
+    @Test
+    public void testMetricSamplesQuotaKeysCapped() throws Exception {
+        Quota quota = new Quota();
+        quota.setId("myQuota");
+        quota.setPermits(10);
+        quota.setQuotaKeyFunction("key");
+        quota.setMaxMetricsQuotaKeys(2);
+        QuotaHandler handler = new QuotaHandler(quota);
+        // key0 gets 5 permits, key1 4 permits...
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5 - i; j++) {
+                handler.releasePermit(handler.acquirePermit(new HashMap<>(Map.of("key", "key" + i))));
+            }
+        }
+
+        List<ControllerMetricSample> samples = handler.collectMetricSamples(0);
+        Map<String, Long> countByQuotaKey = samples.stream().filter(s -> s.metricType.equals(QuotaManager.QUOTA_THROUGHPUT_METRIC))
+            .collect(Collectors.toMap(s -> s.getEffectiveLabels().get("quotaKey"), s -> s.sample.getCount()));
+        Assert.assertEquals(Map.of("key0", 5L, "key1", 4L, QuotaHandler.OTHER_QUOTA_KEYS, 6L), countByQuotaKey);
+
+        // With 0, only the quota is reported
+        quota.setMaxMetricsQuotaKeys(0);
+        handler.releasePermit(handler.acquirePermit(new HashMap<>(Map.of("key", "key0"))));
+        handler.releasePermit(handler.acquirePermit(new HashMap<>(Map.of("key", "key1"))));
+        samples = handler.collectMetricSamples(0);
+        Assert.assertEquals(2, samples.size());
+        Assert.assertEquals(Map.of("quota", "myQuota"), samples.get(0).getEffectiveLabels());
+        Assert.assertEquals(2, samples.get(0).sample.getCount());
+    }
+
+    @Test
+    public void testIdleQuotaKeyStatesEvicted() throws Exception {
+        Quota quota = new Quota();
+        quota.setPermits(1);
+        quota.setQuotaKeyFunction("key");
+        QuotaHandler handler = new QuotaHandler(quota);
+        handler.releasePermit(handler.acquirePermit(new HashMap<>(Map.of("key", "key1"))));
+        String heldKey = handler.acquirePermit(new HashMap<>(Map.of("key", "key2")));
+        Assert.assertEquals(2, handler.getQuotaKeyStateCount());
+
+        // The states are kept while permits have been acquired since the last collection
+        handler.collectMetricSamples(0);
+        Assert.assertEquals(2, handler.getQuotaKeyStateCount());
+        // key1 is idle and evicted, key2 is still held
+        handler.collectMetricSamples(0);
+        Assert.assertEquals(1, handler.getQuotaKeyStateCount());
+        handler.releasePermit(heldKey);
+        handler.collectMetricSamples(0);
+        Assert.assertEquals(0, handler.getQuotaKeyStateCount());
+
+        // An evicted key gets a new state with all its permits
+        String key = handler.tryAcquirePermit(new HashMap<>(Map.of("key", "key1")), 0);
+        Assert.assertEquals("key1", key);
+        Assert.assertThrows(TimeoutException.class, () -> handler.tryAcquirePermit(new HashMap<>(Map.of("key", "key1")), 0));
+        handler.releasePermit(key);
+    }
 }
@@ -1,8 +1,14 @@
 package step.plugins.table;
 
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.apache.commons.beanutils.PropertyUtils;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import step.controller.services.async.AsyncTaskHandle;
 import step.controller.services.async.AsyncTaskStatus;
+import step.core.accessors.AbstractIdentifiableObject;
 import step.core.collections.inmemory.InMemoryCollection;
 import step.core.entities.SimpleBean;
 import step.core.objectenricher.ObjectHookRegistry;
@@ -14,13 +20,23 @@ import step.resources.LocalResourceManagerImpl;
 import step.resources.Resource;
 import step.resources.ResourceRevisionFileHandle;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 
 public class TableExportRunnableTest {
 
+    private static final Logger logger = LoggerFactory.getLogger(TableExportRunnableTest.class);
+
     @Test
     public void runExport() throws Exception {
         TableRegistry tableRegistry = new TableRegistry();
@@ -39,4 +55,117 @@ public class TableExportRunnableTest {
         List<String> allLines = Files.readAllLines(resourceFile.getResourceFile().toPath());
         assertEquals(List.of("stringProperty;", "property 1;", "property 2;"), allLines);
     }
+
+    @Test
+    public void runExportWithEscapingAndNestedFields() throws Exception {
+        TableRegistry tableRegistry = new TableRegistry();
+        InMemoryCollection<ExportBean> collection = new InMemoryCollection<>();
+        collection.save(new ExportBean("value;with \"delimiter\"", new ExportBean("nested", null)));
+        collection.save(new ExportBean("multi\nline", null));
+        tableRegistry.register("test", new Table<>(collection, null, false));
+        TableService tableService = new TableService(tableRegistry, new ObjectHookRegistry(), null);
+        TableExportRequest exportRequest = new TableExportRequest();
+        exportRequest.setTableRequest(new TableRequest());
+        exportRequest.setFields(List.of("name", "child.name", "missing", "attributes(key)"));
+        exportRequest.setCompress(true);
+        LocalResourceManagerImpl resourceManager = new LocalResourceManagerImpl();
+        TableExportTask exportRunnable = new TableExportTask(tableService, resourceManager, "test", exportRequest, null);
+        AsyncTaskStatus<Object> status = new AsyncTaskStatus<>();
+        Resource resource = exportRunnable.apply(new AsyncTaskHandle(status));
+        assertEquals("export.csv.gz", resource.getResourceName());
+        assertEquals(1f, status.getProgress(), 0);
+
+        File resourceFile = resourceManager.getResourceFile(resource.getId().toString()).getResourceFile();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(resourceFile)), StandardCharsets.UTF_8))) {
+            String content = reader.lines().collect(Collectors.joining("\n"));
+            assertEquals("name;child.name;missing;attributes(key);\n" +
+                "\"value;with \"\"delimiter\"\"\";nested;;value;\n" +
+                "\"multi\nline\";;;value;", content);
+        }
+    }
+
+    @Test
+    public void testPropertyResolver() {
+        ExportBean bean = new ExportBean("parent", new ExportBean("child", null));
+        for (String field : List.of("name", "child.name", "child.child.name", "missing", "child.missing", "attributes(key)", "attributes.key")) {
+            TableExportPropertyResolver resolver = new TableExportPropertyResolver(field);
+            // Resolve twice to exercise the cached getters
+            for (int i = 0; i < 2; i++) {
+                assertEquals(field, getPropertyWithPropertyUtils(bean, field), resolver.getValue(bean));
+            }
+        }
+    }
+
+    @Category(PerformanceTest.class)
+    @Test
+    public void benchmarkPropertyResolver() {
+        List<String> fields = List.of("name", "child.name", "attributes.key");
+        ExportBean bean = new ExportBean("parent", new ExportBean("child", null));
+        int rows = 1_000_000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            for (String field : fields) {
+                getPropertyWithPropertyUtils(bean, field);
+            }
+        }
+        double propertyUtilsRowsPerSecond = rows / ((System.nanoTime() - start) / 1e9);
+
+        List<TableExportPropertyResolver> resolvers = fields.stream().map(TableExportPropertyResolver::new).collect(Collectors.toList());
+        start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            for (TableExportPropertyResolver resolver : resolvers) {
+                resolver.getValue(bean);
+            }
+        }
+        double resolverRowsPerSecond = rows / ((System.nanoTime() - start) / 1e9);
+        logger.info("PropertyUtils: {} rows/s, TableExportPropertyResolver: {} rows/s", (long) propertyUtilsRowsPerSecond, (long) resolverRowsPerSecond);
+    }
+
+    private static Object getPropertyWithPropertyUtils(Object bean, String field) {
+        try {
+            return PropertyUtils.getProperty(bean, field);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static class ExportBean extends AbstractIdentifiableObject {
+
+        private String name;
+        private ExportBean child;
+        private Map<String, String> attributes = Map.of("key", "value");
+
+        public ExportBean() {
+        }
+
+        public ExportBean(String name, ExportBean child) {
+            this.name = name;
+            this.child = child;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public ExportBean getChild() {
+            return child;
+        }
+
+        public void setChild(ExportBean child) {
+            this.child = child;
+        }
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(Map<String, String> attributes) {
+            this.attributes = attributes;
+        }
+    }
 }
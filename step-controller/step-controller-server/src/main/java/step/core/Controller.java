@@ -182,9 +182,7 @@ public class Controller {
         context.setRepositoryObjectManager(new RepositoryObjectManager());
         context.setExpressionHandler(new ExpressionHandler(configuration.getProperty("tec.expressions.scriptbaseclass"),
             configuration.getPropertyAsInteger("tec.expressions.warningthreshold", 200),
-            configuration.getPropertyAsInteger("tec.expressions.pool.maxtotal", 1000),
-            configuration.getPropertyAsInteger("tec.expressions.pool.maxTotalPerKey", 50),
-            configuration.getPropertyAsInteger("tec.expressions.pool.maxIdlePerKey", -1),
+            configuration.getPropertyAsInteger("tec.expressions.cache.maxsize", ExpressionHandler.DEFAULT_CACHE_MAX_SIZE),
             configuration.getPropertyAsInteger("tec.expressions.pool.monitoringIntervalSeconds", 60)));
         context.setDynamicBeanResolver(new DynamicBeanResolver(new DynamicValueResolver(context.getExpressionHandler())));
 
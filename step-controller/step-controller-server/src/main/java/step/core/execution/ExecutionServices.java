@@ -29,6 +29,7 @@ import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import step.core.artefacts.reports.aggregated.AggregatedReport;
+import step.core.artefacts.reports.aggregated.AggregatedReportChanges;
 import step.core.artefacts.reports.aggregated.AggregatedReportViewRequest;
 import step.core.artefacts.reports.aggregated.FlatAggregatedReport;
 import step.core.entities.EntityConstants;
@@ -47,6 +48,7 @@ import step.core.execution.notices.ExecutionNoticeManager;
 import step.core.execution.notices.ExecutionOverview;
 import step.core.execution.notices.ResolvedExecutionNotice;
 import step.core.repositories.RepositoryObjectReference;
+import step.core.scheduler.ExecutionPriority;
 import step.framework.server.Session;
 import step.framework.server.security.Secured;
 import step.framework.server.tables.service.TableService;
@@ -149,7 +151,18 @@ public class ExecutionServices extends AbstractStepAsyncServices {
     public ExecutionOverview getExecutionOverview(@PathParam("id") String id) {
         Execution execution = executionAccessor.get(id);
         assertEntityIsReadableInContext(execution);
-        return new ExecutionOverview(execution, executionNoticeManager.resolve(execution));
+        return new ExecutionOverview(execution, executionNoticeManager.resolve(execution), getScheduler().getAdmissionQueuePosition(id));
+    }
+
+    @Operation(description = "Returns the position of the execution in the admission queue, starting with 1, or nothing if the execution isn't waiting for admission.")
+    @GET
+    @Path("/{id}/admission-queue-position")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured(right = "execution-read")
+    public Integer getAdmissionQueuePosition(@PathParam("id") String id) {
+        Execution execution = executionAccessor.get(id);
+        assertEntityIsReadableInContext(execution);
+        return getScheduler().getAdmissionQueuePosition(id);
     }
 
     @Operation(description = "Stops the execution with the given execution id.")
@@ -349,6 +362,22 @@ public class ExecutionServices extends AbstractStepAsyncServices {
         }
     }
 
+    @Operation(description = "Returns the counters of the aggregated report of a running execution that changed since the provided version. Returns no content if the execution isn't running anymore, in which case the full aggregated report has to be fetched.")
+    @GET
+    @Path("/{id}/report/aggregated/changes")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured(right = "execution-read")
+    public AggregatedReportChanges getAggregatedReportChanges(@PathParam("id") String executionId, @QueryParam("since") long sinceVersion) {
+        try {
+            ExecutionEngineContext executionEngineContext = getScheduler().getExecutor().getExecutionEngine().getExecutionEngineContext();
+            AggregatedReportViewBuilder aggregatedReportViewBuilder = new AggregatedReportViewBuilder(executionEngineContext, executionId);
+            return aggregatedReportViewBuilder.getAggregatedReportChanges(sinceVersion);
+        } catch (Exception e) {
+            logger.error("Unable to get the aggregation report changes for executionId {}", executionId, e);
+            throw new ControllerServiceException("Aggregation Report failed: " + e.getMessage());
+        }
+    }
+
     @Operation(description = "Returns a flat aggregated report view for the provided execution and aggregation parameters.")
     @POST
     @Path("/{id}/report/aggregated/flat")
@@ -478,7 +507,9 @@ public class ExecutionServices extends AbstractStepAsyncServices {
             try {
                 ExecutionParameters executionParameters = executionAccessor.get(t).getExecutionParameters();
                 applyUserIdFromSession(executionParameters);
-                execute(executionParameters);
+                checkRightsOnBehalfOf("plan-execute", executionParameters.getUserID());
+                // Bulk restarts must not delay the scheduled and interactive executions
+                getScheduler().execute(executionParameters, ExecutionPriority.BULK);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -27,6 +27,9 @@ import java.util.List;
  * {@link Execution} alongside its resolved notices, as a quick way to enrich the existing frontend.
  * In a future major version this object is expected to become a curated model exposing only the
  * data required by the overview page, rather than embedding the full {@link Execution}.
+ * <p>
+ * The admission queue position is the position of the execution among the executions waiting for admission,
+ * starting with 1, or null if the execution isn't waiting.
  */
-public record ExecutionOverview(Execution execution, List<ResolvedExecutionNotice> resolvedNotices) {
+public record ExecutionOverview(Execution execution, List<ResolvedExecutionNotice> resolvedNotices, Integer admissionQueuePosition) {
 }
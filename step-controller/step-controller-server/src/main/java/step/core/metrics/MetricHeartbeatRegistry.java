@@ -56,6 +56,10 @@ public class MetricHeartbeatRegistry {
         handlers.add(handler);
     }
 
+    public void unregisterHandler(MetricSamplesHandler handler) {
+        handlers.remove(handler);
+    }
+
     /**
      * Records the last known sample for the given metric. Only samples registered here are heartbeated: the sole
      * producer is currently the thread group counter of {@link MetricsExecutionPlugin}, custom keyword metrics are
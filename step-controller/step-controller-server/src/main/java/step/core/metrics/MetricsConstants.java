@@ -68,6 +68,19 @@ public class MetricsConstants {
         .setName("agentType")
         .setType(MetricAttributeType.TEXT)
         .setDisplayName("Agent type");
+    public static final MetricAttribute QUOTA_ATTRIBUTE = new MetricAttribute()
+        .setName("quota")
+        .setType(MetricAttributeType.TEXT)
+        .setDisplayName("Quota");
+    public static final MetricAttribute QUOTA_KEY_ATTRIBUTE = new MetricAttribute()
+        .setName("quotaKey")
+        .setType(MetricAttributeType.TEXT)
+        .setDisplayName("Quota key");
+    public static final MetricAttribute EXECUTION_PRIORITY_ATTRIBUTE = new MetricAttribute()
+        .setName("priority")
+        .setType(MetricAttributeType.TEXT)
+        .setMetadata(Map.of("knownValues", Arrays.asList("SCHEDULED", "INTERACTIVE", "BULK")))
+        .setDisplayName("Priority");
 
 
     public static String getAllAttributeNames() {
@@ -2,7 +2,9 @@ package step.core.metrics;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import step.artefacts.reports.ArrivalRateReportNode;
 import step.artefacts.reports.CallFunctionReportNode;
+import step.artefacts.reports.ForBlockReportNode;
 import step.artefacts.reports.TestCaseReportNode;
 import step.artefacts.reports.ThreadReportNode;
 import step.automation.packages.AutomationPackage;
@@ -155,6 +157,19 @@ public class MetricsExecutionPlugin extends AbstractExecutionEnginePlugin {
         if (generateMetrics(context) && node instanceof ThreadReportNode) {
             processThreadReportNode(context, (ThreadReportNode) node, true);
         }
+        if (generateMetrics(context) && (node instanceof ArrivalRateReportNode || node instanceof ForBlockReportNode)) {
+            // Scheduling metrics of the arrival rate thread groups and usage of the read-ahead buffer of the ForEach
+            // reading their data set ahead
+            LiveReportingContext liveReportingContext = LiveReportingPlugin.getNodeLiveReportingContext(context, node);
+            if (liveReportingContext != null) {
+                liveReportingContext.registerMetricListener(metricSamples -> {
+                    List<ExecutionMetricSample> executionMetricSamples = metricSamples.stream()
+                        .map(s -> createExecutionMetricSample(context, s, null, null))
+                        .collect(Collectors.toList());
+                    processMetrics(context, executionMetricSamples);
+                });
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.scheduler;
+
+import ch.exense.commons.app.Configuration;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.metrics.ControllerMetricSample;
+import step.core.metrics.InstrumentType;
+import step.core.metrics.MetricSample;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static step.core.metrics.MetricsConstants.EXECUTION_PRIORITY_ATTRIBUTE;
+
+/**
+ * Admission layer in front of the {@link step.core.execution.ExecutionEngine}: limits the number of concurrent
+ * executions globally and per partition (the project by default) and admits the waiting executions by priority.
+ * <p>
+ * Submitting an execution only enqueues it: the admitted executions are run in the threads of the controller, so that
+ * the waiting executions don't hold any thread. The number of waiting executions is unlimited per default. If a limit
+ * is configured, further submissions are rejected.
+ * <p>
+ * When a slot is released, the waiting execution with the highest {@link ExecutionPriority} is admitted. Executions
+ * of the same priority are admitted in favor of the partition with the fewest running executions, then in order of
+ * submission, so that a burst of executions of one project doesn't delay the executions of the other projects. To
+ * avoid starvation, a waiting execution is promoted by one priority class for each aging period it has been waiting.
+ * <p>
+ * Optionally, new executions are only admitted while the heap usage after garbage collection and the system load of
+ * the controller are below the configured limits. To guarantee progress, an execution is always admitted when
+ * nothing is running.
+ */
+public class ExecutionAdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionAdmissionController.class);
+
+    public static final String EXECUTION_ADMISSION_WAIT_TIME_METRIC = "executions/admission-wait-time";
+    public static final String EXECUTION_ADMISSION_QUEUE_METRIC = "executions/admission-queue";
+
+    public static final String CONF_ENABLED = "tec.executor.admission.enabled";
+    public static final String CONF_MAX_QUEUED = "tec.executor.admission.queue.size";
+    public static final String CONF_PARTITION_ATTRIBUTE = "tec.executor.admission.partition.attribute";
+    public static final String CONF_PARTITION_MAX_CONCURRENT = "tec.executor.admission.partition.maxconcurrent";
+    public static final String CONF_AGING_SECONDS = "tec.executor.admission.aging.seconds";
+    public static final String CONF_HEAP_MAX_USAGE = "tec.executor.admission.heap.maxusage";
+    public static final String CONF_CPU_MAX_LOAD = "tec.executor.admission.cpu.maxload";
+
+    public static final String EXECUTION_ADMISSION_LAYER = "executionAdmission";
+
+    private static final long RESOURCE_CHECK_INTERVAL_MS = 1000;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final int maxConcurrentExecutions;
+    private final int maxQueuedExecutions;
+    private final String partitionAttribute;
+    private final int maxConcurrentExecutionsPerPartition;
+    private final long agingNanos;
+    private final BooleanSupplier resourcesAvailable;
+    private final ThreadPoolExecutor executionThreads;
+    private final ScheduledExecutorService resourceCheckScheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // The following fields are guarded by the lock
+    private final List<Ticket> queue = new ArrayList<>();
+    private final Map<String, Integer> runningExecutionsByPartition = new HashMap<>();
+    private final Map<ExecutionPriority, WaitStatistics> waitStatistics = new EnumMap<>(ExecutionPriority.class);
+    private int runningExecutions;
+    private long sequence;
+    private boolean resourceCheckScheduled;
+    private boolean closed;
+
+    public ExecutionAdmissionController(Configuration configuration) {
+        this(configuration.getPropertyAsInteger("tec.executor.threads", 30),
+            configuration.getPropertyAsInteger(CONF_MAX_QUEUED, 0),
+            configuration.getProperty(CONF_PARTITION_ATTRIBUTE, "project"),
+            configuration.getPropertyAsInteger(CONF_PARTITION_MAX_CONCURRENT, 0),
+            TimeUnit.SECONDS.toNanos(configuration.getPropertyAsLong(CONF_AGING_SECONDS, 600L)),
+            new ResourceMonitor(Double.parseDouble(configuration.getProperty(CONF_HEAP_MAX_USAGE, "0")),
+                Double.parseDouble(configuration.getProperty(CONF_CPU_MAX_LOAD, "0"))));
+    }
+
+    /**
+     * @param maxConcurrentExecutions             the maximum number of concurrent executions
+     * @param maxQueuedExecutions                 the maximum number of executions waiting for admission or 0 for no limit
+     * @param partitionAttribute                  the attribute of the executions used to partition them
+     * @param maxConcurrentExecutionsPerPartition the maximum number of concurrent executions per partition or 0 for no limit
+     * @param agingNanos                          the waiting time after which an execution is promoted to the next priority class or 0 to disable aging
+     * @param resourcesAvailable                  returns false if the resources of the controller don't allow to admit more executions
+     */
+    ExecutionAdmissionController(int maxConcurrentExecutions, int maxQueuedExecutions, String partitionAttribute, int maxConcurrentExecutionsPerPartition,
+                                 long agingNanos, BooleanSupplier resourcesAvailable) {
+        this.maxConcurrentExecutions = maxConcurrentExecutions;
+        this.maxQueuedExecutions = maxQueuedExecutions;
+        this.partitionAttribute = partitionAttribute;
+        this.maxConcurrentExecutionsPerPartition = maxConcurrentExecutionsPerPartition;
+        this.agingNanos = agingNanos;
+        this.resourcesAvailable = resourcesAvailable;
+        // The admission guarantees that no more than maxConcurrentExecutions are submitted to the pool at the same time
+        executionThreads = new ThreadPoolExecutor(maxConcurrentExecutions, maxConcurrentExecutions, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), BasicThreadFactory.builder().namingPattern("execution-%d").build());
+        executionThreads.allowCoreThreadTimeOut(true);
+        resourceCheckScheduler = Executors.newSingleThreadScheduledExecutor(
+            BasicThreadFactory.builder().namingPattern("execution-admission-resource-check-%d").daemon(true).build());
+        for (ExecutionPriority priority : ExecutionPriority.values()) {
+            waitStatistics.put(priority, new WaitStatistics());
+        }
+    }
+
+    public static boolean isEnabled(Configuration configuration) {
+        return configuration.getPropertyAsBoolean(CONF_ENABLED, true);
+    }
+
+    /**
+     * @return the name of the attribute of the executions used to partition them
+     */
+    public String getPartitionAttribute() {
+        return partitionAttribute;
+    }
+
+    /**
+     * Enqueues the execution. The execution is run in a thread of the controller as soon as it is admitted
+     *
+     * @param executionId      the ID of the execution
+     * @param priority         the priority of the execution
+     * @param partition        the partition of the execution. Executions without partition are counted in the same partition
+     * @param execution        the execution to be run once admitted
+     * @param rejectionHandler called if the execution is rejected while waiting, because the controller is closed
+     * @throws RejectedExecutionException if the controller is closed or the configured maximum number of waiting executions is reached
+     */
+    public void submit(String executionId, ExecutionPriority priority, String partition, Runnable execution,
+                       Consumer<RejectedExecutionException> rejectionHandler) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("The execution " + executionId + " has been rejected as the executor is shutting down");
+            }
+            if (maxQueuedExecutions > 0 && queue.size() >= maxQueuedExecutions) {
+                throw new RejectedExecutionException("The execution " + executionId + " has been rejected as the maximum number of executions waiting for admission (" +
+                    maxQueuedExecutions + ") has been reached. This limit can be changed with the property " + CONF_MAX_QUEUED);
+            }
+            Ticket ticket = new Ticket(executionId, priority, Objects.requireNonNullElse(partition, ""), sequence++, System.nanoTime(),
+                execution, rejectionHandler);
+            queue.add(ticket);
+            dispatch();
+            if (queue.contains(ticket) && logger.isDebugEnabled()) {
+                logger.debug("Execution " + executionId + " queued with priority " + priority + " at position " + getQueuePosition(executionId));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admits the waiting executions as long as the limits allow it. Has to be called with the lock held
+     */
+    private void dispatch() {
+        while (!closed && runningExecutions < maxConcurrentExecutions) {
+            long now = System.nanoTime();
+            Ticket ticket = getNextTicket(now);
+            if (ticket == null) {
+                return;
+            }
+            // An execution is always admitted when nothing is running to guarantee progress
+            if (runningExecutions > 0 && !resourcesAvailable.getAsBoolean()) {
+                // The resources are re-checked periodically as their release isn't signaled
+                scheduleResourceCheck();
+                return;
+            }
+            queue.remove(ticket);
+            runningExecutions++;
+            runningExecutionsByPartition.merge(ticket.partition, 1, Integer::sum);
+            waitStatistics.get(ticket.priority).addWaitTime(now - ticket.enqueueNanos);
+            executionThreads.execute(() -> {
+                try {
+                    ticket.execution.run();
+                } catch (Throwable e) {
+                    logger.error("Unexpected error while running the execution " + ticket.executionId, e);
+                } finally {
+                    release(ticket);
+                }
+            });
+        }
+    }
+
+    private void scheduleResourceCheck() {
+        if (!resourceCheckScheduled) {
+            resourceCheckScheduled = true;
+            resourceCheckScheduler.schedule(() -> {
+                lock.lock();
+                try {
+                    resourceCheckScheduled = false;
+                    dispatch();
+                } finally {
+                    lock.unlock();
+                }
+            }, RESOURCE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void release(Ticket ticket) {
+        lock.lock();
+        try {
+            runningExecutions--;
+            runningExecutionsByPartition.computeIfPresent(ticket.partition, (k, count) -> count > 1 ? count - 1 : null);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the waiting ticket to be admitted next or null if none of them is admissible
+     */
+    private Ticket getNextTicket(long now) {
+        Ticket nextTicket = null;
+        Comparator<Ticket> comparator = getAdmissionOrder(now);
+        for (Ticket ticket : queue) {
+            if ((maxConcurrentExecutionsPerPartition <= 0 || getRunningExecutions(ticket.partition) < maxConcurrentExecutionsPerPartition) &&
+                (nextTicket == null || comparator.compare(ticket, nextTicket) < 0)) {
+                nextTicket = ticket;
+            }
+        }
+        return nextTicket;
+    }
+
+    private Comparator<Ticket> getAdmissionOrder(long now) {
+        return Comparator.comparingInt((Ticket t) -> getEffectivePriority(t, now))
+            .thenComparingInt(t -> getRunningExecutions(t.partition))
+            .thenComparingLong(t -> t.sequence);
+    }
+
+    private int getEffectivePriority(Ticket ticket, long now) {
+        long promotions = agingNanos > 0 ? (now - ticket.enqueueNanos) / agingNanos : 0;
+        return (int) Math.max(0, ticket.priority.ordinal() - promotions);
+    }
+
+    private int getRunningExecutions(String partition) {
+        return runningExecutionsByPartition.getOrDefault(partition, 0);
+    }
+
+    /**
+     * @param executionId the ID of a waiting execution
+     * @return the position of the execution in the queue, starting with 1, or -1 if the execution isn't waiting.
+     * The position doesn't take the limits per partition into account
+     */
+    public int getQueuePosition(String executionId) {
+        lock.lock();
+        try {
+            List<Ticket> orderedQueue = new ArrayList<>(queue);
+            orderedQueue.sort(getAdmissionOrder(System.nanoTime()));
+            for (int i = 0; i < orderedQueue.size(); i++) {
+                if (orderedQueue.get(i).executionId.equals(executionId)) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunningExecutions() {
+        lock.lock();
+        try {
+            return runningExecutions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects all the waiting executions. The running executions are left running
+     */
+    public void close() {
+        List<Ticket> rejectedTickets;
+        lock.lock();
+        try {
+            closed = true;
+            rejectedTickets = new ArrayList<>(queue);
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        resourceCheckScheduler.shutdownNow();
+        executionThreads.shutdown();
+        // The rejection handlers are called outside the lock as they might be slow
+        for (Ticket ticket : rejectedTickets) {
+            try {
+                ticket.rejectionHandler.accept(new RejectedExecutionException("The execution " + ticket.executionId +
+                    " has been rejected as the executor is shutting down"));
+            } catch (Exception e) {
+                logger.error("Error while rejecting the execution " + ticket.executionId, e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the termination of the running executions after {@link #close()}
+     *
+     * @return true if all the executions terminated before the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executionThreads.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return the wait time of the executions admitted since the last call and the number of waiting executions,
+     * by priority
+     */
+    public List<ControllerMetricSample> collectMetricSamples() {
+        long now = System.currentTimeMillis();
+        List<ControllerMetricSample> samples = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ExecutionPriority priority : ExecutionPriority.values()) {
+                TreeMap<String, String> labels = new TreeMap<>();
+                labels.put(EXECUTION_PRIORITY_ATTRIBUTE.getName(), priority.name());
+                WaitStatistics statistics = waitStatistics.get(priority);
+                if (statistics.count > 0) {
+                    samples.add(new ControllerMetricSample(new MetricSample(now, "execution_admission_wait_time", labels, InstrumentType.HISTOGRAM,
+                        statistics.count, toMillis(statistics.waitNanos), toMillis(statistics.minWaitNanos), toMillis(statistics.maxWaitNanos),
+                        toMillis(statistics.lastWaitNanos), null), EXECUTION_ADMISSION_WAIT_TIME_METRIC));
+                    waitStatistics.put(priority, new WaitStatistics());
+                }
+                long queued = queue.stream().filter(t -> t.priority == priority).count();
+                samples.add(new ControllerMetricSample(new MetricSample(now, "execution_admission_queue", labels, InstrumentType.GAUGE,
+                    1, queued, queued, queued, queued, null), EXECUTION_ADMISSION_QUEUE_METRIC));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return samples;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static class Ticket {
+
+        private final String executionId;
+        private final ExecutionPriority priority;
+        private final String partition;
+        private final long sequence;
+        private final long enqueueNanos;
+        private final Runnable execution;
+        private final Consumer<RejectedExecutionException> rejectionHandler;
+
+        private Ticket(String executionId, ExecutionPriority priority, String partition, long sequence, long enqueueNanos,
+                       Runnable execution, Consumer<RejectedExecutionException> rejectionHandler) {
+            this.executionId = executionId;
+            this.priority = priority;
+            this.partition = partition;
+            this.sequence = sequence;
+            this.enqueueNanos = enqueueNanos;
+            this.execution = execution;
+            this.rejectionHandler = rejectionHandler;
+        }
+    }
+
+    private static class WaitStatistics {
+
+        private long count;
+        private long waitNanos;
+        private long minWaitNanos = Long.MAX_VALUE;
+        private long maxWaitNanos;
+        private long lastWaitNanos;
+
+        private void addWaitTime(long waitNanos) {
+            count++;
+            this.waitNanos += waitNanos;
+            minWaitNanos = Math.min(minWaitNanos, waitNanos);
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            lastWaitNanos = waitNanos;
+        }
+    }
+
+    /**
+     * Checks the heap usage after the last garbage collection and the system load of the controller
+     */
+    private static class ResourceMonitor implements BooleanSupplier {
+
+        private final double maxHeapUsage;
+        private final double maxCpuLoad;
+
+        private ResourceMonitor(double maxHeapUsage, double maxCpuLoad) {
+            this.maxHeapUsage = maxHeapUsage;
+            this.maxCpuLoad = maxCpuLoad;
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            if (maxHeapUsage > 0) {
+                // The usage after collection ignores the garbage which would be collected anyway
+                long usedAfterCollection = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    MemoryUsage collectionUsage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+                    if (collectionUsage != null) {
+                        usedAfterCollection += collectionUsage.getUsed();
+                    }
+                }
+                if (usedAfterCollection > maxHeapUsage * Runtime.getRuntime().maxMemory()) {
+                    logger.debug("Delaying the admission of executions as the heap usage exceeds the limit");
+                    return false;
+                }
+            }
+            if (maxCpuLoad > 0) {
+                // The load average is negative if it isn't available on this platform
+                double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+                if (loadAverage > maxCpuLoad * Runtime.getRuntime().availableProcessors()) {
+                    logger.debug("Delaying the admission of executions as the system load exceeds the limit");
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
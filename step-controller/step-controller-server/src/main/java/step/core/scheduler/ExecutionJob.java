@@ -23,19 +23,32 @@ import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import step.automation.packages.AutomationPackageEntity;
 import step.automation.packages.AutomationPackageLocks;
+import step.core.artefacts.reports.ReportNodeStatus;
 import step.core.controller.ControllerSetting;
 import step.core.controller.ControllerSettingAccessor;
 import step.core.execution.ExecutionEngine;
+import step.core.execution.model.Execution;
+import step.core.execution.model.ExecutionAccessor;
+import step.core.execution.model.ExecutionStatus;
+import step.core.reports.Error;
+import step.core.reports.ErrorType;
 
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 
 import static step.automation.packages.AutomationPackageLocks.AUTOMATION_PACKAGE_READ_LOCK_TIMEOUT_SECS;
 import static step.automation.packages.AutomationPackageLocks.AUTOMATION_PACKAGE_READ_LOCK_TIMEOUT_SECS_DEFAULT;
+import static step.core.reports.Error.DEFAULT_ERROR_CODE;
+import static step.core.scheduler.ExecutionAdmissionController.EXECUTION_ADMISSION_LAYER;
 
 public class ExecutionJob implements Job {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionJob.class);
+
     public static final String SETTING_KEY_SCHEDULER_EXECUTION_USERNAME = "scheduler_execution_username";
     private final ExecutionEngine executionEngine;
     private final ExecutionTaskAccessor executionTaskAccessor;
@@ -43,65 +56,178 @@ public class ExecutionJob implements Job {
     private final AutomationPackageLocks automationPackageLocks;
     private final String executionId;
     private final String executionTaskID;
+    private final ExecutionAdmissionController admissionController;
+    private final ExecutionPriority priority;
 
     public ExecutionJob(ExecutionEngine executionEngine, ExecutionTaskAccessor executionTaskAccessor, ControllerSettingAccessor controllerSettingAccessor, AutomationPackageLocks lock, String executionId, String executionTaskID) {
+        this(executionEngine, executionTaskAccessor, controllerSettingAccessor, lock, executionId, executionTaskID, null, ExecutionPriority.INTERACTIVE);
+    }
+
+    public ExecutionJob(ExecutionEngine executionEngine, ExecutionTaskAccessor executionTaskAccessor, ControllerSettingAccessor controllerSettingAccessor, AutomationPackageLocks lock, String executionId, String executionTaskID,
+                        ExecutionAdmissionController admissionController, ExecutionPriority priority) {
         this.executionEngine = Objects.requireNonNull(executionEngine);
         this.executionTaskAccessor = Objects.requireNonNull(executionTaskAccessor);
         this.controllerSettingAccessor = Objects.requireNonNull(controllerSettingAccessor);
         this.automationPackageLocks = Objects.requireNonNull(lock);
         this.executionId = executionId;
         this.executionTaskID = executionTaskID;
+        this.admissionController = admissionController;
+        this.priority = Objects.requireNonNull(priority);
     }
 
     @Override
     public void execute(JobExecutionContext arg0) throws JobExecutionException {
         if (executionId != null) {
-            executionEngine.execute(executionId);
-        } else if (executionTaskID != null) {
-            String automationPackageLockID = null;
-            try {
-                ExecutiontTaskParameters executiontTaskParameters = executionTaskAccessor.get(new ObjectId(executionTaskID));
-                if (executiontTaskParameters == null) {
-                    throw new JobExecutionException("The execution task parameters for schedule ID '" + executionTaskID + "' were not found in the database. This may be due to a race condition where a schedule is being deleted at the same time as its job is triggered.");
-                }
-                //Try to get the read lock on automation package even before creating the execution data, otherwise data get out dated
-                automationPackageLockID = (String) executiontTaskParameters.getCustomField(AutomationPackageEntity.AUTOMATION_PACKAGE_ID);
-                if (automationPackageLockID != null) {
-                    try {
-                        if (!automationPackageLocks.tryReadLock(automationPackageLockID)) {
-                            throw new JobExecutionException("Timeout while acquiring lock on automation package with id " +
-                                automationPackageLockID + ". This usually means that an update of this automation package is on-going and took more than the property " +
-                                AUTOMATION_PACKAGE_READ_LOCK_TIMEOUT_SECS + " (default " + AUTOMATION_PACKAGE_READ_LOCK_TIMEOUT_SECS_DEFAULT + " seconds)");
-                        }
-                    } catch (InterruptedException e) {
-                        throw new JobExecutionException(e);
-                    }
-                    //Get the latest version from DB in case of lock
-                    executiontTaskParameters = executionTaskAccessor.get(new ObjectId(executionTaskID));
-                    // Error handling in case the schedule got deleted in between
-                    if (executiontTaskParameters == null) {
-                        throw new JobExecutionException("The execution task parameters for schedule ID '" + executionTaskID + "' were not found in the database. This may be due to a race condition where a schedule is being deleted at the same time as its job is triggered.");
-                    }
-                }
-
-                ControllerSetting schedulerUsernameSetting = controllerSettingAccessor.getSettingByKey(SETTING_KEY_SCHEDULER_EXECUTION_USERNAME);
-                if (schedulerUsernameSetting != null) {
-                    String schedulerUsername = schedulerUsernameSetting.getValue();
-                    if (schedulerUsername != null && schedulerUsername.trim().length() > 0) {
-                        // Override the execution user if the setting scheduler_execution_username is set
-                        executiontTaskParameters.getExecutionsParameters().setUserID(schedulerUsername);
-                    }
-                }
-
-                String executionId = executionEngine.initializeExecution(executiontTaskParameters);
+            if (admissionController == null) {
                 executionEngine.execute(executionId);
-            } finally {
-                if (automationPackageLocks != null && automationPackageLockID != null) {
-                    automationPackageLocks.readUnlock(automationPackageLockID);
-                }
+            } else {
+                submitExecution();
+            }
+        } else if (executionTaskID != null) {
+            if (admissionController == null) {
+                executeTask();
+            } else {
+                submitTask();
             }
         } else {
             throw new JobExecutionException("The job is missing both execution ID and schedule ID");
         }
     }
+
+    /**
+     * Enqueues the execution for admission and returns, so that the waiting execution doesn't hold a thread of the scheduler
+     */
+    private void submitExecution() throws JobExecutionException {
+        Execution execution = executionEngine.getExecutionEngineContext().getExecutionAccessor().get(executionId);
+        String partition = execution != null && execution.getAttributes() != null ?
+            execution.getAttributes().get(admissionController.getPartitionAttribute()) : null;
+        try {
+            admissionController.submit(executionId, priority, partition, () -> executionEngine.execute(executionId),
+                e -> abortExecution(executionId, e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            abortExecution(executionId, e.getMessage());
+            throw new JobExecutionException(e);
+        }
+    }
+
+    /**
+     * Ends the execution which couldn't be run instead of leaving it in the status INITIALIZING
+     */
+    private void abortExecution(String executionId, String message) {
+        logger.warn(message);
+        ExecutionAccessor executionAccessor = executionEngine.getExecutionEngineContext().getExecutionAccessor();
+        Execution execution = executionAccessor.get(executionId);
+        if (execution != null) {
+            execution.addLifecyleError(new Error(ErrorType.TECHNICAL, EXECUTION_ADMISSION_LAYER, message, DEFAULT_ERROR_CODE, true));
+            execution.setResult(ReportNodeStatus.TECHNICAL_ERROR);
+            execution.setStatus(ExecutionStatus.ENDED);
+            execution.setEndTime(System.currentTimeMillis());
+            executionAccessor.save(execution);
+        }
+    }
+
+    /**
+     * Initializes the execution of the task and enqueues it for admission. The execution is initialized before its
+     * admission so that it can be tracked by its ID while waiting. The lock on the automation package is only acquired
+     * once the execution is admitted, so that the waiting executions don't block the updates of the automation package.
+     * The parameters of the execution are then refreshed from the latest version of the task
+     */
+    private void submitTask() throws JobExecutionException {
+        ExecutiontTaskParameters executiontTaskParameters = getExecutionTaskParameters();
+        String executionId = executionEngine.initializeExecution(executiontTaskParameters);
+        String partition = executiontTaskParameters.getAttributes() != null ?
+            executiontTaskParameters.getAttributes().get(admissionController.getPartitionAttribute()) : null;
+        try {
+            admissionController.submit(executionId, priority, partition, () -> executeAdmittedTask(executionId),
+                e -> abortExecution(executionId, "The scheduled execution has been skipped. " + e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            abortExecution(executionId, "The scheduled execution has been skipped. " + e.getMessage());
+            throw new JobExecutionException("The scheduled execution has been skipped", e);
+        }
+    }
+
+    private void executeAdmittedTask(String executionId) {
+        String automationPackageLockID = null;
+        try {
+            ExecutiontTaskParameters executiontTaskParameters = getExecutionTaskParameters();
+            String automationPackageID = (String) executiontTaskParameters.getCustomField(AutomationPackageEntity.AUTOMATION_PACKAGE_ID);
+            if (automationPackageID != null) {
+                readLockAutomationPackage(automationPackageID);
+                automationPackageLockID = automationPackageID;
+                executiontTaskParameters = getExecutionTaskParameters();
+            }
+            // Refresh the execution with the latest version of the task as it might have been updated while the execution was waiting
+            ExecutionAccessor executionAccessor = executionEngine.getExecutionEngineContext().getExecutionAccessor();
+            Execution execution = executionAccessor.get(executionId);
+            if (execution != null) {
+                execution.setExecutionParameters(executiontTaskParameters.getExecutionsParameters());
+                execution.setExecutiontTaskParameters(executiontTaskParameters);
+                executionAccessor.save(execution);
+            }
+            executionEngine.execute(executionId);
+        } catch (JobExecutionException e) {
+            abortExecution(executionId, e.getMessage());
+        } finally {
+            if (automationPackageLockID != null) {
+                automationPackageLocks.readUnlock(automationPackageLockID);
+            }
+        }
+    }
+
+    private void executeTask() throws JobExecutionException {
+        String automationPackageLockID = null;
+        try {
+            ExecutiontTaskParameters executiontTaskParameters = getExecutionTaskParameters();
+            //Try to get the read lock on automation package even before creating the execution data, otherwise data get out dated
+            automationPackageLockID = (String) executiontTaskParameters.getCustomField(AutomationPackageEntity.AUTOMATION_PACKAGE_ID);
+            if (automationPackageLockID != null) {
+                readLockAutomationPackage(automationPackageLockID);
+                //Get the latest version from DB in case of lock
+                executiontTaskParameters = getExecutionTaskParameters();
+            }
+
+            String executionId = executionEngine.initializeExecution(executiontTaskParameters);
+            executionEngine.execute(executionId);
+        } finally {
+            if (automationPackageLocks != null && automationPackageLockID != null) {
+                automationPackageLocks.readUnlock(automationPackageLockID);
+            }
+        }
+    }
+
+    /**
+     * @return the latest version of the execution task, the user of the execution being overridden by the setting
+     * {@link #SETTING_KEY_SCHEDULER_EXECUTION_USERNAME}
+     */
+    private ExecutiontTaskParameters getExecutionTaskParameters() throws JobExecutionException {
+        ExecutiontTaskParameters executiontTaskParameters = executionTaskAccessor.get(new ObjectId(executionTaskID));
+        // Error handling in case the schedule got deleted in between
+        if (executiontTaskParameters == null) {
+            throw new JobExecutionException("The execution task parameters for schedule ID '" + executionTaskID + "' were not found in the database. This may be due to a race condition where a schedule is being deleted at the same time as its job is triggered.");
+        }
+        ControllerSetting schedulerUsernameSetting = controllerSettingAccessor.getSettingByKey(SETTING_KEY_SCHEDULER_EXECUTION_USERNAME);
+        if (schedulerUsernameSetting != null) {
+            String schedulerUsername = schedulerUsernameSetting.getValue();
+            if (schedulerUsername != null && schedulerUsername.trim().length() > 0) {
+                // Override the execution user if the setting scheduler_execution_username is set
+                executiontTaskParameters.getExecutionsParameters().setUserID(schedulerUsername);
+            }
+        }
+        return executiontTaskParameters;
+    }
+
+    /**
+     * Acquires the read lock on the automation package. The lock has to be released by the caller
+     */
+    private void readLockAutomationPackage(String automationPackageLockID) throws JobExecutionException {
+        try {
+            if (!automationPackageLocks.tryReadLock(automationPackageLockID)) {
+                throw new JobExecutionException("Timeout while acquiring lock on automation package with id " +
+                    automationPackageLockID + ". This usually means that an update of this automation package is on-going and took more than the property " +
+                    AUTOMATION_PACKAGE_READ_LOCK_TIMEOUT_SECS + " (default " + AUTOMATION_PACKAGE_READ_LOCK_TIMEOUT_SECS_DEFAULT + " seconds)");
+            }
+        } catch (InterruptedException e) {
+            throw new JobExecutionException(e);
+        }
+    }
 }
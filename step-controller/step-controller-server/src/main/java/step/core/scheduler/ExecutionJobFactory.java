@@ -37,13 +37,22 @@ public class ExecutionJobFactory implements JobFactory {
     private final ControllerSettingAccessor controllerSettingAccessor;
     private final ExecutionTaskAccessor executionTaskAccessor;
     private final AutomationPackageLocks automationPackageLocks;
+    private final ExecutionAdmissionController admissionController;
 
     public ExecutionJobFactory(GlobalContext context, ExecutionEngine executionEngine) {
+        this(context, executionEngine, null);
+    }
+
+    /**
+     * @param admissionController the admission controller of the executions or null if the executions are started immediately
+     */
+    public ExecutionJobFactory(GlobalContext context, ExecutionEngine executionEngine, ExecutionAdmissionController admissionController) {
         super();
         this.controllerSettingAccessor = context.require(ControllerSettingAccessor.class);
         this.executionEngine = executionEngine;
         this.executionTaskAccessor = context.getScheduleAccessor();
         this.automationPackageLocks = context.require(AutomationPackageLocks.class);
+        this.admissionController = admissionController;
     }
 
     @Override
@@ -51,15 +60,20 @@ public class ExecutionJobFactory implements JobFactory {
         JobDataMap data = arg0.getJobDetail().getJobDataMap();
         String executionID = null;
         String executionTaskID = null;
+        ExecutionPriority priority;
         if (data.containsKey(Executor.EXECUTION_ID)) {
             executionID = data.getString(Executor.EXECUTION_ID);
+            priority = data.containsKey(Executor.EXECUTION_PRIORITY) ?
+                ExecutionPriority.valueOf(data.getString(Executor.EXECUTION_PRIORITY)) : ExecutionPriority.INTERACTIVE;
         } else {
+            priority = ExecutionPriority.SCHEDULED;
             try {
                 executionTaskID = data.getString(Executor.EXECUTION_TASK_ID);
             } catch (Exception e) {
                 return new LoggerJob("Unable to create new job for execution", e);
             }
         }
-        return new ExecutionJob(executionEngine, executionTaskAccessor, controllerSettingAccessor, automationPackageLocks, executionID, executionTaskID);
+        return new ExecutionJob(executionEngine, executionTaskAccessor, controllerSettingAccessor, automationPackageLocks, executionID, executionTaskID,
+            admissionController, priority);
     }
 }
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.scheduler;
+
+/**
+ * Priority classes of the executions waiting for admission in the {@link ExecutionAdmissionController}, from the
+ * highest to the lowest priority
+ */
+public enum ExecutionPriority {
+
+    /**
+     * Executions triggered by a schedule (execution task) like monitoring plans
+     */
+    SCHEDULED,
+    /**
+     * Executions started on demand by a user or a client of the API
+     */
+    INTERACTIVE,
+    /**
+     * Executions started in bulk like the restart of multiple executions
+     */
+    BULK
+}
@@ -149,6 +149,23 @@ public class ExecutionScheduler implements ExecutionLauncher {
         return executor.execute(executionParameters);
     }
 
+    /**
+     * @param executionParameters the parameters of the execution
+     * @param priority            the priority of the execution when waiting for admission
+     * @return the ID of the new execution
+     */
+    public String execute(ExecutionParameters executionParameters, ExecutionPriority priority) {
+        return executor.execute(executionParameters, priority);
+    }
+
+    /**
+     * @param executionId the ID of an execution
+     * @return the position of the execution in the admission queue, starting with 1, or null if the execution isn't waiting for admission
+     */
+    public Integer getAdmissionQueuePosition(String executionId) {
+        return executor.getAdmissionQueuePosition(executionId);
+    }
+
     public String executeNested(ExecutionParameters executionParameters) {
         return executor.executeNested(executionParameters);
     }
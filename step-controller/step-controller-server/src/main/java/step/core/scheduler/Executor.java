@@ -41,6 +41,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static step.core.accessors.AbstractOrganizableObject.NAME;
@@ -53,6 +54,7 @@ public class Executor {
     private Scheduler nestedScheduler;
     private ExecutionEngine executionEngine;
     private Configuration configuration;
+    private ExecutionAdmissionController admissionController;
 
     public Executor(GlobalContext globalContext) {
         super();
@@ -66,12 +68,19 @@ public class Executor {
         executionEngine = ExecutionEngine.builder().withOperationMode(OperationMode.CONTROLLER)
             .withParentContext(globalContext).withPluginsFromClasspath().withPlugins(additionalPlugins).withObjectHookRegistry(objectHookRegistry).build();
 
+        if (ExecutionAdmissionController.isEnabled(configuration)) {
+            admissionController = new ExecutionAdmissionController(configuration);
+        }
+
         try {
             Properties props = getProperties();
+            // With the admission control, the jobs of the scheduler only enqueue the executions which are then run
+            // in the threads of the admission controller
             StdSchedulerFactory schedulerFactory = new StdSchedulerFactory(props);
             scheduler = schedulerFactory.getScheduler();
-            scheduler.setJobFactory(new ExecutionJobFactory(globalContext, executionEngine));
+            scheduler.setJobFactory(new ExecutionJobFactory(globalContext, executionEngine, admissionController));
             //Create another scheduler with same number of threads for nested executions to avoid deadlock
+            //The nested executions bypass the admission control as their parent execution already holds a slot
             Properties propsNested = getProperties();
             propsNested.put("org.quartz.scheduler.instanceName", "NestedExecutionsScheduler");
             StdSchedulerFactory nestedSchedulerFactory = new StdSchedulerFactory(propsNested);
@@ -100,7 +109,30 @@ public class Executor {
         return executionEngine;
     }
 
+    /**
+     * @return the admission controller of the executions or null if the admission control is disabled
+     */
+    public ExecutionAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * @param executionId the ID of an execution
+     * @return the position of the execution in the admission queue, starting with 1, or null if the execution isn't waiting for admission
+     */
+    public Integer getAdmissionQueuePosition(String executionId) {
+        if (admissionController != null) {
+            int position = admissionController.getQueuePosition(executionId);
+            return position > 0 ? position : null;
+        }
+        return null;
+    }
+
     public void shutdown() {
+        if (admissionController != null) {
+            // Reject the executions waiting for admission instead of starting them during the shutdown
+            admissionController.close();
+        }
         try {
             if (scheduler != null) {
                 scheduler.shutdown(true);
@@ -108,8 +140,17 @@ public class Executor {
             if (nestedScheduler != null) {
                 nestedScheduler.shutdown(true);
             }
+            if (admissionController != null) {
+                // Wait for the running executions like the scheduler does for its jobs
+                while (!admissionController.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.info("Waiting for the termination of the running executions...");
+                }
+            }
         } catch (SchedulerException e) {
             throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the termination of the running executions", e);
         }
     }
 
@@ -266,15 +307,19 @@ public class Executor {
     }
 
     public String execute(ExecutionParameters executionParameters) {
+        return execute(executionParameters, ExecutionPriority.INTERACTIVE);
+    }
+
+    public String execute(ExecutionParameters executionParameters, ExecutionPriority priority) {
         String executionID = executionEngine.initializeExecution(executionParameters);
-        scheduleExistingExecutionNow(executionID);
+        scheduleExistingExecutionNow(executionID, priority);
         return executionID;
     }
 
     public String executeNested(ExecutionParameters executionParameters) {
         String executionID = executionEngine.initializeExecution(executionParameters);
         Trigger trigger = TriggerBuilder.newTrigger().startNow().build();
-        JobDetail job = buildSingleJob(executionID);
+        JobDetail job = buildSingleJob(executionID, ExecutionPriority.INTERACTIVE);
         try {
             nestedScheduler.scheduleJob(job, trigger);
         } catch (SchedulerException e) {
@@ -285,14 +330,14 @@ public class Executor {
 
     public String execute(ExecutiontTaskParameters executionTaskParameters) {
         String executionID = executionEngine.initializeExecution(executionTaskParameters);
-        scheduleExistingExecutionNow(executionID);
+        scheduleExistingExecutionNow(executionID, ExecutionPriority.INTERACTIVE);
         return executionID;
     }
 
-    private void scheduleExistingExecutionNow(String executionID) {
+    private void scheduleExistingExecutionNow(String executionID, ExecutionPriority priority) {
         Trigger trigger = TriggerBuilder.newTrigger().startNow().build();
 
-        JobDetail job = buildSingleJob(executionID);
+        JobDetail job = buildSingleJob(executionID, priority);
 
         scheduleJob(trigger, job);
     }
@@ -311,9 +356,12 @@ public class Executor {
 
     protected static final String EXECUTION_TASK_ID = "ExecutionTaskID";
 
-    private JobDetail buildSingleJob(String executionID) {
+    protected static final String EXECUTION_PRIORITY = "ExecutionPriority";
+
+    private JobDetail buildSingleJob(String executionID, ExecutionPriority priority) {
         JobDataMap data = new JobDataMap();
         data.put(EXECUTION_ID, executionID);
+        data.put(EXECUTION_PRIORITY, priority.name());
 
         return JobBuilder.newJob().ofType(ExecutionJob.class).usingJobData(data).build();
     }
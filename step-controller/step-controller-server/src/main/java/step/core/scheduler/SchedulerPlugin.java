@@ -27,18 +27,36 @@ import step.core.controller.ControllerSettingAccessor;
 import step.core.controller.ControllerSettingPlugin;
 import step.core.deployment.ObjectHookControllerPlugin;
 import step.core.entities.EntityConstants;
+import step.core.metrics.ControllerMetricSample;
+import step.core.metrics.MetricSampler;
+import step.core.metrics.MetricSamplerRegistry;
+import step.core.metrics.MetricTypeRegistry;
 import step.core.plugins.AbstractControllerPlugin;
 import step.core.plugins.Plugin;
 import step.core.scheduler.housekeeping.HousekeepingJobsManager;
+import step.core.timeseries.metric.MetricAggregation;
+import step.core.timeseries.metric.MetricAggregationType;
+import step.core.timeseries.metric.MetricRenderingSettings;
+import step.core.timeseries.metric.MetricSamplingMode;
+import step.core.timeseries.metric.MetricType;
 import step.framework.server.tables.Table;
 import step.framework.server.tables.TableRegistry;
 import step.plugins.screentemplating.ScreenTemplatePlugin;
 
+import java.util.List;
+
+import static step.core.metrics.InstrumentType.GAUGE;
+import static step.core.metrics.InstrumentType.HISTOGRAM;
+import static step.core.metrics.MetricsConstants.EXECUTION_PRIORITY_ATTRIBUTE;
+import static step.core.metrics.MetricsControllerPlugin.IS_CONTROLLER_METRIC;
+
 @Plugin(dependencies = {ScreenTemplatePlugin.class, ControllerSettingPlugin.class, ObjectHookControllerPlugin.class})
 public class SchedulerPlugin extends AbstractControllerPlugin {
 
     private static final Logger logger = LoggerFactory.getLogger(SchedulerPlugin.class);
 
+    private static final String EXECUTION_ADMISSION_SAMPLER_NAME = "executionadmission";
+
     private ControllerSettingAccessor controllerSettingAccessor;
     private HousekeepingJobsManager housekeepingJobsManager;
 
@@ -67,8 +85,52 @@ public class SchedulerPlugin extends AbstractControllerPlugin {
 
     @Override
     public void afterInitializeData(GlobalContext context) throws Exception {
-        ExecutionScheduler scheduler = new ExecutionScheduler(context.require(ControllerSettingAccessor.class), context.getScheduleAccessor(), new Executor(context));
+        Executor executor = new Executor(context);
+        ExecutionScheduler scheduler = new ExecutionScheduler(context.require(ControllerSettingAccessor.class), context.getScheduleAccessor(), executor);
         context.setScheduler(scheduler);
+        if (executor.getAdmissionController() != null) {
+            configureAdmissionMonitoring(executor.getAdmissionController(), context.require(MetricTypeRegistry.class));
+        }
+    }
+
+    /**
+     * Feed the wait time and the queue of the execution admission into the time series and register the corresponding metric types
+     */
+    private void configureAdmissionMonitoring(ExecutionAdmissionController admissionController, MetricTypeRegistry metricTypeRegistry) {
+        MetricSamplerRegistry.getInstance().registerSampler(EXECUTION_ADMISSION_SAMPLER_NAME, new MetricSampler(EXECUTION_ADMISSION_SAMPLER_NAME,
+            "step execution admission wait time and queue") {
+            @Override
+            public List<ControllerMetricSample> collectMetricSamples() {
+                return admissionController.collectMetricSamples();
+            }
+        });
+
+        MetricType waitTime = new MetricType()
+            .setName(ExecutionAdmissionController.EXECUTION_ADMISSION_WAIT_TIME_METRIC)
+            .setDisplayName("Execution admission wait time")
+            .setDescription("Time in milliseconds spent by the executions waiting for their admission, broken down by priority.")
+            .setInstrumentType(HISTOGRAM.toLowerCase())
+            .setAttributes(List.of(EXECUTION_PRIORITY_ATTRIBUTE))
+            .setDefaultGroupingAttributes(List.of(EXECUTION_PRIORITY_ATTRIBUTE.getName()))
+            .setUnit("ms")
+            .setDefaultAggregation(new MetricAggregation(MetricAggregationType.AVG))
+            .setRenderingSettings(new MetricRenderingSettings());
+        waitTime.addCustomField(IS_CONTROLLER_METRIC, true);
+        metricTypeRegistry.registerMetricType(waitTime);
+
+        MetricType queue = new MetricType()
+            .setName(ExecutionAdmissionController.EXECUTION_ADMISSION_QUEUE_METRIC)
+            .setDisplayName("Executions waiting for admission")
+            .setDescription("Number of executions waiting for their admission, broken down by priority.")
+            .setInstrumentType(GAUGE.toLowerCase())
+            .setSamplingMode(MetricSamplingMode.SAMPLED)
+            .setAttributes(List.of(EXECUTION_PRIORITY_ATTRIBUTE))
+            .setDefaultGroupingAttributes(List.of(EXECUTION_PRIORITY_ATTRIBUTE.getName()))
+            .setUnit("1")
+            .setDefaultAggregation(new MetricAggregation(MetricAggregationType.MAX))
+            .setRenderingSettings(new MetricRenderingSettings());
+        queue.addCustomField(IS_CONTROLLER_METRIC, true);
+        metricTypeRegistry.registerMetricType(queue);
     }
 
     @Override
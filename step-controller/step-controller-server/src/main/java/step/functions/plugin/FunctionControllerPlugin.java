@@ -84,7 +84,10 @@ public class FunctionControllerPlugin extends AbstractControllerPlugin {
         Collection<Function> collection = context.getCollectionFactory().getCollection("functions", Function.class);
         FunctionAccessor functionAccessor = new FunctionAccessorImpl(collection);
         FunctionManager functionManager = new FunctionManagerImpl(functionAccessor, functionTypeRegistry);
-        FunctionExecutionService functionExecutionService = new FunctionExecutionServiceImpl(gridClient, functionTypeRegistry, context.getDynamicBeanResolver());
+        FunctionExecutionServiceImpl functionExecutionService = new FunctionExecutionServiceImpl(gridClient, functionTypeRegistry, context.getDynamicBeanResolver());
+        // The binary payload is opt-in: its Smile envelope is embedded as base64 in the JSON message of the grid
+        // which inflates the size on the wire for small and medium payloads
+        functionExecutionService.setBinaryPayloadEnabled(configuration.getPropertyAsBoolean("grid.client.payload.binary.enabled", false));
 
         DynamicJsonObjectResolver dynamicJsonObjectResolver = new DynamicJsonObjectResolver(new DynamicJsonValueResolver(context.getExpressionHandler()));
 
@@ -0,0 +1,336 @@
+package step.core.scheduler;
+
+import ch.exense.commons.app.Configuration;
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.metrics.ControllerMetricSample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionAdmissionControllerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionAdmissionControllerTest.class);
+
+    private final List<ExecutionAdmissionController> controllers = new ArrayList<>();
+    private final List<String> admittedExecutions = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> rejectedExecutions = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, CountDownLatch> runningExecutions = new ConcurrentHashMap<>();
+
+    @After
+    public void after() {
+        runningExecutions.values().forEach(CountDownLatch::countDown);
+        controllers.forEach(ExecutionAdmissionController::close);
+    }
+
+    @Test
+    public void testPriorities() throws Exception {
+        ExecutionAdmissionController controller = newController(1, 100, 0, 0, () -> true);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.INTERACTIVE, null);
+
+        submit(controller, "bulk", ExecutionPriority.BULK, null);
+        submit(controller, "interactive", ExecutionPriority.INTERACTIVE, null);
+        submit(controller, "scheduled", ExecutionPriority.SCHEDULED, null);
+        assertEquals(1, controller.getQueuePosition("scheduled"));
+        assertEquals(3, controller.getQueuePosition("bulk"));
+        assertEquals(-1, controller.getQueuePosition("running"));
+
+        endAndWaitForAdmission("running", 2);
+        endAndWaitForAdmission("scheduled", 3);
+        endAndWaitForAdmission("interactive", 4);
+        end("bulk");
+        assertEquals(List.of("running", "scheduled", "interactive", "bulk"), admittedExecutions);
+        waitFor(() -> controller.getRunningExecutions() == 0);
+    }
+
+    @Test
+    public void testSubmissionDoesNotBlock() throws Exception {
+        ExecutionAdmissionController controller = newController(1, 100, 0, 0, () -> true);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.INTERACTIVE, null);
+
+        // The waiting executions are only enqueued and don't hold the submitting thread
+        for (int i = 0; i < 50; i++) {
+            submit(controller, "e" + i, ExecutionPriority.BULK, null);
+        }
+        assertEquals(50, controller.getQueueLength());
+        assertEquals(1, controller.getRunningExecutions());
+    }
+
+    @Test
+    public void testFairnessBetweenPartitions() throws Exception {
+        ExecutionAdmissionController controller = newController(2, 100, 0, 0, () -> true);
+        submitAndWaitForAdmission(controller, "a0", ExecutionPriority.INTERACTIVE, "A");
+        submitAndWaitForAdmission(controller, "a1", ExecutionPriority.INTERACTIVE, "A");
+
+        submit(controller, "a2", ExecutionPriority.INTERACTIVE, "A");
+        submit(controller, "a3", ExecutionPriority.INTERACTIVE, "A");
+        submit(controller, "b0", ExecutionPriority.INTERACTIVE, "B");
+
+        // The partition B has no running execution and is therefore served first
+        endAndWaitForAdmission("a0", 3);
+        endAndWaitForAdmission("b0", 4);
+        endAndWaitForAdmission("a2", 5);
+        assertEquals(List.of("a0", "a1", "b0", "a2", "a3"), admittedExecutions);
+    }
+
+    @Test
+    public void testPartitionLimit() throws Exception {
+        ExecutionAdmissionController controller = newController(3, 100, 1, 0, () -> true);
+        submitAndWaitForAdmission(controller, "a0", ExecutionPriority.INTERACTIVE, "A");
+
+        submit(controller, "a1", ExecutionPriority.SCHEDULED, "A");
+        // The execution of the partition B is admitted although an execution of higher priority is waiting
+        submitAndWaitForAdmission(controller, "b0", ExecutionPriority.BULK, "B");
+        assertEquals(1, controller.getQueuePosition("a1"));
+
+        end("b0");
+        endAndWaitForAdmission("a0", 3);
+        assertEquals(List.of("a0", "b0", "a1"), admittedExecutions);
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        ExecutionAdmissionController controller = newController(1, 100, 0, TimeUnit.MILLISECONDS.toNanos(5), () -> true);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.INTERACTIVE, null);
+
+        submit(controller, "bulk", ExecutionPriority.BULK, null);
+        Thread.sleep(50);
+        submit(controller, "scheduled", ExecutionPriority.SCHEDULED, null);
+
+        // The bulk execution has been promoted to the highest priority while waiting
+        endAndWaitForAdmission("running", 2);
+        endAndWaitForAdmission("bulk", 3);
+        assertEquals(List.of("running", "bulk", "scheduled"), admittedExecutions);
+    }
+
+    @Test
+    public void testResourceLimit() throws Exception {
+        AtomicBoolean resourcesAvailable = new AtomicBoolean(false);
+        ExecutionAdmissionController controller = newController(10, 100, 0, 0, resourcesAvailable::get);
+        // An execution is always admitted if nothing is running
+        submitAndWaitForAdmission(controller, "e0", ExecutionPriority.INTERACTIVE, null);
+
+        submit(controller, "e1", ExecutionPriority.INTERACTIVE, null);
+        Thread.sleep(100);
+        assertEquals(1, controller.getQueueLength());
+
+        // The resources are re-checked periodically
+        resourcesAvailable.set(true);
+        waitFor(() -> admittedExecutions.size() == 2);
+        assertEquals(List.of("e0", "e1"), admittedExecutions);
+    }
+
+    @Test
+    public void testQueueLimit() throws Exception {
+        ExecutionAdmissionController controller = newController(1, 2, 0, 0, () -> true);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.INTERACTIVE, null);
+        submit(controller, "e1", ExecutionPriority.INTERACTIVE, null);
+        submit(controller, "e2", ExecutionPriority.INTERACTIVE, null);
+
+        // The bulk executions are rejected before they are queued instead of waiting indefinitely
+        assertThrows(RejectedExecutionException.class, () -> submit(controller, "e3", ExecutionPriority.BULK, null));
+        assertEquals(2, controller.getQueueLength());
+
+        endAndWaitForAdmission("running", 2);
+        submit(controller, "e3", ExecutionPriority.BULK, null);
+        assertEquals(2, controller.getQueueLength());
+    }
+
+    @Test
+    public void testUnlimitedQueuePerDefault() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.putProperty("tec.executor.threads", "1");
+        ExecutionAdmissionController controller = new ExecutionAdmissionController(configuration);
+        controllers.add(controller);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.INTERACTIVE, null);
+
+        // No execution is rejected if no limit has been configured
+        for (int i = 0; i < 500; i++) {
+            submit(controller, "e" + i, ExecutionPriority.BULK, null);
+        }
+        assertEquals(500, controller.getQueueLength());
+        assertTrue(rejectedExecutions.isEmpty());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ExecutionAdmissionController controller = newController(1, 100, 0, 0, () -> true);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.INTERACTIVE, null);
+        submit(controller, "e1", ExecutionPriority.INTERACTIVE, null);
+
+        controller.close();
+        assertEquals(List.of("e1"), rejectedExecutions);
+        assertEquals(0, controller.getQueueLength());
+        assertThrows(RejectedExecutionException.class, () -> submit(controller, "e2", ExecutionPriority.INTERACTIVE, null));
+
+        // The running executions are left running
+        assertEquals(1, controller.getRunningExecutions());
+        end("running");
+        assertTrue(controller.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(List.of("running"), admittedExecutions);
+    }
+
+    @Test
+    public void testMetricSamples() throws Exception {
+        ExecutionAdmissionController controller = newController(1, 100, 0, 0, () -> true);
+        submitAndWaitForAdmission(controller, "running", ExecutionPriority.SCHEDULED, null);
+        submit(controller, "bulk", ExecutionPriority.BULK, null);
+
+        List<ControllerMetricSample> samples = controller.collectMetricSamples();
+        // One admission of priority SCHEDULED and one queue gauge per priority
+        assertEquals(4, samples.size());
+        assertEquals(1, countSamples(samples, ExecutionAdmissionController.EXECUTION_ADMISSION_WAIT_TIME_METRIC, "SCHEDULED"));
+        assertEquals(1, getSampleValue(samples, ExecutionAdmissionController.EXECUTION_ADMISSION_QUEUE_METRIC, "BULK"));
+        assertEquals(0, getSampleValue(samples, ExecutionAdmissionController.EXECUTION_ADMISSION_QUEUE_METRIC, "SCHEDULED"));
+
+        endAndWaitForAdmission("running", 2);
+        samples = controller.collectMetricSamples();
+        // The wait time statistics are reset after each collection
+        assertEquals(0, countSamples(samples, ExecutionAdmissionController.EXECUTION_ADMISSION_WAIT_TIME_METRIC, "SCHEDULED"));
+        assertEquals(1, countSamples(samples, ExecutionAdmissionController.EXECUTION_ADMISSION_WAIT_TIME_METRIC, "BULK"));
+        assertEquals(0, getSampleValue(samples, ExecutionAdmissionController.EXECUTION_ADMISSION_QUEUE_METRIC, "BULK"));
+    }
+
+    /**
+     * Simulates a burst of CI executions and a bulk restart submitted while monitoring executions are scheduled at a
+     * regular interval, and compares the wait times with a controller admitting all the executions in FIFO order
+     */
+    @Category(PerformanceTest.class)
+    @Test
+    public void benchmarkBurstySubmission() throws Exception {
+        int slots = 8;
+        ExecutionAdmissionController fifo = newController(slots, 1000, 0, 0, () -> true);
+        Map<String, LongAdder[]> fifoStatistics = simulateBurst(fifo, slots, false);
+        ExecutionAdmissionController prioritized = newController(slots, 1000, 0, 0, () -> true);
+        Map<String, LongAdder[]> prioritizedStatistics = simulateBurst(prioritized, slots, true);
+
+        long fifoMonitoringWait = averageWaitMs(fifoStatistics.get("monitoring"));
+        long prioritizedMonitoringWait = averageWaitMs(prioritizedStatistics.get("monitoring"));
+        assertTrue(prioritizedMonitoringWait < fifoMonitoringWait);
+        // Within the same priority, the small project isn't starved by the burst of the CI project
+        assertTrue(averageWaitMs(prioritizedStatistics.get("team")) < averageWaitMs(prioritizedStatistics.get("ci")));
+    }
+
+    private Map<String, LongAdder[]> simulateBurst(ExecutionAdmissionController controller, int slots, boolean prioritized) throws Exception {
+        int executionDurationMs = 10;
+        Map<String, LongAdder[]> statistics = new ConcurrentHashMap<>();
+        CountDownLatch executions = new CountDownLatch(440);
+        long start = System.nanoTime();
+        // Burst of CI executions and bulk restart
+        for (int i = 0; i < 200; i++) {
+            simulateExecution(controller, "ci", ExecutionPriority.INTERACTIVE, executionDurationMs, statistics, executions);
+            simulateExecution(controller, "bulk", prioritized ? ExecutionPriority.BULK : ExecutionPriority.INTERACTIVE, executionDurationMs, statistics, executions);
+        }
+        // Regular monitoring executions and ad-hoc executions of a small project during the burst
+        for (int i = 0; i < 20; i++) {
+            simulateExecution(controller, "monitoring", prioritized ? ExecutionPriority.SCHEDULED : ExecutionPriority.INTERACTIVE, executionDurationMs, statistics, executions);
+            simulateExecution(controller, "team", ExecutionPriority.INTERACTIVE, executionDurationMs, statistics, executions);
+            Thread.sleep(25);
+        }
+        assertTrue(executions.await(60, TimeUnit.SECONDS));
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long executionCount = statistics.values().stream().mapToLong(s -> s[0].sum()).sum();
+        logger.info("{} admission: {} executions in {}ms ({} executions/s, ideal {} executions/s). Average wait time: monitoring {}ms, team {}ms, ci {}ms, bulk {}ms",
+            prioritized ? "Prioritized" : "FIFO", executionCount, durationMs, executionCount * 1000 / durationMs, slots * 1000 / executionDurationMs,
+            averageWaitMs(statistics.get("monitoring")), averageWaitMs(statistics.get("team")), averageWaitMs(statistics.get("ci")), averageWaitMs(statistics.get("bulk")));
+        return statistics;
+    }
+
+    private void simulateExecution(ExecutionAdmissionController controller, String partition, ExecutionPriority priority, int durationMs,
+                                   Map<String, LongAdder[]> statistics, CountDownLatch executions) {
+        long start = System.nanoTime();
+        controller.submit(partition, priority, partition, () -> {
+            LongAdder[] partitionStatistics = statistics.computeIfAbsent(partition, k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+            partitionStatistics[0].increment();
+            partitionStatistics[1].add(System.nanoTime() - start);
+            try {
+                Thread.sleep(durationMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executions.countDown();
+            }
+        }, e -> executions.countDown());
+    }
+
+    private static long averageWaitMs(LongAdder[] statistics) {
+        return TimeUnit.NANOSECONDS.toMillis(statistics[1].sum() / statistics[0].sum());
+    }
+
+    private ExecutionAdmissionController newController(int maxConcurrentExecutions, int maxQueuedExecutions, int maxConcurrentExecutionsPerPartition,
+                                                       long agingNanos, BooleanSupplier resourcesAvailable) {
+        ExecutionAdmissionController controller = new ExecutionAdmissionController(maxConcurrentExecutions, maxQueuedExecutions, "project",
+            maxConcurrentExecutionsPerPartition, agingNanos, resourcesAvailable);
+        controllers.add(controller);
+        return controller;
+    }
+
+    /**
+     * Submits an execution which runs until {@link #end(String)} is called
+     */
+    private void submit(ExecutionAdmissionController controller, String executionId, ExecutionPriority priority, String partition) {
+        CountDownLatch running = new CountDownLatch(1);
+        controller.submit(executionId, priority, partition, () -> {
+            admittedExecutions.add(executionId);
+            runningExecutions.put(executionId, running);
+            try {
+                running.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, e -> rejectedExecutions.add(executionId));
+    }
+
+    private void submitAndWaitForAdmission(ExecutionAdmissionController controller, String executionId, ExecutionPriority priority, String partition) throws InterruptedException {
+        int admitted = admittedExecutions.size();
+        submit(controller, executionId, priority, partition);
+        waitFor(() -> admittedExecutions.size() > admitted);
+    }
+
+    private void end(String executionId) throws InterruptedException {
+        waitFor(() -> runningExecutions.containsKey(executionId));
+        runningExecutions.get(executionId).countDown();
+    }
+
+    private void endAndWaitForAdmission(String executionId, int expectedAdmittedExecutions) throws InterruptedException {
+        end(executionId);
+        waitFor(() -> admittedExecutions.size() >= expectedAdmittedExecutions);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new RuntimeException("Timeout while waiting for the condition");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static long countSamples(List<ControllerMetricSample> samples, String metricType, String priority) {
+        return samples.stream().filter(s -> s.metricType.equals(metricType) &&
+            priority.equals(s.getEffectiveLabels().get("priority"))).count();
+    }
+
+    private static long getSampleValue(List<ControllerMetricSample> samples, String metricType, String priority) {
+        return (long) samples.stream().filter(s -> s.metricType.equals(metricType) &&
+            priority.equals(s.getEffectiveLabels().get("priority"))).findFirst().orElseThrow().sample.getLast();
+    }
+}
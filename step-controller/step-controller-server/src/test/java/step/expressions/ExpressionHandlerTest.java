@@ -18,24 +18,32 @@
  ******************************************************************************/
 package step.expressions;
 
+import ch.exense.commons.test.categories.PerformanceTest;
+import groovy.lang.Binding;
+import groovy.lang.Closure;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
@@ -43,7 +51,7 @@ import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 
 public class ExpressionHandlerTest {
@@ -157,8 +165,7 @@ public class ExpressionHandlerTest {
         Map<String, Integer> expressionCompilationCount = new ConcurrentHashMap<>();
         // Configure spy to track calls
         doAnswer(invocation -> {
-            GroovyPoolKey key = invocation.getArgument(0);
-            String expression = key.getScript();
+            String expression = invocation.getArgument(0);
             int count = compilationCounter.incrementAndGet();
             expressionCompilationCount.merge(expression, 1, Integer::sum);
             logger.debug("COMPILATION #{} - Expression: '{}'", count,
@@ -168,9 +175,9 @@ public class ExpressionHandlerTest {
             return invocation.callRealMethod();
 
 
-        }).when(spyFactory).makeObject(any(GroovyPoolKey.class));
+        }).when(spyFactory).compile(anyString());
         Object o;
-        try (ExpressionHandler e = new ExpressionHandler(null, spyFactory, 2, 2, 2, 2, 1)) {
+        try (ExpressionHandler e = new ExpressionHandler(null, spyFactory, 2, 2, 1)) {
             o = e.evaluateGroovyExpression("1+1", null);
             assertEquals(2, o);
             assertEquals(1, compilationCounter.get());
@@ -322,6 +329,147 @@ public class ExpressionHandlerTest {
         benchmarkGroovyPoolConfig(10, 1000, 1000, 50, -1, expr1, expr1bis, expr2, expr2bis);
     }
 
+    @Test
+    public void testSimpleExpressions() {
+        try (ExpressionHandler e = new ExpressionHandler()) {
+            assertEquals(42, e.evaluateGroovyExpression("42", null));
+            assertEquals(-42, e.evaluateGroovyExpression("-42", null));
+            assertEquals(3000000000L, e.evaluateGroovyExpression("3000000000", null));
+            assertEquals(new java.math.BigDecimal("1.50"), e.evaluateGroovyExpression("1.50", null));
+            assertEquals(true, e.evaluateGroovyExpression("true", null));
+            assertEquals(null, e.evaluateGroovyExpression("null", null));
+            assertEquals("foo", e.evaluateGroovyExpression("'foo'", null));
+            assertEquals("foo", e.evaluateGroovyExpression(" \"foo\" ", null));
+            assertEquals("value", e.evaluateGroovyExpression("myVar", Map.of("myVar", "value")));
+            // Octal literal and GString are evaluated by groovy
+            assertEquals(8, e.evaluateGroovyExpression("010", null));
+            assertEquals("value", e.evaluateGroovyExpression("\"${myVar}\"", Map.of("myVar", "value")).toString());
+
+            Map<String, ExpressionMetrics> metrics = e.getExpressionMetrics();
+            assertEquals(1, metrics.get("42").getFastPathEvaluationCount());
+            assertEquals(0, metrics.get("42").getCompilationCount());
+            assertEquals(1, metrics.get("myVar").getFastPathEvaluationCount());
+            assertEquals(0, metrics.get("010").getFastPathEvaluationCount());
+            assertEquals(1, metrics.get("010").getCompilationCount());
+
+            // Undefined variables are still reported by groovy
+            Exception ex = assertThrows(RuntimeException.class, () -> e.evaluateGroovyExpression("undefinedVar", Map.of()));
+            assertTrue(ex.getMessage().contains("The property 'undefinedVar' could not be found"));
+        }
+        // Variables are resolved by groovy when a script base class is defined
+        try (ExpressionHandler e = new ExpressionHandler("step.expressions.GroovyFunctions")) {
+            assertEquals(new SimpleDateFormat("yyyyMMdd").format(new Date()), e.evaluateGroovyExpression("yyyyMMdd", Map.of()).toString());
+            assertEquals("value", e.evaluateGroovyExpression("myVar", Map.of("myVar", "value")));
+            assertEquals(0, e.getExpressionMetrics().get("myVar").getFastPathEvaluationCount());
+        }
+    }
+
+    @Test
+    public void testConcurrentEvaluations() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ExpressionHandler e = new ExpressionHandler()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int input = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        assertEquals(input + i, e.evaluateGroovyExpression("input + i", Map.of("input", input, "i", i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(1, e.getExpressionMetrics().get("input + i").getCompilationCount());
+            assertEquals(threads * 1000, e.getExpressionMetrics().get("input + i").getEvaluationCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNestedEvaluations() {
+        try (ExpressionHandler e = new ExpressionHandler()) {
+            Map<String, Object> bindings = new HashMap<>();
+            // The closure evaluates the same expression again while its script is running on this thread
+            bindings.put("f", new Closure<Object>(null) {
+                public Object doCall(Object x) {
+                    int n = (Integer) x;
+                    return n == 0 ? 0 : n + (Integer) e.evaluateGroovyExpression("f(x)", Map.of("f", bindings.get("f"), "x", n - 1));
+                }
+            });
+            bindings.put("x", 3);
+            assertEquals(6, e.evaluateGroovyExpression("f(x)", bindings));
+            // The script of the thread is released and reused by the next evaluation
+            bindings.put("x", 4);
+            assertEquals(10, e.evaluateGroovyExpression("f(x)", bindings));
+            assertEquals(1, e.getExpressionMetrics().get("f(x)").getCompilationCount());
+        }
+    }
+
+    /**
+     * Compares the throughput of the {@link ExpressionHandler} with the one of the legacy {@link GroovyPool}
+     * with 64 concurrent threads evaluating literals, variable references and expressions requiring groovy
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkExpressionCacheVsGroovyPool() throws Exception {
+        int threads = 64;
+        int iterationsPerThread = 2000;
+        Map<String, Object> bindings = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            bindings.put("param" + i, "value" + i);
+        }
+        List<String> expressions = List.of("\"string\"", "42", "param1", "param1 + \"string\"", "\"${param1} something ${param2}\"");
+
+        try (GroovyPool pool = new GroovyPool((String) null, 1000, 50, -1, null)) {
+            benchmarkEvaluator("groovy pool", poolEvaluator(pool), expressions, bindings, threads, iterationsPerThread);
+        }
+        try (ExpressionHandler handler = new ExpressionHandler()) {
+            benchmarkEvaluator("expression cache", handler::evaluateGroovyExpression, expressions, bindings, threads, iterationsPerThread);
+            handler.getExpressionMetrics().values().forEach(m -> logger.info("{}", m));
+        }
+    }
+
+    private static void benchmarkEvaluator(String name, BiFunction<String, Map<String, Object>, Object> evaluator, List<String> expressions,
+                                           Map<String, Object> bindings, int threads, int iterationsPerThread) throws Exception {
+        // Warm-up
+        runEvaluator(evaluator, expressions, bindings, threads, iterationsPerThread / 10);
+        long durationNs = runEvaluator(evaluator, expressions, bindings, threads, iterationsPerThread);
+        long evaluations = (long) threads * iterationsPerThread * expressions.size();
+        logger.info("{}: {} evaluations with {} threads in {}ms ({} evaluations/s)", name, evaluations, threads,
+            TimeUnit.NANOSECONDS.toMillis(durationNs), evaluations * 1_000_000_000L / durationNs);
+    }
+
+    private static long runEvaluator(BiFunction<String, Map<String, Object>, Object> evaluator, List<String> expressions,
+                                     Map<String, Object> bindings, int threads, int iterationsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < iterationsPerThread; i++) {
+                        for (String expression : expressions) {
+                            assertNotNull(evaluator.apply(expression, bindings));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long t1 = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - t1;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     @Ignore
     public void benchmarkPoolLegacyPoolExhausted() throws Exception {
@@ -423,8 +571,7 @@ public class ExpressionHandlerTest {
 
         // Configure spy to track calls
         doAnswer(invocation -> {
-            GroovyPoolKey key = invocation.getArgument(0);
-            String expression = key.getScript();
+            String expression = invocation.getArgument(0);
 
             int count = compilationCounter.incrementAndGet();
             expressionCompilationCount.merge(expression, 1, Integer::sum);
@@ -438,79 +585,117 @@ public class ExpressionHandlerTest {
             expressionCompilationDuration.merge(expression, System.nanoTime() - startCompilation, Long::sum);
             return o;
 
-        }).when(spyFactory).makeObject(any(GroovyPoolKey.class));
+        }).when(spyFactory).compile(anyString());
 
-        try (ExpressionHandler handler = new ExpressionHandler(null, spyFactory, null, poolSize, maxPoolPerKey, maxIdlePerKey, 1)) {
+        try (GroovyPool pool = new GroovyPool(spyFactory, poolSize, maxPoolPerKey, maxIdlePerKey, 1)) {
+            runBenchmarkPhases("groovy pool", poolEvaluator(pool), threadsPerExpression, iterationsPerThread, poolSize, maxPoolPerKey, maxIdlePerKey,
+                EXPRESSION_1, EXPRESSION_2, EXPRESSION_1_BIS, EXPRESSION_2_BIS, compilationCounter, expressionCompilationCount, expressionCompilationDuration);
+        }
 
-            logger.info("=== PHASE 1: Expression 1 dominates the pool ===");
+        //reset counts
+        compilationCounter.set(0);
+        expressionCompilationCount.clear();
+        expressionCompilationDuration.clear();
 
-            // Phase 1: Fill pool with Expression 1
-            ExecutorService executor1 = Executors.newFixedThreadPool(threadsPerExpression);
-            CountDownLatch phase1Latch = new CountDownLatch(threadsPerExpression);
-            AtomicLong expr1TotalTime = new AtomicLong(0);
+        // The expression cache is only bounded by its size, the limits per key don't apply
+        try (ExpressionHandler handler = new ExpressionHandler(null, spyFactory, null, poolSize, 1)) {
+            runBenchmarkPhases("expression cache", handler::evaluateGroovyExpression, threadsPerExpression, iterationsPerThread, poolSize, maxPoolPerKey, maxIdlePerKey,
+                EXPRESSION_1, EXPRESSION_2, EXPRESSION_1_BIS, EXPRESSION_2_BIS, compilationCounter, expressionCompilationCount, expressionCompilationDuration);
+        }
+    }
 
-            long phase1StartTime = System.nanoTime();
-            executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor1, handler, EXPRESSION_1, expr1TotalTime, phase1Latch);
+    private static void runBenchmarkPhases(String name, BiFunction<String, Map<String, Object>, Object> evaluator, int threadsPerExpression, int iterationsPerThread,
+                                           int poolSize, int maxPoolPerKey, int maxIdlePerKey, String EXPRESSION_1, String EXPRESSION_2, String EXPRESSION_1_BIS,
+                                           String EXPRESSION_2_BIS, AtomicInteger compilationCounter, Map<String, Integer> expressionCompilationCount,
+                                           Map<String, Long> expressionCompilationDuration) throws Exception {
 
-            // Wait for Phase 1 completion
-            assertTrue("Phase 1 should complete within 300 seconds", phase1Latch.await(300, TimeUnit.SECONDS));
-            executor1.shutdown();
+        logger.info("=== PHASE 1: Expression 1 dominates the pool ===");
 
-            double phase1DurationMs = (System.nanoTime() - phase1StartTime) / 1_000_000.0;
+        // Phase 1: Fill pool with Expression 1
+        ExecutorService executor1 = Executors.newFixedThreadPool(threadsPerExpression);
+        CountDownLatch phase1Latch = new CountDownLatch(threadsPerExpression);
+        AtomicLong expr1TotalTime = new AtomicLong(0);
 
-            String compilationStatsPhase1 = getCompilationDetails(expressionCompilationCount, expressionCompilationDuration);
+        long phase1StartTime = System.nanoTime();
+        executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor1, evaluator, EXPRESSION_1, expr1TotalTime, phase1Latch);
 
+        // Wait for Phase 1 completion
+        assertTrue("Phase 1 should complete within 300 seconds", phase1Latch.await(300, TimeUnit.SECONDS));
+        executor1.shutdown();
 
-            // Small pause to ensure all objects are returned to pool
-            Thread.sleep(100);
+        double phase1DurationMs = (System.nanoTime() - phase1StartTime) / 1_000_000.0;
 
-            //reset counts
-            expressionCompilationCount.clear();
-            expressionCompilationDuration.clear();
+        String compilationStatsPhase1 = getCompilationDetails(expressionCompilationCount, expressionCompilationDuration);
 
-            logger.info("=== PHASE 2: Expression 2 competes for pool space ===");
 
-            // Phase 2: Introduce Expression 2 while continuing Expression 1
-            ExecutorService executor2 = Executors.newFixedThreadPool(threadsPerExpression * 4);
-            CountDownLatch phase2Latch = new CountDownLatch(threadsPerExpression * 4);
+        // Small pause to ensure all objects are returned to pool
+        Thread.sleep(100);
 
-            AtomicLong expr1Phase2TotalTime = new AtomicLong(0);
-            AtomicLong expr1BisTotalTime = new AtomicLong(0);
-            AtomicLong expr2TotalTime = new AtomicLong(0);
-            AtomicLong expr2BisTotalTime = new AtomicLong(0);
+        //reset counts
+        expressionCompilationCount.clear();
+        expressionCompilationDuration.clear();
 
-            long phase2StartTime = System.nanoTime();
+        logger.info("=== PHASE 2: Expression 2 competes for pool space ===");
 
-            executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, handler, EXPRESSION_1, expr1Phase2TotalTime, phase2Latch);
-            executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, handler, EXPRESSION_1_BIS, expr1BisTotalTime, phase2Latch);
+        // Phase 2: Introduce Expression 2 while continuing Expression 1
+        ExecutorService executor2 = Executors.newFixedThreadPool(threadsPerExpression * 4);
+        CountDownLatch phase2Latch = new CountDownLatch(threadsPerExpression * 4);
 
-            executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, handler, EXPRESSION_2, expr2TotalTime, phase2Latch);
-            executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, handler, EXPRESSION_2_BIS, expr2BisTotalTime, phase2Latch);
+        AtomicLong expr1Phase2TotalTime = new AtomicLong(0);
+        AtomicLong expr1BisTotalTime = new AtomicLong(0);
+        AtomicLong expr2TotalTime = new AtomicLong(0);
+        AtomicLong expr2BisTotalTime = new AtomicLong(0);
 
-            // Wait for Phase 2 completion
-            assertTrue("Phase 2 should complete within 900 seconds", phase2Latch.await(900, TimeUnit.SECONDS));
-            executor2.shutdown();
+        long phase2StartTime = System.nanoTime();
 
-            double phase2DurationMs = (System.nanoTime() - phase2StartTime) / 1_000_000.0;
-            logger.info("Phase 2 completed - Duration {}ms", phase2DurationMs);
+        executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, evaluator, EXPRESSION_1, expr1Phase2TotalTime, phase2Latch);
+        executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, evaluator, EXPRESSION_1_BIS, expr1BisTotalTime, phase2Latch);
 
-            String compilationStatsPhase2 = getCompilationDetails(expressionCompilationCount, expressionCompilationDuration);
-            // Results Analysis
+        executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, evaluator, EXPRESSION_2, expr2TotalTime, phase2Latch);
+        executeExpressionInParaallel(threadsPerExpression, iterationsPerThread, executor2, evaluator, EXPRESSION_2_BIS, expr2BisTotalTime, phase2Latch);
 
-            // Performance comparison
-            double expr1Phase1Avg = expr1TotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
-            double expr1Phase2Avg = expr1Phase2TotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
-            double expr1BisPhase2Avg = expr1BisTotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
-            double expr2Avg = expr2TotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
-            double expr2BisAvg = expr2BisTotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
+        // Wait for Phase 2 completion
+        assertTrue("Phase 2 should complete within 900 seconds", phase2Latch.await(900, TimeUnit.SECONDS));
+        executor2.shutdown();
 
-            logger.info("<<<< Summary results Benchmark with poolSize {}, threadsPerExpression {}, iterationsPerThread {}, maxPoolPerKey {}, maxIdlePerKey {}}"
-                , poolSize, threadsPerExpression, iterationsPerThread, maxPoolPerKey, maxIdlePerKey);
-            logger.info("Performance compilations phase 1: {}", compilationStatsPhase1);
-            logger.info("Performance compilations phase 2: {}", compilationStatsPhase2);
-            logger.info("Performance - Total compilations {}, Phase1 {}ms, Phase2 {}ms, Expr1 Phase1: {}ms, Expr1 Phase2: {}ms, Expr1Bis: {}ms, Expr2: {}ms, Expr2Bis: {}ms",
-                compilationCounter.get(), phase1DurationMs, phase2DurationMs, expr1Phase1Avg, expr1Phase2Avg, expr1BisPhase2Avg, expr2Avg, expr2BisAvg);
-        }
+        double phase2DurationMs = (System.nanoTime() - phase2StartTime) / 1_000_000.0;
+        logger.info("Phase 2 completed - Duration {}ms", phase2DurationMs);
+
+        String compilationStatsPhase2 = getCompilationDetails(expressionCompilationCount, expressionCompilationDuration);
+        // Results Analysis
+
+        // Performance comparison
+        double expr1Phase1Avg = expr1TotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
+        double expr1Phase2Avg = expr1Phase2TotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
+        double expr1BisPhase2Avg = expr1BisTotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
+        double expr2Avg = expr2TotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
+        double expr2BisAvg = expr2BisTotalTime.get() / (double) threadsPerExpression / iterationsPerThread / 1_000_000.0;
+
+        logger.info("<<<< Summary results Benchmark of {} with poolSize {}, threadsPerExpression {}, iterationsPerThread {}, maxPoolPerKey {}, maxIdlePerKey {}}"
+            , name, poolSize, threadsPerExpression, iterationsPerThread, maxPoolPerKey, maxIdlePerKey);
+        logger.info("Performance compilations phase 1: {}", compilationStatsPhase1);
+        logger.info("Performance compilations phase 2: {}", compilationStatsPhase2);
+        logger.info("Performance - Total compilations {}, Phase1 {}ms, Phase2 {}ms, Expr1 Phase1: {}ms, Expr1 Phase2: {}ms, Expr1Bis: {}ms, Expr2: {}ms, Expr2Bis: {}ms",
+            compilationCounter.get(), phase1DurationMs, phase2DurationMs, expr1Phase1Avg, expr1Phase2Avg, expr1BisPhase2Avg, expr2Avg, expr2BisAvg);
+    }
+
+    private static BiFunction<String, Map<String, Object>, Object> poolEvaluator(GroovyPool pool) {
+        return (expression, bindings) -> {
+            try {
+                GroovyPoolEntry entry = pool.borrowShell(expression);
+                try {
+                    Binding binding = new Binding();
+                    bindings.forEach(binding::setVariable);
+                    entry.getScript().setBinding(binding);
+                    return entry.getScript().run();
+                } finally {
+                    entry.getScript().setBinding(new Binding());
+                    pool.returnShell(entry);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
     }
 
     private static String getCompilationDetails(Map<String, Integer> expressionCompilationCount, Map<String, Long> expressionCompilationDuration) {
@@ -521,14 +706,14 @@ public class ExpressionHandlerTest {
         return stringBuffer.toString();
     }
 
-    private static void executeExpressionInParaallel(int threadsPerExpression, int iterationsPerThread, ExecutorService executor1, ExpressionHandler handler, String EXPRESSION_1, AtomicLong expr1TotalTime, CountDownLatch phase1Latch) {
+    private static void executeExpressionInParaallel(int threadsPerExpression, int iterationsPerThread, ExecutorService executor1, BiFunction<String, Map<String, Object>, Object> evaluator, String EXPRESSION_1, AtomicLong expr1TotalTime, CountDownLatch phase1Latch) {
         for (int i = 0; i < threadsPerExpression; i++) {
             final int input = i;
             executor1.submit(() -> {
                 try {
                     for (int j = 0; j < iterationsPerThread; j++) {
                         long startTime = System.nanoTime();
-                        Object result = handler.evaluateGroovyExpression(EXPRESSION_1, Map.of("input", input, "param1", "paramValue", "param2", "param2Value"));
+                        Object result = evaluator.apply(EXPRESSION_1, Map.of("input", input, "param1", "paramValue", "param2", "param2Value"));
                         long duration = System.nanoTime() - startTime;
                         expr1TotalTime.addAndGet(duration);
                         assertNotNull(result);
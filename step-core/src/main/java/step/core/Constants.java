@@ -22,7 +22,7 @@ public interface Constants {
     String STEP_VERSION_STRING = "3.31.0";
     Version STEP_VERSION = new Version(STEP_VERSION_STRING);
 
-    String STEP_YAML_SCHEMA_VERSION_STRING = "1.2.0";
+    String STEP_YAML_SCHEMA_VERSION_STRING = "1.3.0";
     /**
      * This version is used for both the Yaml plan schema version and the automation package schema version (YamlPlanVersions.class, YamlAutomationPackageVersions.class)
      * It is used by extension for EE too (YamlReaderExtenderEE.class, YamlAutomationPackageVersionsEE.class).
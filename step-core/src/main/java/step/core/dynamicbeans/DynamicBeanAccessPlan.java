@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.dynamicbeans;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The compiled access plan of a bean class used by the {@link DynamicBeanResolver}.
+ * <p>
+ * The plan is built once per class. It lists the members to be evaluated (the {@link DynamicValue}s
+ * and the members annotated with {@link ContainsDynamicValues}) and the members to be copied when
+ * cloning a bean. The members are accessed through functions generated with the {@link LambdaMetafactory}
+ * or through {@link MethodHandle}s when no lambda can be generated, instead of reflective invocations.
+ */
+@SuppressWarnings("unchecked")
+final class DynamicBeanAccessPlan {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    enum MemberType {
+        // A member of type DynamicValue
+        DYNAMIC_VALUE,
+        // A member annotated with ContainsDynamicValues
+        CONTAINS_DYNAMIC_VALUES,
+        // Any other member. Copied by reference when cloning
+        PLAIN
+    }
+
+    static final class Member {
+
+        final String name;
+        final MemberType type;
+        final Function<Object, Object> getter;
+        // null if the member is read-only
+        final BiConsumer<Object, Object> setter;
+
+        Member(String name, MemberType type, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.name = name;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    final Class<?> beanClass;
+    final boolean isList;
+    // The members to be evaluated, in evaluation order: public fields first, then bean properties
+    final Member[] evaluatedMembers;
+    // The members to be copied when cloning
+    final Member[] clonedMembers;
+    // True if instances of this class may hold dynamic values (i.e. if the class has evaluated members)
+    final boolean mayContainDynamicValues;
+    private final Supplier<Object> constructor;
+
+    private DynamicBeanAccessPlan(Class<?> beanClass, Member[] evaluatedMembers, Member[] clonedMembers, Supplier<Object> constructor) {
+        this.beanClass = beanClass;
+        this.isList = List.class.isAssignableFrom(beanClass);
+        this.evaluatedMembers = evaluatedMembers;
+        this.clonedMembers = clonedMembers;
+        this.mayContainDynamicValues = isList || evaluatedMembers.length > 0;
+        this.constructor = constructor;
+    }
+
+    Object newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException("The class " + beanClass.getName() + " has no public default constructor");
+        }
+        return constructor.get();
+    }
+
+    static DynamicBeanAccessPlan build(Class<?> clazz) {
+        List<Member> evaluatedMembers = new ArrayList<>();
+        List<Member> clonedMembers = new ArrayList<>();
+
+        // Public fields
+        for (Field field : clazz.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                MemberType type;
+                if (field.getType().equals(DynamicValue.class)) {
+                    type = MemberType.DYNAMIC_VALUE;
+                } else if (field.isAnnotationPresent(ContainsDynamicValues.class)) {
+                    type = MemberType.CONTAINS_DYNAMIC_VALUES;
+                } else {
+                    type = MemberType.PLAIN;
+                }
+                Member member = new Member(field.getName(), type, fieldGetter(field), fieldSetter(field));
+                if (type != MemberType.PLAIN) {
+                    evaluatedMembers.add(member);
+                }
+                clonedMembers.add(member);
+            }
+        }
+
+        // Bean properties
+        if (!List.class.isAssignableFrom(clazz)) {
+            BeanInfo beanInfo;
+            try {
+                beanInfo = Introspector.getBeanInfo(clazz, Object.class);
+            } catch (IntrospectionException e) {
+                throw new RuntimeException("Error while introspecting class " + clazz.getName(), e);
+            }
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                Method readMethod = descriptor.getReadMethod();
+                if (readMethod != null) {
+                    MemberType type;
+                    if (DynamicValue.class.isAssignableFrom(readMethod.getReturnType())) {
+                        type = MemberType.DYNAMIC_VALUE;
+                    } else if (readMethod.isAnnotationPresent(ContainsDynamicValues.class)) {
+                        type = MemberType.CONTAINS_DYNAMIC_VALUES;
+                    } else {
+                        type = MemberType.PLAIN;
+                    }
+                    Method writeMethod = descriptor.getWriteMethod();
+                    Member member = new Member(descriptor.getName(), type, methodGetter(readMethod),
+                        writeMethod != null ? methodSetter(writeMethod) : null);
+                    if (type != MemberType.PLAIN) {
+                        evaluatedMembers.add(member);
+                    }
+                    if (member.setter != null) {
+                        clonedMembers.add(member);
+                    }
+                }
+            }
+        }
+
+        return new DynamicBeanAccessPlan(clazz, evaluatedMembers.toArray(new Member[0]), clonedMembers.toArray(new Member[0]), constructor(clazz));
+    }
+
+    private static Supplier<Object> constructor(Class<?> clazz) {
+        if (Modifier.isAbstract(clazz.getModifiers()) || clazz.isInterface() || clazz.isArray() || clazz.isPrimitive()) {
+            return null;
+        }
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflectConstructor(clazz.getConstructor());
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, LOOKUP);
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                MethodType.methodType(Object.class), handle, MethodType.methodType(clazz));
+            return (Supplier<Object>) callSite.getTarget().invokeExact();
+        } catch (Throwable e) {
+            MethodHandle genericHandle = handle.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return genericHandle.invokeExact();
+                } catch (Throwable t) {
+                    throw wrap(t);
+                }
+            };
+        }
+    }
+
+    private static Function<Object, Object> methodGetter(Method method) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return reflectiveGetter(method);
+        }
+        try {
+            Class<?> declaringClass = method.getDeclaringClass();
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, LOOKUP);
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+            return (Function<Object, Object>) callSite.getTarget().invokeExact();
+        } catch (Throwable e) {
+            return handleGetter(handle);
+        }
+    }
+
+    private static BiConsumer<Object, Object> methodSetter(Method method) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return reflectiveSetter(method);
+        }
+        try {
+            Class<?> declaringClass = method.getDeclaringClass();
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, LOOKUP);
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class), handle, handle.type().wrap().changeReturnType(void.class));
+            return (BiConsumer<Object, Object>) callSite.getTarget().invokeExact();
+        } catch (Throwable e) {
+            return handleSetter(handle);
+        }
+    }
+
+    private static Function<Object, Object> fieldGetter(Field field) {
+        try {
+            return handleGetter(LOOKUP.unreflectGetter(field));
+        } catch (IllegalAccessException e) {
+            return reflectiveGetter(field);
+        }
+    }
+
+    private static BiConsumer<Object, Object> fieldSetter(Field field) {
+        try {
+            return handleSetter(LOOKUP.unreflectSetter(field));
+        } catch (IllegalAccessException e) {
+            return (o, value) -> {
+                try {
+                    field.set(o, value);
+                } catch (IllegalAccessException ex) {
+                    throw wrap(ex);
+                }
+            };
+        }
+    }
+
+    private static Function<Object, Object> handleGetter(MethodHandle handle) {
+        MethodHandle genericHandle = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return o -> {
+            try {
+                return genericHandle.invokeExact(o);
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> handleSetter(MethodHandle handle) {
+        MethodHandle genericHandle = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (o, value) -> {
+            try {
+                genericHandle.invokeExact(o, value);
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        };
+    }
+
+    private static Function<Object, Object> reflectiveGetter(Method method) {
+        return o -> {
+            try {
+                return method.invoke(o);
+            } catch (Exception e) {
+                throw wrap(e);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> reflectiveSetter(Method method) {
+        return (o, value) -> {
+            try {
+                method.invoke(o, value);
+            } catch (Exception e) {
+                throw wrap(e);
+            }
+        };
+    }
+
+    private static Function<Object, Object> reflectiveGetter(Field field) {
+        return o -> {
+            try {
+                return field.get(o);
+            } catch (IllegalAccessException e) {
+                throw wrap(e);
+            }
+        };
+    }
+
+    private static RuntimeException wrap(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else {
+            return new RuntimeException(t);
+        }
+    }
+}
@@ -20,27 +20,32 @@ package step.core.dynamicbeans;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import step.core.artefacts.AbstractArtefact;
+import step.core.dynamicbeans.DynamicBeanAccessPlan.Member;
+import step.core.dynamicbeans.DynamicBeanAccessPlan.MemberType;
 
-import java.beans.BeanInfo;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Evaluates and clones the {@link DynamicValue}s of beans.
+ * <p>
+ * The members holding dynamic values are resolved once per class and accessed through
+ * a compiled {@link DynamicBeanAccessPlan}. Objects whose class doesn't declare any dynamic
+ * member (strings, numbers, plain beans...) are skipped by the evaluation and shared by the clones.
+ */
 @SuppressWarnings("rawtypes")
 public class DynamicBeanResolver {
 
     private static final Logger logger = LoggerFactory.getLogger(DynamicBeanResolver.class);
 
-    private final DynamicValueResolver valueResolver;
+    private static final ClassValue<DynamicBeanAccessPlan> accessPlans = new ClassValue<>() {
+        @Override
+        protected DynamicBeanAccessPlan computeValue(Class<?> type) {
+            return DynamicBeanAccessPlan.build(type);
+        }
+    };
 
-    private final Map<Class<?>, BeanInfo> beanInfoCache = new ConcurrentHashMap<>();
+    private final DynamicValueResolver valueResolver;
 
     public DynamicBeanResolver(DynamicValueResolver valueResolver) {
         super();
@@ -49,40 +54,14 @@ public class DynamicBeanResolver {
 
     public void evaluate(Object o, Map<String, Object> bindings) {
         if (o != null) {
-            Class<?> clazz = o.getClass();
-
             try {
-                BeanInfo beanInfo = beanInfoCache.get(clazz);
-                if (beanInfo == null) {
-                    beanInfo = Introspector.getBeanInfo(clazz, Object.class);
-                    beanInfoCache.put(clazz, beanInfo);
-                }
-
-                // Handle public fields
-                for (Field field : clazz.getFields()) {
-                    int modifiers = field.getModifiers();
-                    if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
-                        if (field.getType().equals(DynamicValue.class)) {
-                            Object value = field.get(o);
-                            evaluateDynamicValue(bindings, (DynamicValue<?>) value);
-                        } else if (field.isAnnotationPresent(ContainsDynamicValues.class)) {
-                            Object value = field.get(o);
-                            recursivelyEvaluateValue(bindings, value);
-                        }
-                    }
-                }
-
-                // Handle fields with getter / setter
-                for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
-                    Method method = descriptor.getReadMethod();
-                    if (method != null) {
-                        if (DynamicValue.class.isAssignableFrom(method.getReturnType())) {
-                            Object value = method.invoke(o);
-                            evaluateDynamicValue(bindings, (DynamicValue<?>) value);
-                        } else if (method.isAnnotationPresent(ContainsDynamicValues.class)) {
-                            Object value = method.invoke(o);
-                            recursivelyEvaluateValue(bindings, value);
-                        }
+                DynamicBeanAccessPlan plan = accessPlans.get(o.getClass());
+                for (Member member : plan.evaluatedMembers) {
+                    Object value = member.getter.apply(o);
+                    if (member.type == MemberType.DYNAMIC_VALUE) {
+                        evaluateDynamicValue(bindings, (DynamicValue<?>) value);
+                    } else {
+                        recursivelyEvaluateValue(bindings, value);
                     }
                 }
             } catch (Exception e) {
@@ -112,44 +91,7 @@ public class DynamicBeanResolver {
     public <T> T cloneDynamicValues(T o) {
         if (o != null) {
             try {
-                Class<?> clazz = o.getClass();
-                @SuppressWarnings("unchecked")
-                T out = (T) clazz.getConstructor().newInstance();
-                if (List.class.isAssignableFrom(clazz)) {
-                    List l = (List) o;
-                    List outList = (List) out;
-                    l.forEach(c -> outList.add(cloneDynamicValues(c)));
-                } else {
-                    BeanInfo beanInfo = beanInfoCache.get(clazz);
-                    if (beanInfo == null) {
-                        beanInfo = Introspector.getBeanInfo(clazz, Object.class);
-                        beanInfoCache.put(clazz, beanInfo);
-                    }
-
-                    // Handle public fields
-                    for (Field field : clazz.getFields()) {
-                        int modifiers = field.getModifiers();
-                        if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
-                            Object oldValue = field.get(o);
-                            Object newValue = cloneDynamicValue(field, oldValue);
-                            field.set(out, newValue);
-                        }
-                    }
-
-                    // Handle fields with getters / setters
-                    for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
-                        Method method = descriptor.getReadMethod();
-                        if (method != null) {
-                            Object oldValue = method.invoke(o);
-                            Object newValue = cloneDynamicValue(method, oldValue);
-                            Method writeMethod = descriptor.getWriteMethod();
-                            if (writeMethod != null) {
-                                descriptor.getWriteMethod().invoke(out, newValue);
-                            }
-                        }
-                    }
-                }
-                return out;
+                return cloneObject(o, accessPlans.get(o.getClass()));
             } catch (Exception e) {
                 throw new RuntimeException("Error while cloning object " + o, e);
             }
@@ -158,14 +100,37 @@ public class DynamicBeanResolver {
         }
     }
 
-    private Object cloneDynamicValue(AccessibleObject fieldOrMethod, Object oldValue) {
+    @SuppressWarnings("unchecked")
+    private <T> T cloneObject(T o, DynamicBeanAccessPlan plan) {
+        T out = (T) plan.newInstance();
+        if (plan.isList) {
+            List l = (List) o;
+            List outList = (List) out;
+            l.forEach(c -> outList.add(cloneDynamicValues(c)));
+        } else {
+            for (Member member : plan.clonedMembers) {
+                Object oldValue = member.getter.apply(o);
+                Object newValue = cloneDynamicValue(member, oldValue);
+                member.setter.accept(out, newValue);
+            }
+        }
+        return out;
+    }
+
+    private Object cloneDynamicValue(Member member, Object oldValue) {
         Object newValue;
         if (oldValue != null) {
             if (oldValue instanceof DynamicValue) {
                 DynamicValue<?> dynamicValue = (DynamicValue<?>) oldValue;
                 newValue = dynamicValue.cloneValue();
-            } else if (fieldOrMethod.isAnnotationPresent(ContainsDynamicValues.class)) {
-                newValue = cloneDynamicValues(oldValue);
+            } else if (member.type == MemberType.CONTAINS_DYNAMIC_VALUES) {
+                DynamicBeanAccessPlan plan = accessPlans.get(oldValue.getClass());
+                if (plan.mayContainDynamicValues) {
+                    newValue = cloneObject(oldValue, plan);
+                } else {
+                    // Static subtree: it cannot be modified by the evaluation and can be shared by the clones
+                    newValue = oldValue;
+                }
             } else {
                 newValue = oldValue;
             }
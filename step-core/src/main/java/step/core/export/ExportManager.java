@@ -18,25 +18,37 @@
  ******************************************************************************/
 package step.core.export;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
-import java.util.zip.ZipOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
 
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import step.core.accessors.AbstractIdentifiableObject;
 import step.core.accessors.DefaultJacksonMapperProvider;
-import ch.exense.commons.io.FileHelper;
 import step.core.entities.Entity;
 import step.core.entities.EntityConstants;
 import step.core.entities.EntityManager;
@@ -45,18 +57,44 @@ import step.core.objectenricher.ObjectPredicate;
 import step.resources.ResourceManager;
 import step.resources.ResourceRevision;
 
+/**
+ * Exports entities and their referenced resources to a zip archive.
+ * <p>
+ * The entities are serialized directly to the export.json entry of the archive as they are read from the accessors.
+ * The resource files are then compressed in parallel to temporary files and appended to the archive. Files that are
+ * already compressed are stored without compression. The heap used by an export thus doesn't depend on its size.
+ */
 public class ExportManager {
 
+    public static final String EXPORT_JSON_FILE_NAME = "export.json";
+
+    private static final Set<String> COMPRESSED_FILE_EXTENSIONS = Set.of("zip", "jar", "war", "ear", "sta", "gz", "tgz", "bz2",
+        "xz", "7z", "rar", "xlsx", "xlsm", "docx", "pptx", "png", "jpg", "jpeg", "gif", "mp3", "mp4");
+
     private static Logger logger = LoggerFactory.getLogger(ExportManager.class);
 
     private final ObjectMapper mapper = DefaultJacksonMapperProvider.getObjectMapper();
     private final EntityManager entityManager;
     private final ResourceManager resourceManager;
+    private final int resourcePackingThreads;
 
     public ExportManager(EntityManager entityManager, ResourceManager resourceManager) {
+        this(entityManager, resourceManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param entityManager          the entity manager
+     * @param resourceManager        the resource manager used to resolve the resource files
+     * @param resourcePackingThreads the number of threads used to compress the resource files
+     */
+    public ExportManager(EntityManager entityManager, ResourceManager resourceManager, int resourcePackingThreads) {
         super();
+        if (resourcePackingThreads <= 0) {
+            throw new IllegalArgumentException("The number of resource packing threads has to be higher than 0");
+        }
         this.entityManager = entityManager;
         this.resourceManager = resourceManager;
+        this.resourcePackingThreads = resourcePackingThreads;
     }
 
     public ExportResult exportById(ExportConfiguration exportConfig, String id)
@@ -119,52 +157,101 @@ public class ExportManager {
     private void export(ExportContext exportContext) throws FileNotFoundException, IOException {
         ExportConfiguration exportConfig = exportContext.getExportConfig();
         EntityReferencesMap references = exportContext.getReferences();
-        ByteArrayOutputStream jsonStream = new ByteArrayOutputStream();
-
-        // Export db content to JSON
-        try (JsonGenerator jGen = mapper.getFactory().createGenerator(jsonStream, JsonEncoding.UTF8)) {
-            // Header with metadata
-            // pretty print
-            jGen.useDefaultPrettyPrinter();
-            jGen.writeStartObject();
-            jGen.writeObjectField("metadata", exportConfig.getMetadata());
-            // start a json array for each entity type
-            references.getTypes().forEach(e -> {
-                try {
-                    jGen.writeArrayFieldStart(e);
-                    exportEntityByIds(exportContext, e, jGen);
-                    jGen.writeEndArray();
-                } catch (IOException e1) {
-                    throw new RuntimeException("Error while exporting entity of type " + e, e1);
-                }
-            });
-            jGen.writeEndObject();// end export object
-        }
-        try (ZipOutputStream zos = new ZipOutputStream(exportConfig.getOutputStream())) {
-            FileHelper.zipFile(zos, jsonStream, "export.json");
+
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(exportConfig.getOutputStream())) {
+            // Export db content to JSON
+            zos.putArchiveEntry(new ZipArchiveEntry(EXPORT_JSON_FILE_NAME));
+            try (JsonGenerator jGen = mapper.getFactory().createGenerator(zos, JsonEncoding.UTF8)) {
+                // The archive has to remain open after the JSON entry
+                jGen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // Header with metadata
+                // pretty print
+                jGen.useDefaultPrettyPrinter();
+                jGen.writeStartObject();
+                jGen.writeObjectField("metadata", exportConfig.getMetadata());
+                // start a json array for each entity type
+                references.getTypes().forEach(e -> {
+                    try {
+                        jGen.writeArrayFieldStart(e);
+                        exportEntityByIds(exportContext, e, jGen);
+                        jGen.writeEndArray();
+                    } catch (IOException e1) {
+                        throw new RuntimeException("Error while exporting entity of type " + e, e1);
+                    }
+                });
+                jGen.writeEndObject();// end export object
+            }
+            zos.closeArchiveEntry();
+
             // Export resources (files)
             List<String> resourceRef = references.getReferencesByType(EntityConstants.resourceRevisions);
             if (resourceRef != null && resourceRef.size() > 0) {
-                exportResources(zos, references);
+                exportResources(zos, references, resourceRef);
             }
         }
     }
 
-    private void exportResources(ZipOutputStream zos, EntityReferencesMap references) {
-        Optional.ofNullable(references.getReferencesByType(EntityConstants.resourceRevisions)).ifPresent(resourceRevisionsRef -> {
+    private void exportResources(ZipArchiveOutputStream zos, EntityReferencesMap references, List<String> resourceRevisionsRef) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(resourcePackingThreads,
+            new ThreadFactoryBuilder().setNameFormat("export-resource-packing-%d").setDaemon(true).build());
+        try {
+            // The resource files are compressed in parallel to temporary files by the creator and then appended to the archive
+            ParallelScatterZipCreator zipCreator = new ParallelScatterZipCreator(executorService);
+            Path rootPath = Paths.get(resourceManager.getResourcesRootPath()).toAbsolutePath().normalize();
             resourceRevisionsRef.forEach(revisionId -> {
                 ResourceRevision resourceRevision = resourceManager.getResourceRevision(revisionId);
                 String resourceId = resourceRevision.getId().toHexString();
                 File file = resourceManager.getResourceFile(resourceRevision.getResourceId(), resourceId).getResourceFile();
                 if (file.exists()) {
-                    FileHelper.zipFile(zos, file, resourceManager.getResourcesRootPath());
+                    addResourceFile(zipCreator, rootPath, file.toPath().toAbsolutePath().normalize());
                 } else {
                     references.addReferenceNotFoundWarning(
                         "Resource file with id '" + resourceId + "', revision '" + resourceRevisionsRef + "' and name" + file.getName() + "' is missing");
                 }
             });
-        });
+            zipCreator.writeTo(zos);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Exported " + resourceRevisionsRef.size() + " resource revisions. " + zipCreator.getStatisticsMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting the resources", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while exporting the resources", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
 
+    private void addResourceFile(ParallelScatterZipCreator zipCreator, Path rootPath, Path file) {
+        List<Path> files;
+        if (Files.isDirectory(file)) {
+            try (Stream<Path> paths = Files.walk(file)) {
+                files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error while listing the files of the resource folder " + file, e);
+            }
+        } else {
+            files = List.of(file);
+        }
+        files.forEach(path -> {
+            // The entries are relative to the resource root folder, as expected by the ImportManager
+            String entryName = rootPath.relativize(path).toString().replace(File.separatorChar, '/');
+            ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
+            entry.setMethod(isCompressed(entryName) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            entry.setTime(path.toFile().lastModified());
+            zipCreator.addArchiveEntry(entry, () -> {
+                try {
+                    return Files.newInputStream(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error while reading the resource file " + path, e);
+                }
+            });
+        });
+    }
 
+    private static boolean isCompressed(String fileName) {
+        int extensionIndex = fileName.lastIndexOf('.');
+        return extensionIndex >= 0 && COMPRESSED_FILE_EXTENSIONS.contains(fileName.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
     }
 }
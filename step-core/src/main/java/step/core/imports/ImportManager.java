@@ -38,16 +38,24 @@ import step.core.collections.Filters;
 import step.core.entities.Entity;
 import step.core.entities.EntityConstants;
 import step.core.entities.EntityManager;
+import step.core.export.ExportManager;
 import step.migration.MigrationManager;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ImportManager {
 
@@ -80,10 +88,10 @@ public class ImportManager {
             File archiveFile = importConfig.getFile();
             if (FileHelper.isArchive(archiveFile)) {
                 File workFolder = importContext.getWorkFolder();
-                FileHelper.unzip(archiveFile, workFolder);
-                File jsonFile = new File(workFolder.getPath() + "/export.json");
                 Version version = null;
-                try (JsonParser jParser = mapper.getFactory().createParser(jsonFile)) {
+                // The resource files are extracted to the work folder and the entities are read directly from the archive
+                try (ZipFile zipFile = new ZipFile(archiveFile);
+                     JsonParser jParser = mapper.getFactory().createParser(extractResourcesAndGetJsonEntry(zipFile, workFolder))) {
                     if (jParser.nextToken() == JsonToken.START_OBJECT && jParser.nextToken() == JsonToken.FIELD_NAME) {
                         String name = jParser.getCurrentName();
                         // All exported JSON files starting from version 3.14 starts with a "metadata"
@@ -128,6 +136,35 @@ public class ImportManager {
         }
     }
 
+    private InputStream extractResourcesAndGetJsonEntry(ZipFile zipFile, File workFolder) throws IOException {
+        Path workPath = workFolder.toPath().toAbsolutePath().normalize();
+        ZipEntry jsonEntry = null;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().equals(ExportManager.EXPORT_JSON_FILE_NAME)) {
+                jsonEntry = entry;
+            } else {
+                Path target = workPath.resolve(entry.getName()).normalize();
+                if (!target.startsWith(workPath)) {
+                    throw new IOException("Invalid archive entry " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                        Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+        if (jsonEntry == null) {
+            throw new FileNotFoundException("The archive doesn't contain any " + ExportManager.EXPORT_JSON_FILE_NAME);
+        }
+        return zipFile.getInputStream(jsonEntry);
+    }
+
     private void importEntitiesFromTemporaryCollection(ImportConfiguration importConfig, ImportContext importContext, List<String> entityNames) {
         // Perform migration tasks on temporary collections
         final CollectionFactory tempCollectionFactory = importContext.getTempCollectionFactory();
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.expressions;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An entry of the {@link GroovyExpressionCache}.
+ * <p>
+ * The Groovy script of the expression is compiled once and its class is shared by all threads.
+ * Each thread reuses its own instance of the compiled class, which is bound to the bindings of the
+ * evaluation for the duration of the evaluation only. Nested evaluations of the same expression on a
+ * thread get a new instance.
+ * Expressions recognized as {@link SimpleExpression} are never compiled unless they cannot be evaluated
+ * without Groovy (e.g. a variable that is not defined in the bindings).
+ */
+class CachedExpression {
+
+    private final String expression;
+    private final GroovyPoolFactory factory;
+    private final SimpleExpression simpleExpression;
+
+    private volatile Class<? extends Script> scriptClass;
+    private final ThreadLocal<ThreadScript> threadScripts = new ThreadLocal<>();
+
+    private final LongAdder evaluationCount = new LongAdder();
+    private final LongAdder fastPathEvaluationCount = new LongAdder();
+    private final LongAdder evaluationDurationNanos = new LongAdder();
+    private final LongAdder compilationCount = new LongAdder();
+
+    CachedExpression(String expression, GroovyPoolFactory factory) {
+        this.expression = expression;
+        this.factory = factory;
+        this.simpleExpression = SimpleExpression.parse(expression);
+    }
+
+    String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return the {@link SimpleExpression} of this expression or null if it has to be evaluated with Groovy
+     */
+    SimpleExpression getSimpleExpression() {
+        return simpleExpression;
+    }
+
+    /**
+     * Binds the script instance of the current thread to the bindings of an evaluation. The script is compiled
+     * on first use. The script has to be released with {@link #releaseScript(Script)} after the evaluation.
+     *
+     * @param binding the binding of the evaluation
+     * @return the script instance
+     */
+    Script acquireScript(Binding binding) {
+        ThreadScript threadScript = threadScripts.get();
+        if (threadScript == null) {
+            threadScript = new ThreadScript(InvokerHelper.createScript(getScriptClass(), binding));
+            threadScripts.set(threadScript);
+        } else if (threadScript.inUse) {
+            // Nested evaluation of the same expression on this thread
+            return InvokerHelper.createScript(getScriptClass(), binding);
+        } else {
+            threadScript.script.setBinding(binding);
+        }
+        threadScript.inUse = true;
+        return threadScript.script;
+    }
+
+    /**
+     * Releases a script acquired with {@link #acquireScript(Binding)} and detaches it from the bindings of the evaluation
+     *
+     * @param script the script instance
+     */
+    void releaseScript(Script script) {
+        ThreadScript threadScript = threadScripts.get();
+        if (threadScript != null && threadScript.script == script) {
+            script.setBinding(new Binding());
+            threadScript.inUse = false;
+        }
+    }
+
+    private Class<? extends Script> getScriptClass() {
+        Class<? extends Script> clazz = scriptClass;
+        if (clazz == null) {
+            synchronized (this) {
+                clazz = scriptClass;
+                if (clazz == null) {
+                    compilationCount.increment();
+                    clazz = factory.compile(expression);
+                    scriptClass = clazz;
+                }
+            }
+        }
+        return clazz;
+    }
+
+    void recordEvaluation(long durationNanos, boolean fastPath) {
+        evaluationCount.increment();
+        evaluationDurationNanos.add(durationNanos);
+        if (fastPath) {
+            fastPathEvaluationCount.increment();
+        }
+    }
+
+    ExpressionMetrics getMetrics() {
+        return new ExpressionMetrics(expression, evaluationCount.sum(), fastPathEvaluationCount.sum(),
+            evaluationDurationNanos.sum() / 1_000_000, compilationCount.sum());
+    }
+
+    private static class ThreadScript {
+
+        private final Script script;
+        private boolean inUse;
+
+        private ThreadScript(Script script) {
+            this.script = script;
+        }
+    }
+}
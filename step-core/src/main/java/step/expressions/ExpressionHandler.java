@@ -19,7 +19,7 @@
 package step.expressions;
 
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import groovy.lang.*;
 import org.codehaus.groovy.control.CompilationFailedException;
@@ -32,7 +32,11 @@ public class ExpressionHandler implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(ExpressionHandler.class);
 
-    private final GroovyPool groovyPool;
+    private static final Object UNRESOLVED = new Object();
+
+    public static final int DEFAULT_CACHE_MAX_SIZE = 1000;
+
+    private final GroovyExpressionCache expressionCache;
 
     private final Integer executionTimeWarningTreshold;
 
@@ -43,19 +47,33 @@ public class ExpressionHandler implements AutoCloseable {
     }
 
     public ExpressionHandler(String scriptBaseClass) {
-        this(scriptBaseClass, null, 1000, 8, -1, null);
+        this(scriptBaseClass, null, DEFAULT_CACHE_MAX_SIZE, null);
     }
 
+    /**
+     * @param scriptBaseClass              the base class of the groovy scripts. May be null
+     * @param executionTimeWarningTreshold the duration in ms above which the evaluation of an expression is reported as warning. May be null
+     * @param cacheMaxSize                 the maximum number of compiled expressions kept in cache
+     * @param monitoringIntervalSeconds    the interval at which the usage of the cache is reported. May be null
+     */
+    public ExpressionHandler(String scriptBaseClass, Integer executionTimeWarningTreshold, int cacheMaxSize, Integer monitoringIntervalSeconds) {
+        this(scriptBaseClass, null, executionTimeWarningTreshold, cacheMaxSize, monitoringIntervalSeconds);
+    }
+
+    /**
+     * @deprecated the compiled expressions aren't pooled anymore. Use {@link #ExpressionHandler(String, Integer, int, Integer)}
+     */
+    @Deprecated
     public ExpressionHandler(String scriptBaseClass, Integer executionTimeWarningTreshold, int poolMaxTotal, int poolMaxTotalPerKey, int poolMaxIdlePerKey, Integer monitoringIntervalSeconds) {
-        this(scriptBaseClass, null, executionTimeWarningTreshold, poolMaxTotal, poolMaxTotalPerKey, poolMaxIdlePerKey, monitoringIntervalSeconds);
+        this(scriptBaseClass, executionTimeWarningTreshold, poolMaxTotal, monitoringIntervalSeconds);
     }
 
     // Only used directly to pass a custom groovyPoolFactory in Junit test
-    protected ExpressionHandler(String scriptBaseClass, GroovyPoolFactory groovyPoolFactory, Integer executionTimeWarningTreshold, int poolMaxTotal, int poolMaxTotalPerKey, int poolMaxIdlePerKey, Integer monitoringIntervalSeconds) {
+    protected ExpressionHandler(String scriptBaseClass, GroovyPoolFactory groovyPoolFactory, Integer executionTimeWarningTreshold, int cacheMaxSize, Integer monitoringIntervalSeconds) {
         super();
         this.scriptBaseClass = scriptBaseClass;
-        this.groovyPool = (groovyPoolFactory != null) ? new GroovyPool(groovyPoolFactory, poolMaxTotal, poolMaxTotalPerKey, poolMaxIdlePerKey, monitoringIntervalSeconds) :
-            new GroovyPool(scriptBaseClass, poolMaxTotal, poolMaxTotalPerKey, poolMaxIdlePerKey, monitoringIntervalSeconds);
+        this.expressionCache = new GroovyExpressionCache((groovyPoolFactory != null) ? groovyPoolFactory : new GroovyPoolFactory(scriptBaseClass),
+            cacheMaxSize, monitoringIntervalSeconds);
         this.executionTimeWarningTreshold = executionTimeWarningTreshold;
     }
 
@@ -87,37 +105,22 @@ public class ExpressionHandler implements AutoCloseable {
                 // Set the protection context
                 ProtectionContext.set(canAccessProtectedValue);
 
-                Binding binding = new Binding();
-                if (bindings != null) {
-                    for (Entry<String, Object> varEntry : bindings.entrySet()) {
-                        String key = varEntry.getKey();
-                        Object value = varEntry.getValue();
-                        if (value instanceof ProtectedVariable) {
-                            if (canAccessProtectedValue) {
-                                binding.setVariable(key, new GroovyProtectedBinding((ProtectedVariable) value));
-                            } else {
-                                excludedProtectedBindingKeys.add(key);
-                            }
-                        } else {
-                            binding.setVariable(key, value);
-                        }
-                    }
+                CachedExpression cachedExpression = expressionCache.get(expression);
+
+                long t1 = System.nanoTime();
+                // Literals and variable references are evaluated without groovy
+                result = evaluateSimpleExpression(cachedExpression.getSimpleExpression(), bindings, scriptBaseClass == null);
+                if (result != UNRESOLVED) {
+                    cachedExpression.recordEvaluation(System.nanoTime() - t1, true);
+                    return result;
                 }
 
-                long t1 = System.currentTimeMillis();
+                // Resolve the bindings lazily instead of copying all of them to the script binding
+                Binding binding = new Binding(new ScriptBindingVariables(bindings, canAccessProtectedValue, excludedProtectedBindingKeys));
+                Script script = null;
                 try {
-                    GroovyPoolEntry entry = groovyPool.borrowShell(expression);
-                    try {
-                        Script script = entry.getScript();
-                        script.setBinding(binding);
-                        result = script.run();
-                    } finally {
-                        if (entry != null && entry.getScript() != null) {
-                            // Release bindings to avoid references to be kept by the pool
-                            entry.getScript().setBinding(new Binding());
-                        }
-                        groovyPool.returnShell(entry);
-                    }
+                    script = cachedExpression.acquireScript(binding);
+                    result = script.run();
                 } catch (MultipleCompilationErrorsException e) {
                     for (Object error : e.getErrorCollector().getErrors()) {
                         if (error instanceof SyntaxErrorMessage) {
@@ -129,8 +132,14 @@ public class ExpressionHandler implements AutoCloseable {
                         }
                     }
                     throw e;
+                } finally {
+                    if (script != null) {
+                        cachedExpression.releaseScript(script);
+                    }
                 }
-                long duration = System.currentTimeMillis() - t1;
+                long durationNanos = System.nanoTime() - t1;
+                cachedExpression.recordEvaluation(durationNanos, false);
+                long duration = TimeUnit.NANOSECONDS.toMillis(durationNanos);
 
                 Integer warnThreshold = executionTimeWarningTreshold;
                 if (warnThreshold != null && duration > warnThreshold) {
@@ -186,6 +195,33 @@ public class ExpressionHandler implements AutoCloseable {
         }
     }
 
+    /**
+     * @return the value of the {@link SimpleExpression} or {@link #UNRESOLVED} if the expression has to be evaluated with groovy
+     */
+    private static Object evaluateSimpleExpression(SimpleExpression simpleExpression, Map<String, Object> bindings, boolean resolveVariables) {
+        if (simpleExpression == null) {
+            return UNRESOLVED;
+        } else if (simpleExpression.isLiteral()) {
+            return simpleExpression.getValue();
+        } else if (resolveVariables && bindings != null) {
+            // Variables are only resolved without groovy if no script base class is defined, as the properties of the base class may shadow the bindings
+            String variableName = simpleExpression.getVariableName();
+            Object value = bindings.get(variableName);
+            // Protected variables require the groovy handling
+            if ((value != null || bindings.containsKey(variableName)) && !(value instanceof ProtectedVariable)) {
+                return value;
+            }
+        }
+        return UNRESOLVED;
+    }
+
+    /**
+     * @return the usage metrics of the expressions currently cached by this handler
+     */
+    public Map<String, ExpressionMetrics> getExpressionMetrics() {
+        return expressionCache.getMetrics();
+    }
+
     private static boolean isStringValue(Object value) {
         return value instanceof GString || value instanceof String;
     }
@@ -200,6 +236,6 @@ public class ExpressionHandler implements AutoCloseable {
 
     @Override
     public void close() {
-        groovyPool.close();
+        expressionCache.close();
     }
 }
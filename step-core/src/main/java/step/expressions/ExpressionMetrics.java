@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.expressions;
+
+/**
+ * Usage metrics of an expression cached by the {@link ExpressionHandler}
+ */
+public class ExpressionMetrics {
+
+    private final String expression;
+    private final long evaluationCount;
+    private final long fastPathEvaluationCount;
+    private final long totalDurationMs;
+    private final long compilationCount;
+
+    public ExpressionMetrics(String expression, long evaluationCount, long fastPathEvaluationCount, long totalDurationMs, long compilationCount) {
+        this.expression = expression;
+        this.evaluationCount = evaluationCount;
+        this.fastPathEvaluationCount = fastPathEvaluationCount;
+        this.totalDurationMs = totalDurationMs;
+        this.compilationCount = compilationCount;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return the total number of evaluations of the expression
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * @return the number of evaluations performed without Groovy
+     */
+    public long getFastPathEvaluationCount() {
+        return fastPathEvaluationCount;
+    }
+
+    public long getTotalDurationMs() {
+        return totalDurationMs;
+    }
+
+    /**
+     * @return the number of times the expression has been compiled
+     */
+    public long getCompilationCount() {
+        return compilationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "'" + expression + "': " + evaluationCount + " evaluations (" + fastPathEvaluationCount + " without groovy), "
+            + totalDurationMs + "ms, " + compilationCount + " compilations";
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.expressions;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Thread-safe cache of the expressions evaluated by the {@link ExpressionHandler}.
+ * <p>
+ * The compiled script classes are shared by all threads and evaluations don't have to borrow and return
+ * script instances. The cache is bounded: when the maximum number of expressions is exceeded, the least
+ * recently used expression is evicted.
+ */
+public class GroovyExpressionCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroovyExpressionCache.class);
+
+    private final int maxSize;
+    private final LoadingCache<String, CachedExpression> expressions;
+    private final LongAdder evictionCount = new LongAdder();
+    private ScheduledExecutorService scheduler = null;
+    private long lastEvictionCount;
+
+    /**
+     * @param factory                   the factory used to compile the expressions
+     * @param maxSize                   the maximum number of cached expressions
+     * @param monitoringIntervalSeconds the interval at which the cache usage is reported. null to disable monitoring
+     */
+    public GroovyExpressionCache(GroovyPoolFactory factory, int maxSize, Integer monitoringIntervalSeconds) {
+        this.maxSize = maxSize;
+        this.expressions = CacheBuilder.newBuilder()
+            // A single segment to evict the least recently used expression of the whole cache
+            .concurrencyLevel(1)
+            .maximumSize(maxSize)
+            .removalListener(notification -> {
+                if (notification.wasEvicted()) {
+                    evictionCount.increment();
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Evicted expression from cache: " + notification.getKey());
+                    }
+                }
+            })
+            .build(CacheLoader.from(expression -> new CachedExpression(expression, factory)));
+        if (monitoringIntervalSeconds != null) {
+            ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("groovy-expression-cache-monitor-%d")
+                .setDaemon(true)
+                .build();
+            scheduler = Executors.newScheduledThreadPool(1, threadFactory);
+            scheduler.scheduleAtFixedRate(this::checkCacheHealth, monitoringIntervalSeconds, monitoringIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    CachedExpression get(String expression) {
+        return expressions.getUnchecked(expression);
+    }
+
+    /**
+     * @return the usage metrics of the cached expressions by expression
+     */
+    public Map<String, ExpressionMetrics> getMetrics() {
+        return expressions.asMap().values().stream().collect(Collectors.toMap(CachedExpression::getExpression, CachedExpression::getMetrics));
+    }
+
+    /**
+     * @return the number of expressions evicted from the cache
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        return (int) expressions.size();
+    }
+
+    private void checkCacheHealth() {
+        try {
+            long evictions = evictionCount.sum();
+            long newEvictions = evictions - lastEvictionCount;
+            lastEvictionCount = evictions;
+            if (newEvictions > 0) {
+                logger.warn("Groovy expression cache capacity reached: {} expressions evicted since last check. You could increase the cache size in the step.properties (i.e. tec.expressions.cache.maxsize=" + maxSize * 2 + ")",
+                    newEvictions);
+            }
+            if (logger.isDebugEnabled()) {
+                List<ExpressionMetrics> hotExpressions = expressions.asMap().values().stream().map(CachedExpression::getMetrics)
+                    .sorted(Comparator.comparingLong(ExpressionMetrics::getTotalDurationMs).reversed()).limit(10).collect(Collectors.toList());
+                logger.debug("Groovy expression cache: {} expressions. Most expensive expressions: {}", expressions.size(), hotExpressions);
+            }
+        } catch (Exception e) {
+            logger.debug("Error monitoring expression cache", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        expressions.invalidateAll();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+}
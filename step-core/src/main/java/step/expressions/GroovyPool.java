@@ -30,6 +30,13 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Keyed pool of Groovy script instances.
+ *
+ * @deprecated the {@link ExpressionHandler} caches the compiled expressions in the {@link GroovyExpressionCache}
+ * and doesn't borrow script instances from a pool anymore. This class will be removed in a future release.
+ */
+@Deprecated
 public class GroovyPool implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(GroovyPool.class);
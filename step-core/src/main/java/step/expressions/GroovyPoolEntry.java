@@ -20,6 +20,10 @@ package step.expressions;
 
 import groovy.lang.Script;
 
+/**
+ * @deprecated see {@link GroovyPool}
+ */
+@Deprecated
 public class GroovyPoolEntry {
 
     GroovyPoolKey key;
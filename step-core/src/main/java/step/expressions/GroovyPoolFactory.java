@@ -18,6 +18,7 @@
  ******************************************************************************/
 package step.expressions;
 
+import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
@@ -25,9 +26,14 @@ import org.apache.commons.pool2.KeyedPooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Compiles the groovy expressions evaluated by the {@link ExpressionHandler}. The implementation of
+ * {@link KeyedPooledObjectFactory} is only kept for the deprecated {@link GroovyPool}.
+ */
 public class GroovyPoolFactory implements KeyedPooledObjectFactory<GroovyPoolKey, GroovyPoolEntry> {
 
     private static final Logger logger = LoggerFactory.getLogger(GroovyPoolFactory.class);
@@ -42,9 +48,12 @@ public class GroovyPoolFactory implements KeyedPooledObjectFactory<GroovyPoolKey
         }
     }
 
-    @Override
-    public PooledObject<GroovyPoolEntry> makeObject(GroovyPoolKey groovyPoolKey) throws Exception {
-        logger.debug("Creating new script: " + groovyPoolKey.getScript());
+    /**
+     * @param expression the groovy expression to be compiled
+     * @return the compiled script class of the expression
+     */
+    public Class<? extends Script> compile(String expression) {
+        logger.debug("Creating new script: " + expression);
 
         final GroovyShell shell;
         if (groovyCompilerConfiguration.getScriptBaseClass() != null) {
@@ -58,7 +67,12 @@ public class GroovyPoolFactory implements KeyedPooledObjectFactory<GroovyPoolKey
             shell = new GroovyShell(groovyCompilerConfiguration);
         }
 
-        Script script = shell.parse(groovyPoolKey.getScript());
+        return shell.parse(expression).getClass();
+    }
+
+    @Override
+    public PooledObject<GroovyPoolEntry> makeObject(GroovyPoolKey groovyPoolKey) throws Exception {
+        Script script = InvokerHelper.createScript(compile(groovyPoolKey.getScript()), new Binding());
 
         GroovyPoolEntry result = new GroovyPoolEntry(groovyPoolKey, script);
         return new DefaultPooledObject<>(result);
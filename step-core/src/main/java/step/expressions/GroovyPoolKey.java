@@ -19,6 +19,10 @@
 package step.expressions;
 
 
+/**
+ * @deprecated see {@link GroovyPool}
+ */
+@Deprecated
 public class GroovyPoolKey {
 
     private final String script;
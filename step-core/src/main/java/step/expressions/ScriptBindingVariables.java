@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.expressions;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Variables of a groovy {@link groovy.lang.Binding} resolved lazily from a map of bindings.
+ * <p>
+ * The source bindings are only read for the keys accessed by the script, which avoids copying
+ * all the bindings for each evaluation. The values of type {@link ProtectedVariable} are wrapped
+ * or hidden depending on the access granted to the expression. Variables set by the script are
+ * kept locally and never written to the source bindings.
+ */
+class ScriptBindingVariables extends AbstractMap<String, Object> {
+
+    private final Map<String, Object> source;
+    private final boolean canAccessProtectedValue;
+    private final Set<String> excludedProtectedBindingKeys;
+    // Values resolved from the source and variables set by the script
+    private final Map<String, Object> local = new HashMap<>();
+    // Keys removed by the script
+    private final Set<String> removed = new HashSet<>();
+
+    /**
+     * @param source                       the source bindings. May be null
+     * @param canAccessProtectedValue      whether protected values can be accessed by the expression
+     * @param excludedProtectedBindingKeys the set to which the keys of the protected bindings hidden to the expression are added
+     */
+    ScriptBindingVariables(Map<String, Object> source, boolean canAccessProtectedValue, Set<String> excludedProtectedBindingKeys) {
+        this.source = source != null ? source : Map.of();
+        this.canAccessProtectedValue = canAccessProtectedValue;
+        this.excludedProtectedBindingKeys = excludedProtectedBindingKeys;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = local.get(key);
+        if (value == null && !local.containsKey(key) && key instanceof String) {
+            value = resolve((String) key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (local.containsKey(key)) {
+            return true;
+        } else if (key instanceof String) {
+            resolve((String) key);
+            return local.containsKey(key);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = get(key);
+        local.put(key, value);
+        removed.remove(key);
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object previous = get(key);
+        local.remove(key);
+        // Hide the source value from the script
+        if (key instanceof String) {
+            removed.add((String) key);
+        }
+        return previous;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        // Iterating requires all the bindings to be resolved
+        source.keySet().forEach(this::containsKey);
+        return local.entrySet();
+    }
+
+    private Object resolve(String key) {
+        if (removed.contains(key)) {
+            return null;
+        }
+        Object value = source.get(key);
+        if (value == null && !source.containsKey(key)) {
+            return null;
+        }
+        if (value instanceof ProtectedVariable) {
+            if (canAccessProtectedValue) {
+                value = new GroovyProtectedBinding((ProtectedVariable) value);
+            } else {
+                excludedProtectedBindingKeys.add(key);
+                return null;
+            }
+        }
+        local.put(key, value);
+        return value;
+    }
+}
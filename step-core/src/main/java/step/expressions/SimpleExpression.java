@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.expressions;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Set;
+
+/**
+ * An expression that can be evaluated without Groovy: a literal or a reference to a single variable.
+ * <p>
+ * The recognized literals are integers, decimals, booleans, null and strings without escape
+ * sequences or interpolation. Their values are the ones Groovy would return for the same
+ * expressions (i.e. {@link Integer}, {@link Long} or {@link BigInteger} for integers depending
+ * on their magnitude, {@link BigDecimal} for decimals).
+ */
+final class SimpleExpression {
+
+    private static final Set<String> GROOVY_KEYWORDS = Set.of("as", "assert", "break", "case", "catch", "class", "const",
+        "continue", "def", "default", "do", "else", "enum", "extends", "false", "finally", "for", "goto", "if", "implements",
+        "import", "in", "instanceof", "interface", "new", "null", "package", "return", "super", "switch", "this", "throw",
+        "throws", "trait", "true", "try", "var", "while");
+
+    private final boolean literal;
+    private final Object value;
+    private final String variableName;
+
+    private SimpleExpression(boolean literal, Object value, String variableName) {
+        this.literal = literal;
+        this.value = value;
+        this.variableName = variableName;
+    }
+
+    boolean isLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return the value of the literal
+     */
+    Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return the name of the referenced variable or null if the expression is a literal
+     */
+    String getVariableName() {
+        return variableName;
+    }
+
+    /**
+     * @param expression the expression to be parsed
+     * @return the parsed {@link SimpleExpression} or null if the expression requires Groovy
+     */
+    static SimpleExpression parse(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        String e = expression.strip();
+        if (e.isEmpty()) {
+            return null;
+        }
+        switch (e) {
+            case "true":
+                return literal(Boolean.TRUE);
+            case "false":
+                return literal(Boolean.FALSE);
+            case "null":
+                return literal(null);
+        }
+        char first = e.charAt(0);
+        if (first == '\'' || first == '"') {
+            return parseString(e, first);
+        } else if (first == '-' || isDigit(first)) {
+            return parseNumber(e);
+        } else if (isIdentifier(e) && !GROOVY_KEYWORDS.contains(e)) {
+            return new SimpleExpression(false, null, e);
+        } else {
+            return null;
+        }
+    }
+
+    private static SimpleExpression literal(Object value) {
+        return new SimpleExpression(true, value, null);
+    }
+
+    private static SimpleExpression parseString(String e, char quote) {
+        if (e.length() < 2 || e.charAt(e.length() - 1) != quote) {
+            return null;
+        }
+        String content = e.substring(1, e.length() - 1);
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            // Escape sequences, multi-line strings and interpolated strings (GString) are left to Groovy
+            if (c == quote || c == '\\' || c == '\n' || c == '\r' || (quote == '"' && c == '$')) {
+                return null;
+            }
+        }
+        return literal(content);
+    }
+
+    private static SimpleExpression parseNumber(String e) {
+        boolean negative = e.charAt(0) == '-';
+        String digits = negative ? e.substring(1) : e;
+        int dot = digits.indexOf('.');
+        String integerPart = dot >= 0 ? digits.substring(0, dot) : digits;
+        String fractionPart = dot >= 0 ? digits.substring(dot + 1) : null;
+        // Leading zeros denote octal literals in Groovy
+        if (!isDigits(integerPart) || (integerPart.length() > 1 && integerPart.charAt(0) == '0')) {
+            return null;
+        }
+        Number value;
+        if (fractionPart != null) {
+            if (!isDigits(fractionPart)) {
+                return null;
+            }
+            BigDecimal decimal = new BigDecimal(digits);
+            value = negative ? decimal.negate() : decimal;
+        } else {
+            // Like Groovy, the type is determined by the magnitude before applying the sign
+            BigInteger integer = new BigInteger(integerPart);
+            if (integer.bitLength() < 32) {
+                value = negative ? -integer.intValue() : integer.intValue();
+            } else if (integer.bitLength() < 64) {
+                value = negative ? -integer.longValue() : integer.longValue();
+            } else {
+                value = negative ? integer.negate() : integer;
+            }
+        }
+        return literal(value);
+    }
+
+    private static boolean isDigits(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifier(String s) {
+        char first = s.charAt(0);
+        if (!(Character.isLetter(first) || first == '_') || first > 127) {
+            return false;
+        }
+        for (int i = 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c > 127 || !(Character.isLetterOrDigit(c) || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
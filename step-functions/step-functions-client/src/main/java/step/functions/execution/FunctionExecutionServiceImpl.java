@@ -20,7 +20,6 @@ package step.functions.execution;
 
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import step.core.AbstractStepContext;
@@ -29,8 +28,7 @@ import step.core.dynamicbeans.DynamicBeanResolver;
 import step.core.reports.Error;
 import step.core.reports.ErrorType;
 import step.functions.Function;
-import step.functions.handler.FunctionIOJakartaObjectMapperFactory;
-import step.functions.handler.FunctionIOJavaxObjectMapperFactory;
+import step.functions.handler.FunctionIOPayloadCodec;
 import step.functions.handler.FunctionMessageHandler;
 import step.functions.io.FunctionInput;
 import step.functions.io.Input;
@@ -70,8 +68,9 @@ public class FunctionExecutionServiceImpl implements FunctionExecutionService {
 
     private final FileVersionId functionHandlerPackage;
 
-    private final ObjectMapper jakartaMapper;
-    private final ObjectMapper javaxMapper;
+    private final FunctionIOPayloadCodec jakartaCodec;
+    private final FunctionIOPayloadCodec javaxCodec;
+    private volatile boolean binaryPayloadEnabled = false;
 
     private static final String KEYWORD_NAME_PROP = "$keywordName";
     private static final String KEYWORD_TIMEOUT_PROP = "$keywordTimeout";
@@ -84,8 +83,20 @@ public class FunctionExecutionServiceImpl implements FunctionExecutionService {
 
         functionHandlerPackage = registerClassloaderResource("step-functions-handler.jar");
 
-        jakartaMapper = FunctionIOJakartaObjectMapperFactory.createObjectMapper();
-        javaxMapper = FunctionIOJavaxObjectMapperFactory.createObjectMapper();
+        jakartaCodec = FunctionIOPayloadCodec.jakarta();
+        javaxCodec = FunctionIOPayloadCodec.javax();
+    }
+
+    /**
+     * @param binaryPayloadEnabled true to serialize the payload of the function calls in binary mode (Smile) instead of JSON.
+     *                             The responses are decoded according to their actual mode, see {@link FunctionIOPayloadCodec}
+     */
+    public void setBinaryPayloadEnabled(boolean binaryPayloadEnabled) {
+        this.binaryPayloadEnabled = binaryPayloadEnabled;
+    }
+
+    public boolean isBinaryPayloadEnabled() {
+        return binaryPayloadEnabled;
     }
 
     private FileVersionId registerClassloaderResource(String functionHandlerResourceName) throws FunctionExecutionServiceException {
@@ -229,7 +240,7 @@ public class FunctionExecutionServiceImpl implements FunctionExecutionService {
                 input.setFunctionCallTimeout(callTimeout - 100l);
 
                 // Serialize the input object
-                JsonNode node = jakartaMapper.valueToTree(input);
+                JsonNode node = jakartaCodec.encode(input, binaryPayloadEnabled);
 
                 String functionMessageHandler = FunctionMessageHandler.class.getName();
                 String messageHandler;
@@ -286,11 +297,11 @@ public class FunctionExecutionServiceImpl implements FunctionExecutionService {
                         output.setError(newAgentError("Unknown agent error: " + agentError));
                     }
                 } else {
-                    JavaType javaType = jakartaMapper.getTypeFactory().constructParametrizedType(Output.class, Output.class, outputClass);
+                    JavaType javaType = jakartaCodec.getJsonMapper().getTypeFactory().constructParametrizedType(Output.class, Output.class, outputClass);
                     if (outputClass.getName().equals("javax.json.JsonObject")) {
-                        output = javaxMapper.readValue(jakartaMapper.treeAsTokens(outputMessage.getPayload()), javaType);
+                        output = javaxCodec.decode(outputMessage.getPayload(), javaType);
                     } else {
-                        output = jakartaMapper.readValue(jakartaMapper.treeAsTokens(outputMessage.getPayload()), javaType);
+                        output = jakartaCodec.decode(outputMessage.getPayload(), javaType);
                     }
                 }
 
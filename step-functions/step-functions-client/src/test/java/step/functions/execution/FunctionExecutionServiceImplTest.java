@@ -42,6 +42,7 @@ import step.core.dynamicbeans.DynamicValueResolver;
 import step.expressions.ExpressionHandler;
 import step.functions.Function;
 import step.functions.handler.FunctionIOJavaxObjectMapperFactory;
+import step.functions.handler.FunctionIOPayloadCodec;
 import step.functions.io.FunctionInput;
 import step.functions.io.Input;
 import step.functions.io.Output;
@@ -244,6 +245,25 @@ public class FunctionExecutionServiceImplTest {
         Assert.assertEquals(1, output.getMeasures().size());
     }
 
+    @Test
+    public void testBinaryPayload() throws Exception {
+        JakartaOutputBuilder outputBuilder = new JakartaOutputBuilder();
+        outputBuilder.add("stringValue", "string");
+        outputBuilder.startMeasure("Measure1");
+        outputBuilder.stopMeasure();
+
+        OutputMessageBuilder outputMessageBuilder = new OutputMessageBuilder();
+        outputMessageBuilder.setPayload(FunctionIOPayloadCodec.jakarta().encode(outputBuilder.build(), true));
+
+        FunctionExecutionServiceImpl f = (FunctionExecutionServiceImpl) getFunctionExecutionServiceForGridClientTest(outputMessageBuilder.build(), null, null, null);
+        f.setBinaryPayloadEnabled(true);
+
+        Output<JsonObject> output = callFunctionWithDummyInput(f);
+        Assert.assertNull(output.getError());
+        Assert.assertEquals("string", output.getPayload().getString("stringValue"));
+        Assert.assertEquals(1, output.getMeasures().size());
+    }
+
     @Test
     public void testError() throws FunctionExecutionServiceException {
         JakartaOutputBuilder outputBuilder = new JakartaOutputBuilder();
@@ -469,8 +489,8 @@ public class FunctionExecutionServiceImplTest {
                 assert !properties.containsKey("inputProperty1");
                 assert !properties.containsKey("handlerProperty1");
 
-                ObjectMapper mapper = FunctionIOJavaxObjectMapperFactory.createObjectMapper();
-                Input<?> input = mapper.treeToValue(argument, Input.class);
+                FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+                Input<?> input = codec.decode(argument, codec.getJsonMapper().getTypeFactory().constructType(Input.class));
                 assert input.getFunctionCallTimeout() == functionCallTimeout - 100l;
                 assert input.getProperties().containsKey("inputProperty1");
                 assert input.getProperties().containsKey("handlerProperty1");
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.functions.handler;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import step.grid.io.Attachment;
+import step.grid.io.AttachmentHelper;
+
+/**
+ * {@link Attachment} decoded from a payload in binary mode (see {@link FunctionIOPayloadCodec}).
+ * It carries the raw content of the attachment which is only converted to its hexadecimal representation on demand.
+ */
+// Bound with the default bean deserializer, the content is set by the deserializer of the attachments in binary mode
+@JsonDeserialize(using = JsonDeserializer.None.class)
+public class BinaryAttachment extends Attachment {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private byte[] content;
+
+    public BinaryAttachment() {
+        super();
+    }
+
+    public BinaryAttachment(byte[] content) {
+        super();
+        this.content = content;
+    }
+
+    /**
+     * @return the raw content of the attachment
+     */
+    @JsonIgnore
+    public byte[] getContent() {
+        return content;
+    }
+
+    @Override
+    public String getHexContent() {
+        if (content == null) {
+            return null;
+        }
+        char[] hexContent = new char[content.length * 2];
+        for (int i = 0; i < content.length; i++) {
+            hexContent[i * 2] = HEX_DIGITS[(content[i] >> 4) & 0xF];
+            hexContent[i * 2 + 1] = HEX_DIGITS[content[i] & 0xF];
+        }
+        return new String(hexContent);
+    }
+
+    @Override
+    public void setHexContent(String hexContent) {
+        this.content = hexContent != null ? AttachmentHelper.hexStringToByteArray(hexContent) : null;
+    }
+}
@@ -19,6 +19,7 @@
 package step.functions.handler;
 
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsonp.JSONPModule;
 import org.glassfish.json.OutputJsonProviderImpl;
@@ -33,7 +34,15 @@ import step.functions.io.Output;
 public class FunctionIOJakartaObjectMapperFactory {
 
     public static ObjectMapper createObjectMapper() {
-        ObjectMapper mapper = new ObjectMapper();
+        return createObjectMapper(new JsonFactory());
+    }
+
+    /**
+     * @param factory the {@link JsonFactory} defining the data format of the mapper
+     * @return a new {@link ObjectMapper} for the provided data format
+     */
+    public static ObjectMapper createObjectMapper(JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
         // This mapper is using a customized JsonProvider which override some classes used during deserialization
         // to replace JsonStringImpl by our own mainly for overriding the toString method.
         // The background for this is that we are abusing the usage of JsonObject (in the sense that we do not control it)
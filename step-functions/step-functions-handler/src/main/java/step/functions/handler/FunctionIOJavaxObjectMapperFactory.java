@@ -19,6 +19,7 @@
 package step.functions.handler;
 
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr353.JSR353Module;
 import step.functions.io.Input;
@@ -32,7 +33,15 @@ import step.functions.io.Output;
 public class FunctionIOJavaxObjectMapperFactory {
 
     public static ObjectMapper createObjectMapper() {
-        ObjectMapper mapper = new ObjectMapper();
+        return createObjectMapper(new JsonFactory());
+    }
+
+    /**
+     * @param factory the {@link JsonFactory} defining the data format of the mapper
+     * @return a new {@link ObjectMapper} for the provided data format
+     */
+    public static ObjectMapper createObjectMapper(JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
         mapper.registerModule(new JSR353Module());
         return mapper;
     }
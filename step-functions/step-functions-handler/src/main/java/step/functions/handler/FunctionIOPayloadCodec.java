@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.functions.handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import step.functions.io.Input;
+import step.functions.io.Output;
+import step.grid.io.Attachment;
+import step.grid.io.AttachmentHelper;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Codec used to convert {@link Input} and {@link Output} instances from and to the payload of the grid messages.
+ * <p>
+ * In JSON mode, the objects are converted to a JSON tree which is then serialized by the grid. In binary mode,
+ * the objects are serialized directly to Smile without building any intermediate tree and the resulting bytes
+ * are wrapped into an envelope containing a single binary field (see {@link #BINARY_PAYLOAD_FIELD}). Both
+ * formats are always accepted when reading: the receiver detects the envelope and answers in the same mode.
+ * This allows the controller to fall back transparently to JSON if the other side doesn't support the binary mode.
+ * <p>
+ * In binary mode, the content of the {@link Attachment}s is written as raw bytes, which halves its size compared to
+ * the hexadecimal representation used in JSON. The attachments are decoded as {@link BinaryAttachment}s carrying
+ * these raw bytes.
+ */
+public class FunctionIOPayloadCodec {
+
+    public static final String BINARY_PAYLOAD_FIELD = "$smile";
+
+    private static final String HEX_CONTENT_FIELD = "hexContent";
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper binaryMapper;
+
+    /**
+     * @param mapperFactory the factory creating the mapper for a given data format.
+     *                      i.e. FunctionIOJavaxObjectMapperFactory::createObjectMapper
+     */
+    public FunctionIOPayloadCodec(Function<JsonFactory, ObjectMapper> mapperFactory) {
+        this.jsonMapper = mapperFactory.apply(new JsonFactory());
+        SmileFactory smileFactory = new SmileFactory();
+        // The keys of the maps (properties, measure data...) and their values are very repetitive within a payload
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        // The Smile content is itself transferred as binary: there is no need to restrict the binary values to 7 bits
+        smileFactory.disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT);
+        this.binaryMapper = mapperFactory.apply(smileFactory);
+        // The content of the attachments is transferred as raw bytes instead of its hexadecimal representation
+        this.binaryMapper.addMixIn(Attachment.class, AttachmentMixin.class);
+    }
+
+    public static FunctionIOPayloadCodec javax() {
+        return new FunctionIOPayloadCodec(FunctionIOJavaxObjectMapperFactory::createObjectMapper);
+    }
+
+    public static FunctionIOPayloadCodec jakarta() {
+        return new FunctionIOPayloadCodec(FunctionIOJakartaObjectMapperFactory::createObjectMapper);
+    }
+
+    /**
+     * @return the mapper used in JSON mode
+     */
+    public ObjectMapper getJsonMapper() {
+        return jsonMapper;
+    }
+
+    /**
+     * @param payload the payload of a grid message
+     * @return true if the payload has been encoded in binary mode
+     */
+    public static boolean isBinary(JsonNode payload) {
+        return payload != null && payload.isObject() && payload.size() == 1 && payload.has(BINARY_PAYLOAD_FIELD);
+    }
+
+    /**
+     * @param value  the object to be encoded
+     * @param binary true to encode the object in binary mode
+     * @return the payload to be set in the grid message
+     * @throws IOException
+     */
+    public ObjectNode encode(Object value, boolean binary) throws IOException {
+        if (binary) {
+            ObjectNode envelope = JsonNodeFactory.instance.objectNode();
+            envelope.put(BINARY_PAYLOAD_FIELD, binaryMapper.writeValueAsBytes(value));
+            return envelope;
+        } else {
+            return jsonMapper.valueToTree(value);
+        }
+    }
+
+    /**
+     * @param payload the payload of a grid message in JSON or binary mode
+     * @param type    the type of the object to be decoded
+     * @return the decoded object
+     * @throws IOException
+     */
+    public <T> T decode(JsonNode payload, JavaType type) throws IOException {
+        if (isBinary(payload)) {
+            // The binary field is a BinaryNode for local calls and a base64 TextNode once transferred by the grid
+            byte[] bytes = payload.get(BINARY_PAYLOAD_FIELD).binaryValue();
+            if (bytes == null) {
+                throw new IOException("Invalid binary payload: the field " + BINARY_PAYLOAD_FIELD + " doesn't contain binary data");
+            }
+            return binaryMapper.readValue(bytes, type);
+        } else {
+            return jsonMapper.readValue(jsonMapper.treeAsTokens(payload), type);
+        }
+    }
+
+    @JsonDeserialize(using = BinaryAttachmentDeserializer.class)
+    private abstract static class AttachmentMixin {
+
+        @JsonSerialize(using = HexContentSerializer.class)
+        abstract String getHexContent();
+    }
+
+    static class HexContentSerializer extends JsonSerializer<String> {
+
+        @Override
+        public void serialize(String hexContent, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeBinary(AttachmentHelper.hexStringToByteArray(hexContent));
+        }
+    }
+
+    static class BinaryAttachmentDeserializer extends JsonDeserializer<Attachment> {
+
+        @Override
+        public Attachment deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            ObjectNode node = p.readValueAsTree();
+            // The raw content is kept as is instead of being converted to its hexadecimal representation
+            JsonNode content = node.remove(HEX_CONTENT_FIELD);
+            BinaryAttachment attachment = new BinaryAttachment(content != null && !content.isNull() ? content.binaryValue() : null);
+            ObjectMapper mapper = (ObjectMapper) p.getCodec();
+            return mapper.readerForUpdating(attachment).readValue(node);
+        }
+    }
+}
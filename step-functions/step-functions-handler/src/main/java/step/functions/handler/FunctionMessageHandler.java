@@ -19,7 +19,6 @@
 package step.functions.handler;
 
 import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import step.core.reports.Measure;
 import step.core.reports.MeasurementsBuilder;
@@ -42,6 +41,7 @@ import step.livereporting.client.LiveReportingClient;
 import step.reporting.LiveReporting;
 
 import java.io.File;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Proxy;
 import java.net.URLClassLoader;
@@ -61,12 +61,16 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
     public static final String FUNCTION_HANDLER_KEY = "$functionhandler";
     public static final String FUNCTION_TYPE_KEY = "$functionType";
 
-    // Cached object mapper for message payload serialization
-    private final ObjectMapper mapper;
+    // Cached codec for message payload serialization
+    private final FunctionIOPayloadCodec payloadCodec;
 
     private ThreadPoolExecutor liveReportingExecutor;
     // This is actually a Jakarta WebSocketContainer, but instantiated dynamically in a separate class loader
     private final AtomicReference<Object> webSocketContainerRef = new AtomicReference<>();
+    // This is actually a LiveReportingTransports shared by all keyword calls, instantiated dynamically in a separate class loader
+    private final AtomicReference<Object> liveReportingTransportsRef = new AtomicReference<>();
+    private volatile Constructor<?> liveReportingClientConstructor;
+    private volatile boolean closed = false;
     private ApplicationContextBuilder applicationContextBuilder;
 
     public FunctionHandlerFactory functionHandlerFactory;
@@ -76,7 +80,7 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
     public FunctionMessageHandler() {
         super();
 
-        mapper = FunctionIOJavaxObjectMapperFactory.createObjectMapper();
+        payloadCodec = FunctionIOPayloadCodec.javax();
     }
 
     private int getFromAgentPropsOrDefault(String configKey, int defaultValue) {
@@ -145,9 +149,10 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
             AbstractFunctionHandler functionHandler = functionHandlerFactory.create(applicationContextBuilder.getCurrentContext().getClassLoader(),
                 handlerClass, token.getSession(), token.getTokenReservationSession(), mergedAgentProperties);
 
-            // Deserialize the Input from the message payload
-            JavaType javaType = mapper.getTypeFactory().constructParametricType(Input.class, functionHandler.getInputPayloadClass());
-            Input<?> input = mapper.readValue(mapper.treeAsTokens(inputMessage.getPayload()), javaType);
+            // Deserialize the Input from the message payload. The output is serialized in the same mode as the input
+            JavaType javaType = payloadCodec.getJsonMapper().getTypeFactory().constructParametricType(Input.class, functionHandler.getInputPayloadClass());
+            boolean binaryPayload = FunctionIOPayloadCodec.isBinary(inputMessage.getPayload());
+            Input<?> input = payloadCodec.decode(inputMessage.getPayload(), javaType);
 
             LiveReporting liveReporting = initializeLiveReporting(input.getProperties(), token.getTokenReservationSession());
             functionHandler.setLiveReporting(liveReporting);
@@ -170,7 +175,7 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
             addAdditionalMeasuresToOutput(output, measurementsBuilder.getMeasures());
 
             // Serialize the output
-            ObjectNode outputPayload = mapper.valueToTree(output);
+            ObjectNode outputPayload = payloadCodec.encode(output, binaryPayload);
 
             // Create and return the output message
             OutputMessageBuilder outputMessageBuilder = new OutputMessageBuilder();
@@ -195,6 +200,9 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
     }
 
     private LiveReporting initializeLiveReporting(Map<String, String> properties, TokenReservationSession tokenReservationSession) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Unable to initialize the live reporting: the function message handler has been closed");
+        }
 
         return runInContext(functionHandlerInitializerClassloader, () -> {
             // There's no easy way to do this in the AbstractFunctionHandler itself, because
@@ -202,11 +210,18 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
             // handle() method (which would then have to be implemented in all subclasses). So we do it here.
 
             // Implementation class along with its dependencies is explicitly loaded in a separate classloader
-            Class<?> liveReportingClientClass = Thread.currentThread().getContextClassLoader().loadClass("step.livereporting.client.RemoteLiveReportingClient");
-
-            // This method invocation will also populate the websocketContainer reference if it isn't set yet
-            Object liveReportingClient = liveReportingClientClass.getDeclaredConstructor(Map.class, Map.class, ExecutorService.class, AtomicReference.class)
-                .newInstance(properties, agentTokenServices.getAgentProperties(), liveReportingExecutor, webSocketContainerRef);
+            Constructor<?> constructor = getLiveReportingClientConstructor();
+            Class<?> liveReportingClientClass = constructor.getDeclaringClass();
+
+            // This method invocation will also populate the websocketContainer and liveReportingTransports references if they aren't set yet.
+            // The transports are shared by all keyword calls, the instantiation of the client doesn't create any connection or thread
+            Object liveReportingClient = constructor.newInstance(properties, agentTokenServices.getAgentProperties(), liveReportingExecutor,
+                webSocketContainerRef, liveReportingTransportsRef);
+            if (closed) {
+                // The handler has been closed concurrently: the transports it couldn't see yet have to be closed here
+                closeLiveReportingTransports();
+                throw new IllegalStateException("Unable to initialize the live reporting: the function message handler has been closed");
+            }
 
             // We still need an additional proxy object to force everything to run in the correct context,
             // classloader separation alone is not enough.
@@ -227,6 +242,27 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
         });
     }
 
+    private void closeLiveReportingTransports() throws Exception {
+        Object liveReportingTransports = liveReportingTransportsRef.getAndSet(null);
+        if (liveReportingTransports != null) {
+            // Sends the pending live reporting items and stops the transports within their own context class loader
+            runInContext(liveReportingTransports.getClass().getClassLoader(), () -> {
+                ((AutoCloseable) liveReportingTransports).close();
+                return null;
+            });
+        }
+    }
+
+    private Constructor<?> getLiveReportingClientConstructor() throws ClassNotFoundException, NoSuchMethodException {
+        Constructor<?> constructor = liveReportingClientConstructor;
+        if (constructor == null) {
+            Class<?> liveReportingClientClass = functionHandlerInitializerClassloader.loadClass("step.livereporting.client.RemoteLiveReportingClient");
+            constructor = liveReportingClientClass.getDeclaredConstructor(Map.class, Map.class, ExecutorService.class, AtomicReference.class, AtomicReference.class);
+            liveReportingClientConstructor = constructor;
+        }
+        return constructor;
+    }
+
     protected void addCustomTypeToOutputMeasures(List<Measure> outputMeasures) {
         if (outputMeasures != null) {
             outputMeasures.forEach(m -> {
@@ -270,6 +306,10 @@ public class FunctionMessageHandler extends AbstractMessageHandler {
 
     @Override
     public void close() throws Exception {
+        // Set before closing the transports so that no transports can be initialized lazily after close
+        closed = true;
+        closeLiveReportingTransports();
+
         Object webSocketContainer = webSocketContainerRef.getAndSet(null);
         if (webSocketContainer != null) {
             // The stop method of the websocket container has to be closed within its own context class loader
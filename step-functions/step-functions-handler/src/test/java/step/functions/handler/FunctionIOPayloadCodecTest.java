@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.functions.handler;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.reports.Measure;
+import step.functions.io.Input;
+import step.functions.io.Output;
+import step.grid.io.Attachment;
+import step.grid.io.AttachmentHelper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class FunctionIOPayloadCodecTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FunctionIOPayloadCodecTest.class);
+
+    // Used to simulate the serialization of the grid messages
+    private final ObjectMapper gridMapper = new ObjectMapper();
+
+    @Test
+    public void testInputRoundTrip() throws IOException {
+        FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+        JavaType type = codec.getJsonMapper().getTypeFactory().constructParametricType(Input.class, TestInput.class);
+        for (boolean binary : new boolean[]{false, true}) {
+            ObjectNode payload = codec.encode(newInput(), binary);
+            Assert.assertEquals(binary, FunctionIOPayloadCodec.isBinary(payload));
+
+            // Local call: the payload isn't serialized
+            assertInput(codec.decode(payload, type));
+            // Remote call: the payload is serialized to JSON and parsed by the grid
+            assertInput(codec.decode(transfer(payload), type));
+        }
+    }
+
+    @Test
+    public void testOutputRoundTrip() throws IOException {
+        FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+        JavaType type = codec.getJsonMapper().getTypeFactory().constructParametricType(Output.class, Map.class);
+        for (boolean binary : new boolean[]{false, true}) {
+            Output<Map<String, Object>> output = newOutput(10);
+            Output<Map<String, Object>> decoded = codec.decode(transfer(codec.encode(output, binary)), type);
+            Assert.assertEquals(output.getPayload(), decoded.getPayload());
+            Assert.assertEquals(10, decoded.getMeasures().size());
+            Assert.assertEquals("Measure9", decoded.getMeasures().get(9).getName());
+            Assert.assertEquals("value9", decoded.getMeasures().get(9).getData().get("key"));
+        }
+    }
+
+    @Test
+    public void testAttachments() throws IOException {
+        FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+        JavaType type = codec.getJsonMapper().getTypeFactory().constructParametricType(Output.class, Map.class);
+        byte[] content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        Output<Map<String, Object>> output = newOutput(1);
+        output.setAttachments(new ArrayList<>(List.of(AttachmentHelper.generateAttachmentFromByteArray(content, "content.bin"))));
+
+        Map<Boolean, Integer> bytesOnWire = new HashMap<>();
+        for (boolean binary : new boolean[]{false, true}) {
+            ObjectNode payload = codec.encode(output, binary);
+            bytesOnWire.put(binary, gridMapper.writeValueAsBytes(payload).length);
+            Output<Map<String, Object>> decoded = codec.decode(transfer(payload), type);
+            Attachment attachment = decoded.getAttachments().get(0);
+            Assert.assertEquals("content.bin", attachment.getName());
+            Assert.assertArrayEquals(content, AttachmentHelper.hexStringToByteArray(attachment.getHexContent()));
+            // In binary mode, the raw content is carried without conversion to hexadecimal
+            Assert.assertEquals(binary, attachment instanceof BinaryAttachment);
+            if (binary) {
+                Assert.assertArrayEquals(content, ((BinaryAttachment) attachment).getContent());
+            }
+        }
+        // Raw bytes encoded in base64 instead of the hexadecimal representation
+        Assert.assertTrue(bytesOnWire.get(true) < bytesOnWire.get(false) * 0.7);
+    }
+
+    @Test
+    public void testJakartaToJavax() throws IOException {
+        // The controller encodes the input with the jakarta mapper and the agent decodes it with the javax one
+        FunctionIOPayloadCodec jakarta = FunctionIOPayloadCodec.jakarta();
+        FunctionIOPayloadCodec javax = FunctionIOPayloadCodec.javax();
+        JavaType type = javax.getJsonMapper().getTypeFactory().constructParametricType(Input.class, TestInput.class);
+        assertInput(javax.decode(transfer(jakarta.encode(newInput(), true)), type));
+    }
+
+    @Test
+    public void testInvalidBinaryPayload() throws IOException {
+        FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+        ObjectNode payload = gridMapper.createObjectNode();
+        payload.put(FunctionIOPayloadCodec.BINARY_PAYLOAD_FIELD, 1);
+        JavaType type = codec.getJsonMapper().getTypeFactory().constructParametricType(Input.class, TestInput.class);
+        Assert.assertThrows(IOException.class, () -> codec.decode(payload, type));
+    }
+
+    /**
+     * Compares the bytes on the wire, the allocations and the latency of the JSON and binary modes for
+     * small, medium and large payloads. The round trip includes the serialization of the message payload
+     * performed by the grid.
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmark() throws IOException {
+        FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+        JavaType type = codec.getJsonMapper().getTypeFactory().constructParametricType(Output.class, Map.class);
+        for (int size : new int[]{1, 100, 10_000}) {
+            Output<Map<String, Object>> output = newOutput(size);
+            int iterations = Math.max(10, 10_000 / size);
+            for (boolean binary : new boolean[]{false, true}) {
+                // Warm-up
+                for (int i = 0; i < iterations; i++) {
+                    roundTrip(codec, output, binary, type);
+                }
+                long bytes = gridMapper.writeValueAsBytes(codec.encode(output, binary)).length;
+                long allocatedBefore = getAllocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    roundTrip(codec, output, binary, type);
+                }
+                long durationNanos = System.nanoTime() - start;
+                long allocated = getAllocatedBytes() - allocatedBefore;
+                logger.info("Payload with {} entries in {} mode: {} bytes on wire, {} bytes allocated/op, {} us/op", size,
+                    binary ? "binary" : "JSON", bytes, allocated >= 0 ? allocated / iterations : "n/a", durationNanos / 1000 / iterations);
+            }
+        }
+    }
+
+    private void roundTrip(FunctionIOPayloadCodec codec, Output<Map<String, Object>> output, boolean binary, JavaType type) throws IOException {
+        Output<Map<String, Object>> decoded = codec.decode(transfer(codec.encode(output, binary)), type);
+        Assert.assertEquals(output.getPayload().size(), decoded.getPayload().size());
+    }
+
+    private JsonNode transfer(JsonNode payload) throws IOException {
+        return gridMapper.readTree(gridMapper.writeValueAsBytes(payload));
+    }
+
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return -1;
+        }
+    }
+
+    private static Input<TestInput> newInput() {
+        Input<TestInput> input = new Input<>();
+        input.setFunction("MyKeyword");
+        input.setFunctionCallTimeout(1000L);
+        Map<String, String> properties = new HashMap<>();
+        properties.put("myProperty", "myValue");
+        input.setProperties(properties);
+        TestInput testInput = new TestInput();
+        testInput.setMessage("Hallo");
+        input.setPayload(testInput);
+        return input;
+    }
+
+    private static void assertInput(Input<TestInput> input) {
+        Assert.assertEquals("MyKeyword", input.getFunction());
+        Assert.assertEquals(1000L, (long) input.getFunctionCallTimeout());
+        Assert.assertEquals("myValue", input.getProperties().get("myProperty"));
+        Assert.assertEquals("Hallo", input.getPayload().getMessage());
+    }
+
+    private static Output<Map<String, Object>> newOutput(int size) {
+        Output<Map<String, Object>> output = new Output<>();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        List<Measure> measures = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            payload.put("key" + i, "value" + i);
+            Map<String, Object> data = new HashMap<>();
+            data.put("key", "value" + i);
+            data.put("type", "custom");
+            measures.add(new Measure("Measure" + i, i, 1_700_000_000_000L + i, data));
+        }
+        output.setPayload(payload);
+        output.setMeasures(measures);
+        return output;
+    }
+}
@@ -38,6 +38,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import step.functions.io.Input;
+import step.functions.io.Output;
 import step.grid.Token;
 import step.grid.agent.AgentTokenServices;
 import step.grid.agent.handler.MessageHandlerPool;
@@ -121,6 +122,34 @@ public class FunctionMessageHandlerTest {
 
     }
 
+    @Test
+    public void testBinaryPayload() throws Exception {
+        AgentTokenWrapper agentToken = getAgentToken(tokenServices);
+        try (TokenReservationSession tokenReservationSession = new TokenReservationSession()) {
+            agentToken.setTokenReservationSession(tokenReservationSession);
+
+            InputMessage message = new InputMessage();
+
+            HashMap<String, String> properties = new HashMap<String, String>();
+            properties.put(FunctionMessageHandler.FUNCTION_HANDLER_PACKAGE_KEY + ".id", HANDLER_EMPTY_FILE);
+            properties.put(FunctionMessageHandler.FUNCTION_HANDLER_PACKAGE_KEY + ".version", "1");
+            properties.put(FunctionMessageHandler.FUNCTION_HANDLER_PACKAGE_CLEANABLE_KEY, "true");
+            properties.put(FunctionMessageHandler.FUNCTION_HANDLER_KEY, TestFunctionHandler.class.getName());
+            message.setProperties(properties);
+
+            FunctionIOPayloadCodec codec = FunctionIOPayloadCodec.javax();
+            message.setPayload(codec.encode(getTestInput(), true));
+
+            OutputMessage outputMessage = messageHandlerPool.get(FunctionMessageHandler.class.getName()).handle(agentToken, message);
+            // The output is returned in the mode of the input
+            assertTrue(FunctionIOPayloadCodec.isBinary(outputMessage.getPayload()));
+            Output<TestOutput> output = codec.decode(outputMessage.getPayload(),
+                codec.getJsonMapper().getTypeFactory().constructParametricType(Output.class, TestOutput.class));
+            assertEquals("Bonjour", output.getPayload().getMessage());
+        }
+        expectedFilesInCache = 2;
+    }
+
     private Input<TestInput> getTestInput() {
         Input<TestInput> input = new Input<>();
         Map<String, String> inputProperties = new HashMap<>();
@@ -9,6 +9,8 @@ import java.util.Set;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.json.JsonObject;
+
 import step.attachments.FileResolver;
 import step.core.accessors.AbstractOrganizableObject;
 import step.core.scanner.AnnotationScanner;
@@ -84,15 +86,9 @@ public class JavaFunctionPackageDaemon extends FunctionPackageUtils {
                         if (annotation.planReference() != null && !annotation.planReference().isBlank()) {
                             res = CompositeFunctionUtils.createCompositeFunction(annotation, m, new PlanParser().parseCompositePlanFromPlanReference(m, annotation.planReference()));
                         } else {
-                            String functionName = annotation.name().length() > 0 ? annotation.name() : m.getName();
-
-                            GeneralScriptFunction function = new GeneralScriptFunction();
-                            function.setAttributes(new HashMap<>());
-                            function.getAttributes().put(AbstractOrganizableObject.NAME, functionName);
-
-                            function.getCallTimeout().setValue(annotation.timeout());
+                            GeneralScriptFunction function;
                             try {
-                                FunctionManagerImpl.applyRoutingFromAnnotation(function, annotation);
+                                function = createScriptFunction(annotation, m.getName());
                             } catch (Exception e) {
                                 return handleError(functions, e);
                             }
@@ -102,22 +98,14 @@ public class JavaFunctionPackageDaemon extends FunctionPackageUtils {
                             }
 
                             function.getScriptFile().setValue(parameters.getPackageLocation());
-                            function.getScriptLanguage().setValue("java");
                             res = function;
                         }
-                        res.setDescription(annotation.description());
                         try {
-                            res.setSchema(schemaCreator.createJsonSchemaForKeyword(m));
+                            applyAnnotation(res, annotation, schemaCreator.createJsonSchemaForKeyword(m));
                         } catch (JsonSchemaPreparationException ex) {
                             return handleError(functions, ex);
                         }
 
-                        String htmlTemplate = res.getAttributes().remove("htmlTemplate");
-                        if (htmlTemplate != null && !htmlTemplate.isEmpty()) {
-                            res.setHtmlTemplate(htmlTemplate);
-                            res.setUseCustomTemplate(true);
-                        }
-
                         functions.functions.add(res);
                     }
                 }
@@ -128,6 +116,41 @@ public class JavaFunctionPackageDaemon extends FunctionPackageUtils {
         return functions;
     }
 
+    /**
+     * Creates the script function of a keyword that isn't a composite
+     *
+     * @param annotation the annotation of the keyword method
+     * @param methodName the name of the keyword method
+     * @return the function without script file
+     * @throws IllegalArgumentException if the routing of the annotation is invalid
+     */
+    static GeneralScriptFunction createScriptFunction(Keyword annotation, String methodName) {
+        String functionName = annotation.name().length() > 0 ? annotation.name() : methodName;
+
+        GeneralScriptFunction function = new GeneralScriptFunction();
+        function.setAttributes(new HashMap<>());
+        function.getAttributes().put(AbstractOrganizableObject.NAME, functionName);
+
+        function.getCallTimeout().setValue(annotation.timeout());
+        FunctionManagerImpl.applyRoutingFromAnnotation(function, annotation);
+        function.getScriptLanguage().setValue("java");
+        return function;
+    }
+
+    /**
+     * Applies the description, the schema and the html template of the keyword annotation to the function
+     */
+    static void applyAnnotation(Function function, Keyword annotation, JsonObject schema) {
+        function.setDescription(annotation.description());
+        function.setSchema(schema);
+
+        String htmlTemplate = function.getAttributes().remove("htmlTemplate");
+        if (htmlTemplate != null && !htmlTemplate.isEmpty()) {
+            function.setHtmlTemplate(htmlTemplate);
+            function.setUseCustomTemplate(true);
+        }
+    }
+
     private FunctionList handleError(FunctionList functions, Exception ex) {
         functions.exception = ex.getMessage();
         functions.functions.clear();
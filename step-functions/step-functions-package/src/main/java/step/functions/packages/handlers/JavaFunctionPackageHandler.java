@@ -1,27 +1,54 @@
 package step.functions.packages.handlers;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
 
 import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ch.exense.commons.app.Configuration;
 import ch.exense.commons.processes.ExternalJVMLauncher;
 import ch.exense.commons.processes.ManagedProcess;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.json.JsonObject;
 import step.attachments.FileResolver;
 import step.core.dynamicbeans.DynamicValue;
+import step.core.json.JsonProviderCache;
 import step.core.objectenricher.ObjectEnricher;
 import step.functions.Function;
 import step.functions.packages.FunctionPackage;
+import step.functions.packages.handlers.KeywordBytecodeScanner.KeywordMethod;
+import step.handlers.javahandler.Keyword;
 import step.plugins.java.GeneralScriptFunction;
 
 public class JavaFunctionPackageHandler extends AbstractFunctionPackageHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(JavaFunctionPackageHandler.class);
+
+    public static final String BYTECODE_DISCOVERY_ENABLED = "plugins.FunctionPackagePlugin.discoverer.java.bytecode.enabled";
+    public static final String BYTECODE_DISCOVERY_THREADS = "plugins.FunctionPackagePlugin.discoverer.java.bytecode.threads";
+    public static final String BYTECODE_DISCOVERY_CACHE_SIZE = "plugins.FunctionPackagePlugin.discoverer.java.bytecode.cache.size";
+
     private final File processLogFolder;
     private final String javaPath;
     private final List<String> vmargs;
+    // Null if the bytecode discovery is disabled
+    private final KeywordBytecodeScanner bytecodeScanner;
+    // The keyword methods discovered in the package files by SHA-256 of their content
+    private final Cache<String, List<KeywordMethod>> keywordMethodsCache;
 
     public JavaFunctionPackageHandler(FileResolver fileResolver, Configuration config) {
         super(fileResolver);
@@ -33,10 +60,86 @@ public class JavaFunctionPackageHandler extends AbstractFunctionPackageHandler {
 
         String vmargsConfiguration = config.getProperty("plugins.FunctionPackagePlugin.discoverer.java.vmargs");
         vmargs = vmargsConfiguration != null ? Arrays.asList(vmargsConfiguration.split(" ")) : List.of();
+
+        if (config.getPropertyAsBoolean(BYTECODE_DISCOVERY_ENABLED, true)) {
+            int threads = config.getPropertyAsInteger(BYTECODE_DISCOVERY_THREADS, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            bytecodeScanner = new KeywordBytecodeScanner(threads);
+            keywordMethodsCache = CacheBuilder.newBuilder().maximumSize(config.getPropertyAsInteger(BYTECODE_DISCOVERY_CACHE_SIZE, 1000)).build();
+        } else {
+            bytecodeScanner = null;
+            keywordMethodsCache = null;
+        }
     }
 
     @Override
     public List<Function> buildFunctions(FunctionPackage functionPackage, boolean preview, ObjectEnricher objectEnricher) throws Exception {
+        if (bytecodeScanner != null) {
+            List<Function> functions = null;
+            try {
+                functions = getFunctionsFromBytecode(functionPackage);
+            } catch (Exception e) {
+                logger.warn("Unable to discover the keywords of the package " + functionPackage.getPackageLocation()
+                    + " from the bytecode. Falling back to the discovery in a separate JVM", e);
+            }
+            if (functions != null) {
+                return functions;
+            }
+        }
+        return getFunctionsFromExternalJVM(functionPackage);
+    }
+
+    /**
+     * Discovers the keywords of the package within the controller by reading the {@link Keyword} annotations from
+     * the class files of the package file, without loading its classes.
+     *
+     * @return the functions of the package or null if the keywords of the package cannot be discovered without
+     * loading the classes of the package
+     */
+    protected List<Function> getFunctionsFromBytecode(FunctionPackage functionPackage) throws Exception {
+        File packageFile = resolveMandatoryFile(functionPackage.getPackageLocation());
+        if (!packageFile.isFile()) {
+            return null;
+        }
+        String hash = computeHash(packageFile);
+        List<KeywordMethod> keywordMethods = keywordMethodsCache.get(hash, () -> bytecodeScanner.scan(packageFile));
+
+        List<Function> functions = new ArrayList<>();
+        for (KeywordMethod keywordMethod : keywordMethods) {
+            Keyword annotation = keywordMethod.getAnnotation();
+            // Composites are parsed from the plan referenced by the annotation, which is loaded from the classpath
+            // of the package, and the schema of keywords with parameters is built from the types of the parameters
+            if ((annotation.planReference() != null && !annotation.planReference().isBlank()) || keywordMethod.hasParameters()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("The keyword " + keywordMethod + " of the package " + functionPackage.getPackageLocation() + " requires the classes of the package to be loaded");
+                }
+                return null;
+            }
+            Function function = JavaFunctionPackageDaemon.createScriptFunction(annotation, keywordMethod.getMethodName());
+            JavaFunctionPackageDaemon.applyAnnotation(function, annotation, parseSchema(annotation));
+            configureFunction(function, functionPackage);
+            functions.add(function);
+        }
+        return functions;
+    }
+
+    private static JsonObject parseSchema(Keyword annotation) {
+        String schema = annotation.schema();
+        if (schema != null && !schema.isEmpty()) {
+            return JsonProviderCache.createReader(new StringReader(schema)).readObject();
+        } else {
+            return JsonProviderCache.createObjectBuilder().build();
+        }
+    }
+
+    private static String computeHash(File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    protected List<Function> getFunctionsFromExternalJVM(FunctionPackage functionPackage) throws Exception {
         ExternalJVMLauncher launcher = new ExternalJVMLauncher(javaPath, processLogFolder);
         try (ManagedProcess process = launcher.launchExternalJVM("Java Function Discoverer", JavaFunctionPackageDaemon.class, vmargs, List.of(), false)) {
             return getFunctionsFromDaemon(functionPackage, process);
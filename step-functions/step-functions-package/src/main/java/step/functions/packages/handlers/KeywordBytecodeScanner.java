@@ -0,0 +1,370 @@
+package step.functions.packages.handlers;
+
+import step.handlers.javahandler.Keyword;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Discovers the methods annotated with {@link Keyword} in a jar by reading the annotations directly from the class files.
+ * <p>
+ * Unlike the {@link JavaFunctionPackageDaemon}, the classes of the jar are neither loaded nor initialized, which allows
+ * to run the discovery within the controller. The class files of a jar are parsed in parallel on a bounded pool shared
+ * by all the scans of this scanner.
+ */
+public class KeywordBytecodeScanner {
+
+    private static final String KEYWORD_DESCRIPTOR = "L" + Keyword.class.getName().replace('.', '/') + ";";
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    // Minimum number of class files parsed by a single task
+    private static final int MIN_CLASSES_PER_TASK = 64;
+
+    private final int threads;
+    private final ExecutorService executorService;
+
+    /**
+     * @param threads the maximum number of class files parsed in parallel by all the scans of this scanner
+     */
+    public KeywordBytecodeScanner(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads has to be higher than 0");
+        }
+        this.threads = threads;
+        // Daemon threads, as the function package handlers are never closed
+        AtomicInteger threadCount = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "keyword-bytecode-scanner-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param jar the jar to be scanned
+     * @return the methods annotated with {@link Keyword} declared by the classes of the jar
+     * @throws IOException if the jar or one of its class files cannot be read
+     */
+    public List<KeywordMethod> scan(File jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            List<ZipEntry> classEntries = zipFile.stream().filter(KeywordBytecodeScanner::isClassEntry).collect(Collectors.toList());
+            int classesPerTask = Math.max(MIN_CLASSES_PER_TASK, (classEntries.size() + threads - 1) / threads);
+            List<Future<List<KeywordMethod>>> futures = new ArrayList<>();
+            for (int i = 0; i < classEntries.size(); i += classesPerTask) {
+                List<ZipEntry> entries = classEntries.subList(i, Math.min(i + classesPerTask, classEntries.size()));
+                futures.add(executorService.submit(() -> scanEntries(zipFile, entries)));
+            }
+            List<KeywordMethod> keywordMethods = new ArrayList<>();
+            try {
+                for (Future<List<KeywordMethod>> future : futures) {
+                    keywordMethods.addAll(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while scanning " + jar, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error while scanning " + jar + ": " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                // The zip file is closed when leaving this method
+                futures.forEach(f -> f.cancel(true));
+            }
+            return keywordMethods;
+        }
+    }
+
+    private static boolean isClassEntry(ZipEntry entry) {
+        String name = entry.getName();
+        // The multi-release versions of the classes and module descriptors don't declare additional keywords
+        return !entry.isDirectory() && name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class");
+    }
+
+    private static List<KeywordMethod> scanEntries(ZipFile zipFile, List<ZipEntry> entries) throws IOException {
+        List<KeywordMethod> keywordMethods = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(zipFile.getInputStream(entry)))) {
+                parseClass(in, keywordMethods);
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("Unable to parse the class file " + entry.getName(), e);
+            }
+        }
+        return keywordMethods;
+    }
+
+    /**
+     * Parses a class file according to the chapter 4 of the JVM specification. Only the constant pool and the
+     * annotations of the methods are read, the rest of the class file is skipped.
+     */
+    static void parseClass(DataInputStream in, List<KeywordMethod> keywordMethods) throws IOException {
+        if (in.readInt() != CLASS_FILE_MAGIC) {
+            throw new IOException("Invalid class file");
+        }
+        in.skipNBytes(4); // minor and major versions
+        int constantPoolCount = in.readUnsignedShort();
+        Object[] constants = new Object[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        boolean referencesKeyword = false;
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    String value = in.readUTF();
+                    referencesKeyword |= value.equals(KEYWORD_DESCRIPTOR);
+                    constants[i] = value;
+                    break;
+                case 3: // Integer
+                    constants[i] = in.readInt();
+                    break;
+                case 4: // Float
+                    constants[i] = in.readFloat();
+                    break;
+                case 5: // Long, which takes two entries
+                    constants[i++] = in.readLong();
+                    break;
+                case 6: // Double, which takes two entries
+                    constants[i++] = in.readDouble();
+                    break;
+                case 7: // Class
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipNBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipNBytes(3);
+                    break;
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipNBytes(4);
+                    break;
+                default:
+                    throw new IOException("Unsupported constant pool tag " + tag);
+            }
+        }
+        // Classes that don't reference the Keyword annotation can't declare keywords
+        if (!referencesKeyword) {
+            return;
+        }
+        in.skipNBytes(2); // access flags
+        String className = ((String) constants[classNameIndexes[in.readUnsignedShort()]]).replace('/', '.');
+        in.skipNBytes(2); // super class
+        in.skipNBytes(2L * in.readUnsignedShort()); // interfaces
+        int fieldsCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldsCount; i++) {
+            in.skipNBytes(6); // access flags, name and descriptor
+            int attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                in.skipNBytes(2);
+                in.skipNBytes(Integer.toUnsignedLong(in.readInt()));
+            }
+        }
+        int methodsCount = in.readUnsignedShort();
+        for (int i = 0; i < methodsCount; i++) {
+            in.skipNBytes(2); // access flags
+            String methodName = (String) constants[in.readUnsignedShort()];
+            String methodDescriptor = (String) constants[in.readUnsignedShort()];
+            int attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                String attributeName = (String) constants[in.readUnsignedShort()];
+                long length = Integer.toUnsignedLong(in.readInt());
+                if (attributeName.equals(RUNTIME_VISIBLE_ANNOTATIONS)) {
+                    int annotationsCount = in.readUnsignedShort();
+                    for (int k = 0; k < annotationsCount; k++) {
+                        String type = (String) constants[in.readUnsignedShort()];
+                        Map<String, Object> values = readAnnotationValues(in, constants);
+                        if (type.equals(KEYWORD_DESCRIPTOR)) {
+                            keywordMethods.add(new KeywordMethod(className, methodName, methodDescriptor, values));
+                        }
+                    }
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> readAnnotationValues(DataInputStream in, Object[] constants) throws IOException {
+        int pairsCount = in.readUnsignedShort();
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < pairsCount; i++) {
+            String name = (String) constants[in.readUnsignedShort()];
+            values.put(name, readElementValue(in, constants));
+        }
+        return values;
+    }
+
+    private static Object readElementValue(DataInputStream in, Object[] constants) throws IOException {
+        char tag = (char) in.readUnsignedByte();
+        switch (tag) {
+            case 'B':
+                return (byte) (int) (Integer) constants[in.readUnsignedShort()];
+            case 'C':
+                return (char) (int) (Integer) constants[in.readUnsignedShort()];
+            case 'S':
+                return (short) (int) (Integer) constants[in.readUnsignedShort()];
+            case 'Z':
+                return (Integer) constants[in.readUnsignedShort()] != 0;
+            case 'I':
+            case 'J':
+            case 'F':
+            case 'D':
+            case 's':
+                return constants[in.readUnsignedShort()];
+            case 'e':
+                String enumType = (String) constants[in.readUnsignedShort()];
+                String enumConstant = (String) constants[in.readUnsignedShort()];
+                return new UnsupportedValue("enum " + enumType + "." + enumConstant);
+            case 'c':
+                return new UnsupportedValue("class " + constants[in.readUnsignedShort()]);
+            case '@':
+                String annotationType = (String) constants[in.readUnsignedShort()];
+                readAnnotationValues(in, constants);
+                return new UnsupportedValue("annotation " + annotationType);
+            case '[':
+                int valuesCount = in.readUnsignedShort();
+                List<Object> values = new ArrayList<>(valuesCount);
+                for (int i = 0; i < valuesCount; i++) {
+                    values.add(readElementValue(in, constants));
+                }
+                return values;
+            default:
+                throw new IOException("Unsupported annotation element tag " + tag);
+        }
+    }
+
+    /**
+     * An annotation value that cannot be resolved without loading classes
+     */
+    private static class UnsupportedValue {
+
+        private final String description;
+
+        private UnsupportedValue(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /**
+     * A method annotated with {@link Keyword} as declared in the class file
+     */
+    public static class KeywordMethod {
+
+        private final String className;
+        private final String methodName;
+        private final String methodDescriptor;
+        private final Map<String, Object> annotationValues;
+
+        public KeywordMethod(String className, String methodName, String methodDescriptor, Map<String, Object> annotationValues) {
+            this.className = className;
+            this.methodName = methodName;
+            this.methodDescriptor = methodDescriptor;
+            this.annotationValues = annotationValues;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * @return true if the method declares parameters, whose types have to be loaded to build the schema of the keyword
+         */
+        public boolean hasParameters() {
+            return !methodDescriptor.startsWith("()");
+        }
+
+        /**
+         * @return the values of the {@link Keyword} annotation as declared in the class file, without the default values
+         */
+        public Map<String, Object> getAnnotationValues() {
+            return annotationValues;
+        }
+
+        /**
+         * @return an instance of the {@link Keyword} annotation holding the values declared in the class file
+         * and the default values of the annotation
+         * @throws IllegalArgumentException if one of the values cannot be resolved without loading classes
+         */
+        public Keyword getAnnotation() {
+            Map<String, Object> values = new HashMap<>();
+            for (Method attribute : Keyword.class.getDeclaredMethods()) {
+                Object value = annotationValues.get(attribute.getName());
+                values.put(attribute.getName(), value != null ? convert(value, attribute.getReturnType(), attribute.getName()) : attribute.getDefaultValue());
+            }
+            return (Keyword) Proxy.newProxyInstance(Keyword.class.getClassLoader(), new Class[]{Keyword.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "annotationType":
+                        return Keyword.class;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "@" + Keyword.class.getName() + values;
+                    default:
+                        Object value = values.get(method.getName());
+                        return value != null && value.getClass().isArray() ? cloneArray(value) : value;
+                }
+            });
+        }
+
+        private static Object convert(Object value, Class<?> type, String attribute) {
+            if (type.isArray()) {
+                if (!(value instanceof List)) {
+                    throw new IllegalArgumentException("Unexpected value " + value + " for the attribute " + attribute);
+                }
+                List<?> values = (List<?>) value;
+                Object array = Array.newInstance(type.getComponentType(), values.size());
+                for (int i = 0; i < values.size(); i++) {
+                    Array.set(array, i, convert(values.get(i), type.getComponentType(), attribute));
+                }
+                return array;
+            } else if (MethodType.methodType(type).wrap().returnType().isInstance(value)) {
+                return value;
+            } else {
+                throw new IllegalArgumentException("Unsupported value " + value + " for the attribute " + attribute);
+            }
+        }
+
+        private static Object cloneArray(Object array) {
+            int length = Array.getLength(array);
+            Object clone = Array.newInstance(array.getClass().getComponentType(), length);
+            System.arraycopy(array, 0, clone, 0, length);
+            return clone;
+        }
+
+        @Override
+        public String toString() {
+            return className + "." + methodName;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package step.functions.packages.handlers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import ch.exense.commons.app.Configuration;
+import ch.exense.commons.io.FileHelper;
+import step.attachments.FileResolver;
+import step.core.accessors.AbstractOrganizableObject;
+import step.functions.Function;
+import step.functions.packages.FunctionPackage;
+import step.functions.packages.handlers.FunctionPackageUtils.DiscovererParameters;
+import step.functions.packages.handlers.KeywordBytecodeScanner.KeywordMethod;
+import step.handlers.javahandler.Keyword;
+import step.plugins.java.GeneralScriptFunction;
+import step.resources.LocalResourceManagerImpl;
+
+public class KeywordBytecodeScannerTest {
+
+    public static class TestKeywords {
+
+        @Keyword
+        public void defaultKeyword() {
+        }
+
+        @Keyword(name = "My keyword", description = "My description", timeout = 100, routing = {"OS", "WINDOWS"},
+            schema = "{\"properties\":{\"myInput\":{\"type\":\"string\"}},\"required\":[\"myInput\"]}")
+        public void keywordWithAttributes() {
+        }
+
+        @Keyword(planReference = "plan.plan")
+        public void compositeKeyword() {
+        }
+
+        @Keyword
+        public void keywordWithParameters(String myInput) {
+        }
+
+        public void notAKeyword() {
+        }
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        File jar = createJar(TestKeywords.class, KeywordBytecodeScannerTest.class);
+        List<KeywordMethod> keywordMethods = new KeywordBytecodeScanner(2).scan(jar);
+        Map<String, KeywordMethod> keywordMethodsByName = keywordMethods.stream()
+            .collect(Collectors.toMap(KeywordMethod::getMethodName, k -> k));
+        assertEquals(4, keywordMethodsByName.size());
+
+        KeywordMethod defaultKeyword = keywordMethodsByName.get("defaultKeyword");
+        assertEquals(TestKeywords.class.getName(), defaultKeyword.getClassName());
+        assertFalse(defaultKeyword.hasParameters());
+        // The annotation returns the default values of the attributes that aren't declared
+        assertAnnotationEquals(getAnnotation("defaultKeyword"), defaultKeyword.getAnnotation());
+        assertAnnotationEquals(getAnnotation("keywordWithAttributes"), keywordMethodsByName.get("keywordWithAttributes").getAnnotation());
+        assertEquals("plan.plan", keywordMethodsByName.get("compositeKeyword").getAnnotation().planReference());
+        assertTrue(keywordMethodsByName.get("keywordWithParameters").hasParameters());
+    }
+
+    @Test
+    public void testInvalidClassFile() throws IOException {
+        File jar = Files.createTempFile("invalid", ".jar").toFile();
+        jar.deleteOnExit();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(jar.toPath()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("Invalid.class"));
+            zipOutputStream.write(new byte[]{1, 2, 3, 4});
+            zipOutputStream.closeEntry();
+        }
+        IOException exception = assertThrows(IOException.class, () -> new KeywordBytecodeScanner(1).scan(jar));
+        assertEquals("Error while scanning " + jar + ": Unable to parse the class file Invalid.class", exception.getMessage());
+    }
+
+    @Test
+    public void testHandler() throws Exception {
+        JavaFunctionPackageHandler handler = new JavaFunctionPackageHandler(new FileResolver(new LocalResourceManagerImpl()), new Configuration());
+
+        // Simple keywords are discovered from the bytecode
+        FunctionPackage functionPackage = new FunctionPackage();
+        functionPackage.setPackageLocation(createJar(SimpleKeywords.class).getAbsolutePath());
+        List<Function> functions = handler.getFunctionsFromBytecode(functionPackage);
+        assertEquals(1, functions.size());
+        Function function = functions.get(0);
+        assertEquals("My keyword", function.getAttribute(AbstractOrganizableObject.NAME));
+        assertEquals("My description", function.getDescription());
+        assertEquals(100L, (long) function.getCallTimeout().get());
+        assertTrue(function.isExecuteLocally());
+        assertTrue(function.getSchema().getJsonObject("properties").containsKey("myInput"));
+        assertEquals(functionPackage.getPackageLocation(), ((GeneralScriptFunction) function).getScriptFile().get());
+
+        // Packages containing composites or keywords with parameters require the discovery in a separate JVM
+        functionPackage.setPackageLocation(createJar(TestKeywords.class).getAbsolutePath());
+        assertNull(handler.getFunctionsFromBytecode(functionPackage));
+    }
+
+    @Test
+    public void testHandlerMatchesDaemon() throws Exception {
+        File testResource = FileHelper.getClassLoaderResourceAsFile(this.getClass().getClassLoader(), "local/java-plugin-handler-test.jar");
+        JavaFunctionPackageHandler handler = new JavaFunctionPackageHandler(new FileResolver(new LocalResourceManagerImpl()), new Configuration());
+        FunctionPackage functionPackage = new FunctionPackage();
+        functionPackage.setPackageLocation(testResource.getAbsolutePath());
+        List<Function> functions = handler.getFunctionsFromBytecode(functionPackage);
+        if (functions == null) {
+            // The test package contains keywords which can only be discovered by the daemon
+            return;
+        }
+
+        DiscovererParameters discovererParameters = new DiscovererParameters();
+        discovererParameters.setPackageLocation(testResource.getAbsolutePath());
+        List<Function> expectedFunctions = new JavaFunctionPackageDaemon().getFunctions(discovererParameters).getFunctions();
+        assertEquals(toString(expectedFunctions), toString(functions));
+    }
+
+    public static class SimpleKeywords {
+
+        @Keyword(name = "My keyword", description = "My description", timeout = 100, routing = {Keyword.ROUTING_EXECUTE_ON_CONTROLLER},
+            schema = "{\"properties\":{\"myInput\":{\"type\":\"string\"}},\"required\":[\"myInput\"]}")
+        public void keyword() {
+        }
+    }
+
+    private static String toString(List<Function> functions) {
+        return functions.stream().sorted(Comparator.comparing(f -> f.getAttribute(AbstractOrganizableObject.NAME)))
+            .map(f -> f.getAttribute(AbstractOrganizableObject.NAME) + ":" + f.getDescription() + ":" + f.getCallTimeout().get() + ":"
+                + f.isExecuteLocally() + ":" + f.getTokenSelectionCriteria() + ":" + f.getSchema())
+            .collect(Collectors.joining("\n"));
+    }
+
+    private static Keyword getAnnotation(String methodName) {
+        try {
+            return TestKeywords.class.getMethod(methodName).getAnnotation(Keyword.class);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void assertAnnotationEquals(Keyword expected, Keyword actual) {
+        assertEquals(expected.name(), actual.name());
+        assertEquals(expected.description(), actual.description());
+        assertEquals(expected.schema(), actual.schema());
+        assertEquals(expected.timeout(), actual.timeout());
+        assertEquals(expected.planReference(), actual.planReference());
+        assertArrayEquals(expected.routing(), actual.routing());
+        assertEquals(Keyword.class, actual.annotationType());
+    }
+
+    private static File createJar(Class<?>... classes) throws IOException {
+        File jar = Files.createTempFile("keywords", ".jar").toFile();
+        jar.deleteOnExit();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(jar.toPath()))) {
+            for (Class<?> clazz : classes) {
+                String entryName = clazz.getName().replace('.', '/') + ".class";
+                zipOutputStream.putNextEntry(new ZipEntry(entryName));
+                try (InputStream inputStream = clazz.getClassLoader().getResourceAsStream(entryName)) {
+                    inputStream.transferTo(zipOutputStream);
+                }
+                zipOutputStream.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
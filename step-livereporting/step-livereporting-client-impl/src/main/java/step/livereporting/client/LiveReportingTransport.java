@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2025, exense GmbH
+ *
+ * This file is part of Step
+ *
+ * Step is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Step is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Step.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package step.livereporting.client;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.metrics.MetricSample;
+import step.core.reports.Measure;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transport of the live measures and metric samples to the live reporting services of a controller.
+ * <p>
+ * A transport is shared by all the keyword calls of an agent reporting to the same controller (see
+ * {@link LiveReportingTransports}): it owns a single pooled HTTP client and a single flusher thread. The measures
+ * and metric samples of all live reporting contexts are queued in a bounded queue and sent in batches, with one
+ * request per live reporting context and type. Items offered while the queue is full are dropped and counted.
+ */
+public class LiveReportingTransport implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveReportingTransport.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 5000;
+    public static final int DEFAULT_QUEUE_SIZE = 100_000;
+    public static final long DEFAULT_SEND_TIMEOUT_MS = 30_000;
+
+    // Markers put in the queue to wake up the flusher
+    private static final Entry FLUSH = new Entry(null, false, null, null);
+    private static final Entry CLOSE = new Entry(null, false, null, null);
+
+    private final String baseUrl;
+    private final Client client;
+    private final Sender sender;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long sendTimeoutMs;
+    private final BlockingQueue<Entry> queue;
+    private final Thread flusher;
+    private final Object sentLock = new Object();
+    private volatile boolean closed = false;
+
+    private final LongAdder sentItems = new LongAdder();
+    private final LongAdder droppedItems = new LongAdder();
+    private final LongAdder failedItems = new LongAdder();
+    private long reportedDroppedItems = 0;
+
+    /**
+     * @param baseUrl         the base URL of the controller
+     * @param batchSize       the maximum number of items sent per flush
+     * @param flushIntervalMs the maximum time in ms an item waits in the queue before being sent
+     * @param queueSize       the maximum number of items waiting to be sent
+     * @param sendTimeoutMs   the maximum time in ms a keyword call waits for its items to be sent when it closes its destinations
+     */
+    public LiveReportingTransport(String baseUrl, int batchSize, long flushIntervalMs, int queueSize, long sendTimeoutMs) {
+        this(baseUrl, createClient(), null, batchSize, flushIntervalMs, queueSize, sendTimeoutMs);
+    }
+
+    LiveReportingTransport(String baseUrl, Sender sender, int batchSize, long flushIntervalMs, int queueSize, long sendTimeoutMs) {
+        this(baseUrl, null, sender, batchSize, flushIntervalMs, queueSize, sendTimeoutMs);
+    }
+
+    private LiveReportingTransport(String baseUrl, Client client, Sender sender, int batchSize, long flushIntervalMs, int queueSize, long sendTimeoutMs) {
+        if (batchSize <= 0 || flushIntervalMs <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("The batch size, flush interval and queue size have to be higher than 0");
+        }
+        this.baseUrl = baseUrl;
+        this.client = client;
+        this.sender = sender != null ? sender : this::post;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+        // One additional slot for the markers
+        this.queue = new ArrayBlockingQueue<>(queueSize + 1);
+        this.flusher = new Thread(this::run, "livereporting-transport");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private static Client createClient() {
+        ClientConfig config = new ClientConfig();
+        // Use Apache connector (has built-in pooling with reasonable defaults)
+        config.connectorProvider(new ApacheConnectorProvider());
+        config.property(ClientProperties.CONNECT_TIMEOUT, 10_000);
+        config.property(ClientProperties.READ_TIMEOUT, 30_000);
+        config.register(JacksonFeature.class);
+        return ClientBuilder.newClient(config);
+    }
+
+    /**
+     * Queues a measure. The measure is dropped if the queue is full
+     *
+     * @param contextId    the ID of the live reporting context
+     * @param measure      the measure to be sent
+     * @param pendingItems the counter of pending items of the caller, decremented once the measure has been sent
+     * @return true if the measure has been queued
+     */
+    public boolean offerMeasure(String contextId, Measure measure, AtomicInteger pendingItems) {
+        return offer(new Entry(contextId, false, measure, pendingItems));
+    }
+
+    /**
+     * Queues a metric sample. The sample is dropped if the queue is full
+     *
+     * @param contextId    the ID of the live reporting context
+     * @param sample       the sample to be sent
+     * @param pendingItems the counter of pending items of the caller, decremented once the sample has been sent
+     * @return true if the sample has been queued
+     */
+    public boolean offerMetricSample(String contextId, MetricSample sample, AtomicInteger pendingItems) {
+        return offer(new Entry(contextId, true, sample, pendingItems));
+    }
+
+    private boolean offer(Entry entry) {
+        if (closed) {
+            droppedItems.increment();
+            return false;
+        }
+        entry.pendingItems.incrementAndGet();
+        // Keep the last slot for the markers
+        if (queue.remainingCapacity() > 1 && queue.offer(entry)) {
+            return true;
+        } else {
+            entry.pendingItems.decrementAndGet();
+            droppedItems.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Requests an immediate flush and waits until all the pending items of the caller have been sent or the send timeout elapsed.
+     * The requests of concurrent callers are coalesced into the same flush
+     *
+     * @param pendingItems the counter of pending items of the caller
+     */
+    public void awaitSent(AtomicInteger pendingItems) {
+        if (pendingItems.get() == 0) {
+            return;
+        }
+        // If the queue is full, a flush is anyway already pending
+        queue.offer(FLUSH);
+        long deadline = System.currentTimeMillis() + sendTimeoutMs;
+        synchronized (sentLock) {
+            long remainingMs;
+            while (pendingItems.get() > 0 && (remainingMs = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    sentLock.wait(remainingMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (pendingItems.get() > 0) {
+            logger.warn("Timeout while waiting for {} live reporting items to be sent to {}", pendingItems.get(), baseUrl);
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        long nextFlush = System.currentTimeMillis() + flushIntervalMs;
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.poll(Math.max(0, nextFlush - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                entry = CLOSE;
+            }
+            if (entry == CLOSE) {
+                queue.drainTo(batch);
+                batch.removeIf(e -> e == FLUSH || e == CLOSE);
+                send(batch);
+                return;
+            }
+            if (entry != null && entry != FLUSH) {
+                batch.add(entry);
+            }
+            if (entry == null || entry == FLUSH || batch.size() >= batchSize) {
+                send(batch);
+                batch.clear();
+                nextFlush = System.currentTimeMillis() + flushIntervalMs;
+            }
+        }
+    }
+
+    private void send(List<Entry> batch) {
+        // Group the items by live reporting context and type, preserving their order
+        Map<String, List<Entry>> requests = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            String url = baseUrl + "/rest/live-reporting/" + entry.contextId + (entry.metric ? "/metrics" : "/measures");
+            requests.computeIfAbsent(url, k -> new ArrayList<>()).add(entry);
+        }
+        requests.forEach((url, entries) -> {
+            List<Object> items = new ArrayList<>(entries.size());
+            entries.forEach(e -> items.add(e.item));
+            try {
+                sender.send(url, items);
+                sentItems.add(items.size());
+            } catch (Exception e) {
+                failedItems.add(items.size());
+                logger.error("Error while sending {} live reporting items", items.size(), e);
+            }
+        });
+        synchronized (sentLock) {
+            batch.forEach(e -> e.pendingItems.decrementAndGet());
+            sentLock.notifyAll();
+        }
+        long dropped = droppedItems.sum();
+        if (dropped > reportedDroppedItems) {
+            logger.warn("{} live reporting items have been dropped because the queue of the transport to {} was full", dropped - reportedDroppedItems, baseUrl);
+            reportedDroppedItems = dropped;
+        }
+    }
+
+    private void post(String url, List<Object> items) {
+        try (Response post = client.target(url)
+            .request()
+            .post(Entity.entity(items, MediaType.APPLICATION_JSON_TYPE))) {
+            //Make sure to always consume the response to avoid leak
+            if (post.hasEntity()) {
+                post.readEntity(String.class);
+            }
+            int status = post.getStatus();
+            if (status != 204) {
+                throw new RuntimeException("The live reporting service returned " + status);
+            }
+        }
+    }
+
+    /**
+     * @return the number of items successfully sent
+     */
+    public long getSentItems() {
+        return sentItems.sum();
+    }
+
+    /**
+     * @return the number of items dropped because the queue was full
+     */
+    public long getDroppedItems() {
+        return droppedItems.sum();
+    }
+
+    /**
+     * @return the number of items whose request failed
+     */
+    public long getFailedItems() {
+        return failedItems.sum();
+    }
+
+    /**
+     * Sends the queued items and stops the transport
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (!queue.offer(CLOSE, sendTimeoutMs, TimeUnit.MILLISECONDS)) {
+                flusher.interrupt();
+            }
+            flusher.join(sendTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    interface Sender {
+        void send(String url, List<Object> items) throws Exception;
+    }
+
+    private static class Entry {
+
+        private final String contextId;
+        private final boolean metric;
+        private final Object item;
+        private final AtomicInteger pendingItems;
+
+        private Entry(String contextId, boolean metric, Object item, AtomicInteger pendingItems) {
+            this.contextId = contextId;
+            this.metric = metric;
+            this.item = item;
+            this.pendingItems = pendingItems;
+        }
+    }
+}
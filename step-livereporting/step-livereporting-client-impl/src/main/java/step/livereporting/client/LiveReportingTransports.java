@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2025, exense GmbH
+ *
+ * This file is part of Step
+ *
+ * Step is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Step is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Step.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package step.livereporting.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link LiveReportingTransport}s of an agent, one per controller URL.
+ * <p>
+ * The registry is created once per agent and shared by all the {@link RemoteLiveReportingClient}s. The settings
+ * of the transports can be overridden in the agent properties.
+ */
+public class LiveReportingTransports implements AutoCloseable {
+
+    public static final String BATCH_SIZE = "step.reporting.livereporting.batchsize";
+    public static final String FLUSH_INTERVAL_MS = "step.reporting.livereporting.flushinterval.ms";
+    public static final String BUFFER_SIZE = "step.reporting.livereporting.buffersize";
+    public static final String SEND_TIMEOUT_MS = "step.reporting.livereporting.sendtimeout.ms";
+
+    private final Map<String, LiveReportingTransport> transports = new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int queueSize;
+    private final long sendTimeoutMs;
+    private boolean closed = false;
+
+    public LiveReportingTransports(Map<String, String> agentProperties) {
+        batchSize = (int) getFromAgentPropsOrDefault(agentProperties, BATCH_SIZE, LiveReportingTransport.DEFAULT_BATCH_SIZE);
+        flushIntervalMs = getFromAgentPropsOrDefault(agentProperties, FLUSH_INTERVAL_MS, LiveReportingTransport.DEFAULT_FLUSH_INTERVAL_MS);
+        queueSize = (int) getFromAgentPropsOrDefault(agentProperties, BUFFER_SIZE, LiveReportingTransport.DEFAULT_QUEUE_SIZE);
+        sendTimeoutMs = getFromAgentPropsOrDefault(agentProperties, SEND_TIMEOUT_MS, LiveReportingTransport.DEFAULT_SEND_TIMEOUT_MS);
+    }
+
+    private static long getFromAgentPropsOrDefault(Map<String, String> agentProperties, String configKey, long defaultValue) {
+        Optional<String> value = Optional.ofNullable(agentProperties).map(m -> m.get(configKey));
+        if (value.isPresent()) {
+            try {
+                return Long.parseLong(value.get());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid agent properties override for " + configKey + ": " + value.get());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @param baseUrl the base URL of the controller
+     * @return the transport to the provided controller, created at first use
+     * @throws IllegalStateException if the transports have been closed
+     */
+    public synchronized LiveReportingTransport getTransport(String baseUrl) {
+        if (closed) {
+            throw new IllegalStateException("The live reporting transports have been closed");
+        }
+        return transports.computeIfAbsent(baseUrl, url -> new LiveReportingTransport(url, batchSize, flushIntervalMs, queueSize, sendTimeoutMs));
+    }
+
+    @Override
+    public void close() {
+        List<LiveReportingTransport> transportsToClose;
+        synchronized (this) {
+            closed = true;
+            transportsToClose = new ArrayList<>(transports.values());
+            transports.clear();
+        }
+        // The pending items are sent outside the lock
+        transportsToClose.forEach(LiveReportingTransport::close);
+    }
+}
@@ -39,11 +39,24 @@ public class RemoteLiveReportingClient implements LiveReportingClient {
 
     private static final Logger logger = LoggerFactory.getLogger(RemoteLiveReportingClient.class);
 
-    private final RestUploadingLiveMeasureDestination liveMeasureDestination;
-    private final RestUploadingLiveMetricDestination liveMetricDestination;
+    private final LiveMeasureDestination liveMeasureDestination;
+    private final LiveMetricDestination liveMetricDestination;
     private final StreamingUploadProvider streamingUploadProvider;
 
+    /**
+     * Creates a client with its own REST destinations. Prefer the constructor sharing the {@link LiveReportingTransports}
+     * of the agent when creating a client per keyword call
+     */
     public RemoteLiveReportingClient(Map<String, String> contextProperties, Map<String, String> agentProperties, ExecutorService executorService, AtomicReference<Object> websocketContainer) {
+        this(contextProperties, agentProperties, executorService, websocketContainer, null);
+    }
+
+    /**
+     * @param liveReportingTransports the reference to the {@link LiveReportingTransports} shared by all clients of the agent. It is
+     *                                initialized at first use. null to create dedicated REST destinations for this client
+     */
+    public RemoteLiveReportingClient(Map<String, String> contextProperties, Map<String, String> agentProperties, ExecutorService executorService,
+                                     AtomicReference<Object> websocketContainer, AtomicReference<Object> liveReportingTransports) {
         // We currently only support Websocket uploads; if this changes in the future, here is the place to modify the logic.
         String streamingUploadsContextId = contextProperties.get(StreamingResourceUploadContext.PARAMETER_NAME);
         if (streamingUploadsContextId != null) {
@@ -66,7 +79,11 @@ public class RemoteLiveReportingClient implements LiveReportingClient {
         String liveReportingContextId = contextProperties.get(LiveReportingConstants.LIVEREPORTING_CONTEXT_ID);
         if (liveReportingContextId != null) {
             String baseUrl = getReportingUrl(contextProperties, agentProperties);
-            if (baseUrl != null) {
+            if (baseUrl != null && liveReportingTransports != null) {
+                LiveReportingTransport transport = getLiveReportingTransports(liveReportingTransports, agentProperties).getTransport(baseUrl);
+                liveMeasureDestination = new TransportLiveMeasureDestination(transport, liveReportingContextId);
+                liveMetricDestination = new TransportLiveMetricDestination(transport, liveReportingContextId);
+            } else if (baseUrl != null) {
                 String measuresUrl = String.format("%s/rest/live-reporting/%s/measures", baseUrl, liveReportingContextId);
                 liveMeasureDestination = new RestUploadingLiveMeasureDestination(measuresUrl);
                 String metricsUrl = String.format("%s/rest/live-reporting/%s/metrics", baseUrl, liveReportingContextId);
@@ -82,6 +99,19 @@ public class RemoteLiveReportingClient implements LiveReportingClient {
         }
     }
 
+    private static LiveReportingTransports getLiveReportingTransports(AtomicReference<Object> liveReportingTransports, Map<String, String> agentProperties) {
+        // Like the WebSocketContainer, the transports are shared by all clients and initialized once
+        if (liveReportingTransports.get() == null) {
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (liveReportingTransports) {
+                if (liveReportingTransports.get() == null) {
+                    liveReportingTransports.set(new LiveReportingTransports(agentProperties));
+                }
+            }
+        }
+        return (LiveReportingTransports) liveReportingTransports.get();
+    }
+
     @Override
     public LiveMeasureDestination getLiveMeasureDestination() {
         return liveMeasureDestination;
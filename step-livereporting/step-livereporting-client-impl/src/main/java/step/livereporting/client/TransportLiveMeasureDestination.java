@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2025, exense GmbH
+ *
+ * This file is part of Step
+ *
+ * Step is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Step is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Step.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package step.livereporting.client;
+
+import step.core.reports.Measure;
+import step.reporting.impl.LiveMeasureDestination;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link LiveMeasureDestination} of a keyword call sending its measures through the shared {@link LiveReportingTransport}.
+ * Closing the destination waits until its measures have been sent.
+ */
+public class TransportLiveMeasureDestination implements LiveMeasureDestination {
+
+    private final LiveReportingTransport transport;
+    private final String contextId;
+    private final AtomicInteger pendingItems = new AtomicInteger();
+
+    public TransportLiveMeasureDestination(LiveReportingTransport transport, String contextId) {
+        this.transport = transport;
+        this.contextId = contextId;
+    }
+
+    @Override
+    public void accept(Measure measure) {
+        transport.offerMeasure(contextId, measure, pendingItems);
+    }
+
+    @Override
+    public void close() {
+        transport.awaitSent(pendingItems);
+    }
+}
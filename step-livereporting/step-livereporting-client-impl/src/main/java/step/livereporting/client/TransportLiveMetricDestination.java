@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2025, exense GmbH
+ *
+ * This file is part of Step
+ *
+ * Step is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Step is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Step.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package step.livereporting.client;
+
+import step.core.metrics.Metric;
+import step.core.metrics.MetricSamplesCollector;
+import step.reporting.impl.LiveMetricDestination;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link LiveMetricDestination} of a keyword call sending the samples of its metrics through the shared
+ * {@link LiveReportingTransport}. Closing the destination waits until its samples have been sent.
+ */
+public class TransportLiveMetricDestination implements LiveMetricDestination {
+
+    private final LiveReportingTransport transport;
+    private final AtomicInteger pendingItems = new AtomicInteger();
+    private final MetricSamplesCollector metricSamplesCollector;
+
+    public TransportLiveMetricDestination(LiveReportingTransport transport, String contextId) {
+        this.transport = transport;
+        this.metricSamplesCollector = new MetricSamplesCollector(sample -> transport.offerMetricSample(contextId, sample, pendingItems));
+    }
+
+    @Override
+    public void accept(Metric metric) {
+        metricSamplesCollector.register(metric);
+    }
+
+    @Override
+    public void close() {
+        // Final flush of the values accumulated since the last rate-limited flush of the collector
+        metricSamplesCollector.close();
+        transport.awaitSent(pendingItems);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2025, exense GmbH
+ *
+ * This file is part of Step
+ *
+ * Step is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Step is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Step.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package step.livereporting.client;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.constants.LiveReportingConstants;
+import step.core.metrics.InstrumentType;
+import step.core.metrics.MetricSample;
+import step.core.reports.Measure;
+import step.reporting.impl.LiveMeasureDestination;
+import step.reporting.impl.LiveMetricDestination;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LiveReportingTransportTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveReportingTransportTest.class);
+
+    private static final String BASE_URL = "http://controller:8080";
+
+    private final Map<String, List<Object>> sentItems = new ConcurrentHashMap<>();
+    private final List<Integer> requestSizes = Collections.synchronizedList(new ArrayList<>());
+
+    private void record(String url, List<Object> items) {
+        requestSizes.add(items.size());
+        sentItems.computeIfAbsent(url, k -> Collections.synchronizedList(new ArrayList<>())).addAll(items);
+    }
+
+    @Test
+    public void testMultiplexingByContext() {
+        try (LiveReportingTransport transport = new LiveReportingTransport(BASE_URL, this::record, 100, 60_000, 1000, 10_000)) {
+            TransportLiveMeasureDestination destination1 = new TransportLiveMeasureDestination(transport, "context1");
+            TransportLiveMeasureDestination destination2 = new TransportLiveMeasureDestination(transport, "context2");
+            Measure measure1 = new Measure("Measure1", 1, 1, null);
+            Measure measure2 = new Measure("Measure2", 1, 1, null);
+            Measure measure3 = new Measure("Measure3", 1, 1, null);
+            destination1.accept(measure1);
+            destination2.accept(measure2);
+            destination1.accept(measure3);
+            AtomicInteger pendingSamples = new AtomicInteger();
+            MetricSample sample = new MetricSample(System.currentTimeMillis(), "cpu", Map.of(), InstrumentType.GAUGE, 1, 80, 80, 80, 80, null);
+            transport.offerMetricSample("context1", sample, pendingSamples);
+
+            // Closing the destinations flushes immediately instead of waiting for the flush interval
+            destination1.close();
+            destination2.close();
+            transport.awaitSent(pendingSamples);
+
+            Assert.assertEquals(List.of(measure1, measure3), sentItems.get(BASE_URL + "/rest/live-reporting/context1/measures"));
+            Assert.assertEquals(List.of(measure2), sentItems.get(BASE_URL + "/rest/live-reporting/context2/measures"));
+            Assert.assertEquals(List.of(sample), sentItems.get(BASE_URL + "/rest/live-reporting/context1/metrics"));
+            Assert.assertEquals(4, transport.getSentItems());
+            Assert.assertEquals(0, pendingSamples.get());
+        }
+    }
+
+    @Test
+    public void testBatchSize() {
+        try (LiveReportingTransport transport = new LiveReportingTransport(BASE_URL, this::record, 10, 60_000, 1000, 10_000)) {
+            AtomicInteger pendingItems = new AtomicInteger();
+            for (int i = 0; i < 25; i++) {
+                transport.offerMeasure("context", new Measure("Measure" + i, 1, 1, null), pendingItems);
+            }
+            transport.awaitSent(pendingItems);
+            Assert.assertEquals(25, sentItems.get(BASE_URL + "/rest/live-reporting/context/measures").size());
+            Assert.assertTrue(requestSizes.stream().allMatch(size -> size <= 10));
+        }
+    }
+
+    @Test
+    public void testFlushInterval() throws InterruptedException {
+        try (LiveReportingTransport transport = new LiveReportingTransport(BASE_URL, this::record, 100, 50, 1000, 10_000)) {
+            transport.offerMeasure("context", new Measure("Measure", 1, 1, null), new AtomicInteger());
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (transport.getSentItems() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, transport.getSentItems());
+        }
+    }
+
+    @Test
+    public void testDropsWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LiveReportingTransport transport = new LiveReportingTransport(BASE_URL, (url, items) -> {
+            sending.countDown();
+            release.await();
+            record(url, items);
+        }, 1, 60_000, 10, 10_000);
+        try {
+            AtomicInteger pendingItems = new AtomicInteger();
+            // The first item blocks the flusher
+            transport.offerMeasure("context", new Measure("Measure", 1, 1, null), pendingItems);
+            Assert.assertTrue(sending.await(10, TimeUnit.SECONDS));
+
+            int accepted = 0;
+            for (int i = 0; i < 100; i++) {
+                if (transport.offerMeasure("context", new Measure("Measure" + i, 1, 1, null), pendingItems)) {
+                    accepted++;
+                }
+            }
+            Assert.assertEquals(10, accepted);
+            Assert.assertEquals(90, transport.getDroppedItems());
+
+            release.countDown();
+            transport.awaitSent(pendingItems);
+            Assert.assertEquals(0, pendingItems.get());
+            Assert.assertEquals(11, transport.getSentItems());
+        } finally {
+            release.countDown();
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testFailedRequests() {
+        try (LiveReportingTransport transport = new LiveReportingTransport(BASE_URL, (url, items) -> {
+            throw new RuntimeException("Controller unreachable");
+        }, 100, 60_000, 1000, 10_000)) {
+            AtomicInteger pendingItems = new AtomicInteger();
+            transport.offerMeasure("context", new Measure("Measure", 1, 1, null), pendingItems);
+            transport.awaitSent(pendingItems);
+            Assert.assertEquals(0, pendingItems.get());
+            Assert.assertEquals(1, transport.getFailedItems());
+            Assert.assertEquals(0, transport.getSentItems());
+        }
+    }
+
+    @Test
+    public void testCloseSendsQueuedItems() {
+        LiveReportingTransport transport = new LiveReportingTransport(BASE_URL, this::record, 100, 60_000, 1000, 10_000);
+        for (int i = 0; i < 5; i++) {
+            transport.offerMeasure("context", new Measure("Measure" + i, 1, 1, null), new AtomicInteger());
+        }
+        transport.close();
+        Assert.assertEquals(5, transport.getSentItems());
+        // Items offered after close are dropped
+        Assert.assertFalse(transport.offerMeasure("context", new Measure("Measure", 1, 1, null), new AtomicInteger()));
+        Assert.assertEquals(1, transport.getDroppedItems());
+    }
+
+    /**
+     * Measures the cost of the live reporting setup of a keyword call with dedicated REST destinations
+     * (one HTTP client and two flusher threads per call) and with the shared transports
+     */
+    @Test
+    public void testTransportsClosed() {
+        LiveReportingTransports transports = new LiveReportingTransports(null);
+        transports.close();
+        // No transport can be created lazily once the transports have been closed
+        Assert.assertThrows(IllegalStateException.class, () -> transports.getTransport(BASE_URL));
+    }
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkPerCallSetup() throws Exception {
+        int calls = 200;
+        Map<String, String> contextProperties = Map.of(LiveReportingConstants.LIVEREPORTING_CONTEXT_ID, "context",
+            LiveReportingConstants.LIVEREPORTING_CONTROLLER_URL, BASE_URL);
+
+        long dedicatedDurationNs = measureSetup(calls, () -> new RemoteLiveReportingClient(contextProperties, null, null, new AtomicReference<>()));
+
+        AtomicReference<Object> transports = new AtomicReference<>();
+        long sharedDurationNs;
+        try {
+            sharedDurationNs = measureSetup(calls, () -> new RemoteLiveReportingClient(contextProperties, null, null, new AtomicReference<>(), transports));
+        } finally {
+            ((LiveReportingTransports) transports.get()).close();
+        }
+
+        logger.info("Live reporting setup and close per keyword call: {}us with dedicated destinations, {}us with shared transports",
+            dedicatedDurationNs / calls / 1000, sharedDurationNs / calls / 1000);
+    }
+
+    private long measureSetup(int calls, ClientFactory clientFactory) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            RemoteLiveReportingClient client = clientFactory.create();
+            LiveMeasureDestination measureDestination = client.getLiveMeasureDestination();
+            LiveMetricDestination metricDestination = client.getLiveMetricDestination();
+            Assert.assertNotNull(measureDestination);
+            measureDestination.close();
+            metricDestination.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private interface ClientFactory {
+        RemoteLiveReportingClient create() throws Exception;
+    }
+}
@@ -1,22 +1,38 @@
 package step.artefacts;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
 import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import step.core.reports.Measure;
 
 public class Aggregation {
 
     private final String name;
-    private AtomicLong count = new AtomicLong();
-    private AtomicLong sum = new AtomicLong();
+    private LongAdder count = new LongAdder();
+    private LongAdder sum = new LongAdder();
+    private DoubleAdder sumOfSquares = new DoubleAdder();
     private LongAccumulator max = new LongAccumulator(Long::max, 0L);
     private LongAccumulator min = new LongAccumulator(Long::min, Long.MAX_VALUE);
+    private LongAccumulator firstBegin = new LongAccumulator(Long::min, Long.MAX_VALUE);
+    private LongAccumulator lastEnd = new LongAccumulator(Long::max, 0L);
+    // Null if the percentiles aren't computed
+    private final LatencyHistogram histogram;
 
 
     public Aggregation(String name) {
+        this(name, true);
+    }
+
+    /**
+     * @param name               the name of the aggregated measures
+     * @param percentilesEnabled true if the percentiles have to be computed. The histogram of the durations, which
+     *                           is required for this, is only allocated in that case
+     */
+    public Aggregation(String name, boolean percentilesEnabled) {
         super();
         this.name = name;
+        this.histogram = percentilesEnabled ? new LatencyHistogram() : null;
     }
 
     public String getName() {
@@ -24,11 +40,17 @@ public class Aggregation {
     }
 
     public final void addMeasure(Measure measure) {
-        count.incrementAndGet();
+        count.increment();
         long duration = measure.getDuration();
-        sum.addAndGet(duration);
+        sum.add(duration);
+        sumOfSquares.add((double) duration * duration);
         max.accumulate(duration);
         min.accumulate(duration);
+        firstBegin.accumulate(measure.getBegin());
+        lastEnd.accumulate(measure.getBegin() + duration);
+        if (histogram != null) {
+            histogram.recordValue(duration);
+        }
     }
 
     public long getCount() {
@@ -50,4 +72,35 @@ public class Aggregation {
     public long getAvg() {
         return getSum() / getCount();
     }
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return the duration at the provided percentile. The durations higher than 255ms are approximated with a
+     * relative error lower than 1%
+     */
+    public long getPercentile(double percentile) {
+        if (histogram == null) {
+            throw new IllegalStateException("The percentiles haven't been enabled for the aggregation " + name);
+        }
+        long value = histogram.getValueAtPercentile(percentile);
+        // The highest value of the bucket might be out of the range of the measured durations
+        return Math.max(getMin(), Math.min(getMax(), value));
+    }
+
+    /**
+     * @return the population standard deviation of the durations
+     */
+    public double getStdDev() {
+        long count = getCount();
+        double mean = (double) getSum() / count;
+        return Math.sqrt(Math.max(0, sumOfSquares.sum() / count - mean * mean));
+    }
+
+    /**
+     * @return the number of measures per second between the begin of the first measure and the end of the last one
+     */
+    public double getThroughput() {
+        long duration = Math.max(1, lastEnd.longValue() - firstBegin.longValue());
+        return getCount() * 1000.0 / duration;
+    }
 }
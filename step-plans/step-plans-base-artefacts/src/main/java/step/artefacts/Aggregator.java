@@ -8,7 +8,13 @@ public enum Aggregator {
     MAX(Aggregation::getMax, "Max"),
     MIN(Aggregation::getMin, "Min"),
     COUNT(Aggregation::getCount, "Count"),
-    SUM(Aggregation::getSum, "Sum");
+    SUM(Aggregation::getSum, "Sum"),
+    PERCENTILE_50(a -> a.getPercentile(50), "50th percentile"),
+    PERCENTILE_90(a -> a.getPercentile(90), "90th percentile"),
+    PERCENTILE_95(a -> a.getPercentile(95), "95th percentile"),
+    PERCENTILE_99(a -> a.getPercentile(99), "99th percentile"),
+    STANDARD_DEVIATION(Aggregation::getStdDev, "Standard deviation"),
+    THROUGHPUT(Aggregation::getThroughput, "Throughput");
 
     private Function<Aggregation, Number> valueFunction;
     private String description;
@@ -25,4 +31,19 @@ public enum Aggregator {
     public String getDescription() {
         return description;
     }
+
+    /**
+     * @return true if this aggregator requires the distribution of the durations
+     */
+    public boolean isPercentile() {
+        switch (this) {
+            case PERCENTILE_50:
+            case PERCENTILE_90:
+            case PERCENTILE_95:
+            case PERCENTILE_99:
+                return true;
+            default:
+                return false;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts;
+
+import step.core.dynamicbeans.DynamicValue;
+
+/**
+ * A stage of an {@link ArrivalRateThreadGroup} during which the arrival rate changes linearly
+ * from the rate at the end of the previous stage to the target rate
+ */
+public class ArrivalRateStage {
+
+    /**
+     * The duration of the stage in ms
+     */
+    private DynamicValue<Integer> duration = new DynamicValue<>(0);
+
+    /**
+     * The number of iterations started per time unit at the end of the stage
+     */
+    private DynamicValue<Integer> target = new DynamicValue<>(0);
+
+    public ArrivalRateStage() {
+        super();
+    }
+
+    public ArrivalRateStage(int duration, int target) {
+        super();
+        this.duration = new DynamicValue<>(duration);
+        this.target = new DynamicValue<>(target);
+    }
+
+    public DynamicValue<Integer> getDuration() {
+        return duration;
+    }
+
+    public void setDuration(DynamicValue<Integer> duration) {
+        this.duration = duration;
+    }
+
+    public DynamicValue<Integer> getTarget() {
+        return target;
+    }
+
+    public void setTarget(DynamicValue<Integer> target) {
+        this.target = target;
+    }
+}
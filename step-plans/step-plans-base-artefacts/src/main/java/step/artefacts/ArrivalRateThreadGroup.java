@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts;
+
+import step.artefacts.automation.YamlArrivalRateThreadGroup;
+import step.core.artefacts.AbstractArtefact;
+import step.core.artefacts.Artefact;
+import step.core.artefacts.ChildrenBlock;
+import step.core.dynamicbeans.ContainsDynamicValues;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.yaml.YamlModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open model counterpart of the {@link ThreadGroup}: the iterations are started at a target arrival rate independently
+ * of the completion of the previous iterations. The rate is either constant or follows a list of {@link ArrivalRateStage}
+ */
+@YamlModel(model = YamlArrivalRateThreadGroup.class, name = "arrivalRateThreadGroup")
+@Artefact(validAsRoot = true)
+public class ArrivalRateThreadGroup extends AbstractArtefact {
+
+    /**
+     * The number of iterations started per time unit. Start rate of the first stage if stages are defined
+     */
+    DynamicValue<Integer> rate = new DynamicValue<Integer>(1);
+
+    /**
+     * The time unit of the rates in ms
+     */
+    DynamicValue<Integer> timeUnit = new DynamicValue<Integer>(1000);
+
+    List<ArrivalRateStage> stages = new ArrayList<>();
+
+    DynamicValue<Integer> maxDuration = new DynamicValue<Integer>(0);
+
+    DynamicValue<Integer> iterations = new DynamicValue<Integer>(0);
+
+    /**
+     * The number of workers started at the beginning of the group
+     */
+    DynamicValue<Integer> workers = new DynamicValue<Integer>(1);
+
+    /**
+     * The maximum number of concurrent workers. Additional workers are started when all workers are busy.
+     * Defaults to the number of workers (bounded pool)
+     */
+    DynamicValue<Integer> maxWorkers = new DynamicValue<Integer>(null);
+
+    /**
+     * The delay in ms after which an iteration that couldn't be started is dropped. 0 to never drop iterations
+     */
+    DynamicValue<Integer> maxDelay = new DynamicValue<Integer>(1000);
+
+    /**
+     * The delay in ms after which an iteration that has been started late is counted as delayed
+     */
+    DynamicValue<Integer> delayTolerance = new DynamicValue<Integer>(10);
+
+    DynamicValue<String> item = new DynamicValue<String>("gcounter");
+
+    DynamicValue<String> localItem = new DynamicValue<String>("literationId");
+
+    DynamicValue<String> userItem = new DynamicValue<String>("userId");
+
+    ChildrenBlock beforeThread;
+
+    ChildrenBlock afterThread;
+
+    public DynamicValue<Integer> getRate() {
+        return rate;
+    }
+
+    public void setRate(DynamicValue<Integer> rate) {
+        this.rate = rate;
+    }
+
+    public DynamicValue<Integer> getTimeUnit() {
+        return timeUnit;
+    }
+
+    public void setTimeUnit(DynamicValue<Integer> timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    @ContainsDynamicValues
+    public List<ArrivalRateStage> getStages() {
+        return stages;
+    }
+
+    public void setStages(List<ArrivalRateStage> stages) {
+        this.stages = stages;
+    }
+
+    public DynamicValue<Integer> getMaxDuration() {
+        return maxDuration;
+    }
+
+    public void setMaxDuration(DynamicValue<Integer> maxDuration) {
+        this.maxDuration = maxDuration;
+    }
+
+    public DynamicValue<Integer> getIterations() {
+        return iterations;
+    }
+
+    public void setIterations(DynamicValue<Integer> iterations) {
+        this.iterations = iterations;
+    }
+
+    public DynamicValue<Integer> getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(DynamicValue<Integer> workers) {
+        this.workers = workers;
+    }
+
+    public DynamicValue<Integer> getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public void setMaxWorkers(DynamicValue<Integer> maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    public DynamicValue<Integer> getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(DynamicValue<Integer> maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public DynamicValue<Integer> getDelayTolerance() {
+        return delayTolerance;
+    }
+
+    public void setDelayTolerance(DynamicValue<Integer> delayTolerance) {
+        this.delayTolerance = delayTolerance;
+    }
+
+    public DynamicValue<String> getItem() {
+        return item;
+    }
+
+    public void setItem(DynamicValue<String> item) {
+        this.item = item;
+    }
+
+    public DynamicValue<String> getLocalItem() {
+        return localItem;
+    }
+
+    public void setLocalItem(DynamicValue<String> localItem) {
+        this.localItem = localItem;
+    }
+
+    public DynamicValue<String> getUserItem() {
+        return userItem;
+    }
+
+    public void setUserItem(DynamicValue<String> userItem) {
+        this.userItem = userItem;
+    }
+
+    public ChildrenBlock getBeforeThread() {
+        return beforeThread;
+    }
+
+    public void setBeforeThread(ChildrenBlock beforeThread) {
+        this.beforeThread = beforeThread;
+    }
+
+    public ChildrenBlock getAfterThread() {
+        return afterThread;
+    }
+
+    public void setAfterThread(ChildrenBlock afterThread) {
+        this.afterThread = afterThread;
+    }
+}
@@ -19,6 +19,7 @@
 package step.artefacts;
 
 import step.artefacts.handlers.*;
+import step.artefacts.handlers.ArrivalRateThreadGroupHandler.WorkerHandler;
 import step.artefacts.handlers.ThreadGroupHandler.ThreadHandler;
 import step.artefacts.handlers.functions.TokenForecastingExecutionPlugin;
 import step.core.artefacts.CheckArtefact;
@@ -60,6 +61,8 @@ public class BaseArtefactPlugin extends AbstractExecutionEnginePlugin {
         artefactHandlerRegistry.put(Script.class, ScriptHandler.class);
         artefactHandlerRegistry.put(ThreadGroup.class, ThreadGroupHandler.class);
         artefactHandlerRegistry.put(step.artefacts.handlers.ThreadGroupHandler.Thread.class, ThreadHandler.class);
+        artefactHandlerRegistry.put(ArrivalRateThreadGroup.class, ArrivalRateThreadGroupHandler.class);
+        artefactHandlerRegistry.put(ArrivalRateThreadGroupHandler.Worker.class, WorkerHandler.class);
         artefactHandlerRegistry.put(Switch.class, SwitchHandler.class);
         artefactHandlerRegistry.put(Case.class, CaseHandler.class);
         artefactHandlerRegistry.put(RetryIfFails.class, RetryIfFailsHandler.class);
@@ -0,0 +1,101 @@
+package step.artefacts;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of durations with a fixed memory footprint per stripe, used to compute percentiles.
+ * <p>
+ * Like in HdrHistogram, the values are counted in log-linear buckets: the values lower than 256 are counted
+ * exactly and the higher values with a relative error lower than 1%. The values higher than {@link #MAX_VALUE}
+ * are counted as {@link #MAX_VALUE}.
+ * <p>
+ * The recording is lock-free. The counts are held in stripes which are added when contention is detected (like
+ * in {@link java.util.concurrent.atomic.LongAdder}) and are merged when the histogram is read.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    // About 2 years in ms
+    static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int LENGTH = getIndex(MAX_VALUE) + 1;
+    private static final int MAX_STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+    private volatile AtomicLongArray[] stripes = new AtomicLongArray[]{new AtomicLongArray(LENGTH)};
+
+    static int getIndex(long value) {
+        int bucketIndex = Math.max(0, 64 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK) - SUB_BUCKET_BITS);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return bucketIndex * SUB_BUCKET_HALF_COUNT + subBucketIndex;
+    }
+
+    /**
+     * @return the highest value counted at the provided index
+     */
+    static long getHighestEquivalentValue(int index) {
+        int bucketIndex = Math.max(0, index / SUB_BUCKET_HALF_COUNT - 1);
+        long subBucketIndex = index - bucketIndex * SUB_BUCKET_HALF_COUNT;
+        return (subBucketIndex << bucketIndex) + (1L << bucketIndex) - 1;
+    }
+
+    public void recordValue(long value) {
+        int index = getIndex(Math.min(Math.max(0, value), MAX_VALUE));
+        AtomicLongArray[] stripes = this.stripes;
+        AtomicLongArray counts = stripes[getThreadHash() & (stripes.length - 1)];
+        long count = counts.get(index);
+        if (!counts.compareAndSet(index, count, count + 1)) {
+            // Another thread is recording in the same stripe: spread the threads over more stripes
+            stripes = addStripes(stripes);
+            stripes[getThreadHash() & (stripes.length - 1)].getAndIncrement(index);
+        }
+    }
+
+    private synchronized AtomicLongArray[] addStripes(AtomicLongArray[] currentStripes) {
+        AtomicLongArray[] stripes = this.stripes;
+        if (stripes == currentStripes && stripes.length < MAX_STRIPES) {
+            AtomicLongArray[] newStripes = new AtomicLongArray[stripes.length * 2];
+            System.arraycopy(stripes, 0, newStripes, 0, stripes.length);
+            for (int i = stripes.length; i < newStripes.length; i++) {
+                newStripes[i] = new AtomicLongArray(LENGTH);
+            }
+            this.stripes = newStripes;
+            return newStripes;
+        }
+        return stripes;
+    }
+
+    private static int getThreadHash() {
+        int hash = (int) Thread.currentThread().threadId() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return the highest value counted in the bucket of the percentile or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] counts = new long[LENGTH];
+        long totalCount = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < LENGTH; i++) {
+                long count = stripe.get(i);
+                counts[i] += count;
+                totalCount += count;
+            }
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        long targetCount = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            count += counts[i];
+            if (count >= targetCount) {
+                return getHighestEquivalentValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.automation;
+
+import step.artefacts.ArrivalRateThreadGroup;
+import step.core.artefacts.ChildrenBlock;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.yaml.YamlFieldCustomCopy;
+import step.core.yaml.model.AbstractYamlArtefact;
+import step.core.yaml.model.YamlChildrenBlock;
+
+public class YamlArrivalRateThreadGroup extends AbstractYamlArtefact<ArrivalRateThreadGroup> {
+
+    DynamicValue<Integer> rate = new DynamicValue<Integer>(1);
+
+    DynamicValue<Integer> timeUnit = new DynamicValue<Integer>(1000);
+
+    DynamicValue<Integer> maxDuration = new DynamicValue<Integer>(0);
+
+    DynamicValue<Integer> iterations = new DynamicValue<Integer>(0);
+
+    DynamicValue<Integer> workers = new DynamicValue<Integer>(1);
+
+    DynamicValue<Integer> maxWorkers = new DynamicValue<Integer>(null);
+
+    DynamicValue<Integer> maxDelay = new DynamicValue<Integer>(1000);
+
+    DynamicValue<Integer> delayTolerance = new DynamicValue<Integer>(10);
+
+    DynamicValue<String> item = new DynamicValue<String>("gcounter");
+
+    DynamicValue<String> localItem = new DynamicValue<String>("literationId");
+
+    DynamicValue<String> userItem = new DynamicValue<String>("userId");
+
+    @YamlFieldCustomCopy
+    YamlChildrenBlock beforeThread;
+    @YamlFieldCustomCopy
+    YamlChildrenBlock afterThread;
+
+    public YamlArrivalRateThreadGroup() {
+        super(ArrivalRateThreadGroup.class);
+    }
+
+
+    @Override
+    protected void fillArtefactFields(ArrivalRateThreadGroup res) {
+        super.fillArtefactFields(res);
+        if (this.beforeThread != null) {
+            res.setBeforeThread(this.beforeThread.toArtefact());
+        }
+        if (this.afterThread != null) {
+            res.setAfterThread(this.afterThread.toArtefact());
+        }
+    }
+
+    @Override
+    protected void fillYamlArtefactFields(ArrivalRateThreadGroup artefact) {
+        super.fillYamlArtefactFields(artefact);
+        if (artefact.getStages() != null && !artefact.getStages().isEmpty()) {
+            throw new IllegalArgumentException("Stages in " + artefact.getClass().getSimpleName() + " are not supported in yaml format");
+        }
+        ChildrenBlock beforeThread1 = artefact.getBeforeThread();
+        if (beforeThread1 != null && !beforeThread1.getSteps().isEmpty()) {
+            this.beforeThread = YamlChildrenBlock.toYamlChildrenBlock(beforeThread1, this.getYamlObjectMapper());
+        }
+        ChildrenBlock afterThread1 = artefact.getAfterThread();
+        if (afterThread1 != null && !afterThread1.getSteps().isEmpty()) {
+            this.afterThread = YamlChildrenBlock.toYamlChildrenBlock(afterThread1, this.getYamlObjectMapper());
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import step.artefacts.ArrivalRateStage;
+import step.artefacts.ArrivalRateThreadGroup;
+import step.artefacts.FunctionGroup;
+import step.artefacts.Sequence;
+import step.artefacts.handlers.functions.MultiplyingTokenForecastingContext;
+import step.artefacts.handlers.functions.TokenForecastingContext;
+import step.artefacts.handlers.loadtesting.ArrivalRateProfile;
+import step.artefacts.handlers.loadtesting.ArrivalRateScheduler;
+import step.artefacts.reports.ArrivalRateReportNode;
+import step.artefacts.reports.ThreadReportNode;
+import step.core.artefacts.AbstractArtefact;
+import step.core.artefacts.Artefact;
+import step.core.artefacts.ChildrenBlock;
+import step.core.artefacts.handlers.ArtefactHandler;
+import step.core.artefacts.handlers.AtomicReportNodeStatusComposer;
+import step.core.artefacts.handlers.SequentialArtefactScheduler;
+import step.core.artefacts.reports.ParentSource;
+import step.core.artefacts.reports.ReportNode;
+import step.core.artefacts.reports.resolvedplan.ResolvedChildren;
+import step.core.metrics.CounterMetric;
+import step.core.metrics.HistogramMetric;
+import step.core.metrics.MetricSample;
+import step.livereporting.LiveReportingContext;
+import step.livereporting.LiveReportingPlugin;
+import step.threadpool.ThreadPool;
+import step.threadpool.WorkerItemConsumerFactory;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static step.artefacts.handlers.functions.TokenForecastingExecutionPlugin.getTokenForecastingContext;
+import static step.artefacts.handlers.functions.TokenForecastingExecutionPlugin.pushNewTokenNumberCalculationContext;
+
+public class ArrivalRateThreadGroupHandler extends ArtefactHandler<ArrivalRateThreadGroup, ArrivalRateReportNode> {
+
+    public static final String METRIC_SCHEDULED_ITERATIONS = "arrivalrate/scheduled";
+    public static final String METRIC_DROPPED_ITERATIONS = "arrivalrate/dropped";
+    public static final String METRIC_DELAYED_ITERATIONS = "arrivalrate/delayed";
+    public static final String METRIC_START_LATENCY = "arrivalrate/start-latency";
+    public static final String LABEL_THREAD_GROUP = "threadGroup";
+
+    /**
+     * Property of the step.properties defining the maximum number of iterations waiting for a worker. Further arrivals are missed
+     */
+    public static final String MAX_PENDING_ITERATIONS_CONFIG = "execution.engine.arrivalrate.pending.max";
+    /**
+     * Property of the step.properties defining the time in ms after which the additional workers are stopped when idle
+     */
+    public static final String WORKER_IDLE_TIMEOUT_CONFIG = "execution.engine.arrivalrate.workers.idle.timeout.ms";
+
+    private static final long REPORTING_INTERVAL_MS = 1000;
+
+    @Override
+    protected void createReportSkeleton_(ArrivalRateReportNode parentNode, ArrivalRateThreadGroup artefact) {
+        ThreadPool threadPool = context.require(ThreadPool.class);
+        int numberOfWorkers = threadPool.getEffectiveNumberOfThreads(getMaxWorkers(artefact));
+
+        TokenForecastingContext tokenForecastingContext = getTokenForecastingContext(context);
+        pushNewTokenNumberCalculationContext(context, new MultiplyingTokenForecastingContext(tokenForecastingContext, numberOfWorkers));
+        // The skeleton phase has to be executed within a session to match the behaviour of the execution
+        // and properly estimate the required number of tokens
+        FunctionGroup functionGroup = createWorkArtefact(FunctionGroup.class, artefact, "", true);
+        functionGroup.setConsumer((sessionArtefact, sessionReportNode) -> {
+            SequentialArtefactScheduler scheduler = new SequentialArtefactScheduler(context);
+            scheduler.createReportSkeleton_(sessionReportNode, sessionArtefact);
+        });
+        delegateCreateReportSkeleton(functionGroup, parentNode, new HashMap<>());
+    }
+
+    private static int getMaxWorkers(ArrivalRateThreadGroup artefact) {
+        int workers = artefact.getWorkers().getOrDefault(Integer.class, 1);
+        return artefact.getMaxWorkers().getOrDefault(Integer.class, workers);
+    }
+
+    @Override
+    protected void execute_(ArrivalRateReportNode node, ArrivalRateThreadGroup testArtefact) {
+        final int rate = testArtefact.getRate().getOrDefault(Integer.class, 0);
+        final int timeUnit = testArtefact.getTimeUnit().getOrDefault(Integer.class, 1000);
+        final int maxDuration = testArtefact.getMaxDuration().getOrDefault(Integer.class, 0);
+        final int numberOfIterations = testArtefact.getIterations().getOrDefault(Integer.class, 0);
+        final int numberOfWorkers = testArtefact.getWorkers().getOrDefault(Integer.class, 1);
+        final int maxNumberOfWorkers = getMaxWorkers(testArtefact);
+        final int maxDelay = testArtefact.getMaxDelay().getOrDefault(Integer.class, 0);
+        final int delayTolerance = testArtefact.getDelayTolerance().getOrDefault(Integer.class, 0);
+        final List<ArrivalRateStage> stages = Objects.requireNonNullElse(testArtefact.getStages(), List.of());
+
+        if (numberOfWorkers <= 0) {
+            throw new RuntimeException("Invalid argument: The number of workers has to be higher than 0.");
+        }
+
+        if (maxNumberOfWorkers < numberOfWorkers) {
+            throw new RuntimeException("Invalid argument: The maximum number of workers cannot be lower than the number of workers.");
+        }
+
+        if (timeUnit <= 0) {
+            throw new RuntimeException("Invalid argument: The time unit has to be higher than 0.");
+        }
+
+        if (stages.isEmpty() && rate <= 0) {
+            throw new RuntimeException("Invalid argument: The rate has to be higher than 0.");
+        }
+
+        if (stages.isEmpty() && maxDuration == 0 && numberOfIterations == 0) {
+            throw new RuntimeException(
+                "Invalid argument: Either specify the stages, the maximum duration or the number of iterations of the thread group.");
+        }
+
+        ArrivalRateProfile profile;
+        try {
+            if (stages.isEmpty()) {
+                profile = ArrivalRateProfile.constant(rate, timeUnit, maxDuration);
+            } else {
+                List<ArrivalRateProfile.Stage> profileStages = stages.stream().map(s -> new ArrivalRateProfile.Stage(
+                    s.getDuration().getOrDefault(Integer.class, 0), s.getTarget().getOrDefault(Integer.class, 0))).collect(Collectors.toList());
+                profile = ArrivalRateProfile.staged(rate, timeUnit, profileStages, maxDuration);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid argument: " + e.getMessage(), e);
+        }
+
+        ThreadPool threadPool = context.get(ThreadPool.class);
+        int effectiveMaxNumberOfWorkers = threadPool.getEffectiveNumberOfThreads(maxNumberOfWorkers);
+        int effectiveNumberOfWorkers = Math.min(numberOfWorkers, effectiveMaxNumberOfWorkers);
+
+        LiveReportingContext liveReportingContext = LiveReportingPlugin.getNodeLiveReportingContext(context, node);
+        TimeSeriesRecorder timeSeriesRecorder = new TimeSeriesRecorder(liveReportingContext, node.getName());
+
+        int maxPendingIterations = context.getConfiguration().getPropertyAsInteger(MAX_PENDING_ITERATIONS_CONFIG,
+            ArrivalRateScheduler.DEFAULT_MAX_PENDING_ITERATIONS);
+        long workerIdleTimeout = context.getConfiguration().getPropertyAsLong(WORKER_IDLE_TIMEOUT_CONFIG,
+            ArrivalRateScheduler.DEFAULT_WORKER_IDLE_TIMEOUT_MS);
+        ArrivalRateScheduler scheduler = new ArrivalRateScheduler(profile, numberOfIterations, effectiveNumberOfWorkers,
+            effectiveMaxNumberOfWorkers, maxDelay, delayTolerance, REPORTING_INTERVAL_MS, maxPendingIterations, workerIdleTimeout,
+            timeSeriesRecorder);
+
+        // The dispatcher runs in the thread pool of the execution. It stops when the execution is aborted or when the
+        // group terminates abnormally
+        Future<?> dispatcher = threadPool.submitBackgroundTask(() ->
+            scheduler.dispatch(() -> context.isInterrupted() || java.lang.Thread.currentThread().isInterrupted()));
+
+        AtomicLong gcounter = new AtomicLong(0);
+        AtomicReportNodeStatusComposer reportNodeStatusComposer = new AtomicReportNodeStatusComposer(node);
+        boolean completed = false;
+        try {
+            // A thread is only taken from the pool when the scheduler activates a worker
+            threadPool.consumeWorkOnDemand(scheduler.workerIterator(context::isInterrupted), new WorkerItemConsumerFactory<Integer>() {
+                @Override
+                public Consumer<Integer> createWorkItemConsumer(ThreadPool.WorkerController<Integer> workerController) {
+                    return workerId -> {
+                        try {
+                            Worker worker = createWorkArtefact(Worker.class, testArtefact, "Worker " + workerId, true);
+                            worker.setWorkerId(workerId);
+                            worker.setScheduler(scheduler);
+                            worker.setGcounter(gcounter);
+                            worker.setThreadGroup(testArtefact);
+                            worker.setBeforeThread(testArtefact.getBeforeThread());
+                            worker.setAfterThread(testArtefact.getAfterThread());
+                            HashMap<String, Object> newVariable = new HashMap<>();
+                            newVariable.put(testArtefact.getUserItem().get(), workerId);
+                            ReportNode workerReportNode = delegateExecute(worker, node, newVariable);
+                            reportNodeStatusComposer.addStatusAndRecompose(workerReportNode);
+                        } catch (Throwable e) {
+                            failWithException(node, e);
+                            reportNodeStatusComposer.addStatusAndRecompose(node);
+                        }
+                    };
+                }
+            });
+            completed = true;
+        } finally {
+            if (!completed) {
+                dispatcher.cancel(true);
+            }
+            try {
+                dispatcher.get();
+            } catch (CancellationException e) {
+                // The dispatcher has been stopped
+            } catch (InterruptedException e) {
+                java.lang.Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                failWithException(node, e.getCause());
+            }
+            timeSeriesRecorder.onReportingInterval();
+        }
+
+        node.setScheduledIterations(scheduler.getScheduledIterations());
+        node.setExecutedIterations(scheduler.getStartedIterations());
+        node.setDroppedIterations(scheduler.getDroppedIterations());
+        node.setDelayedIterations(scheduler.getDelayedIterations());
+        node.setAverageStartLatency(scheduler.getAverageStartLatencyMs());
+        node.setMaxStartLatency(scheduler.getMaxStartLatencyMs());
+        node.setPeakWorkers(scheduler.getPeakWorkers());
+
+        reportNodeStatusComposer.applyComposedStatusToParentNode(node);
+    }
+
+    @Override
+    protected List<ResolvedChildren> resolveChildrenArtefactBySource_(ArrivalRateThreadGroup artefactNode, String currentPath) {
+        List<ResolvedChildren> results = new ArrayList<>();
+        ChildrenBlock beforeThread = artefactNode.getBeforeThread();
+        if (beforeThread != null) {
+            results.add(new ResolvedChildren(ParentSource.BEFORE_THREAD, beforeThread.getSteps(), currentPath));
+        }
+        results.add(new ResolvedChildren(ParentSource.MAIN, artefactNode.getChildren(), currentPath));
+        ChildrenBlock afterThread = artefactNode.getAfterThread();
+        if (afterThread != null) {
+            results.add(new ResolvedChildren(ParentSource.AFTER_THREAD, afterThread.getSteps(), currentPath));
+        }
+        return results;
+    }
+
+    @Override
+    public ArrivalRateReportNode createReportNode_(ReportNode parentNode, ArrivalRateThreadGroup testArtefact) {
+        return new ArrivalRateReportNode();
+    }
+
+    /**
+     * Records the scheduled, dropped and delayed iterations as well as the start latencies as metrics of the
+     * {@link LiveReportingContext} of the group, aggregated per reporting interval
+     */
+    private static class TimeSeriesRecorder implements ArrivalRateScheduler.Listener {
+
+        private final LiveReportingContext liveReportingContext;
+        private final Map<String, String> labels;
+        private final LongAdder scheduled = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder delayed = new LongAdder();
+        private HistogramMetric startLatencies;
+        private long startLatencyCount;
+
+        private TimeSeriesRecorder(LiveReportingContext liveReportingContext, String threadGroupName) {
+            this.liveReportingContext = liveReportingContext;
+            this.labels = Map.of(LABEL_THREAD_GROUP, Objects.requireNonNullElse(threadGroupName, "Unnamed"));
+            this.startLatencies = new HistogramMetric(METRIC_START_LATENCY, labels);
+        }
+
+        @Override
+        public void onIterationScheduled() {
+            scheduled.increment();
+        }
+
+        @Override
+        public void onIterationStarted(long startLatencyNanos, boolean delayed) {
+            if (delayed) {
+                this.delayed.increment();
+            }
+            if (liveReportingContext != null) {
+                synchronized (this) {
+                    startLatencies.observe(startLatencyNanos / 1_000_000);
+                    startLatencyCount++;
+                }
+            }
+        }
+
+        @Override
+        public void onIterationDropped(long startLatencyNanos) {
+            dropped.increment();
+        }
+
+        @Override
+        public void onReportingInterval() {
+            if (liveReportingContext == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            List<MetricSample> samples = new ArrayList<>();
+            samples.add(new CounterMetric(METRIC_SCHEDULED_ITERATIONS, labels).increment(scheduled.sumThenReset(), now).flush());
+            samples.add(new CounterMetric(METRIC_DROPPED_ITERATIONS, labels).increment(dropped.sumThenReset(), now).flush());
+            samples.add(new CounterMetric(METRIC_DELAYED_ITERATIONS, labels).increment(delayed.sumThenReset(), now).flush());
+            HistogramMetric intervalStartLatencies = null;
+            synchronized (this) {
+                if (startLatencyCount > 0) {
+                    intervalStartLatencies = startLatencies;
+                    startLatencies = new HistogramMetric(METRIC_START_LATENCY, labels);
+                    startLatencyCount = 0;
+                }
+            }
+            if (intervalStartLatencies != null) {
+                samples.add(intervalStartLatencies.flush());
+            }
+            liveReportingContext.onMetricsReceived(samples);
+        }
+    }
+
+    @Artefact(test = true)
+    public static class Worker extends AbstractArtefact {
+
+        @JsonIgnore
+        int workerId;
+        @JsonIgnore
+        ArrivalRateScheduler scheduler;
+        @JsonIgnore
+        ArrivalRateThreadGroup threadGroup;
+        @JsonIgnore
+        AtomicLong gcounter;
+        @JsonIgnore
+        ChildrenBlock beforeThread = new ChildrenBlock();
+        @JsonIgnore
+        ChildrenBlock afterThread = new ChildrenBlock();
+
+        public Worker() {
+            super();
+        }
+
+        public int getWorkerId() {
+            return workerId;
+        }
+
+        public void setWorkerId(int workerId) {
+            this.workerId = workerId;
+        }
+
+        public ArrivalRateScheduler getScheduler() {
+            return scheduler;
+        }
+
+        public void setScheduler(ArrivalRateScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        public ArrivalRateThreadGroup getThreadGroup() {
+            return threadGroup;
+        }
+
+        public void setThreadGroup(ArrivalRateThreadGroup threadGroup) {
+            this.threadGroup = threadGroup;
+        }
+
+        public AtomicLong getGcounter() {
+            return gcounter;
+        }
+
+        public void setGcounter(AtomicLong gcounter) {
+            this.gcounter = gcounter;
+        }
+
+        public ChildrenBlock getBeforeThread() {
+            return beforeThread;
+        }
+
+        public void setBeforeThread(ChildrenBlock beforeThread) {
+            this.beforeThread = beforeThread;
+        }
+
+        public ChildrenBlock getAfterThread() {
+            return afterThread;
+        }
+
+        public void setAfterThread(ChildrenBlock afterThread) {
+            this.afterThread = afterThread;
+        }
+    }
+
+    /**
+     * Executes the tickets of the {@link ArrivalRateScheduler} within a session. The {@link ThreadReportNode} of the workers
+     * are counted by the thread group gauges like the threads of the {@link step.artefacts.ThreadGroup}
+     */
+    public static class WorkerHandler extends AbstractSessionArtefactHandler<Worker, ThreadReportNode> {
+
+        @Override
+        protected void createReportSkeleton_(ThreadReportNode parentNode, Worker testArtefact) {
+        }
+
+        @Override
+        protected void execute_(ThreadReportNode node, Worker worker) {
+            ArrivalRateScheduler scheduler = worker.scheduler;
+            try {
+                ReportNode reportNode = executeInSession(worker, node, (sessionArtefact, sessionReportNode) -> {
+                    AtomicReportNodeStatusComposer sessionReportNodeStatusComposer = new AtomicReportNodeStatusComposer(sessionReportNode);
+                    try {
+                        optionalRunChildrenBlock(worker.getBeforeThread(), (before) -> {
+                            SequentialArtefactScheduler sequentialArtefactScheduler = new SequentialArtefactScheduler(context);
+                            sequentialArtefactScheduler.execute_(sessionReportNode, before.getSteps(), before.getContinueOnError().get(), ParentSource.BEFORE_THREAD);
+                            sessionReportNodeStatusComposer.addStatusAndRecompose(sessionReportNode);
+                        });
+
+                        context.getVariablesManager().putVariable(sessionReportNode, TEC_EXECUTION_REPORTNODES_PERSISTBEFORE, false);
+                        int localCounter = 0;
+                        ArrivalRateScheduler.Ticket ticket;
+                        while ((ticket = scheduler.nextTicket(context::isInterrupted)) != null) {
+                            ReportNode iterationReportNode = null;
+                            try {
+                                long globalCounterValue = worker.gcounter.incrementAndGet();
+                                localCounter++;
+
+                                Sequence iterationTestCase = createWorkArtefact(Sequence.class, sessionArtefact, "Iteration " + (ticket.getIndex() + 1));
+
+                                // Force the persistence of the iteration report node before its execution to have it
+                                // in the tree view (SED-1002)
+                                iterationTestCase.addCustomAttribute(ArtefactHandler.FORCE_PERSIST_BEFORE, true);
+                                for (AbstractArtefact child : sessionArtefact.getChildren()) {
+                                    iterationTestCase.addChild(child);
+                                }
+
+                                HashMap<String, Object> newVariable = new HashMap<>();
+                                newVariable.put(worker.threadGroup.getLocalItem().get(), localCounter);
+                                newVariable.put(worker.threadGroup.getItem().get(), globalCounterValue);
+
+                                iterationReportNode = delegateExecute(iterationTestCase, sessionReportNode, newVariable);
+                                sessionReportNodeStatusComposer.addStatusAndRecompose(iterationReportNode);
+                            } catch (Throwable e) {
+                                if (iterationReportNode != null) {
+                                    failWithException(iterationReportNode, e);
+                                    sessionReportNodeStatusComposer.addStatusAndRecompose(iterationReportNode);
+                                }
+                            } finally {
+                                scheduler.iterationCompleted();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        failWithException(sessionReportNode, e);
+                        sessionReportNodeStatusComposer.addStatusAndRecompose(sessionReportNode);
+                    } finally {
+                        // Execute the After Thread steps artefacts even when aborting
+                        boolean byPassInterrupt = context.isInterrupted();
+                        if (byPassInterrupt) {
+                            context.byPassInterruptInCurrentThread(true);
+                        }
+                        try {
+                            optionalRunChildrenBlock(worker.getAfterThread(), (after) -> {
+                                SequentialArtefactScheduler sequentialArtefactScheduler = new SequentialArtefactScheduler(context);
+                                sequentialArtefactScheduler.execute_(sessionReportNode, after.getSteps(), after.getContinueOnError().get(), ParentSource.AFTER_THREAD);
+                                sessionReportNodeStatusComposer.addStatusAndRecompose(sessionReportNode);
+                            });
+                        } finally {
+                            //resume aborting if required
+                            if (byPassInterrupt) {
+                                context.byPassInterruptInCurrentThread(false);
+                            }
+                        }
+                    }
+                    sessionReportNodeStatusComposer.applyComposedStatusToParentNode(sessionReportNode);
+                });
+
+                node.setStatus(reportNode.getStatus());
+            } finally {
+                scheduler.workerStopped();
+            }
+        }
+
+        @Override
+        public ThreadReportNode createReportNode_(ReportNode parentNode, Worker testArtefact) {
+            ThreadReportNode threadReportNode = new ThreadReportNode();
+            threadReportNode.setThreadGroupName((parentNode != null) ? parentNode.getName() : "Unnamed");
+            return threadReportNode;
+        }
+    }
+}
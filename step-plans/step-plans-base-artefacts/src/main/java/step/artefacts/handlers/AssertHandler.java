@@ -20,6 +20,9 @@ package step.artefacts.handlers;
 
 import jakarta.json.JsonObject;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
 
@@ -40,6 +43,9 @@ import java.util.Map;
 
 public class AssertHandler extends ArtefactHandler<Assert, AssertReportNode> {
 
+    // Compiled JSONPath expressions by expression
+    private static final Cache<String, JsonPath> jsonPathCache = CacheBuilder.newBuilder().maximumSize(1000).build();
+
     private final Map<AssertOperator, AssertOperatorHandler> operatorHandlers;
 
     public AssertHandler() {
@@ -79,7 +85,7 @@ public class AssertHandler extends ArtefactHandler<Assert, AssertReportNode> {
             // so here we use Object type for expected value
             Object expectedValue = artefact.getExpected().get();
 
-            ValueResolvingResult valueResolvingResult = resolveValue(outputJson, key);
+            ValueResolvingResult valueResolvingResult = resolveValue(callFunctionReport, outputJson, key);
 
             boolean passed = false;
             if (valueResolvingResult.actualResolved) {
@@ -113,18 +119,18 @@ public class AssertHandler extends ArtefactHandler<Assert, AssertReportNode> {
         }
     }
 
-    private ValueResolvingResult resolveValue(JsonObject outputJson, String key) {
+    private ValueResolvingResult resolveValue(CallFunctionReportNode callFunctionReport, JsonObject outputJson, String key) {
         if (key.startsWith("$")) {
-            return resolveJsonPathValue(outputJson, key);
+            return resolveJsonPathValue(callFunctionReport, outputJson, key);
         } else {
             return resolveSimpleValue(outputJson, key);
         }
     }
 
-    private ValueResolvingResult resolveJsonPathValue(JsonObject outputJson, String key) {
+    private ValueResolvingResult resolveJsonPathValue(CallFunctionReportNode callFunctionReport, JsonObject outputJson, String key) {
         ValueResolvingResult valueResolvingResult = new ValueResolvingResult();
         try {
-            valueResolvingResult.actual = JsonPath.parse(outputJson.toString()).read(key);
+            valueResolvingResult.actual = getOutputDocument(callFunctionReport, outputJson).read(getJsonPath(key));
             valueResolvingResult.actualResolved = true;
         } catch (PathNotFoundException e) {
             // the attribute is missing (but we mark the value as resolved because some operators like 'notNull' support the missing values as nulls)
@@ -136,6 +142,25 @@ public class AssertHandler extends ArtefactHandler<Assert, AssertReportNode> {
         return valueResolvingResult;
     }
 
+    private DocumentContext getOutputDocument(CallFunctionReportNode callFunctionReport, JsonObject outputJson) {
+        // The output is parsed once and shared by all the asserts of the keyword call
+        DocumentContext outputDocument = callFunctionReport.getOutputDocument();
+        if (outputDocument == null) {
+            outputDocument = JsonPath.parse(outputJson.toString());
+            callFunctionReport.setOutputDocument(outputDocument);
+        }
+        return outputDocument;
+    }
+
+    private static JsonPath getJsonPath(String key) {
+        JsonPath jsonPath = jsonPathCache.getIfPresent(key);
+        if (jsonPath == null) {
+            jsonPath = JsonPath.compile(key);
+            jsonPathCache.put(key, jsonPath);
+        }
+        return jsonPath;
+    }
+
     private ValueResolvingResult resolveSimpleValue(JsonObject outputJson, String key) {
         ValueResolvingResult result = new ValueResolvingResult();
         JsonValue jsonValue = outputJson.get(key);
@@ -50,6 +50,7 @@ import step.core.execution.ExecutionContextBindings;
 import step.core.execution.ExecutionContextWrapper;
 import step.core.execution.OperationMode;
 import step.core.json.JsonProviderCache;
+import step.core.miscellaneous.HexContentInputStream;
 import step.core.miscellaneous.ReportNodeAttachmentManager;
 import step.core.objectenricher.ObjectEnricher;
 import step.core.plans.Plan;
@@ -65,6 +66,7 @@ import step.functions.accessor.FunctionAccessor;
 import step.functions.execution.FunctionExecutionService;
 import step.functions.execution.FunctionExecutionServiceException;
 import step.functions.handler.AbstractFunctionHandler;
+import step.functions.handler.BinaryAttachment;
 import step.functions.handler.MeasureTypes;
 import step.functions.io.FunctionInput;
 import step.functions.io.Output;
@@ -73,13 +75,14 @@ import step.grid.Token;
 import step.grid.TokenWrapper;
 import step.grid.agent.tokenpool.TokenReservationSession;
 import step.grid.io.Attachment;
-import step.grid.io.AttachmentHelper;
 import step.grid.tokenpool.Interest;
 import step.livereporting.LiveReportingContext;
 import step.livereporting.LiveReportingPlugin;
 import step.plugins.functions.types.CompositeFunction;
 import step.streaming.common.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -345,7 +348,7 @@ public class CallFunctionHandler extends ArtefactHandler<CallFunction, CallFunct
 
                     if (output.getAttachments() != null) {
                         for (Attachment a : output.getAttachments()) {
-                            AttachmentMeta attachmentMeta = reportNodeAttachmentManager.createAttachment(AttachmentHelper.hexStringToByteArray(a.getHexContent()), a.getName(), a.getMimeType());
+                            AttachmentMeta attachmentMeta = reportNodeAttachmentManager.createAttachment(getAttachmentContent(a), a.getName(), a.getMimeType());
                             node.addAttachment(attachmentMeta);
                         }
                     }
@@ -408,6 +411,21 @@ public class CallFunctionHandler extends ArtefactHandler<CallFunction, CallFunct
         }
     }
 
+    /**
+     * @param attachment the attachment returned by the keyword
+     * @return a stream of the raw content of the attachment
+     */
+    private static InputStream getAttachmentContent(Attachment attachment) {
+        if (attachment instanceof BinaryAttachment) {
+            // The attachments received in binary mode carry their raw content
+            byte[] content = ((BinaryAttachment) attachment).getContent();
+            return new ByteArrayInputStream(content != null ? content : new byte[0]);
+        } else {
+            // The hexadecimal content is decoded while being written to the resource storage to avoid a copy of the whole attachment
+            return new HexContentInputStream(attachment.getHexContent());
+        }
+    }
+
     /**
      * A Call function shall always have a measure of type "keyword", if the output measure is empty (mostly happen in case the agent call was not completed due to interruption), we create one directly here
      * Note don't use Map.of(), List.of() as these could be enriched with more content later
@@ -469,7 +487,7 @@ public class CallFunctionHandler extends ArtefactHandler<CallFunction, CallFunct
 
     private void validateInput(FunctionInput<JsonObject> input, Function function) {
         if (context.getConfiguration().getPropertyAsBoolean("enforceschemas", false)) {
-            JsonSchemaValidator.validate(function.getSchema().toString(), input.getPayload().toString());
+            JsonSchemaValidator.validate(function, input.getPayload());
         }
     }
 
@@ -19,24 +19,35 @@
 package step.artefacts.handlers;
 
 import step.artefacts.AbstractForBlock;
+import step.artefacts.ForEachBlock;
 import step.artefacts.Sequence;
 import step.artefacts.handlers.functions.MultiplyingTokenForecastingContext;
 import step.artefacts.handlers.functions.TokenForecastingContext;
 import step.artefacts.reports.ForBlockReportNode;
+import step.core.artefacts.AbstractArtefact;
 import step.core.artefacts.handlers.AtomicReportNodeStatusComposer;
 import step.core.artefacts.handlers.SequentialArtefactScheduler;
 import step.core.artefacts.reports.ReportNode;
 import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.execution.ExecutionContext;
+import step.core.metrics.CounterMetric;
+import step.core.metrics.GaugeMetric;
 import step.datapool.DataPoolFactory;
 import step.datapool.DataPoolRow;
 import step.datapool.DataSet;
+import step.datapool.ReadAheadBuffer;
 import step.expressions.ProtectedVariable;
+import step.livereporting.LiveReportingContext;
+import step.livereporting.LiveReportingPlugin;
 import step.threadpool.ThreadPool;
 import step.threadpool.ThreadPool.WorkerController;
 import step.threadpool.WorkerItemConsumerFactory;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
@@ -47,6 +58,14 @@ public class ForBlockHandler extends AbstractSessionArtefactHandler<AbstractForB
 
     private static final String BREAK_VARIABLE = "break";
 
+    public static final String METRIC_READ_AHEAD_READ_ROWS = "dataset/readahead/read";
+    public static final String METRIC_READ_AHEAD_CONSUMER_WAITS = "dataset/readahead/consumer-waits";
+    public static final String METRIC_READ_AHEAD_CONSUMER_WAIT_TIME = "dataset/readahead/consumer-wait-time";
+    public static final String METRIC_READ_AHEAD_PRODUCER_WAITS = "dataset/readahead/producer-waits";
+    public static final String METRIC_READ_AHEAD_PRODUCER_WAIT_TIME = "dataset/readahead/producer-wait-time";
+    public static final String METRIC_READ_AHEAD_OCCUPANCY = "dataset/readahead/occupancy";
+    public static final String LABEL_FOR_EACH = "forEach";
+
     @Override
     public void createReportSkeleton_(ForBlockReportNode node, AbstractForBlock testArtefact) {
         DataSet<?> dataSet = null;
@@ -103,6 +122,8 @@ public class ForBlockHandler extends AbstractSessionArtefactHandler<AbstractForB
     public void execute_(ForBlockReportNode node, AbstractForBlock testArtefact) {
         final DataSet<?> dataSet = getDataPool(testArtefact);
         try {
+            enableReadAheadIfConfigured(testArtefact, dataSet);
+
             Iterator<DataPoolRow> workItemIterator = new Iterator<>() {
 
                 @Override
@@ -164,7 +185,13 @@ public class ForBlockHandler extends AbstractSessionArtefactHandler<AbstractForB
                         }
                     };
                 }
-            }, effectiveNumberOfThreads);
+
+                @Override
+                public void onWorkItemSkipped(DataPoolRow workItem) {
+                    // Rows prefetched but not consumed have to be committed too to unblock the write queue of the data set
+                    workItem.commit();
+                }
+            }, effectiveNumberOfThreads, threadPool.getPrefetchSize(effectiveNumberOfThreads, dataSet.getMaxUncommittedRows()));
 
             node.setErrorCount(failedLoopsCounter.get());
             node.setCount(loopsCounter.get());
@@ -177,11 +204,47 @@ public class ForBlockHandler extends AbstractSessionArtefactHandler<AbstractForB
                     dataSet.save();
                 } finally {
                     dataSet.close();
+                    publishReadAheadMetrics(node, dataSet);
                 }
             }
         }
     }
 
+    private void enableReadAheadIfConfigured(AbstractForBlock testArtefact, DataSet<?> dataSet) {
+        int depth = getReadAheadDepth(context, testArtefact);
+        if (depth > 0) {
+            dataSet.enableReadAhead(depth, context.get(ThreadPool.class));
+        }
+    }
+
+    /**
+     * @return the number of rows read ahead by the data set of the provided loop or 0 if the read-ahead is disabled
+     */
+    public static int getReadAheadDepth(ExecutionContext context, AbstractArtefact artefact) {
+        // The rows of the For are computed: only the data sources of the ForEach are worth being read ahead
+        if (artefact instanceof ForEachBlock && context.getConfiguration() != null) {
+            return context.getConfiguration().getPropertyAsInteger(ReadAheadBuffer.READ_AHEAD_DEPTH_CONFIG, 0);
+        }
+        return 0;
+    }
+
+    private void publishReadAheadMetrics(ForBlockReportNode node, DataSet<?> dataSet) {
+        ReadAheadBuffer.Statistics statistics = dataSet.getReadAheadStatistics();
+        // The live reporting context of the loop node, created by the LiveReportingPlugin when the read-ahead is enabled
+        LiveReportingContext liveReportingContext = LiveReportingPlugin.getNodeLiveReportingContext(context, node);
+        if (statistics != null && liveReportingContext != null) {
+            long now = System.currentTimeMillis();
+            Map<String, String> labels = Map.of(LABEL_FOR_EACH, Objects.requireNonNullElse(node.getName(), "Unnamed"));
+            liveReportingContext.onMetricsReceived(List.of(
+                new CounterMetric(METRIC_READ_AHEAD_READ_ROWS, labels).increment(statistics.getReadRows(), now).flush(),
+                new CounterMetric(METRIC_READ_AHEAD_CONSUMER_WAITS, labels).increment(statistics.getConsumerWaits(), now).flush(),
+                new CounterMetric(METRIC_READ_AHEAD_CONSUMER_WAIT_TIME, labels).increment(statistics.getConsumerWaitMs(), now).flush(),
+                new CounterMetric(METRIC_READ_AHEAD_PRODUCER_WAITS, labels).increment(statistics.getProducerWaits(), now).flush(),
+                new CounterMetric(METRIC_READ_AHEAD_PRODUCER_WAIT_TIME, labels).increment(statistics.getProducerWaitMs(), now).flush(),
+                new GaugeMetric(METRIC_READ_AHEAD_OCCUPANCY, labels).observe(Math.round(statistics.getAverageOccupancy()), now).flush()));
+        }
+    }
+
     private static HashMap<String, Object> getForBlockHandlerVariable(AbstractForBlock testArtefact, boolean dataSetIsProtected, DataPoolRow dataPoolRow, int globalCounter, int workerId) {
         HashMap<String, Object> newVariable = new HashMap<>();
         String key = testArtefact.getItem().get();
@@ -18,27 +18,178 @@
  ******************************************************************************/
 package step.artefacts.handlers;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
 import org.everit.json.schema.Schema;
 import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import step.functions.Function;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Validates JSON documents against JSON schemas. The compiled schemas are cached: the schemas passed as string are
+ * cached by definition and the schemas of the keywords by keyword id. The cached schema of a keyword is replaced as
+ * soon as the schema of the keyword changes.
+ * <p>
+ * The documents to be validated are converted to the model of the validation library directly from their
+ * jakarta.json or Jackson representation, without serializing and parsing them again.
+ */
 public class JsonSchemaValidator {
 
+    private static final int CACHE_SIZE = 1000;
+
+    private static final Cache<String, Schema> schemasByDefinition = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+    private static final Cache<String, FunctionSchema> schemasByFunctionId = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
     public static String validate(String schema, String input) {
         try {
-            JSONObject jsonSchema = new JSONObject(schema);
-            JSONObject jsonSubject = new JSONObject(input);
-
-            Schema schema_ = SchemaLoader.load(jsonSchema);
-            schema_.validate(jsonSubject);
-            try {
-                return jsonSubject.getString("version");
-            } catch (Exception e) {
-                return null;
+            return validate(getSchema(schema), new JSONObject(input));
+        } catch (JSONException e) {
+            throw new RuntimeException("Error while validating input \n" + input, e);
+        }
+    }
+
+    /**
+     * Validates a JSON document parsed with Jackson (from JSON or YAML)
+     *
+     * @param schema the JSON schema
+     * @param input  the document to be validated. The root of the document has to be an object
+     * @return the value of the field "version" of the document if any
+     */
+    public static String validate(String schema, JsonNode input) {
+        try {
+            if (!input.isObject()) {
+                throw new JSONException("A JSONObject text must begin with '{'");
             }
+            return validate(getSchema(schema), (JSONObject) toJSON(input));
+        } catch (JSONException e) {
+            throw new RuntimeException("Error while validating input \n" + input, e);
+        }
+    }
+
+    /**
+     * Validates the input of a keyword against the schema of the keyword
+     *
+     * @param function the keyword
+     * @param input    the input of the keyword
+     */
+    public static void validate(Function function, JsonObject input) {
+        JsonObject schemaDefinition = function.getSchema();
+        Schema schema;
+        try {
+            schema = function.getId() != null ? getFunctionSchema(function.getId().toString(), schemaDefinition)
+                : getSchema(schemaDefinition.toString());
         } catch (JSONException e) {
             throw new RuntimeException("Error while validating input \n" + input, e);
         }
+        validate(schema, (JSONObject) toJSON(input));
+    }
+
+    private static String validate(Schema schema, JSONObject subject) {
+        schema.validate(subject);
+        try {
+            return subject.getString("version");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Schema getSchema(String schema) {
+        try {
+            return schemasByDefinition.get(schema, () -> SchemaLoader.load(new JSONObject(schema)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private static Schema getFunctionSchema(String functionId, JsonObject schemaDefinition) {
+        FunctionSchema functionSchema = schemasByFunctionId.getIfPresent(functionId);
+        // The functions are reloaded for each call: the schemas are compared by value if they aren't the same instance
+        if (functionSchema == null || (functionSchema.definition != schemaDefinition && !functionSchema.definition.equals(schemaDefinition))) {
+            functionSchema = new FunctionSchema(schemaDefinition, SchemaLoader.load((JSONObject) toJSON(schemaDefinition)));
+            schemasByFunctionId.put(functionId, functionSchema);
+        }
+        return functionSchema.schema;
+    }
+
+    private static Object toJSON(JsonValue value) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                JSONObject object = new JSONObject();
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    object.put(entry.getKey(), toJSON(entry.getValue()));
+                }
+                return object;
+            case ARRAY:
+                JSONArray array = new JSONArray();
+                for (JsonValue item : (JsonArray) value) {
+                    array.put(toJSON(item));
+                }
+                return array;
+            case STRING:
+                return ((JsonString) value).getString();
+            case NUMBER:
+                // Convert the numbers to the same types as the parser of org.json
+                return JSONObject.stringToValue(((JsonNumber) value).toString());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                return JSONObject.NULL;
+        }
+    }
+
+    private static Object toJSON(JsonNode node) {
+        if (node.isObject()) {
+            JSONObject object = new JSONObject();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                object.put(field.getKey(), toJSON(field.getValue()));
+            }
+            return object;
+        } else if (node.isArray()) {
+            JSONArray array = new JSONArray();
+            for (JsonNode item : node) {
+                array.put(toJSON(item));
+            }
+            return array;
+        } else if (node.isTextual()) {
+            return node.textValue();
+        } else if (node.isNumber()) {
+            // Convert the numbers to the same types as the parser of org.json
+            return JSONObject.stringToValue(node.toString());
+        } else if (node.isBoolean()) {
+            return node.booleanValue();
+        } else if (node.isNull() || node.isMissingNode()) {
+            return JSONObject.NULL;
+        } else {
+            return node.asText();
+        }
+    }
+
+    private static class FunctionSchema {
+
+        private final JsonObject definition;
+        private final Schema schema;
+
+        private FunctionSchema(JsonObject definition, Schema schema) {
+            this.definition = definition;
+            this.schema = schema;
+        }
     }
 }
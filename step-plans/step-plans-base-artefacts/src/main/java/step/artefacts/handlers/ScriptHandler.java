@@ -36,7 +36,7 @@ public class ScriptHandler extends ArtefactHandler<Script, ReportNode> {
     @Override
     protected void execute_(ReportNode node, Script testArtefact) {
         ExpressionHandler expressionHandler = context.getExpressionHandler();
-        Map<String, Object> bindings = context.getVariablesManager().getAllVariables();
+        Map<String, Object> bindings = context.getVariablesManager().getVariablesScope();
 
         expressionHandler.evaluateGroovyExpression(testArtefact.getScript(), bindings);
         node.setStatus(ReportNodeStatus.PASSED);
@@ -21,18 +21,26 @@ package step.artefacts.handlers;
 import step.artefacts.TestSet;
 import step.artefacts.handlers.functions.MaxAndMultiplyingTokenForecastingContext;
 import step.artefacts.handlers.functions.TokenForecastingContext;
+import step.artefacts.handlers.scheduler.HistoryBasedTestSetScheduler;
 import step.core.artefacts.AbstractArtefact;
 import step.core.artefacts.handlers.ArtefactHandler;
+import step.core.artefacts.handlers.ArtefactPathHelper;
 import step.core.artefacts.handlers.AtomicReportNodeStatusComposer;
 import step.core.artefacts.reports.ReportNode;
 import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.artefacts.reports.aggregated.ReportNodeTimeSeries;
+import step.core.collections.Filters;
 import step.threadpool.ThreadPool;
 import step.threadpool.ThreadPool.WorkerController;
 import step.threadpool.WorkerItemConsumerFactory;
 
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static step.artefacts.handlers.functions.TokenForecastingExecutionPlugin.getTokenForecastingContext;
@@ -40,6 +48,9 @@ import static step.artefacts.handlers.functions.TokenForecastingExecutionPlugin.
 
 public class TestSetHandler extends ArtefactHandler<TestSet, ReportNode> {
 
+    public static final String TEC_TESTSET_SCHEDULER_HISTORY_ENABLED = "tec.testset.scheduler.history.enabled";
+    public static final String TEC_TESTSET_SCHEDULER_HISTORY_DAYS = "tec.testset.scheduler.history.days";
+
     @Override
     public void createReportSkeleton_(ReportNode node, TestSet testSet) {
         context.getExecutionManager().updateExecutionType("TestSet");
@@ -80,9 +91,12 @@ public class TestSetHandler extends ArtefactHandler<TestSet, ReportNode> {
         AtomicReportNodeStatusComposer reportNodeStatusComposer = new AtomicReportNodeStatusComposer(ReportNodeStatus.NORUN);
 
         List<AbstractArtefact> children = getChildren(testSet);
-        Iterator<AbstractArtefact> childrenIt = children.iterator();
         ThreadPool threadPool = context.get(ThreadPool.class);
         int effectiveNumberOfThreads = threadPool.getEffectiveNumberOfThreads(numberOfThreads, children.size());
+        if (execution && effectiveNumberOfThreads > 1) {
+            children = orderChildrenByHistoricalDuration(children);
+        }
+        Iterator<AbstractArtefact> childrenIt = children.iterator();
 
         threadPool.consumeWork(childrenIt, new WorkerItemConsumerFactory<AbstractArtefact>() {
             @Override
@@ -101,6 +115,36 @@ public class TestSetHandler extends ArtefactHandler<TestSet, ReportNode> {
         reportNodeStatusComposer.applyComposedStatusToParentNode(node);
     }
 
+    /**
+     * The threads of the test set pull the test cases one by one. Starting with the longest test cases according
+     * to the previous executions of the plan avoids ending the test set with a single thread executing a long test case.
+     */
+    private List<AbstractArtefact> orderChildrenByHistoricalDuration(List<AbstractArtefact> children) {
+        ReportNodeTimeSeries reportNodeTimeSeries = context.get(ReportNodeTimeSeries.class);
+        if (reportNodeTimeSeries == null || !reportNodeTimeSeries.isIngestionEnabled() || context.getPlan() == null ||
+            !context.getVariablesManager().getVariableAsBoolean(TEC_TESTSET_SCHEDULER_HISTORY_ENABLED, true)) {
+            return children;
+        }
+        try {
+            Map<AbstractArtefact, String> artefactHashes = new IdentityHashMap<>();
+            String currentArtefactPath = currentArtefactPath();
+            children.forEach(child -> artefactHashes.put(child, ArtefactPathHelper.generateArtefactHash(currentArtefactPath, child)));
+
+            int historyDays = context.getVariablesManager().getVariableAsInteger(TEC_TESTSET_SCHEDULER_HISTORY_DAYS, 30);
+            long now = System.currentTimeMillis();
+            Map<String, Long> averageDurations = reportNodeTimeSeries.queryAverageDurationByArtefactHash(
+                Filters.equals("attributes.planId", context.getPlan().getId().toString()),
+                new HashSet<>(artefactHashes.values()),
+                new ReportNodeTimeSeries.Range(now - TimeUnit.DAYS.toMillis(historyDays), now));
+
+            return new HistoryBasedTestSetScheduler(child -> averageDurations.get(artefactHashes.get(child))).orderTestCases(children);
+        } catch (Exception e) {
+            // The order of the test cases only affects the duration of the test set
+            logger.warn("Unable to order the test cases by historical duration. Keeping the order of the plan.", e);
+            return children;
+        }
+    }
+
     @Override
     public ReportNode createReportNode_(ReportNode parentNode, TestSet testArtefact) {
         return new ReportNode();
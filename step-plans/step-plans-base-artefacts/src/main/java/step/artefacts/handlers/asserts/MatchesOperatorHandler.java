@@ -18,7 +18,16 @@
  ******************************************************************************/
 package step.artefacts.handlers.asserts;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.regex.Pattern;
+
 public class MatchesOperatorHandler extends AbstractOperatorHandler {
+
+    // Compiled regular expressions by expression
+    private static final Cache<String, Pattern> patternCache = CacheBuilder.newBuilder().maximumSize(1000).build();
+
     @Override
     public boolean isActualValueSupported(Object value) {
         return isString(value);
@@ -27,9 +36,18 @@ public class MatchesOperatorHandler extends AbstractOperatorHandler {
     @Override
     public AssertResult apply(String key, Object actual, Object expectedValue, boolean negate) {
         AssertResult assertResult = new AssertResult();
-        assertResult.setPassed(negate ^ ((String) actual).matches((String) expectedValue));
+        assertResult.setPassed(negate ^ getPattern((String) expectedValue).matcher((String) actual).matches());
         assertResult.setMessage("'" + key + "' expected" + not(negate) + "to match regular expression '" + expectedValue + "' " + (assertResult.isPassed() ? "and" : "but") + " was '" + actual + "'");
         assertResult.setDescription(key + not(negate) + "matches '" + expectedValue + "'");
         return assertResult;
     }
+
+    private static Pattern getPattern(String regex) {
+        Pattern pattern = patternCache.getIfPresent(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            patternCache.put(regex, pattern);
+        }
+        return pattern;
+    }
 }
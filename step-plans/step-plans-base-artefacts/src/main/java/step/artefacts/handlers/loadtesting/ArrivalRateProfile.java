@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers.loadtesting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines the times at which the iterations of an open model load test have to be started.
+ * <p>
+ * The arrival rate is either constant or follows a list of stages during which it changes linearly
+ * from the rate at the end of the previous stage to the target rate of the stage. The n-th iteration
+ * is scheduled at the time when the cumulated number of arrivals (i.e. the integral of the arrival
+ * rate) reaches n, the first iteration being scheduled at the beginning of the profile.
+ */
+public class ArrivalRateProfile {
+
+    private static final double EPSILON = 1e-9;
+
+    private final List<Segment> segments;
+    private final double totalArrivals;
+    private final long durationMs;
+
+    private ArrivalRateProfile(List<Segment> segments, long durationMs) {
+        this.segments = segments;
+        this.durationMs = durationMs;
+        Segment last = segments.get(segments.size() - 1);
+        this.totalArrivals = last.isUnbounded() ? Double.POSITIVE_INFINITY : last.getArrivalsAtEnd();
+    }
+
+    /**
+     * @param rate          the number of iterations to be started per time unit
+     * @param timeUnitMs    the time unit of the rate in ms
+     * @param maxDurationMs the duration of the profile in ms. 0 for an unbounded profile
+     * @return a profile with a constant arrival rate
+     */
+    public static ArrivalRateProfile constant(double rate, long timeUnitMs, long maxDurationMs) {
+        return staged(rate, timeUnitMs, List.of(new Stage(maxDurationMs, rate)), maxDurationMs);
+    }
+
+    /**
+     * @param startRate     the number of iterations to be started per time unit at the beginning of the first stage
+     * @param timeUnitMs    the time unit of the rates in ms
+     * @param stages        the stages of the profile. A stage with a duration of 0 is only supported as last stage and keeps its
+     *                      target rate forever
+     * @param maxDurationMs the maximum duration of the profile in ms. 0 to run the stages to completion
+     * @return a profile following the provided stages
+     */
+    public static ArrivalRateProfile staged(double startRate, long timeUnitMs, List<Stage> stages, long maxDurationMs) {
+        if (timeUnitMs <= 0) {
+            throw new IllegalArgumentException("The time unit has to be higher than 0");
+        }
+        if (stages == null || stages.isEmpty()) {
+            throw new IllegalArgumentException("At least one stage has to be defined");
+        }
+        if (startRate < 0) {
+            throw new IllegalArgumentException("The arrival rate cannot be negative");
+        }
+        List<Segment> segments = new ArrayList<>();
+        double previousRate = startRate / timeUnitMs;
+        double startMs = 0;
+        double arrivals = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            if (stage.getTargetRate() < 0) {
+                throw new IllegalArgumentException("The target rate of the stage " + (i + 1) + " cannot be negative");
+            }
+            if (stage.getDurationMs() < 0 || (stage.getDurationMs() == 0 && i < stages.size() - 1)) {
+                throw new IllegalArgumentException("Invalid duration for the stage " + (i + 1) + ". Only the last stage can have an unlimited duration");
+            }
+            double targetRate = stage.getTargetRate() / timeUnitMs;
+            Segment segment = new Segment(startMs, stage.getDurationMs(), previousRate, targetRate, arrivals);
+            segments.add(segment);
+            if (segment.isUnbounded()) {
+                break;
+            }
+            startMs += stage.getDurationMs();
+            arrivals = segment.getArrivalsAtEnd();
+            previousRate = targetRate;
+        }
+        Segment last = segments.get(segments.size() - 1);
+        long stagesDurationMs = last.isUnbounded() ? 0 : (long) (last.startMs + last.durationMs);
+        long durationMs;
+        if (maxDurationMs > 0) {
+            durationMs = stagesDurationMs > 0 ? Math.min(maxDurationMs, stagesDurationMs) : maxDurationMs;
+        } else {
+            durationMs = stagesDurationMs;
+        }
+        return new ArrivalRateProfile(segments, durationMs);
+    }
+
+    /**
+     * @return the duration of the profile in ms. 0 if the profile is unbounded
+     */
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * @param offsetMs the time elapsed since the beginning of the profile in ms
+     * @return the arrival rate in iterations per ms at the provided time
+     */
+    public double getRatePerMs(long offsetMs) {
+        for (Segment segment : segments) {
+            if (segment.isUnbounded() || offsetMs < segment.startMs + segment.durationMs) {
+                return segment.getRate(Math.max(0, offsetMs - segment.startMs));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param index the 0-based index of the iteration
+     * @return the time at which the iteration has to be started, relative to the beginning of the profile in ns,
+     * or -1 if the profile ends before
+     */
+    public long getArrivalOffsetNanos(long index) {
+        if (index >= totalArrivals - EPSILON) {
+            return -1;
+        }
+        for (Segment segment : segments) {
+            if (segment.isUnbounded() || index < segment.getArrivalsAtEnd() - EPSILON) {
+                double offsetMs = segment.startMs + segment.getTimeOfArrival(index);
+                if (Double.isInfinite(offsetMs) || (durationMs > 0 && offsetMs >= durationMs - EPSILON)) {
+                    return -1;
+                }
+                return Math.round(offsetMs * 1_000_000);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A stage of an {@link ArrivalRateProfile}
+     */
+    public static class Stage {
+
+        private final long durationMs;
+        private final double targetRate;
+
+        /**
+         * @param durationMs the duration of the stage in ms
+         * @param targetRate the number of iterations to be started per time unit at the end of the stage
+         */
+        public Stage(long durationMs, double targetRate) {
+            this.durationMs = durationMs;
+            this.targetRate = targetRate;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        public double getTargetRate() {
+            return targetRate;
+        }
+    }
+
+    /**
+     * A segment of the profile during which the rate changes linearly.
+     * The cumulated number of arrivals at the time t relative to the beginning of the segment is given by
+     * A(t) = arrivalsAtStart + startRate * t + slope / 2 * t^2
+     */
+    private static class Segment {
+
+        private final double startMs;
+        private final double durationMs;
+        private final double startRate;
+        private final double slope;
+        private final double arrivalsAtStart;
+
+        private Segment(double startMs, long durationMs, double startRate, double endRate, double arrivalsAtStart) {
+            this.startMs = startMs;
+            this.durationMs = durationMs;
+            this.startRate = durationMs > 0 ? startRate : endRate;
+            this.slope = durationMs > 0 ? (endRate - startRate) / durationMs : 0;
+            this.arrivalsAtStart = arrivalsAtStart;
+        }
+
+        private boolean isUnbounded() {
+            return durationMs == 0;
+        }
+
+        private double getRate(double t) {
+            return startRate + slope * t;
+        }
+
+        private double getArrivalsAtEnd() {
+            return arrivalsAtStart + startRate * durationMs + slope / 2 * durationMs * durationMs;
+        }
+
+        private double getTimeOfArrival(long index) {
+            double arrivals = index - arrivalsAtStart;
+            if (arrivals <= 0) {
+                return 0;
+            }
+            // Solving slope/2 * t^2 + startRate * t - arrivals = 0 in a numerically stable form that also covers slope == 0
+            double denominator = startRate + Math.sqrt(startRate * startRate + 2 * slope * arrivals);
+            return denominator > 0 ? 2 * arrivals / denominator : Double.POSITIVE_INFINITY;
+        }
+    }
+}
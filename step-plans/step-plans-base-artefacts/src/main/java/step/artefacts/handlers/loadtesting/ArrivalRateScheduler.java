@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers.loadtesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Schedules the iterations of an open model load test according to an {@link ArrivalRateProfile}.
+ * <p>
+ * Contrary to the {@link Pacer} used by the closed model of the ThreadGroup, the start of an iteration doesn't depend
+ * on the completion of the previous one: the dispatcher (see {@link #dispatch(BooleanSupplier)}) issues a {@link Ticket}
+ * at each scheduled arrival and the workers consume them (see {@link #nextTicket(BooleanSupplier)}). When no worker is
+ * available the tickets wait in the queue and the iterations are started late. Iterations that cannot be started within
+ * the maximum delay are dropped. The number of pending tickets is bounded: arrivals occurring while the queue is full
+ * are missed and counted as dropped iterations.
+ * <p>
+ * The pool of workers is bounded if the maximum number of workers equals the initial number of workers. Otherwise
+ * additional workers are activated (see {@link #workerIterator(BooleanSupplier)}) as long as pending tickets exceed
+ * the number of idle workers. Additional workers that remained idle for the idle timeout are stopped.
+ */
+public class ArrivalRateScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArrivalRateScheduler.class);
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS);
+
+    public static final int DEFAULT_MAX_PENDING_ITERATIONS = 10_000;
+    public static final long DEFAULT_WORKER_IDLE_TIMEOUT_MS = 60_000;
+
+    private final ArrivalRateProfile profile;
+    private final long maxIterations;
+    private final int initialWorkers;
+    private final int maxWorkers;
+    private final long maxDelayNanos;
+    private final long delayToleranceNanos;
+    private final long reportingIntervalNanos;
+    private final long workerIdleTimeoutNanos;
+    private final Listener listener;
+
+    private final BlockingQueue<Ticket> tickets;
+    private final BlockingQueue<Integer> workerActivations = new LinkedBlockingQueue<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+    // The number of workers stopped because of the idle timeout that haven't called workerStopped() yet
+    private final AtomicInteger retiredWorkers = new AtomicInteger();
+    private int workerIdSequence = 0;
+    private volatile boolean finished = false;
+
+    private final LongAdder scheduledIterations = new LongAdder();
+    private final LongAdder startedIterations = new LongAdder();
+    private final LongAdder droppedIterations = new LongAdder();
+    private final LongAdder missedIterations = new LongAdder();
+    private final LongAdder delayedIterations = new LongAdder();
+    private final LongAdder startLatencyNanos = new LongAdder();
+    private final LongAccumulator maxStartLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator peakWorkers = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param profile               the arrival rate profile
+     * @param maxIterations         the maximum number of iterations to be scheduled. 0 for no limit
+     * @param initialWorkers        the number of workers activated at start
+     * @param maxWorkers            the maximum number of concurrently active workers
+     * @param maxDelayMs            the maximum delay in ms after which an iteration that couldn't be started is dropped. 0 to never drop iterations
+     * @param delayToleranceMs      the delay in ms after which a started iteration is counted as delayed
+     * @param reportingIntervalMs   the interval in ms at which {@link Listener#onReportingInterval()} is called
+     * @param listener              the listener notified of the scheduling events
+     */
+    public ArrivalRateScheduler(ArrivalRateProfile profile, long maxIterations, int initialWorkers, int maxWorkers, long maxDelayMs,
+                                long delayToleranceMs, long reportingIntervalMs, Listener listener) {
+        this(profile, maxIterations, initialWorkers, maxWorkers, maxDelayMs, delayToleranceMs, reportingIntervalMs,
+            DEFAULT_MAX_PENDING_ITERATIONS, DEFAULT_WORKER_IDLE_TIMEOUT_MS, listener);
+    }
+
+    /**
+     * @param profile               the arrival rate profile
+     * @param maxIterations         the maximum number of iterations to be scheduled. 0 for no limit
+     * @param initialWorkers        the number of workers activated at start
+     * @param maxWorkers            the maximum number of concurrently active workers
+     * @param maxDelayMs            the maximum delay in ms after which an iteration that couldn't be started is dropped. 0 to never drop iterations
+     * @param delayToleranceMs      the delay in ms after which a started iteration is counted as delayed
+     * @param reportingIntervalMs   the interval in ms at which {@link Listener#onReportingInterval()} is called
+     * @param maxPendingIterations  the maximum number of iterations waiting for a worker. Further arrivals are missed
+     * @param workerIdleTimeoutMs   the time in ms after which an idle worker is stopped if more than the initial number of workers are active.
+     *                              0 to never stop idle workers
+     * @param listener              the listener notified of the scheduling events
+     */
+    public ArrivalRateScheduler(ArrivalRateProfile profile, long maxIterations, int initialWorkers, int maxWorkers, long maxDelayMs,
+                                long delayToleranceMs, long reportingIntervalMs, int maxPendingIterations, long workerIdleTimeoutMs,
+                                Listener listener) {
+        if (initialWorkers <= 0) {
+            throw new IllegalArgumentException("The number of workers has to be higher than 0");
+        }
+        if (maxWorkers < initialWorkers) {
+            throw new IllegalArgumentException("The maximum number of workers cannot be lower than the number of workers");
+        }
+        if (reportingIntervalMs <= 0) {
+            throw new IllegalArgumentException("The reporting interval has to be higher than 0");
+        }
+        if (maxPendingIterations <= 0) {
+            throw new IllegalArgumentException("The maximum number of pending iterations has to be higher than 0");
+        }
+        this.profile = profile;
+        this.maxIterations = maxIterations;
+        this.initialWorkers = initialWorkers;
+        this.maxWorkers = maxWorkers;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.delayToleranceNanos = TimeUnit.MILLISECONDS.toNanos(delayToleranceMs);
+        this.reportingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reportingIntervalMs);
+        this.workerIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(workerIdleTimeoutMs);
+        this.tickets = new LinkedBlockingQueue<>(maxPendingIterations);
+        this.listener = listener != null ? listener : new Listener() {
+        };
+    }
+
+    /**
+     * Issues the tickets according to the profile. This method blocks until the profile or the maximum number of
+     * iterations is reached or until the provided condition signals an interruption.
+     *
+     * @param isInterrupted the interruption condition
+     */
+    public void dispatch(BooleanSupplier isInterrupted) {
+        try {
+            for (int i = 0; i < initialWorkers; i++) {
+                activateWorker();
+            }
+            long startNanos = System.nanoTime();
+            long nextReportNanos = startNanos + reportingIntervalNanos;
+            long index = 0;
+            while (!isInterrupted.getAsBoolean() && (maxIterations == 0 || index < maxIterations)) {
+                long offsetNanos = profile.getArrivalOffsetNanos(index);
+                if (offsetNanos < 0) {
+                    break;
+                }
+                long scheduledNanos = startNanos + offsetNanos;
+                long now;
+                // Park in slices to remain responsive to interruptions and to report at regular interval
+                while ((now = System.nanoTime()) - scheduledNanos < 0 && !isInterrupted.getAsBoolean()) {
+                    if (now - nextReportNanos >= 0) {
+                        nextReportNanos += reportingIntervalNanos;
+                        listener.onReportingInterval();
+                    }
+                    LockSupport.parkNanos(Math.min(scheduledNanos - now, Math.min(MAX_PARK_NANOS, nextReportNanos - now)));
+                }
+                if (isInterrupted.getAsBoolean()) {
+                    break;
+                }
+                if (now - nextReportNanos >= 0) {
+                    nextReportNanos += reportingIntervalNanos;
+                    listener.onReportingInterval();
+                }
+                scheduledIterations.increment();
+                listener.onIterationScheduled();
+                if (!tickets.offer(new Ticket(index++, scheduledNanos))) {
+                    // The workers cannot keep up with the arrival rate. Miss the arrival instead of growing the backlog indefinitely
+                    missedIterations.increment();
+                    droppedIterations.increment();
+                    listener.onIterationDropped(now - scheduledNanos);
+                }
+                activateWorkerIfRequired();
+            }
+        } finally {
+            finished = true;
+        }
+    }
+
+    private void activateWorkerIfRequired() {
+        if (tickets.size() > idleWorkers.get() && activeWorkers.get() < maxWorkers) {
+            activateWorker();
+            if (logger.isDebugEnabled()) {
+                logger.debug("All workers busy. Activated worker " + workerIdSequence + ". Active workers: " + activeWorkers.get());
+            }
+        }
+    }
+
+    private void activateWorker() {
+        // A worker is considered idle from its activation until it takes its first ticket
+        idleWorkers.incrementAndGet();
+        peakWorkers.accumulate(activeWorkers.incrementAndGet());
+        workerActivations.add(++workerIdSequence);
+    }
+
+    /**
+     * @param isInterrupted the interruption condition
+     * @return a blocking iterator returning the ID of each activated worker and null when the dispatching is finished.
+     * The iterator is meant to be passed to ThreadPool.consumeWorkOnDemand() which starts a thread for each activated worker.
+     */
+    public Iterator<Integer> workerIterator(BooleanSupplier isInterrupted) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                throw new RuntimeException("This method shouldn't be called");
+            }
+
+            @Override
+            public Integer next() {
+                try {
+                    Integer workerId;
+                    while ((workerId = workerActivations.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) == null) {
+                        if (finished || isInterrupted.getAsBoolean()) {
+                            return null;
+                        }
+                    }
+                    return workerId;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Waits for the next ticket. Tickets that exceeded the maximum delay are dropped.
+     * After each returned ticket the worker has to call {@link #iterationCompleted()}
+     *
+     * @param isInterrupted the interruption condition
+     * @return the next ticket to be executed or null if the dispatching is finished and all tickets have been consumed
+     * or if the worker has been idle for the idle timeout and isn't required anymore
+     * @throws InterruptedException
+     */
+    public Ticket nextTicket(BooleanSupplier isInterrupted) throws InterruptedException {
+        long idleSinceNanos = System.nanoTime();
+        while (true) {
+            Ticket ticket = tickets.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (ticket == null) {
+                if ((finished && tickets.isEmpty()) || isInterrupted.getAsBoolean()) {
+                    return null;
+                }
+                if (workerIdleTimeoutNanos > 0 && System.nanoTime() - idleSinceNanos >= workerIdleTimeoutNanos && retireWorker()) {
+                    return null;
+                }
+            } else {
+                long latencyNanos = System.nanoTime() - ticket.scheduledNanos;
+                if (maxDelayNanos > 0 && latencyNanos > maxDelayNanos) {
+                    droppedIterations.increment();
+                    listener.onIterationDropped(latencyNanos);
+                } else {
+                    idleWorkers.decrementAndGet();
+                    boolean delayed = latencyNanos > delayToleranceNanos;
+                    startedIterations.increment();
+                    startLatencyNanos.add(latencyNanos);
+                    maxStartLatencyNanos.accumulate(latencyNanos);
+                    if (delayed) {
+                        delayedIterations.increment();
+                    }
+                    listener.onIterationStarted(latencyNanos, delayed);
+                    return ticket;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deactivates an idle worker if more than the initial number of workers are active
+     *
+     * @return true if the worker has to stop
+     */
+    private boolean retireWorker() {
+        int active;
+        while ((active = activeWorkers.get()) > initialWorkers) {
+            if (activeWorkers.compareAndSet(active, active - 1)) {
+                idleWorkers.decrementAndGet();
+                retiredWorkers.incrementAndGet();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Stopping idle worker. Active workers: " + (active - 1));
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has to be called by the worker after the execution of each ticket returned by {@link #nextTicket(BooleanSupplier)}
+     */
+    public void iterationCompleted() {
+        idleWorkers.incrementAndGet();
+    }
+
+    /**
+     * Has to be called by the worker when it stops
+     */
+    public void workerStopped() {
+        // The retired workers have already been deactivated by retireWorker(). Any stopping worker can take over the
+        // pending retirement as the counters only have to match once all of them stopped
+        if (retiredWorkers.getAndUpdate(retired -> retired > 0 ? retired - 1 : 0) == 0) {
+            idleWorkers.decrementAndGet();
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getScheduledIterations() {
+        return scheduledIterations.sum();
+    }
+
+    public long getStartedIterations() {
+        return startedIterations.sum();
+    }
+
+    public long getDroppedIterations() {
+        return droppedIterations.sum();
+    }
+
+    /**
+     * @return the number of arrivals missed because the maximum number of pending iterations was reached. These
+     * iterations are included in the dropped iterations
+     */
+    public long getMissedIterations() {
+        return missedIterations.sum();
+    }
+
+    /**
+     * @return the number of started iterations whose start latency exceeded the delay tolerance
+     */
+    public long getDelayedIterations() {
+        return delayedIterations.sum();
+    }
+
+    /**
+     * @return the average delay in ms between the scheduled and the actual start of the started iterations
+     */
+    public double getAverageStartLatencyMs() {
+        long started = startedIterations.sum();
+        return started > 0 ? startLatencyNanos.sum() / 1_000_000.0 / started : 0;
+    }
+
+    /**
+     * @return the maximum delay in ms between the scheduled and the actual start of the started iterations
+     */
+    public double getMaxStartLatencyMs() {
+        return maxStartLatencyNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return the number of currently active workers
+     */
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    /**
+     * @return the maximum number of concurrently active workers
+     */
+    public int getPeakWorkers() {
+        return (int) peakWorkers.get();
+    }
+
+    public static class Ticket {
+
+        private final long index;
+        private final long scheduledNanos;
+
+        public Ticket(long index, long scheduledNanos) {
+            this.index = index;
+            this.scheduledNanos = scheduledNanos;
+        }
+
+        /**
+         * @return the 0-based index of the iteration
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the scheduled start time of the iteration as returned by {@link System#nanoTime()}
+         */
+        public long getScheduledNanos() {
+            return scheduledNanos;
+        }
+    }
+
+    /**
+     * Listener of the scheduling events. The methods are called concurrently by the dispatcher and the workers
+     */
+    public interface Listener {
+
+        default void onIterationScheduled() {
+        }
+
+        default void onIterationStarted(long startLatencyNanos, boolean delayed) {
+        }
+
+        default void onIterationDropped(long startLatencyNanos) {
+        }
+
+        /**
+         * Called by the dispatcher at each reporting interval
+         */
+        default void onReportingInterval() {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+import step.core.artefacts.AbstractArtefact;
+
+/**
+ * Scheduler minimizing the total duration (makespan) of a test set based on the expected duration of its test cases,
+ * typically their average duration in the previous executions.
+ * <p>
+ * The test cases are scheduled longest first (LPT rule): the long test cases are started first and the short ones
+ * fill the gaps at the end of the execution. The test cases whose duration is unknown (new test cases for instance)
+ * are expected to last the average duration of the known test cases. If no duration is known at all, the order of
+ * the plan is kept.
+ */
+public class HistoryBasedTestSetScheduler extends TestSetScheduler {
+
+    private final Function<AbstractArtefact, Long> expectedDurationProvider;
+
+    /**
+     * @param expectedDurationProvider returns the expected duration of a test case or null if it is unknown
+     */
+    public HistoryBasedTestSetScheduler(Function<AbstractArtefact, Long> expectedDurationProvider) {
+        this.expectedDurationProvider = expectedDurationProvider;
+    }
+
+    @Override
+    public List<AbstractArtefact> orderTestCases(List<AbstractArtefact> artefacts) {
+        Map<AbstractArtefact, Long> expectedDurations = getExpectedDurations(artefacts);
+        if (expectedDurations == null) {
+            return artefacts;
+        }
+        List<AbstractArtefact> orderedArtefacts = new ArrayList<>(artefacts);
+        // The sort is stable: test cases of the same expected duration keep the order of the plan
+        orderedArtefacts.sort(Comparator.comparing(expectedDurations::get, Comparator.reverseOrder()));
+        return orderedArtefacts;
+    }
+
+    @Override
+    public List<TestCaseBundle> bundleTestCases(List<AbstractArtefact> artefacts, int numberOfBundles) {
+        Map<AbstractArtefact, Long> expectedDurations = getExpectedDurations(artefacts);
+        if (expectedDurations == null) {
+            return new DefaultTestSetScheduler().bundleTestCases(artefacts, numberOfBundles);
+        }
+
+        List<TestCaseBundle> bundles = new ArrayList<>(numberOfBundles);
+        // Each test case is assigned to the bundle with the lowest expected duration
+        PriorityQueue<BundleLoad> loads = new PriorityQueue<>(numberOfBundles,
+            Comparator.comparingLong((BundleLoad l) -> l.expectedDuration).thenComparingInt(l -> l.index));
+        for (int i = 0; i < numberOfBundles; i++) {
+            TestCaseBundle bundle = new TestCaseBundle();
+            bundles.add(bundle);
+            loads.add(new BundleLoad(i, bundle));
+        }
+        for (AbstractArtefact artefact : orderTestCases(artefacts)) {
+            BundleLoad load = loads.poll();
+            load.bundle.getTestcases().add(artefact);
+            load.expectedDuration += expectedDurations.get(artefact);
+            loads.add(load);
+        }
+        return bundles;
+    }
+
+    /**
+     * @return the expected duration of each test case or null if none of them is known
+     */
+    private Map<AbstractArtefact, Long> getExpectedDurations(List<AbstractArtefact> artefacts) {
+        Map<AbstractArtefact, Long> expectedDurations = new IdentityHashMap<>();
+        long knownDurationsSum = 0;
+        int knownDurationsCount = 0;
+        for (AbstractArtefact artefact : artefacts) {
+            Long expectedDuration = expectedDurationProvider.apply(artefact);
+            if (expectedDuration != null) {
+                expectedDurations.put(artefact, expectedDuration);
+                knownDurationsSum += expectedDuration;
+                knownDurationsCount++;
+            }
+        }
+        if (knownDurationsCount == 0) {
+            return null;
+        }
+        long defaultDuration = knownDurationsSum / knownDurationsCount;
+        artefacts.forEach(artefact -> expectedDurations.putIfAbsent(artefact, defaultDuration));
+        return expectedDurations;
+    }
+
+    private static class BundleLoad {
+
+        private final int index;
+        private final TestCaseBundle bundle;
+        private long expectedDuration;
+
+        private BundleLoad(int index, TestCaseBundle bundle) {
+            this.index = index;
+            this.bundle = bundle;
+        }
+    }
+}
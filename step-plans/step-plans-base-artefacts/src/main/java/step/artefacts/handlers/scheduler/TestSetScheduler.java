@@ -25,4 +25,14 @@ import step.core.artefacts.AbstractArtefact;
 public abstract class TestSetScheduler {
 
     public abstract List<TestCaseBundle> bundleTestCases(List<AbstractArtefact> artefacts, int numberOfBundles);
+
+    /**
+     * Defines the order in which the test cases are pulled by the threads of a test set
+     *
+     * @param artefacts the test cases in the order of the plan
+     * @return the test cases in the order in which they should be executed
+     */
+    public List<AbstractArtefact> orderTestCases(List<AbstractArtefact> artefacts) {
+        return artefacts;
+    }
 }
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.reports;
+
+import step.core.artefacts.reports.ReportNode;
+
+public class ArrivalRateReportNode extends ReportNode {
+
+    private long scheduledIterations;
+
+    private long executedIterations;
+
+    private long droppedIterations;
+
+    private long delayedIterations;
+
+    private double averageStartLatency;
+
+    private double maxStartLatency;
+
+    private int peakWorkers;
+
+    public long getScheduledIterations() {
+        return scheduledIterations;
+    }
+
+    public void setScheduledIterations(long scheduledIterations) {
+        this.scheduledIterations = scheduledIterations;
+    }
+
+    public long getExecutedIterations() {
+        return executedIterations;
+    }
+
+    public void setExecutedIterations(long executedIterations) {
+        this.executedIterations = executedIterations;
+    }
+
+    public long getDroppedIterations() {
+        return droppedIterations;
+    }
+
+    public void setDroppedIterations(long droppedIterations) {
+        this.droppedIterations = droppedIterations;
+    }
+
+    /**
+     * @return the number of executed iterations that have been started later than the delay tolerance
+     */
+    public long getDelayedIterations() {
+        return delayedIterations;
+    }
+
+    public void setDelayedIterations(long delayedIterations) {
+        this.delayedIterations = delayedIterations;
+    }
+
+    /**
+     * @return the average delay in ms between the scheduled and the actual start of the executed iterations
+     */
+    public double getAverageStartLatency() {
+        return averageStartLatency;
+    }
+
+    public void setAverageStartLatency(double averageStartLatency) {
+        this.averageStartLatency = averageStartLatency;
+    }
+
+    public double getMaxStartLatency() {
+        return maxStartLatency;
+    }
+
+    public void setMaxStartLatency(double maxStartLatency) {
+        this.maxStartLatency = maxStartLatency;
+    }
+
+    /**
+     * @return the maximum number of workers that were running concurrently
+     */
+    public int getPeakWorkers() {
+        return peakWorkers;
+    }
+
+    public void setPeakWorkers(int peakWorkers) {
+        this.peakWorkers = peakWorkers;
+    }
+}
@@ -25,6 +25,8 @@ import jakarta.json.JsonObject;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import com.jayway.jsonpath.DocumentContext;
+
 import step.core.accessors.AbstractOrganizableObject;
 import step.core.artefacts.reports.ReportNode;
 import step.core.metrics.MetricSample;
@@ -47,6 +49,13 @@ public class CallFunctionReportNode extends ReportNode {
     @JsonIgnore
     protected JsonObject outputObject;
 
+    /**
+     * The output object parsed for the evaluation of JSONPath expressions. It is parsed once and shared by all the
+     * asserts of the keyword call
+     */
+    @JsonIgnore
+    protected transient DocumentContext outputDocument;
+
     private List<Measure> measures;
 
     /**
@@ -99,6 +108,15 @@ public class CallFunctionReportNode extends ReportNode {
 
     public void setOutputObject(JsonObject outputObject) {
         this.outputObject = outputObject;
+        this.outputDocument = null;
+    }
+
+    public DocumentContext getOutputDocument() {
+        return outputDocument;
+    }
+
+    public void setOutputDocument(DocumentContext outputDocument) {
+        this.outputDocument = outputDocument;
     }
 
     public String getFunctionId() {
@@ -21,6 +21,7 @@ package step.datapool.excel;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import groovy.lang.MissingPropertyException;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -42,14 +44,36 @@ import step.core.miscellaneous.ValidationException;
 import step.core.variables.SimpleStringMap;
 import step.datapool.DataSet;
 
+/**
+ * Data set iterating over the rows of an excel sheet.
+ * <p>
+ * If the pool isn't configured for write, the rows of xlsx workbooks are read in streaming mode with a
+ * {@link StreamingSheetReader} which doesn't load the workbook into memory. The pool switches transparently to
+ * the POI user model (see {@link WorkbookSet}) at the first operation that requires it: writing a cell, adding a
+ * row, accessing a cell of another sheet or reading formulas that have to be evaluated.
+ */
 public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
 
     private static Logger logger = LoggerFactory.getLogger(ExcelDataPoolImpl.class);
 
+    File workBookFile;
+
+    String sheetName;
+
+    String password;
+
     WorkbookSet workbookSet;
 
     Sheet sheet;
 
+    volatile StreamingSheetReader streamingReader;
+
+    volatile StreamingSheetReader.StreamedRow firstStreamedRow;
+
+    volatile Map<String, Integer> streamedHeaderColumns;
+
+    String streamedSheetName;
+
     int cursor;
 
     boolean forWrite;
@@ -67,16 +91,78 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
         super.init();
 
         String bookName = configuration.getFile().get();
-        String sheetName = configuration.getWorksheet().get();
-        String password = configuration.getPassword().get();
+        sheetName = configuration.getWorksheet().get();
+        password = configuration.getPassword().get();
 
 
         logger.debug("book: " + bookName + " sheet: " + sheetName);
 
         ExcelFileLookup excelFileLookup = new ExcelFileLookup(context);
-        File workBookFile = excelFileLookup.lookup(bookName);
+        workBookFile = excelFileLookup.lookup(bookName);
 
         forWrite = configuration.getForWrite().get();
+        if (!forWrite && isStreamingSupported()) {
+            openStreamingReader();
+        } else {
+            openWorkbookSet();
+        }
+
+        resetCursor();
+    }
+
+    private boolean isStreamingSupported() {
+        if (!ExcelFunctions.isStreamingEnabled() || (password != null && !password.isBlank()) || !workBookFile.isFile()) {
+            return false;
+        }
+        try {
+            // Only xlsx workbooks can be streamed. Encrypted workbooks and xls workbooks are OLE2 files
+            return FileMagic.valueOf(workBookFile) == FileMagic.OOXML;
+        } catch (IOException e) {
+            logger.debug("Unable to determine the format of the workbook " + workBookFile.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    private void openStreamingReader() {
+        streamingReader = new StreamingSheetReader(workBookFile, sheetName);
+        streamedSheetName = streamingReader.getSheetName();
+        // The first row is read upfront as it contains the headers and is returned by getHeaders() even without headers
+        firstStreamedRow = streamingReader.readRow(0);
+        Map<String, Integer> headerColumns = new HashMap<>();
+        if (firstStreamedRow != null) {
+            for (int i = 0; i < firstStreamedRow.getColumnCount(); i++) {
+                String header = firstStreamedRow.getValue(i);
+                if (header != null) {
+                    headerColumns.putIfAbsent(header, i);
+                }
+            }
+        }
+        streamedHeaderColumns = headerColumns;
+        if (firstStreamedRow != null && firstStreamedRow.isEvaluationRequired()) {
+            switchToWorkbookModel();
+        }
+    }
+
+    private void closeStreamingReader() {
+        if (streamingReader != null) {
+            streamingReader.close();
+            streamingReader = null;
+        }
+        firstStreamedRow = null;
+    }
+
+    /**
+     * Switches from the streaming mode to the user model. The iteration continues at the current cursor
+     */
+    private synchronized void switchToWorkbookModel() {
+        if (streamingReader != null) {
+            logger.debug("Switching to the user model for the sheet " + streamedSheetName + " of workbook " + workBookFile.getName());
+            closeStreamingReader();
+            openWorkbookSet();
+        }
+    }
+
+    private void openWorkbookSet() {
         workbookSet = new WorkbookSet(workBookFile, ExcelFunctions.getMaxExcelSize(), forWrite, true, password);
 
         Workbook workbook = workbookSet.getMainWorkbook();
@@ -101,12 +187,14 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
                 }
             }
         }
-
-        resetCursor();
     }
 
     @Override
-    public void reset() {
+    public synchronized void reset() {
+        if (streamingReader != null) {
+            closeStreamingReader();
+            openStreamingReader();
+        }
         resetCursor();
     }
 
@@ -157,7 +245,27 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
         }
     }
 
+    private int mapHeaderToStreamedColumn(String header) {
+        if (configuration.getHeaders().get()) {
+            if (streamedHeaderColumns.isEmpty()) {
+                throw new ValidationException("The sheet " + streamedSheetName + " contains no headers");
+            }
+            Integer column = streamedHeaderColumns.get(header);
+            if (column != null) {
+                return column;
+            } else {
+                throw new ValidationException("The column " + header + " doesn't exist in sheet " + streamedSheetName);
+            }
+        } else {
+            return CellReference.convertColStringToIndex(header);
+        }
+    }
+
     private List<String> getHeaders() {
+        StreamingSheetReader.StreamedRow headerRow = firstStreamedRow;
+        if (streamingReader != null) {
+            return headerRow != null ? headerRow.getExistingValues() : new ArrayList<>();
+        }
         List<String> headers = new ArrayList<>();
         Row row = sheet.getRow(0);
         for (Cell cell : row) {
@@ -170,9 +278,26 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
     private static final String SKIP_STRING = "@SKIP";
 
     @Override
-    public Object next_() {
+    public synchronized Object next_() {
         for (; ; ) {
             cursor++;
+            if (streamingReader != null) {
+                StreamingSheetReader.StreamedRow row = cursor == 0 ? firstStreamedRow : streamingReader.readRow(cursor);
+                if (row == null || !row.isEvaluationRequired()) {
+                    String value = row != null ? row.getValue(0) : null;
+                    if (value != null && !value.isEmpty()) {
+                        if (value.equals(SKIP_STRING)) {
+                            continue;
+                        } else {
+                            return new RowWrapper(cursor, row);
+                        }
+                    } else {
+                        return null;
+                    }
+                }
+                // The row contains formulas that have to be evaluated: read it with the user model
+                switchToWorkbookModel();
+            }
             if (cursor <= sheet.getLastRowNum()) {
                 Row row;
                 if ((row = sheet.getRow(cursor)) == null) {
@@ -186,7 +311,7 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
                         if (value.equals(SKIP_STRING)) {
                             continue;
                         } else {
-                            return new RowWrapper(cursor);
+                            return new RowWrapper(cursor, null);
                         }
                     } else {
                         return null;
@@ -215,6 +340,8 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
     public void close() {
         super.close();
 
+        closeStreamingReader();
+
         if (workbookSet != null) {
             workbookSet.close();
         }
@@ -256,9 +383,16 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
 
         private final int cursor;
 
-        public RowWrapper(int cursor) {
+        private final StreamingSheetReader.StreamedRow streamedRow;
+
+        public RowWrapper(int cursor, StreamingSheetReader.StreamedRow streamedRow) {
             super();
             this.cursor = cursor;
+            this.streamedRow = streamedRow;
+        }
+
+        private boolean isStreamed() {
+            return streamedRow != null && streamingReader != null;
         }
 
         @Override
@@ -269,7 +403,13 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
 
         @Override
         public String get(String key) {
-            synchronized (workbookSet) {
+            // The values of streamed rows are immutable and can be read without locking
+            if (isStreamed() && !crossSheetPattern.matcher(key).find()) {
+                String value = streamedRow.getValue(mapHeaderToStreamedColumn(key));
+                return value != null ? value : "";
+            }
+            synchronized (ExcelDataPoolImpl.this) {
+                switchToWorkbookModel();
                 Cell cell = getCellByID(cursor, key);
                 return ExcelFunctions.getCellValueAsString(cell, workbookSet.getMainFormulaEvaluator());
             }
@@ -277,7 +417,8 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
 
         @Override
         public String put(String key, String value) {
-            synchronized (workbookSet) {
+            synchronized (ExcelDataPoolImpl.this) {
+                switchToWorkbookModel();
                 Cell cell = getCellByID(cursor, key);
                 if (cell != null) {
                     updated = true;
@@ -292,6 +433,14 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
         public int size() {
             int tableWidth = getHeaders().size();
             int nonNullCells = 0;
+            if (isStreamed()) {
+                for (int i = 0; i < tableWidth; i++) {
+                    String value = streamedRow.getValue(i);
+                    if ((value != null) && (!value.isEmpty()))
+                        nonNullCells++;
+                }
+                return nonNullCells;
+            }
             for (int i = 0; i < tableWidth; i++) {
                 Cell cell = sheet.getRow(cursor).getCell(i);
                 if (cell != null) {
@@ -311,6 +460,7 @@ public class ExcelDataPoolImpl extends DataSet<ExcelDataPool> {
 
     @Override
     public void addRow(Object rowInput_) {
+        switchToWorkbookModel();
         if (rowInput_ instanceof Map) {
             Row row = null;
             Map<?, ?> rowInput = (Map<?, ?>) rowInput_;
@@ -44,6 +44,7 @@ public class ExcelFunctions {
     public static class ConfigKeys {
         public static final String MAXEXCELSIZE = "tec.maxexcelsize";
         public static final String POI_BYTEARRAYMAXOVERRIDE = "tec.poibytearraymaxoverride";
+        public static final String STREAMING_ENABLED = "tec.excel.streaming.enabled";
     }
 
     private static Logger logger = LoggerFactory.getLogger(ExcelFunctions.class);
@@ -193,54 +194,9 @@ public class ExcelFunctions {
                 case NUMERIC:
                     /* Datum und Zeit (sind auch Zahlen) */
                     if (DateUtil.isCellDateFormatted(cell)) {
-                        Date dat = cell.getDateCellValue();
-                        GregorianCalendar cal = new GregorianCalendar();
-                        cal.setTime(dat);
-                        /*
-                         * In Excel beginnt die Zeitrechnung am 01.01.1900. Ein Datum ist immer als
-                         * double gespeichert. Dabei ist der Teil vor dem Dezimalpunkt das Datum
-                         * und der Teil nach dem Dezimalpunkt die Zeit (z.B. 1.5 entspricht 01.01.1900 12:00:00).
-                         * Falls der Tag 0 angegeben ist wird der Datumsanteil mit 31.12.1899 zurueck-
-                         * gegeben. Erhalten wir also ein Jahr kleiner als 1900, dann haben wir eine
-                         * Zeit.
-                         */
-                        if (cal.get(Calendar.YEAR) < 1900) { // Zeitformat
-                            SimpleDateFormat STD_TIM = new SimpleDateFormat("kk:mm:ss");
-                            return STD_TIM.format(dat);
-                        }
-
-                        SimpleDateFormat STD_DAT = new SimpleDateFormat("dd.MM.yyyy");
-                        return STD_DAT.format(dat); // Datumsformat
+                        return getDateValueAsString(cell.getDateCellValue());
                     } else {
-                        /* int, long, double Formate */
-                        double dbl = cell.getNumericCellValue();
-                        int tryInt = (int) dbl;
-                        long tryLong = (long) dbl;
-                        if (tryInt == dbl) {
-                            return new Integer(tryInt).toString(); // int-Format
-                        } else if (tryLong == dbl) {
-                            return new Long(tryLong).toString(); // long-Format
-                        }
-
-                        // return new Double(dbl).toString(); // double-Format
-                        String numberValueString = new Double(dbl).toString(); // double-Format
-
-                        // always use decimal format
-                        try {
-                            // scale 14 to solve problem like value 0.22 --> 0.219999999999997
-                            BigDecimal roundedBigDecimal = new BigDecimal(numberValueString).setScale(14, RoundingMode.HALF_UP); // use constructor BigDecimal(String)!
-
-                            String customValueString = getCustomDecimalFormat().format(roundedBigDecimal);
-                            if (!customValueString.equals(numberValueString)) {
-                                logger.debug("getCellValusAsString: Changing string value of double '{}' to '{}'", numberValueString, customValueString);
-                                numberValueString = customValueString; // bigdecimal-format
-
-                            }
-                        } catch (Exception e) {
-                            logger.error("An error occurred trying to convert the cell value number to decimal format " + numberValueString, e);
-                        }
-
-                        return numberValueString;
+                        return getNumericValueAsString(cell.getNumericCellValue());
                     }
 
                 case BOOLEAN:
@@ -259,24 +215,7 @@ public class ExcelFunctions {
                     return "";
 
                 case ERROR:
-                    switch (cell.getErrorCellValue()) {
-                        case 1:
-                            return "#NULL!";
-                        case 2:
-                            return "#DIV/0!";
-                        case 3:
-                            return "#VALUE!";
-                        case 4:
-                            return "#REF!";
-                        case 5:
-                            return "#NAME?";
-                        case 6:
-                            return "#NUM!";
-                        case 7:
-                            return "#N/A";
-                        default:
-                            return "#ERR!";
-                    }
+                    return getErrorValueAsString(cell.getErrorCellValue());
 
                 default:
                     return "ERROR: unknown Format";
@@ -290,6 +229,96 @@ public class ExcelFunctions {
 
     }
 
+    /**
+     * Konvertiert ein Datum oder eine Zeit in einen String.
+     *
+     * @param dat Datum der Zelle
+     * @return Datum als String im Format dd.MM.yyyy oder Zeit im Format kk:mm:ss
+     */
+    static String getDateValueAsString(Date dat) {
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(dat);
+        /*
+         * In Excel beginnt die Zeitrechnung am 01.01.1900. Ein Datum ist immer als
+         * double gespeichert. Dabei ist der Teil vor dem Dezimalpunkt das Datum
+         * und der Teil nach dem Dezimalpunkt die Zeit (z.B. 1.5 entspricht 01.01.1900 12:00:00).
+         * Falls der Tag 0 angegeben ist wird der Datumsanteil mit 31.12.1899 zurueck-
+         * gegeben. Erhalten wir also ein Jahr kleiner als 1900, dann haben wir eine
+         * Zeit.
+         */
+        if (cal.get(Calendar.YEAR) < 1900) { // Zeitformat
+            SimpleDateFormat STD_TIM = new SimpleDateFormat("kk:mm:ss");
+            return STD_TIM.format(dat);
+        }
+
+        SimpleDateFormat STD_DAT = new SimpleDateFormat("dd.MM.yyyy");
+        return STD_DAT.format(dat); // Datumsformat
+    }
+
+    /**
+     * Konvertiert eine Zahl in einen String.
+     *
+     * @param dbl Wert der Zelle
+     * @return Zahl als String im int-, long- oder Dezimalformat
+     */
+    static String getNumericValueAsString(double dbl) {
+        /* int, long, double Formate */
+        int tryInt = (int) dbl;
+        long tryLong = (long) dbl;
+        if (tryInt == dbl) {
+            return new Integer(tryInt).toString(); // int-Format
+        } else if (tryLong == dbl) {
+            return new Long(tryLong).toString(); // long-Format
+        }
+
+        // return new Double(dbl).toString(); // double-Format
+        String numberValueString = new Double(dbl).toString(); // double-Format
+
+        // always use decimal format
+        try {
+            // scale 14 to solve problem like value 0.22 --> 0.219999999999997
+            BigDecimal roundedBigDecimal = new BigDecimal(numberValueString).setScale(14, RoundingMode.HALF_UP); // use constructor BigDecimal(String)!
+
+            String customValueString = getCustomDecimalFormat().format(roundedBigDecimal);
+            if (!customValueString.equals(numberValueString)) {
+                logger.debug("getCellValusAsString: Changing string value of double '{}' to '{}'", numberValueString, customValueString);
+                numberValueString = customValueString; // bigdecimal-format
+
+            }
+        } catch (Exception e) {
+            logger.error("An error occurred trying to convert the cell value number to decimal format " + numberValueString, e);
+        }
+
+        return numberValueString;
+    }
+
+    /**
+     * Konvertiert einen Fehlercode in einen String.
+     *
+     * @param errorCode Fehlercode der Zelle
+     * @return Fehler als String
+     */
+    static String getErrorValueAsString(byte errorCode) {
+        switch (errorCode) {
+            case 1:
+                return "#NULL!";
+            case 2:
+                return "#DIV/0!";
+            case 3:
+                return "#VALUE!";
+            case 4:
+                return "#REF!";
+            case 5:
+                return "#NAME?";
+            case 6:
+                return "#NUM!";
+            case 7:
+                return "#N/A";
+            default:
+                return "#ERR!";
+        }
+    }
+
     private static CellType evaluateFormulaCell(Cell cell, FormulaEvaluator evaluator) {
         CellType typ = CellType._NONE;
         try {
@@ -318,6 +347,13 @@ public class ExcelFunctions {
         return configuration.getPropertyAsInteger(ConfigKeys.POI_BYTEARRAYMAXOVERRIDE, -1);
     }
 
+    /**
+     * @return true if the rows of read-only excel data pools may be read in streaming mode (see {@link StreamingSheetReader})
+     */
+    public static boolean isStreamingEnabled() {
+        return configuration.getPropertyAsBoolean(ConfigKeys.STREAMING_ENABLED, true);
+    }
+
     public static void setConfiguration(Configuration configuration) {
         ExcelFunctions.configuration = configuration;
     }
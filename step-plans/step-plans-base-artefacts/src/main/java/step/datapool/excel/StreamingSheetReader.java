@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.datapool.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import step.core.miscellaneous.ValidationException;
+
+/**
+ * Reads the rows of a sheet of a xlsx workbook sequentially with a pull parser instead of loading the whole
+ * workbook into the POI user model. Only the shared strings and the styles of the workbook are kept in memory:
+ * the memory footprint doesn't depend on the number of rows of the sheet.
+ * <p>
+ * The values are converted to strings like {@link ExcelFunctions#getCellValueAsString} does it. Formulas aren't
+ * evaluated: the values cached in the file are used instead. Rows containing formulas without cached value or
+ * belonging to a workbook flagged for recalculation on load (which is the case of all the workbooks saved by the
+ * {@link WorkbookFile}) are returned with {@link StreamedRow#isEvaluationRequired()} set and have to be read with
+ * the user model.
+ */
+class StreamingSheetReader implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingSheetReader.class);
+
+    private static final XMLInputFactory xmlInputFactory = XMLHelper.newXMLInputFactory();
+
+    private final File file;
+
+    private OPCPackage opcPackage;
+
+    private SharedStrings sharedStrings;
+
+    private StylesTable styles;
+
+    private boolean date1904;
+
+    private boolean recalculationRequired;
+
+    private String sheetName;
+
+    private InputStream sheetInputStream;
+
+    private XMLStreamReader xmlReader;
+
+    private StreamedRow pendingRow;
+
+    private int lastRowNum = -1;
+
+    private boolean endOfSheet = false;
+
+    /**
+     * @param file      the xlsx workbook
+     * @param sheetName the name of the sheet to be read. null or empty to read the first sheet
+     */
+    StreamingSheetReader(File file, String sheetName) {
+        this.file = file;
+        try {
+            open(sheetName);
+        } catch (Exception e) {
+            close();
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else {
+                throw new RuntimeException("Error while opening workbook '" + file.getName() + "': " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void open(String requestedSheetName) throws IOException, OpenXML4JException, SAXException, XMLStreamException {
+        opcPackage = OPCPackage.open(file, PackageAccess.READ);
+        XSSFReader reader = new XSSFReader(opcPackage);
+        sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+        styles = reader.getStylesTable();
+        readWorkbookProperties(reader);
+
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext() && sheetInputStream == null) {
+            InputStream candidate = sheets.next();
+            if (requestedSheetName == null || requestedSheetName.isEmpty() || sheets.getSheetName().equalsIgnoreCase(requestedSheetName)) {
+                sheetInputStream = candidate;
+                sheetName = sheets.getSheetName();
+            } else {
+                candidate.close();
+            }
+        }
+        if (sheetInputStream == null) {
+            if (requestedSheetName == null || requestedSheetName.isEmpty()) {
+                throw new ValidationException("The workbook " + file.getName() + " contains no sheet");
+            } else {
+                throw new ValidationException("The sheet " + requestedSheetName + " doesn't exist in the workbook " + file.getName());
+            }
+        }
+        xmlReader = xmlInputFactory.createXMLStreamReader(sheetInputStream);
+    }
+
+    private void readWorkbookProperties(XSSFReader reader) throws IOException, OpenXML4JException, XMLStreamException {
+        try (InputStream workbookInputStream = reader.getWorkbookData()) {
+            XMLStreamReader workbookReader = xmlInputFactory.createXMLStreamReader(workbookInputStream);
+            try {
+                while (workbookReader.hasNext()) {
+                    if (workbookReader.next() == XMLStreamConstants.START_ELEMENT) {
+                        String name = workbookReader.getLocalName();
+                        if ("workbookPr".equals(name)) {
+                            date1904 = isTrue(workbookReader.getAttributeValue(null, "date1904"));
+                        } else if ("calcPr".equals(name)) {
+                            recalculationRequired = isTrue(workbookReader.getAttributeValue(null, "fullCalcOnLoad"));
+                        }
+                    }
+                }
+            } finally {
+                workbookReader.close();
+            }
+        }
+    }
+
+    private static boolean isTrue(String attributeValue) {
+        return "1".equals(attributeValue) || "true".equals(attributeValue);
+    }
+
+    String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * Reads the sheet up to the requested row. The rows have to be requested in ascending order
+     *
+     * @param rowNum the 0-based index of the row
+     * @return the requested row or null if the row doesn't exist
+     */
+    StreamedRow readRow(int rowNum) {
+        StreamedRow row;
+        while ((row = peekRow()) != null && row.getRowNum() < rowNum) {
+            pendingRow = null;
+        }
+        if (row != null && row.getRowNum() == rowNum) {
+            pendingRow = null;
+            return row;
+        } else {
+            return null;
+        }
+    }
+
+    private StreamedRow peekRow() {
+        if (pendingRow == null && !endOfSheet) {
+            try {
+                pendingRow = parseNextRow();
+            } catch (XMLStreamException | RuntimeException e) {
+                throw new RuntimeException("Error while reading sheet " + sheetName + " of workbook '" + file.getName() + "': " + e.getMessage(), e);
+            }
+        }
+        return pendingRow;
+    }
+
+    private StreamedRow parseNextRow() throws XMLStreamException {
+        while (xmlReader.hasNext()) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "row".equals(xmlReader.getLocalName())) {
+                return parseRow();
+            } else if (event == XMLStreamConstants.END_ELEMENT && "sheetData".equals(xmlReader.getLocalName())) {
+                break;
+            }
+        }
+        endOfSheet = true;
+        return null;
+    }
+
+    private StreamedRow parseRow() throws XMLStreamException {
+        String rowReference = xmlReader.getAttributeValue(null, "r");
+        int rowNum = rowReference != null ? Integer.parseInt(rowReference) - 1 : lastRowNum + 1;
+        lastRowNum = rowNum;
+
+        List<String> values = new ArrayList<>();
+        boolean evaluationRequired = false;
+        int column = -1;
+        while (xmlReader.hasNext()) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "c".equals(xmlReader.getLocalName())) {
+                String cellReference = xmlReader.getAttributeValue(null, "r");
+                column = cellReference != null ? getColumnIndex(cellReference) : column + 1;
+                String value = parseCell();
+                if (value == null) {
+                    evaluationRequired = true;
+                } else {
+                    while (values.size() <= column) {
+                        values.add(null);
+                    }
+                    values.set(column, value);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xmlReader.getLocalName())) {
+                break;
+            }
+        }
+        return new StreamedRow(rowNum, values.toArray(new String[0]), evaluationRequired);
+    }
+
+    /**
+     * @return the value of the current cell or null if the cell contains a formula that has to be evaluated
+     */
+    private String parseCell() throws XMLStreamException {
+        String type = xmlReader.getAttributeValue(null, "t");
+        String style = xmlReader.getAttributeValue(null, "s");
+        boolean formula = false;
+        String value = null;
+        String inlineString = null;
+        while (xmlReader.hasNext()) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xmlReader.getLocalName();
+                if ("v".equals(name)) {
+                    value = xmlReader.getElementText();
+                } else if ("f".equals(name)) {
+                    formula = true;
+                } else if ("is".equals(name)) {
+                    inlineString = parseInlineString();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xmlReader.getLocalName())) {
+                break;
+            }
+        }
+
+        if (formula && (value == null || recalculationRequired)) {
+            return null;
+        } else if ("inlineStr".equals(type)) {
+            return inlineString != null ? inlineString : Objects.requireNonNullElse(value, "");
+        } else if (value == null) {
+            return "";
+        } else if ("s".equals(type)) {
+            return sharedStrings.getItemAt(Integer.parseInt(value)).getString();
+        } else if ("str".equals(type) || "d".equals(type)) {
+            return value;
+        } else if ("b".equals(type)) {
+            return Boolean.toString(isTrue(value));
+        } else if ("e".equals(type)) {
+            return getErrorValueAsString(value);
+        } else {
+            double numericValue = Double.parseDouble(value);
+            if (isDateFormatted(style, numericValue)) {
+                return ExcelFunctions.getDateValueAsString(DateUtil.getJavaDate(numericValue, date1904));
+            } else {
+                return ExcelFunctions.getNumericValueAsString(numericValue);
+            }
+        }
+    }
+
+    private String parseInlineString() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        boolean phoneticRun = false;
+        while (xmlReader.hasNext()) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xmlReader.getLocalName();
+                if ("rPh".equals(name)) {
+                    phoneticRun = true;
+                } else if ("t".equals(name) && !phoneticRun) {
+                    text.append(xmlReader.getElementText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = xmlReader.getLocalName();
+                if ("rPh".equals(name)) {
+                    phoneticRun = false;
+                } else if ("is".equals(name)) {
+                    break;
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static String getErrorValueAsString(String value) {
+        byte errorCode;
+        try {
+            errorCode = FormulaError.forString(value).getCode();
+        } catch (IllegalArgumentException e) {
+            logger.debug("Unknown error value " + value, e);
+            errorCode = -1;
+        }
+        return ExcelFunctions.getErrorValueAsString(errorCode);
+    }
+
+    private boolean isDateFormatted(String style, double value) {
+        if (styles == null || !DateUtil.isValidExcelDate(value)) {
+            return false;
+        }
+        // Like in the user model, cells without style use the default style
+        XSSFCellStyle cellStyle = styles.getStyleAt(style != null ? Integer.parseInt(style) : 0);
+        return cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+    }
+
+    private static int getColumnIndex(String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (xmlReader != null) {
+                xmlReader.close();
+            }
+        } catch (XMLStreamException e) {
+            logger.error("Error while closing sheet reader", e);
+        }
+        try {
+            if (sheetInputStream != null) {
+                sheetInputStream.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error while closing inputstream", e);
+        }
+        if (opcPackage != null) {
+            // Closing a package opened in read mode would try to save it
+            opcPackage.revert();
+        }
+        xmlReader = null;
+        sheetInputStream = null;
+        opcPackage = null;
+    }
+
+    /**
+     * A row read by the {@link StreamingSheetReader}
+     */
+    static class StreamedRow {
+
+        private final int rowNum;
+
+        private final String[] values;
+
+        private final boolean evaluationRequired;
+
+        StreamedRow(int rowNum, String[] values, boolean evaluationRequired) {
+            this.rowNum = rowNum;
+            this.values = values;
+            this.evaluationRequired = evaluationRequired;
+        }
+
+        int getRowNum() {
+            return rowNum;
+        }
+
+        /**
+         * @return true if the row contains formulas whose values have to be evaluated with the user model
+         */
+        boolean isEvaluationRequired() {
+            return evaluationRequired;
+        }
+
+        /**
+         * @return the number of columns up to the last existing cell of the row
+         */
+        int getColumnCount() {
+            return values.length;
+        }
+
+        /**
+         * @param column the 0-based index of the column
+         * @return the value of the cell or null if the cell doesn't exist
+         */
+        String getValue(int column) {
+            return column >= 0 && column < values.length ? values[column] : null;
+        }
+
+        /**
+         * @return the values of the existing cells of the row in column order
+         */
+        List<String> getExistingValues() {
+            return Arrays.stream(values).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+    }
+}
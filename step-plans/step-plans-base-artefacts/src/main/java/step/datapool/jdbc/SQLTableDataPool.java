@@ -20,20 +20,31 @@ package step.datapool.jdbc;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ch.exense.commons.app.Configuration;
 import step.core.variables.SimpleStringMap;
+import step.datapool.DataPoolRow;
 import step.datapool.DataSet;
 
 public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
@@ -42,6 +53,25 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
 
     protected static final Pattern TABLENAME_PATTERN = Pattern.compile("(^|\\s)select.+?from (\\S+)(\\s|$)", Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Property of the step.properties defining the fetch size of the query. A positive fetch size enables the
+     * streaming of large results for the JDBC drivers supporting it (for MySQL the parameter useCursorFetch=true has to be
+     * added to the connection string). 0 (default) to use the default of the JDBC driver
+     */
+    public static final String FETCH_SIZE_CONFIG = "datasets.sql.fetchsize";
+
+    /**
+     * Property of the step.properties defining the maximum number of rows whose updates are committed at once when
+     * the updates are written back in batches
+     */
+    public static final String COMMIT_BATCH_SIZE_CONFIG = "datasets.sql.commit.batchsize";
+
+    /**
+     * Property of the step.properties defining the maximum time in ms between two commits when the updates are
+     * written back in batches
+     */
+    public static final String COMMIT_INTERVAL_CONFIG = "datasets.sql.commit.interval.ms";
+
 
     private Connection conn1;
     private Statement smt;
@@ -58,6 +88,21 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
 
     private ArrayList<String> cols;
 
+    private int fetchSize;
+    private int commitBatchSize;
+    private long commitIntervalMs;
+
+    // The following fields are accessed by the thread of the write queue and the commit timer while holding the writeLock
+    private final Object writeLock = new Object();
+    private final Map<String, PreparedStatement> updateStatements = new HashMap<>();
+    // The updates of the rows written back but not committed yet. They are kept until they have been committed successfully
+    private final List<RowUpdates> uncommittedUpdates = new ArrayList<>();
+    private long lastCommitTime;
+
+    private ScheduledExecutorService commitTimer;
+    // The error of the last write-back. It is rethrown to the users until the pending updates have been committed successfully
+    private volatile RuntimeException writeError;
+
     public SQLTableDataPool(SQLTableDataPoolConfiguration configuration) {
         super(configuration);
 
@@ -131,9 +176,14 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
 
     public void executeQuery() {
         try {
-            smt = conn1.createStatement();
             if (rs != null && !rs.isClosed())
                 rs.close();
+            if (smt != null && !smt.isClosed())
+                smt.close();
+            smt = conn1.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (fetchSize > 0) {
+                smt.setFetchSize(fetchSize);
+            }
             rs = smt.executeQuery(query);
         } catch (SQLException e) {
             logger.error("Could not execute query :" + query, e);
@@ -206,42 +256,46 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
             this.rowData = row;
         }
 
+        // The updates not yet written back when the updates are written in batches by the write queue
+        private final Map<String, String> pendingUpdates = new LinkedHashMap<>();
+
         @Override
-        //public synchronized String put(String key, String value){
         public String put(String key, String value) {
-            String sql = null;
-            Statement update = null;
             if (table == null) {
                 String msg = "Unable to update DataSet because table name could not be determined";
                 logger.error(msg);
                 throw new RuntimeException(msg);
             }
-            if (pkValue != null) {
-                if (pkValue instanceof String)
-                    sql = "UPDATE " + table + " SET " + key + " = \'" + value + "\' WHERE " + writePKey + " = '" + pkValue + "'";
-                else
-                    sql = "UPDATE " + table + " SET " + key + " = \'" + value + "\' WHERE " + writePKey + " = " + pkValue;
-            } else {
+            if (pkValue == null) {
                 logger.error("The value of the primary key :" + writePKey + " is null. Unable to update key=" + key + " and value=" + value);
                 throw new RuntimeException("The value of the primary key :" + writePKey + " is null. Unable to update key=" + key + " and value=" + value);
             }
 
-            try {
-                update = conn1.createStatement();
+            if (isWriteQueueSupportEnabled()) {
+                RuntimeException writeError = SQLTableDataPool.this.writeError;
+                if (writeError != null) {
+                    throw new RuntimeException("Unable to update key=" + key + ": the previous updates of the DataSet could not be written back", writeError);
+                }
+                // The update is written back in batch by the write queue once the row has been committed
+                synchronized (pendingUpdates) {
+                    pendingUpdates.put(key, value);
+                }
+            } else {
+                updateAndCommit(key, value);
+            }
+            rowData.put(key, value);
+            return value;
+        }
+
+        private void updateAndCommit(String key, String value) {
+            try (PreparedStatement update = conn1.prepareStatement(getUpdateStatement(key))) {
                 update.setQueryTimeout(2);
-                /*int upd_rs = */
-                update.executeUpdate(sql);
+                update.setString(1, value);
+                update.setObject(2, pkValue);
+                update.executeUpdate();
             } catch (SQLException e) {
                 logger.error("Could not execute update with pk :" + writePKey + " = " + pkValue + ", with key=" + key + " and value=" + value, e);
                 throw new RuntimeException("Could not execute update with pk :" + writePKey + " = " + pkValue + ", with key=" + key + " and value=" + value + ", Underlying exception message: " + e.getMessage());
-            } finally {
-                try {
-                    if (!update.isClosed())
-                        update.close();
-                } catch (SQLException e) {
-                    logger.error("Could not close update connection", e);
-                    throw new RuntimeException("Could not close update connection" + ", Underlying exception message: " + e.getMessage());
-                }
             }
             try {
                 conn1.commit();
@@ -249,8 +303,14 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
                 logger.error("Could not commit. ", e);
                 throw new RuntimeException("Commit failed" + ", Underlying exception message: " + e.getMessage());
             }
-            rowData.put(key, value);
-            return value;
+        }
+
+        private Map<String, String> drainPendingUpdates() {
+            synchronized (pendingUpdates) {
+                Map<String, String> updates = new LinkedHashMap<>(pendingUpdates);
+                pendingUpdates.clear();
+                return updates;
+            }
         }
 
         @Override
@@ -278,6 +338,102 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
         }
     }
 
+    private String getUpdateStatement(String column) {
+        return "UPDATE " + table + " SET " + column + " = ? WHERE " + writePKey + " = ?";
+    }
+
+    @Override
+    protected boolean isWriteQueueSupportEnabled() {
+        // The updates are only written back in batches if the rows are committed (ForEach).
+        // Otherwise, the write queue might process the rows before they are updated and the updates are written immediately
+        return table != null && isRowCommitEnabled;
+    }
+
+    @Override
+    protected boolean isWriteQueueBlocking() {
+        // Dropping a row from the write queue would lose its updates
+        return isWriteQueueSupportEnabled();
+    }
+
+    @Override
+    public void writeRow(DataPoolRow row) {
+        Object value = row.getValue();
+        if (value instanceof SQLRowWrapper) {
+            SQLRowWrapper sqlRow = (SQLRowWrapper) value;
+            Map<String, String> updates = sqlRow.drainPendingUpdates();
+            if (!updates.isEmpty()) {
+                synchronized (writeLock) {
+                    uncommittedUpdates.add(new RowUpdates(sqlRow.pkValue, updates));
+                    if (uncommittedUpdates.size() >= commitBatchSize) {
+                        flushUpdates();
+                    }
+                }
+            }
+        }
+    }
+
+    private void commitIfDue() {
+        synchronized (writeLock) {
+            if (!uncommittedUpdates.isEmpty() && System.currentTimeMillis() - lastCommitTime >= commitIntervalMs) {
+                try {
+                    flushUpdates();
+                } catch (RuntimeException e) {
+                    // The updates are kept and retried at the next commit. The error is rethrown by the next put and at close
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes the updates of the uncommitted rows in batches and commits them. If the write-back fails,
+     * the updates are rolled back and kept to be retried at the next commit
+     */
+    private void flushUpdates() {
+        int rows = uncommittedUpdates.size();
+        try {
+            for (RowUpdates rowUpdates : uncommittedUpdates) {
+                for (Map.Entry<String, String> update : rowUpdates.updates().entrySet()) {
+                    PreparedStatement statement = updateStatements.get(update.getKey());
+                    if (statement == null) {
+                        statement = conn1.prepareStatement(getUpdateStatement(update.getKey()));
+                        updateStatements.put(update.getKey(), statement);
+                    }
+                    statement.setString(1, update.getValue());
+                    statement.setObject(2, rowUpdates.pkValue());
+                    statement.addBatch();
+                }
+            }
+            for (PreparedStatement statement : updateStatements.values()) {
+                statement.executeBatch();
+            }
+            conn1.commit();
+            uncommittedUpdates.clear();
+            writeError = null;
+        } catch (SQLException e) {
+            logger.error("Could not write back the updates of " + rows + " rows", e);
+            rollback();
+            RuntimeException error = new RuntimeException("Could not write back the updates of " + rows + " rows, Underlying exception message: " + e.getMessage());
+            writeError = error;
+            throw error;
+        } finally {
+            lastCommitTime = System.currentTimeMillis();
+        }
+    }
+
+    private void rollback() {
+        try {
+            for (PreparedStatement statement : updateStatements.values()) {
+                statement.clearBatch();
+            }
+            conn1.rollback();
+        } catch (SQLException e) {
+            logger.error("Could not rollback the updates", e);
+        }
+    }
+
+    private record RowUpdates(Object pkValue, Map<String, String> updates) {
+    }
+
     @Override
     public void addRow(Object row) {
         throw new RuntimeException("Not implemented");
@@ -285,8 +441,33 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
 
     @Override
     public void close() {
+        // Wait for the write queue to process the remaining rows
         super.close();
+        if (commitTimer != null) {
+            commitTimer.shutdown();
+            try {
+                if (!commitTimer.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.error("Timeout while waiting for the commit timer to terminate");
+                }
+            } catch (InterruptedException e) {
+                logger.error("Error while waiting for the commit timer to terminate", e);
+            }
+        }
+        RuntimeException writeError = null;
+        synchronized (writeLock) {
+            if (!uncommittedUpdates.isEmpty()) {
+                try {
+                    flushUpdates();
+                } catch (RuntimeException e) {
+                    writeError = e;
+                }
+            }
+        }
         try {
+            for (PreparedStatement statement : updateStatements.values()) {
+                statement.close();
+            }
+            updateStatements.clear();
             conn1.commit();
             if (rs != null && !rs.isClosed())
                 rs.close();
@@ -295,14 +476,28 @@ public class SQLTableDataPool extends DataSet<SQLTableDataPoolConfiguration> {
             logger.error("Could not close close dataset properly", e);
             throw new RuntimeException("Could not close close dataset properly" + ", Underlying exception message: " + e.getMessage());
         }
-
+        if (writeError != null) {
+            throw writeError;
+        }
     }
 
     @Override
     public void init() {
-        super.init();
+        Configuration configuration = context.getConfiguration();
+        fetchSize = configuration.getPropertyAsInteger(FETCH_SIZE_CONFIG, 0);
+        commitBatchSize = Math.max(1, configuration.getPropertyAsInteger(COMMIT_BATCH_SIZE_CONFIG, 100));
+        commitIntervalMs = Math.max(1, configuration.getPropertyAsInteger(COMMIT_INTERVAL_CONFIG, 1000));
+        lastCommitTime = System.currentTimeMillis();
         connect();
         executeQuery();
+        // The write queue is started once connected as its thread uses the connection
+        super.init();
+        if (isWriteQueueSupportEnabled()) {
+            // Commit the updates written back at least every commit interval, even if no further row is committed
+            BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("dataset-commit-thread-%d").daemon(true).build();
+            commitTimer = Executors.newSingleThreadScheduledExecutor(factory);
+            commitTimer.scheduleWithFixedDelay(this::commitIfDue, commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
 }
@@ -19,7 +19,10 @@
 
 package step.livereporting;
 
+import step.artefacts.handlers.ForBlockHandler;
+import step.artefacts.reports.ArrivalRateReportNode;
 import step.artefacts.reports.CallFunctionReportNode;
+import step.artefacts.reports.ForBlockReportNode;
 import step.core.artefacts.reports.ReportNode;
 import step.core.execution.AbstractExecutionEngineContext;
 import step.core.execution.ExecutionContext;
@@ -31,6 +34,11 @@ import step.engine.plugins.AbstractExecutionEnginePlugin;
 public class LiveReportingPlugin extends AbstractExecutionEnginePlugin {
 
     public static final String LIVE_REPORTING_CONTEXT = "$liveReportingContext";
+    /**
+     * The context of a control node reporting its own metrics. Unlike the {@link #LIVE_REPORTING_CONTEXT}, it is only
+     * resolved for the node itself and not inherited by its descendants
+     */
+    public static final String NODE_LIVE_REPORTING_CONTEXT = "$nodeLiveReportingContext";
     private LiveReportingContexts liveReportingContexts;
 
     @Override
@@ -50,21 +58,48 @@ public class LiveReportingPlugin extends AbstractExecutionEnginePlugin {
 
     @Override
     public void beforeReportNodeExecution(ExecutionContext context, ReportNode node) {
-        if (node instanceof CallFunctionReportNode) {
+        if (isLiveReportingNode(node)) {
             LiveReportingContext reportingContext = liveReportingContexts.createNewContext();
             context.getVariablesManager().putVariable(node, LIVE_REPORTING_CONTEXT, reportingContext);
+        } else if (isNodeLiveReportingNode(context, node)) {
+            LiveReportingContext reportingContext = liveReportingContexts.createNewContext();
+            context.getVariablesManager().putVariable(node, NODE_LIVE_REPORTING_CONTEXT, reportingContext);
         }
     }
 
     @Override
     public void afterReportNodeExecution(ExecutionContext context, ReportNode node) {
-        if (node instanceof CallFunctionReportNode) {
+        if (isLiveReportingNode(node)) {
             LiveReportingContext liveReportingContext = LiveReportingPlugin.getLiveReportingContext(context);
             liveReportingContexts.removeContext(liveReportingContext.id);
+        } else if (isNodeLiveReportingNode(context, node)) {
+            LiveReportingContext liveReportingContext = getNodeLiveReportingContext(context, node);
+            if (liveReportingContext != null) {
+                liveReportingContexts.removeContext(liveReportingContext.id);
+            }
         }
     }
 
+    private static boolean isLiveReportingNode(ReportNode node) {
+        // Keyword calls report their live measures and metrics
+        return node instanceof CallFunctionReportNode;
+    }
+
+    private static boolean isNodeLiveReportingNode(ExecutionContext context, ReportNode node) {
+        // Arrival rate thread groups report their scheduling metrics and ForEach reading their data set ahead report the
+        // usage of their read-ahead buffer. Their context isn't inherited so that the keyword calls they contain don't resolve it
+        return node instanceof ArrivalRateReportNode ||
+            (node instanceof ForBlockReportNode && ForBlockHandler.getReadAheadDepth(context, node.getArtefactInstance()) > 0);
+    }
+
     public static LiveReportingContext getLiveReportingContext(ExecutionContext executionContext) {
         return (LiveReportingContext) executionContext.getVariablesManager().getVariable(LIVE_REPORTING_CONTEXT);
     }
+
+    /**
+     * @return the live reporting context of the provided control node or null if the node doesn't report its own metrics
+     */
+    public static LiveReportingContext getNodeLiveReportingContext(ExecutionContext executionContext, ReportNode node) {
+        return (LiveReportingContext) executionContext.getVariablesManager().getVariable(node, NODE_LIVE_REPORTING_CONTEXT, false);
+    }
 }
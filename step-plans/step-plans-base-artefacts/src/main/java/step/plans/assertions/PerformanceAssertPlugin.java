@@ -1,5 +1,6 @@
 package step.plans.assertions;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.json.JsonObject;
@@ -32,27 +33,30 @@ public class PerformanceAssertPlugin extends AbstractExecutionEnginePlugin {
         if (resolvedArtefact instanceof ThreadGroup) {
             afterThread = ((ThreadGroup) resolvedArtefact).getAfterThread();
         }
-        if ((after != null && hasAnyPerformanceAssert(after.getSteps())) ||
-            (afterThread != null && hasAnyPerformanceAssert(afterThread.getSteps()))) {
-            PerformanceAssertSession performanceAssertSession = new PerformanceAssertSession();
+        List<PerformanceAssert> performanceAsserts = new ArrayList<>();
+        if (after != null) {
+            collectPerformanceAsserts(after.getSteps(), performanceAsserts);
+        }
+        if (afterThread != null) {
+            collectPerformanceAsserts(afterThread.getSteps(), performanceAsserts);
+        }
+        if (!performanceAsserts.isEmpty()) {
+            // The distribution of the durations is only recorded if a percentile is asserted
+            boolean percentilesEnabled = performanceAsserts.stream().anyMatch(a -> a.getAggregator() != null && a.getAggregator().isPercentile());
+            PerformanceAssertSession performanceAssertSession = new PerformanceAssertSession(percentilesEnabled);
             context.getVariablesManager().putVariable(node, PerformanceAssertPlugin.$PERFORMANCE_ASSERT_SESSION, performanceAssertSession);
         }
     }
 
 
-    private boolean hasAnyPerformanceAssert(List<AbstractArtefact> steps) {
+    private void collectPerformanceAsserts(List<AbstractArtefact> steps, List<PerformanceAssert> performanceAsserts) {
         for (AbstractArtefact artefact : steps) {
-            boolean resultForArtefact = false;
             if (artefact instanceof PerformanceAssert) {
-                resultForArtefact = true;
+                performanceAsserts.add((PerformanceAssert) artefact);
             } else {
-                resultForArtefact = hasAnyPerformanceAssert(artefact.getChildren());
-            }
-            if (resultForArtefact) {
-                return resultForArtefact;
+                collectPerformanceAsserts(artefact.getChildren(), performanceAsserts);
             }
         }
-        return false;
     }
 
     @Override
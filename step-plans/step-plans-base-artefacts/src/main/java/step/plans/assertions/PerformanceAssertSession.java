@@ -10,9 +10,22 @@ import step.core.reports.Measure;
 public class PerformanceAssertSession {
 
     private final ConcurrentHashMap<String, Aggregation> aggregations = new ConcurrentHashMap<>();
+    private final boolean percentilesEnabled;
+
+    public PerformanceAssertSession() {
+        this(true);
+    }
+
+    /**
+     * @param percentilesEnabled true if the percentiles of the durations have to be computed, i.e. if a performance
+     *                           assert of the session uses a percentile aggregator
+     */
+    public PerformanceAssertSession(boolean percentilesEnabled) {
+        this.percentilesEnabled = percentilesEnabled;
+    }
 
     public final void addMeasure(Measure measure) {
-        Aggregation aggregation = aggregations.computeIfAbsent(measure.getName(), name -> new Aggregation(name));
+        Aggregation aggregation = aggregations.computeIfAbsent(measure.getName(), name -> new Aggregation(name, percentilesEnabled));
         aggregation.addMeasure(measure);
     }
 
@@ -112,8 +112,9 @@ public class JUnit4ReportWriter implements ReportWriter {
         AtomicLong executionTime = new AtomicLong();
         StringBuilder testSuiteName = new StringBuilder();
 
-        // First visit the report tree to get the root node informations and the different counts
-        visitor.visit(executionId, e -> {
+        // First visit the first level of the report tree to get the root node informations and the different counts.
+        // The deeper nodes are only required to write the test cases
+        visitor.visit(executionId, 1, e -> {
             if (e.getStack().isEmpty()) {
                 testSuiteName.append(e.getNode().getName());
                 duration.set(e.getNode().getDuration());
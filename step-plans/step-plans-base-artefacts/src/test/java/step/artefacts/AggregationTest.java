@@ -0,0 +1,152 @@
+package step.artefacts;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.reports.Measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class AggregationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregationTest.class);
+
+    @Test
+    public void testHistogramIndexes() {
+        for (long value : new long[]{0, 1, 127, 255, 256, 257, 1000, 65_535, 1_000_000, LatencyHistogram.MAX_VALUE}) {
+            int index = LatencyHistogram.getIndex(value);
+            long highestEquivalentValue = LatencyHistogram.getHighestEquivalentValue(index);
+            assertTrue(value + " -> " + highestEquivalentValue, highestEquivalentValue >= value);
+            assertTrue(value + " -> " + highestEquivalentValue, highestEquivalentValue - value <= value / 128);
+            assertEquals(index, LatencyHistogram.getIndex(highestEquivalentValue));
+            if (index > 0) {
+                // The buckets are contiguous
+                assertEquals(index, LatencyHistogram.getIndex(LatencyHistogram.getHighestEquivalentValue(index - 1) + 1));
+            }
+        }
+    }
+
+    @Test
+    public void testAggregation() {
+        Aggregation aggregation = new Aggregation("test");
+        Random random = new Random(1);
+        long[] durations = new long[10_000];
+        long lastEnd = 0;
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = (long) Math.abs(random.nextGaussian() * 1000);
+            // One measure per second
+            aggregation.addMeasure(new Measure("test", durations[i], 1000L * i, null));
+            lastEnd = Math.max(lastEnd, 1000L * i + durations[i]);
+        }
+        Arrays.sort(durations);
+
+        for (double percentile : new double[]{0, 1, 50, 90, 95, 99, 99.9, 100}) {
+            long expected = durations[Math.max(0, (int) Math.ceil(percentile / 100 * durations.length) - 1)];
+            long actual = aggregation.getPercentile(percentile);
+            assertTrue(percentile + ": expected " + expected + " but was " + actual, actual >= expected && actual - expected <= Math.max(1, expected / 100));
+        }
+        assertEquals(durations[0], aggregation.getPercentile(0));
+        assertEquals(durations[durations.length - 1], aggregation.getPercentile(100));
+
+        double mean = Arrays.stream(durations).average().orElseThrow();
+        double stdDev = Math.sqrt(Arrays.stream(durations).mapToDouble(d -> (d - mean) * (d - mean)).sum() / durations.length);
+        assertEquals(stdDev, aggregation.getStdDev(), 0.001);
+
+        assertEquals(durations.length * 1000.0 / lastEnd, aggregation.getThroughput(), 0.0001);
+    }
+
+    @Test
+    public void testPercentilesDisabled() {
+        Aggregation aggregation = new Aggregation("test", false);
+        aggregation.addMeasure(new Measure("test", 10, 0, null));
+        aggregation.addMeasure(new Measure("test", 30, 0, null));
+        assertEquals(20, aggregation.getAvg());
+        assertThrows(IllegalStateException.class, () -> aggregation.getPercentile(50));
+        assertTrue(Aggregator.PERCENTILE_90.isPercentile());
+        assertFalse(Aggregator.AVG.isPercentile());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        Aggregation aggregation = new Aggregation("test");
+        int threads = 16;
+        int measuresPerThread = 10_000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < measuresPerThread; i++) {
+                        aggregation.addMeasure(new Measure("test", i % 100, 0, null));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(threads * measuresPerThread, aggregation.getCount());
+        assertEquals(49, aggregation.getPercentile(50));
+        assertEquals(98, aggregation.getPercentile(99));
+    }
+
+    @Category(PerformanceTest.class)
+    @Test
+    public void benchmarkRecording() throws Exception {
+        int threads = 256;
+        int measuresPerThread = 1_000_000;
+        Aggregation aggregation = new Aggregation("test");
+        Measure[] measures = new Measure[1024];
+        Random random = new Random(1);
+        for (int i = 0; i < measures.length; i++) {
+            measures[i] = new Measure("test", random.nextInt(10_000), System.currentTimeMillis(), null);
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    long begin = System.nanoTime();
+                    for (int i = 0; i < measuresPerThread; i++) {
+                        aggregation.addMeasure(measures[i & (measures.length - 1)]);
+                    }
+                    return System.nanoTime() - begin;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            long threadNanos = 0;
+            for (Future<Long> future : futures) {
+                threadNanos += future.get();
+            }
+            long totalNanos = System.nanoTime() - begin;
+            long measureCount = (long) threads * measuresPerThread;
+            logger.info("Recorded {} measures with {} threads in {}ms: {}ns per measure and thread, {} measures/s",
+                measureCount, threads, TimeUnit.NANOSECONDS.toMillis(totalNanos), threadNanos / measureCount,
+                (long) (measureCount / (totalNanos / 1e9)));
+            assertEquals(measureCount, aggregation.getCount());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.dynamicbeans.ContainsDynamicValues;
+import step.core.dynamicbeans.DynamicBeanResolver;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.dynamicbeans.DynamicValueResolver;
+import step.datapool.sequence.IntSequenceDataPool;
+import step.expressions.ExpressionHandler;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DynamicBeanResolverArtefactsTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamicBeanResolverArtefactsTest.class);
+
+    private final DynamicBeanResolver resolver = new DynamicBeanResolver(new DynamicValueResolver(new ExpressionHandler()));
+
+    @Test
+    public void testEvaluate() {
+        ForBlock forBlock = newForBlock();
+        ((IntSequenceDataPool) forBlock.getDataSource()).setEnd(new DynamicValue<>("2+3", ""));
+        forBlock.setItem(new DynamicValue<>("'my' + 'Item'", ""));
+        CallFunction callFunction = newCallFunction();
+        callFunction.setArgument(new DynamicValue<>("'{\"arg\":\"' + value + '\"}'", ""));
+
+        Map<String, Object> bindings = Map.of("value", "val");
+        resolver.evaluate(forBlock, bindings);
+        resolver.evaluate(callFunction, bindings);
+
+        assertEquals(5, (int) ((IntSequenceDataPool) forBlock.getDataSource()).getEnd().get());
+        assertEquals("myItem", forBlock.getItem().get());
+        assertEquals("{\"arg\":\"val\"}", callFunction.getArgument().get());
+        assertEquals("MyKeyword", callFunction.getFunction().get());
+    }
+
+    @Test
+    public void testClone() {
+        ForBlock forBlock = newForBlock();
+        forBlock.setItem(new DynamicValue<>("'item'", ""));
+        ForBlock clone = resolver.cloneDynamicValues(forBlock);
+
+        assertNotSame(forBlock, clone);
+        assertNotSame(forBlock.getItem(), clone.getItem());
+        // The data source contains dynamic values and is deep cloned
+        assertNotSame(forBlock.getDataSource(), clone.getDataSource());
+        assertNotSame(((IntSequenceDataPool) forBlock.getDataSource()).getEnd(), ((IntSequenceDataPool) clone.getDataSource()).getEnd());
+        assertEquals(forBlock.getId(), clone.getId());
+
+        resolver.evaluate(clone, Map.of());
+        assertEquals("item", clone.getItem().get());
+        // Evaluating the clone doesn't affect the original
+        assertThrows(RuntimeException.class, () -> forBlock.getItem().get());
+    }
+
+    @Test
+    public void testCloneSharesStaticSubtrees() {
+        BeanWithStaticSubtree bean = new BeanWithStaticSubtree();
+        bean.setStaticBean(new StaticBean());
+        bean.setDynamicBeans(new ArrayList<>(List.of(newCallFunction())));
+        BeanWithStaticSubtree clone = resolver.cloneDynamicValues(bean);
+
+        assertSame(bean.getStaticBean(), clone.getStaticBean());
+        assertNotSame(bean.getDynamicBeans(), clone.getDynamicBeans());
+        assertNotSame(bean.getDynamicBeans().get(0), clone.getDynamicBeans().get(0));
+    }
+
+    /**
+     * Compares the compiled access plans of the {@link DynamicBeanResolver} with the former reflection-based
+     * implementation on a set of real artefacts. Only static values are used to measure the traversal cost
+     * without the cost of the expression evaluation.
+     */
+    @Category(PerformanceTest.class)
+    @Test
+    public void benchmark() {
+        List<Object> artefacts = List.of(newCallFunction(), newForBlock(), newSet(), newAssert(), new Sequence(), newThreadGroup(), newPerformanceAssert());
+        ReflectiveResolver reflectiveResolver = new ReflectiveResolver();
+        Map<String, Object> bindings = Map.of();
+        int iterations = 100_000;
+
+        Runnable reflectiveEvaluate = () -> artefacts.forEach(a -> reflectiveResolver.evaluate(a));
+        Runnable planEvaluate = () -> artefacts.forEach(a -> resolver.evaluate(a, bindings));
+        Runnable reflectiveClone = () -> artefacts.forEach(reflectiveResolver::cloneDynamicValues);
+        Runnable planClone = () -> artefacts.forEach(resolver::cloneDynamicValues);
+
+        // Warm-up
+        measure("evaluate/reflection", reflectiveEvaluate, iterations, false);
+        measure("evaluate/plan", planEvaluate, iterations, false);
+        measure("clone/reflection", reflectiveClone, iterations, false);
+        measure("clone/plan", planClone, iterations, false);
+
+        measure("evaluate/reflection", reflectiveEvaluate, iterations, true);
+        measure("evaluate/plan", planEvaluate, iterations, true);
+        measure("clone/reflection", reflectiveClone, iterations, true);
+        measure("clone/plan", planClone, iterations, true);
+    }
+
+    private void measure(String name, Runnable runnable, int iterations, boolean log) {
+        long t1 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+        long durationNs = System.nanoTime() - t1;
+        if (log) {
+            logger.info("{}: {} ns/op ({}ms)", name, durationNs / iterations, TimeUnit.NANOSECONDS.toMillis(durationNs));
+        }
+    }
+
+    private static CallFunction newCallFunction() {
+        CallFunction callFunction = new CallFunction();
+        callFunction.setFunction(new DynamicValue<>("MyKeyword"));
+        callFunction.setArgument(new DynamicValue<>("{\"arg1\":\"value1\"}"));
+        return callFunction;
+    }
+
+    private static ForBlock newForBlock() {
+        ForBlock forBlock = new ForBlock();
+        IntSequenceDataPool dataSource = new IntSequenceDataPool();
+        dataSource.setStart(new DynamicValue<>(1));
+        dataSource.setEnd(new DynamicValue<>(10));
+        forBlock.setDataSource(dataSource);
+        return forBlock;
+    }
+
+    private static Set newSet() {
+        Set set = new Set();
+        set.setKey(new DynamicValue<>("key"));
+        set.setValue(new DynamicValue<>("value"));
+        return set;
+    }
+
+    private static Assert newAssert() {
+        Assert anAssert = new Assert();
+        anAssert.setActual(new DynamicValue<>("output"));
+        anAssert.setExpected(new DynamicValue<>("expected"));
+        return anAssert;
+    }
+
+    private static ThreadGroup newThreadGroup() {
+        ThreadGroup threadGroup = new ThreadGroup();
+        threadGroup.setUsers(new DynamicValue<>(10));
+        threadGroup.setIterations(new DynamicValue<>(100));
+        return threadGroup;
+    }
+
+    private static PerformanceAssert newPerformanceAssert() {
+        PerformanceAssert performanceAssert = new PerformanceAssert();
+        performanceAssert.setExpectedValue(new DynamicValue<>(1000L));
+        return performanceAssert;
+    }
+
+    public static class StaticBean {
+
+        private String value = "value";
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+
+    public static class BeanWithStaticSubtree {
+
+        private StaticBean staticBean;
+        private List<CallFunction> dynamicBeans;
+
+        @ContainsDynamicValues
+        public StaticBean getStaticBean() {
+            return staticBean;
+        }
+
+        public void setStaticBean(StaticBean staticBean) {
+            this.staticBean = staticBean;
+        }
+
+        @ContainsDynamicValues
+        public List<CallFunction> getDynamicBeans() {
+            return dynamicBeans;
+        }
+
+        public void setDynamicBeans(List<CallFunction> dynamicBeans) {
+            this.dynamicBeans = dynamicBeans;
+        }
+    }
+
+    /**
+     * The former reflection-based traversal of the {@link DynamicBeanResolver}, used as baseline.
+     * The static values are not evaluated, only the traversal is reproduced.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class ReflectiveResolver {
+
+        private final Map<Class<?>, BeanInfo> beanInfoCache = new java.util.concurrent.ConcurrentHashMap<>();
+
+        private BeanInfo getBeanInfo(Class<?> clazz) throws Exception {
+            BeanInfo beanInfo = beanInfoCache.get(clazz);
+            if (beanInfo == null) {
+                beanInfo = Introspector.getBeanInfo(clazz, Object.class);
+                beanInfoCache.put(clazz, beanInfo);
+            }
+            return beanInfo;
+        }
+
+        void evaluate(Object o) {
+            if (o != null) {
+                try {
+                    Class<?> clazz = o.getClass();
+                    BeanInfo beanInfo = getBeanInfo(clazz);
+                    for (Field field : clazz.getFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                            if (field.getType().equals(DynamicValue.class)) {
+                                evaluateDynamicValue((DynamicValue<?>) field.get(o));
+                            } else if (field.isAnnotationPresent(ContainsDynamicValues.class)) {
+                                recursivelyEvaluate(field.get(o));
+                            }
+                        }
+                    }
+                    for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                        Method method = descriptor.getReadMethod();
+                        if (method != null) {
+                            if (DynamicValue.class.isAssignableFrom(method.getReturnType())) {
+                                evaluateDynamicValue((DynamicValue<?>) method.invoke(o));
+                            } else if (method.isAnnotationPresent(ContainsDynamicValues.class)) {
+                                recursivelyEvaluate(method.invoke(o));
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        private void recursivelyEvaluate(Object value) {
+            if (value instanceof List) {
+                ((List) value).forEach(this::evaluate);
+            } else {
+                evaluate(value);
+            }
+        }
+
+        private void evaluateDynamicValue(DynamicValue<?> value) {
+            if (value != null) {
+                evaluate(value.get());
+            }
+        }
+
+        <T> T cloneDynamicValues(T o) {
+            if (o != null) {
+                try {
+                    Class<?> clazz = o.getClass();
+                    T out = (T) clazz.getConstructor().newInstance();
+                    if (List.class.isAssignableFrom(clazz)) {
+                        List outList = (List) out;
+                        ((List) o).forEach(c -> outList.add(cloneDynamicValues(c)));
+                    } else {
+                        BeanInfo beanInfo = getBeanInfo(clazz);
+                        for (Field field : clazz.getFields()) {
+                            int modifiers = field.getModifiers();
+                            if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                                field.set(out, cloneValue(field.isAnnotationPresent(ContainsDynamicValues.class), field.get(o)));
+                            }
+                        }
+                        for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                            Method method = descriptor.getReadMethod();
+                            if (method != null) {
+                                Object newValue = cloneValue(method.isAnnotationPresent(ContainsDynamicValues.class), method.invoke(o));
+                                if (descriptor.getWriteMethod() != null) {
+                                    descriptor.getWriteMethod().invoke(out, newValue);
+                                }
+                            }
+                        }
+                    }
+                    return out;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            } else {
+                return null;
+            }
+        }
+
+        private Object cloneValue(boolean containsDynamicValues, Object value) {
+            if (value instanceof DynamicValue) {
+                return ((DynamicValue<?>) value).cloneValue();
+            } else if (value != null && containsDynamicValues) {
+                return cloneDynamicValues(value);
+            } else {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers;
+
+import org.junit.Test;
+import step.artefacts.ArrivalRateStage;
+import step.artefacts.ArrivalRateThreadGroup;
+import step.artefacts.BaseArtefactPlugin;
+import step.artefacts.handlers.functions.TokenForecastingExecutionPlugin;
+import step.artefacts.reports.ArrivalRateReportNode;
+import step.core.artefacts.CheckArtefact;
+import step.core.artefacts.reports.ReportNode;
+import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.execution.ExecutionContext;
+import step.core.execution.ExecutionEngine;
+import step.core.metrics.MetricSample;
+import step.core.plans.Plan;
+import step.core.plans.builder.PlanBuilder;
+import step.core.plans.runner.PlanRunnerResult;
+import step.core.plugins.Plugin;
+import step.engine.plugins.AbstractExecutionEnginePlugin;
+import step.livereporting.LiveReportingContext;
+import step.livereporting.LiveReportingPlugin;
+import step.threadpool.ThreadPoolPlugin;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static step.planbuilder.BaseArtefacts.*;
+
+public class ArrivalRateThreadGroupHandlerTest extends AbstractArtefactHandlerTest {
+
+    @Test
+    public void testConstantRate() throws Exception {
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        artefact.setRate(new DynamicValue<>(3));
+        artefact.setTimeUnit(new DynamicValue<>(100));
+        artefact.setIterations(new DynamicValue<>(3));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(check(ReportNodeStatus.PASSED)).endBlock().build();
+
+        StringWriter writer = new StringWriter();
+        PlanRunnerResult result = executionEngine.execute(plan);
+        result.printTree(writer);
+
+        assertEquals("ArrivalRateThreadGroup:PASSED:\n" +
+            " Worker 1:PASSED:\n" +
+            "  Session:PASSED:\n" +
+            "   Iteration 1:PASSED:\n" +
+            "    CheckArtefact:PASSED:\n" +
+            "   Iteration 2:PASSED:\n" +
+            "    CheckArtefact:PASSED:\n" +
+            "   Iteration 3:PASSED:\n" +
+            "    CheckArtefact:PASSED:\n", writer.toString());
+
+        ArrivalRateReportNode reportNode = getArrivalRateReportNode(result);
+        assertEquals(3, reportNode.getScheduledIterations());
+        assertEquals(3, reportNode.getExecutedIterations());
+        assertEquals(0, reportNode.getDroppedIterations());
+        assertEquals(1, reportNode.getPeakWorkers());
+    }
+
+    @Test
+    public void testStatusReportingFailed() throws Exception {
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        artefact.setRate(new DynamicValue<>(100));
+        artefact.setIterations(new DynamicValue<>(2));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(check(ReportNodeStatus.FAILED)).endBlock().build();
+
+        StringWriter writer = new StringWriter();
+        executionEngine.execute(plan).printTree(writer);
+
+        assertTrue(writer.toString().startsWith("ArrivalRateThreadGroup:" + ReportNodeStatus.FAILED));
+    }
+
+    @Test
+    public void testInvalidArguments() throws Exception {
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        artefact.setRate(new DynamicValue<>(10));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(check(ReportNodeStatus.PASSED)).endBlock().build();
+        StringWriter writer = new StringWriter();
+        executionEngine.execute(plan).printTree(writer);
+        assertTrue(writer.toString().startsWith("ArrivalRateThreadGroup:" + ReportNodeStatus.TECHNICAL_ERROR));
+
+        artefact.setIterations(new DynamicValue<>(10));
+        artefact.setWorkers(new DynamicValue<>(2));
+        artefact.setMaxWorkers(new DynamicValue<>(1));
+        writer = new StringWriter();
+        executionEngine.execute(plan).printTree(writer);
+        assertTrue(writer.toString().startsWith("ArrivalRateThreadGroup:" + ReportNodeStatus.TECHNICAL_ERROR));
+    }
+
+    @Test
+    public void testElasticWorkers() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        // 50 iterations of 50ms at 100/s require 5 concurrent workers
+        artefact.setRate(new DynamicValue<>(100));
+        artefact.setIterations(new DynamicValue<>(50));
+        artefact.setWorkers(new DynamicValue<>(1));
+        artefact.setMaxWorkers(new DynamicValue<>(20));
+        artefact.setMaxDelay(new DynamicValue<>(0));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(sleep(50)).add(new CheckArtefact(c -> count.incrementAndGet())).endBlock().build();
+        PlanRunnerResult result = executionEngine.execute(plan);
+
+        assertEquals(50, count.get());
+        ArrivalRateReportNode reportNode = getArrivalRateReportNode(result);
+        assertEquals(ReportNodeStatus.PASSED, reportNode.getStatus());
+        assertEquals(50, reportNode.getExecutedIterations());
+        assertEquals(0, reportNode.getDroppedIterations());
+        assertTrue(reportNode.getPeakWorkers() > 1);
+        assertTrue(reportNode.getPeakWorkers() <= 20);
+    }
+
+    @Test
+    public void testDroppedIterations() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        // A single worker cannot sustain 100 iterations/s of 50ms
+        artefact.setRate(new DynamicValue<>(100));
+        artefact.setIterations(new DynamicValue<>(50));
+        artefact.setMaxDelay(new DynamicValue<>(20));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(sleep(50)).add(new CheckArtefact(c -> count.incrementAndGet())).endBlock().build();
+        PlanRunnerResult result = executionEngine.execute(plan);
+
+        ArrivalRateReportNode reportNode = getArrivalRateReportNode(result);
+        assertEquals(50, reportNode.getScheduledIterations());
+        assertTrue(reportNode.getDroppedIterations() > 0);
+        assertEquals(count.get(), reportNode.getExecutedIterations());
+        assertEquals(50, reportNode.getExecutedIterations() + reportNode.getDroppedIterations());
+        assertEquals(1, reportNode.getPeakWorkers());
+    }
+
+    @Test
+    public void testStages() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        // Ramp up from 0 to 100/s in 200ms and down to 0 in 200ms: 20 iterations
+        artefact.setRate(new DynamicValue<>(0));
+        artefact.setStages(new ArrayList<>(List.of(new ArrivalRateStage(200, 100), new ArrivalRateStage(200, 0))));
+        artefact.setWorkers(new DynamicValue<>(2));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(new CheckArtefact(c -> count.incrementAndGet())).endBlock().build();
+        long t1 = System.currentTimeMillis();
+        PlanRunnerResult result = executionEngine.execute(plan);
+        long duration = System.currentTimeMillis() - t1;
+
+        assertEquals(20, count.get());
+        assertEquals(20, getArrivalRateReportNode(result).getExecutedIterations());
+        assertTrue(duration >= 300);
+    }
+
+    @Test
+    public void testBeforeAndAfterThread() throws Exception {
+        ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+        artefact.setRate(new DynamicValue<>(10));
+        artefact.setIterations(new DynamicValue<>(1));
+        artefact.setBeforeThread(childrenBlock(echo("'Before...'+userId")));
+        artefact.setAfterThread(childrenBlock(echo("'After...'+userId")));
+
+        Plan plan = PlanBuilder.create().startBlock(artefact).add(check(ReportNodeStatus.PASSED)).endBlock().build();
+
+        StringWriter writer = new StringWriter();
+        executionEngine.execute(plan).printTree(writer);
+
+        assertEquals("ArrivalRateThreadGroup:PASSED:\n" +
+            " Worker 1:PASSED:\n" +
+            "  Session:PASSED:\n" +
+            "   [BEFORE_THREAD]\n" +
+            "    Echo:PASSED:\n" +
+            "   Iteration 1:PASSED:\n" +
+            "    CheckArtefact:PASSED:\n" +
+            "   [AFTER_THREAD]\n" +
+            "    Echo:PASSED:\n", writer.toString());
+    }
+
+    @Test
+    public void testLiveReporting() throws Exception {
+        NodeMetricsPlugin metricsPlugin = new NodeMetricsPlugin();
+        AtomicBoolean contextInherited = new AtomicBoolean();
+        try (ExecutionEngine engine = ExecutionEngine.builder().withPlugin(new ThreadPoolPlugin()).withPlugin(new BaseArtefactPlugin())
+            .withPlugin(new TokenForecastingExecutionPlugin()).withPlugin(new LiveReportingPlugin()).withPlugin(metricsPlugin).build()) {
+            ArrivalRateThreadGroup artefact = new ArrivalRateThreadGroup();
+            artefact.setRate(new DynamicValue<>(3));
+            artefact.setTimeUnit(new DynamicValue<>(100));
+            artefact.setIterations(new DynamicValue<>(3));
+
+            Plan plan = PlanBuilder.create().startBlock(artefact).add(new CheckArtefact(c -> {
+                if (LiveReportingPlugin.getLiveReportingContext(c) != null) {
+                    contextInherited.set(true);
+                }
+            })).endBlock().build();
+            assertEquals(ReportNodeStatus.PASSED, engine.execute(plan).getResult());
+        }
+
+        // The live reporting context of the group isn't resolved by its descendants
+        assertFalse(contextInherited.get());
+        // The scheduling metrics are reported through the live reporting context of the group node
+        long scheduled = metricsPlugin.samples.stream().filter(m -> m.getName().equals(ArrivalRateThreadGroupHandler.METRIC_SCHEDULED_ITERATIONS))
+            .mapToLong(m -> (long) m.getSum()).sum();
+        assertEquals(3, scheduled);
+    }
+
+    /**
+     * Records the metrics reported by the nodes having their own live reporting context
+     */
+    @Plugin(dependencies = LiveReportingPlugin.class)
+    public static class NodeMetricsPlugin extends AbstractExecutionEnginePlugin {
+
+        private final List<MetricSample> samples = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void beforeReportNodeExecution(ExecutionContext context, ReportNode node) {
+            LiveReportingContext liveReportingContext = LiveReportingPlugin.getNodeLiveReportingContext(context, node);
+            if (liveReportingContext != null) {
+                liveReportingContext.registerMetricListener(samples::addAll);
+            }
+        }
+    }
+
+    private static CheckArtefact check(ReportNodeStatus status) {
+        return new CheckArtefact(c -> c.getCurrentReportNode().setStatus(status));
+    }
+
+    private static ArrivalRateReportNode getArrivalRateReportNode(PlanRunnerResult result) {
+        ReportNode reportNode = result.getReportTreeAccessor().getChildren(result.getRootReportNode().getId().toString()).next();
+        return (ArrivalRateReportNode) reportNode;
+    }
+}
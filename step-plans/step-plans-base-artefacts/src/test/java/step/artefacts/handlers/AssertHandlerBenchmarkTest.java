@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.artefacts.Assert;
+import step.artefacts.Assert.AssertOperator;
+import step.artefacts.reports.CallFunctionReportNode;
+import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.dynamicbeans.DynamicValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the throughput of JSONPath and regular expression asserts executed against the output of a keyword
+ * when the output is parsed once per keyword call and when it is parsed for each assert
+ */
+@Category(PerformanceTest.class)
+public class AssertHandlerBenchmarkTest extends AbstractArtefactHandlerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssertHandlerBenchmarkTest.class);
+
+    private static final int CALLS = 10_000;
+    private static final int ASSERTS_PER_CALL = 10;
+
+    @Test
+    public void benchmarkAsserts() {
+        setupContext();
+        JsonObjectBuilder output = Json.createObjectBuilder();
+        List<Assert> asserts = new ArrayList<>();
+        for (int i = 0; i < ASSERTS_PER_CALL; i++) {
+            output.add("key" + i, Json.createObjectBuilder().add("value", "value" + i).add("items", Json.createArrayBuilder().add(i).add(i + 1)));
+            Assert a = new Assert();
+            a.setActual(new DynamicValue<>("$.key" + i + ".value"));
+            a.setExpected(new DynamicValue<>("value[0-9]+"));
+            a.setOperator(AssertOperator.MATCHES);
+            asserts.add(a);
+        }
+        CallFunctionReportNode callNode = new CallFunctionReportNode();
+        callNode.setStatus(ReportNodeStatus.PASSED);
+        callNode.setOutputObject(output.build());
+        context.getVariablesManager().putVariable(context.getReport(), "callReport", callNode);
+
+        // Warm-up
+        runAsserts(callNode, asserts, CALLS / 10, true);
+        runAsserts(callNode, asserts, CALLS / 10, false);
+
+        logger.info("Output parsed for each assert: {} asserts/s", runAsserts(callNode, asserts, CALLS, false));
+        logger.info("Output parsed once per keyword call: {} asserts/s", runAsserts(callNode, asserts, CALLS, true));
+    }
+
+    private long runAsserts(CallFunctionReportNode callNode, List<Assert> asserts, int calls, boolean parseOnce) {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            // Simulate a new keyword call
+            callNode.setOutputDocument(null);
+            for (Assert a : asserts) {
+                if (!parseOnce) {
+                    callNode.setOutputDocument(null);
+                }
+                execute(a);
+            }
+        }
+        return (long) (calls * asserts.size() / ((System.nanoTime() - start) / 1e9));
+    }
+}
@@ -19,7 +19,9 @@
 package step.artefacts.handlers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.io.StringReader;
 
@@ -28,6 +30,8 @@ import jakarta.json.JsonObject;
 
 import org.junit.Test;
 
+import com.jayway.jsonpath.DocumentContext;
+
 import step.artefacts.Assert;
 import step.artefacts.Assert.AssertOperator;
 import step.artefacts.reports.AssertReportNode;
@@ -1021,6 +1025,35 @@ public class AssertHandlerTest extends AbstractArtefactHandlerTest {
         assertEquals("No results for path: $['key2']['notexist']", child.getMessage());
     }
 
+    @Test
+    public void testOutputParsedOnce() {
+        setupPassed();
+        CallFunctionReportNode callNode = (CallFunctionReportNode) context.getVariablesManager().getVariable("callReport");
+
+        Assert a = new Assert();
+        a.setActual(new DynamicValue<String>("$.key2.key21"));
+        a.setExpected(new DynamicValue<String>("val21"));
+        a.setOperator(AssertOperator.EQUALS);
+        execute(a);
+        DocumentContext outputDocument = callNode.getOutputDocument();
+        assertNotNull(outputDocument);
+
+        a = new Assert();
+        a.setActual(new DynamicValue<String>("$.key2.key22"));
+        a.setExpected(new DynamicValue<String>("val.*"));
+        a.setOperator(AssertOperator.MATCHES);
+        AssertReportNode node = (AssertReportNode) execute(a);
+        assertEquals(ReportNodeStatus.PASSED, node.getStatus());
+        // The output parsed by the first assert is reused
+        assertSame(outputDocument, callNode.getOutputDocument());
+
+        // The parsed output is discarded when the output changes
+        callNode.setOutputObject(Json.createReader(new StringReader("{\"key2\":{\"key22\":\"other\"}}")).readObject());
+        node = (AssertReportNode) execute(a);
+        assertEquals(ReportNodeStatus.FAILED, node.getStatus());
+        assertEquals("'$.key2.key22' expected to match regular expression 'val.*' but was 'other'", node.getMessage());
+    }
+
     private void setupPassed() {
         setupContext();
 
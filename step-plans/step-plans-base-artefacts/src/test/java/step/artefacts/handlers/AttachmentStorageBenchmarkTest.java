@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers;
+
+import ch.exense.commons.io.FileHelper;
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.artefacts.AbstractArtefactTest;
+import step.attachments.AttachmentMeta;
+import step.core.execution.ExecutionContext;
+import step.core.miscellaneous.HexContentInputStream;
+import step.core.miscellaneous.ReportNodeAttachmentManager;
+import step.grid.io.AttachmentHelper;
+import step.resources.LocalResourceManagerImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the controller heap and the latency of the storage of many concurrent large keyword attachments
+ * when the hexadecimal content is decoded to a byte array first and when it is decoded while being written
+ * to the resource storage (see {@link HexContentInputStream})
+ */
+public class AttachmentStorageBenchmarkTest extends AbstractArtefactTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentStorageBenchmarkTest.class);
+
+    private static final int ATTACHMENT_SIZE = 10 * 1024 * 1024;
+    private static final int THREADS = 16;
+    private static final int ATTACHMENTS_PER_THREAD = 4;
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkStreamingVsByteArray() throws Exception {
+        byte[] content = new byte[ATTACHMENT_SIZE];
+        new Random(1).nextBytes(content);
+        String hexContent = AttachmentHelper.generateAttachmentFromByteArray(content, "attachment.bin").getHexContent();
+        content = null;
+
+        File resourceFolder = Files.createTempDirectory("attachments").toFile();
+        try {
+            ExecutionContext context = newExecutionContext();
+            context.setResourceManager(new LocalResourceManagerImpl(resourceFolder));
+            context.getVariablesManager().putVariable(context.getReport(), ReportNodeAttachmentManager.QUOTA_VARNAME, Integer.MAX_VALUE);
+            ReportNodeAttachmentManager attachmentManager = new ReportNodeAttachmentManager(context);
+
+            // Warm-up
+            measure(() -> attachmentManager.createAttachment(AttachmentHelper.hexStringToByteArray(hexContent), "attachment.bin", null));
+            measure(() -> attachmentManager.createAttachment(new HexContentInputStream(hexContent), "attachment.bin", null));
+
+            Measurement byteArray = measure(() -> attachmentManager.createAttachment(AttachmentHelper.hexStringToByteArray(hexContent), "attachment.bin", null));
+            Measurement streaming = measure(() -> attachmentManager.createAttachment(new HexContentInputStream(hexContent), "attachment.bin", null));
+            logger.info("{} threads storing {} attachments of {}MB each. Byte array: {}. Streaming: {}", THREADS, ATTACHMENTS_PER_THREAD,
+                ATTACHMENT_SIZE / (1024 * 1024), byteArray, streaming);
+        } finally {
+            FileHelper.deleteFolder(resourceFolder);
+        }
+    }
+
+    private Measurement measure(AttachmentWriter writer) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long baselineHeap = heapPools.stream().mapToLong(p -> p.getUsage().getUsed()).sum();
+
+        LongAdder latencyNanos = new LongAdder();
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executorService.submit(() -> {
+                    for (int j = 0; j < ATTACHMENTS_PER_THREAD; j++) {
+                        long attachmentStart = System.nanoTime();
+                        AttachmentMeta attachment = writer.write();
+                        latencyNanos.add(System.nanoTime() - attachmentStart);
+                        Assert.assertNotNull(attachment.getId());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        Measurement measurement = new Measurement();
+        measurement.totalDurationMs = (System.nanoTime() - start) / 1_000_000;
+        measurement.averageLatencyMs = latencyNanos.sum() / 1_000_000 / (THREADS * ATTACHMENTS_PER_THREAD);
+        // Sum of the peaks of the pools, which is an upper bound of the actual peak
+        measurement.peakHeapBytes = heapPools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum() - baselineHeap;
+        return measurement;
+    }
+
+    private interface AttachmentWriter {
+        AttachmentMeta write() throws IOException;
+    }
+
+    private static class Measurement {
+
+        private long totalDurationMs;
+        private long averageLatencyMs;
+        private long peakHeapBytes;
+
+        @Override
+        public String toString() {
+            return "total " + totalDurationMs + "ms, average latency per attachment " + averageLatencyMs + "ms, peak heap increase "
+                + peakHeapBytes / (1024 * 1024) + "MB";
+        }
+    }
+}
@@ -40,15 +40,22 @@ import step.core.dynamicbeans.DynamicBeanResolver;
 import step.core.dynamicbeans.DynamicValue;
 import step.core.dynamicbeans.DynamicValueResolver;
 import step.core.dynamicbeans.ProtectedDynamicValue;
+import step.core.execution.ExecutionContext;
 import step.core.execution.ExecutionEngine;
+import step.core.metrics.MetricSample;
 import step.core.plans.Plan;
 import step.core.plans.builder.PlanBuilder;
 import step.core.plans.runner.PlanRunnerResult;
+import step.core.plugins.Plugin;
+import step.datapool.ReadAheadBuffer;
 import step.datapool.excel.ExcelDataPool;
 import step.datapool.json.JsonArrayDataPoolConfiguration;
+import step.engine.plugins.AbstractExecutionEnginePlugin;
 import step.engine.plugins.FunctionPlugin;
 import step.expressions.ExpressionHandler;
 import step.functions.io.Output;
+import step.livereporting.LiveReportingContext;
+import step.livereporting.LiveReportingPlugin;
 import step.parameter.Parameter;
 import step.parameter.ParameterManager;
 import step.planbuilder.BaseArtefacts;
@@ -59,6 +66,7 @@ import javax.json.Json;
 import javax.json.JsonObject;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -155,6 +163,50 @@ public class ForEachHandlerTest {
 
     }
 
+    @Test
+    public void testReadAheadMetrics() {
+        ReadAheadMetricsPlugin metricsPlugin = new ReadAheadMetricsPlugin();
+        try (ExecutionEngine engine = ExecutionEngine.builder().withPlugin(new ThreadPoolPlugin()).withPlugin(new BaseArtefactPlugin())
+            .withPlugin(new TokenForecastingExecutionPlugin()).withPlugin(new LiveReportingPlugin()).withPlugin(metricsPlugin).build()) {
+            engine.getExecutionEngineContext().getConfiguration().putProperty(ReadAheadBuffer.READ_AHEAD_DEPTH_CONFIG, "10");
+
+            ForEachBlock f = new ForEachBlock();
+            JsonArrayDataPoolConfiguration configuration = new JsonArrayDataPoolConfiguration();
+            configuration.setJson(new DynamicValue<>("[ {\"a\" : 1}, {\"a\" : 2}, {\"a\" : 3}]"));
+            f.setDataSource(configuration);
+            f.setDataSourceType(JSON_ARRAY);
+            f.setItem(new DynamicValue<>("row"));
+            f.setThreads(new DynamicValue<>(2));
+
+            Plan plan = PlanBuilder.create().startBlock(f).add(BaseArtefacts.echo("row.a")).endBlock().build();
+            PlanRunnerResult planRunnerResult = engine.execute(plan);
+            assertEquals(ReportNodeStatus.PASSED, planRunnerResult.getResult());
+        }
+
+        // The usage of the read-ahead buffer is reported through the live reporting context of the ForEach node
+        MetricSample readRows = metricsPlugin.samples.stream().filter(m -> m.getName().equals(ForBlockHandler.METRIC_READ_AHEAD_READ_ROWS))
+            .findFirst().orElseThrow();
+        assertEquals(3, readRows.getSum());
+        assertEquals(6, metricsPlugin.samples.size());
+    }
+
+    /**
+     * Records the metrics reported by the nodes having their own live reporting context
+     */
+    @Plugin(dependencies = LiveReportingPlugin.class)
+    public static class ReadAheadMetricsPlugin extends AbstractExecutionEnginePlugin {
+
+        private final List<MetricSample> samples = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void beforeReportNodeExecution(ExecutionContext context, ReportNode node) {
+            LiveReportingContext liveReportingContext = LiveReportingPlugin.getNodeLiveReportingContext(context, node);
+            if (liveReportingContext != null) {
+                liveReportingContext.registerMetricListener(samples::addAll);
+            }
+        }
+    }
+
     @Test
     public void testPasswordProtectedExcel() throws IOException {
         testPasswordProtectedExcel(false);
@@ -0,0 +1,91 @@
+package step.artefacts.handlers;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import org.everit.json.schema.ValidationException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.functions.Function;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class JsonSchemaValidatorTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonSchemaValidatorTest.class);
+
+    private static final String SCHEMA = "{\"properties\":{\"myString\":{\"type\":\"string\"},\"myInteger\":{\"type\":\"integer\"}," +
+        "\"myNumber\":{\"type\":\"number\",\"maximum\":10.5},\"myArray\":{\"type\":\"array\",\"items\":{\"type\":\"boolean\"}}," +
+        "\"myObject\":{\"type\":\"object\",\"required\":[\"nested\"]}},\"required\":[\"myString\"]}";
+
+    @Test
+    public void testFunctionSchema() {
+        Function function = new Function();
+        function.setSchema(readJsonObject(SCHEMA));
+
+        JsonSchemaValidator.validate(function, readJsonObject("{\"myString\":\"value\",\"myInteger\":1,\"myNumber\":10.5," +
+            "\"myArray\":[true,false],\"myObject\":{\"nested\":null}}"));
+        assertInvalid(function, "{}");
+        assertInvalid(function, "{\"myString\":1}");
+        assertInvalid(function, "{\"myString\":\"value\",\"myInteger\":1.5}");
+        assertInvalid(function, "{\"myString\":\"value\",\"myNumber\":10.6}");
+        assertInvalid(function, "{\"myString\":\"value\",\"myArray\":[\"true\"]}");
+        assertInvalid(function, "{\"myString\":\"value\",\"myObject\":{}}");
+
+        // The cached schema is replaced when the schema of the keyword changes
+        function.setSchema(readJsonObject("{\"properties\":{\"myString\":{\"type\":\"string\"}},\"required\":[\"otherString\"]}"));
+        assertInvalid(function, "{\"myString\":\"value\"}");
+        JsonSchemaValidator.validate(function, readJsonObject("{\"otherString\":\"value\"}"));
+    }
+
+    @Test
+    public void testJsonNode() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String input = "{\"version\":\"1.0.0\",\"myString\":\"value\",\"myInteger\":1,\"myNumber\":1.5,\"myArray\":[true]}";
+        assertEquals("1.0.0", JsonSchemaValidator.validate(SCHEMA, objectMapper.readTree(input)));
+        assertEquals("1.0.0", JsonSchemaValidator.validate(SCHEMA, input));
+        assertNull(JsonSchemaValidator.validate(SCHEMA, objectMapper.readTree("{\"myString\":\"value\"}")));
+        assertThrows(ValidationException.class, () -> JsonSchemaValidator.validate(SCHEMA, objectMapper.readTree("{\"myInteger\":\"1\"}")));
+        assertThrows(RuntimeException.class, () -> JsonSchemaValidator.validate(SCHEMA, objectMapper.readTree("[]")));
+    }
+
+    @Category(PerformanceTest.class)
+    @Test
+    public void benchmarkFunctionSchema() {
+        Function function = new Function();
+        function.setSchema(readJsonObject(SCHEMA));
+        JsonObject input = readJsonObject("{\"myString\":\"value\",\"myInteger\":1,\"myNumber\":1.5,\"myArray\":[true,false],\"myObject\":{\"nested\":1}}");
+        int iterations = 100_000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            // Former implementation: the schema is compiled and both documents are parsed for each call
+            SchemaLoader.load(new JSONObject(function.getSchema().toString())).validate(new JSONObject(input.toString()));
+        }
+        long stringValidationNanos = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JsonSchemaValidator.validate(function, input);
+        }
+        long functionValidationNanos = (System.nanoTime() - start) / iterations;
+        logger.info("Validation per call: {}ns when compiling the schema for each call, {}ns with compiled keyword schema", stringValidationNanos, functionValidationNanos);
+    }
+
+    private static void assertInvalid(Function function, String input) {
+        assertThrows(ValidationException.class, () -> JsonSchemaValidator.validate(function, readJsonObject(input)));
+    }
+
+    private static JsonObject readJsonObject(String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+}
@@ -84,6 +84,25 @@ public class PerformanceAssertHandlerTest extends AbstractKeyword {
         assertEquals(ReportNodeStatus.PASSED, result.getResult());
     }
 
+    @Test
+    public void testPercentilesAndDistribution() throws IOException {
+        PerformanceAssert assert1 = new PerformanceAssert(Aggregator.PERCENTILE_50, Comparator.EQUALS, 100l, filterMyMeasure2Regex);
+        PerformanceAssert assert2 = new PerformanceAssert(Aggregator.PERCENTILE_90, Comparator.EQUALS, 1000l, filterMyMeasure2Regex);
+        PerformanceAssert assert3 = new PerformanceAssert(Aggregator.PERCENTILE_99, Comparator.EQUALS, 1000l, filterMyMeasure2Regex);
+        PerformanceAssert assert4 = new PerformanceAssert(Aggregator.STANDARD_DEVIATION, Comparator.HIGHER_THAN, 446l, filterMyMeasure2Regex);
+        PerformanceAssert assert5 = new PerformanceAssert(Aggregator.STANDARD_DEVIATION, Comparator.LOWER_THAN, 447l, filterMyMeasure2Regex);
+        PerformanceAssert assert6 = new PerformanceAssert(Aggregator.THROUGHPUT, Comparator.HIGHER_THAN, 0l, filterMyMeasure2Regex);
+        PlanRunnerResult result = execute(assert1, assert2, assert3, assert4, assert5, assert6);
+        assertEquals(ReportNodeStatus.PASSED, result.getResult());
+
+        PerformanceAssert assert7 = new PerformanceAssert(Aggregator.PERCENTILE_95, Comparator.LOWER_THAN, 500l, filterMyMeasure2Regex);
+        result = execute(assert7);
+        PlanRunnerResultAssert.assertEquals("Sequence:FAILED:\n" +
+            " TestKeywordWithMeasurements:PASSED:\n" +
+            " [AFTER]\n" +
+            "  PerformanceAssert:FAILED:95th percentile of myMeasure2 expected to be lower than 500 but was 1000\n", result);
+    }
+
     @Test
     public void testAssertWithinKeywordPositive1() throws IOException {
         PerformanceAssert assert1 = new PerformanceAssert(Aggregator.COUNT, Comparator.EQUALS, 3l, filterMyMeasure2Regex);
@@ -19,22 +19,33 @@
 package step.artefacts.handlers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.StringWriter;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import org.junit.Assert;
+import step.artefacts.BaseArtefactPlugin;
 import step.artefacts.Check;
+import step.artefacts.TestCase;
 import step.artefacts.TestSet;
 import step.core.artefacts.CheckArtefact;
 import step.core.artefacts.reports.ReportNode;
 import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.artefacts.reports.aggregated.ReportNodeTimeSeries;
 import step.core.dynamicbeans.DynamicValue;
+import step.core.execution.ExecutionEngine;
 import step.core.plans.Plan;
 import step.core.plans.builder.PlanBuilder;
 import step.core.plans.runner.DefaultPlanRunner;
+import step.engine.plugins.BasePlugin;
+import step.planbuilder.BaseArtefacts;
+import step.threadpool.ThreadPoolPlugin;
 
 public class TestSetHandlerTest extends AbstractArtefactHandlerTest {
 
@@ -88,6 +99,56 @@ public class TestSetHandlerTest extends AbstractArtefactHandlerTest {
         Assert.assertTrue(writer.toString().startsWith("TestSet:" + ReportNodeStatus.TECHNICAL_ERROR));
     }
 
+    @Test
+    public void testHistoryBasedScheduling() {
+        Plan plan = newPlanWithTestCasesOfDifferentDurations();
+        try (ExecutionEngine engine = newExecutionEngine()) {
+            // Without history the test cases are started in the order of the plan: the longest one starts last
+            Map<String, ReportNode> testCases = executeAndGetTestCases(engine, plan, Map.of());
+            assertTrue(testCases.get("Long").getExecutionTime() > testCases.get("Short").getExecutionTime());
+
+            // With the durations of the first execution the longest test cases are started first
+            testCases = executeAndGetTestCases(engine, plan, Map.of());
+            assertTrue(testCases.get("Short").getExecutionTime() > testCases.get("Long").getExecutionTime());
+        }
+    }
+
+    @Test
+    public void testHistoryBasedSchedulingDisabled() {
+        Plan plan = newPlanWithTestCasesOfDifferentDurations();
+        Map<String, String> parameters = Map.of(TestSetHandler.TEC_TESTSET_SCHEDULER_HISTORY_ENABLED, "false");
+        try (ExecutionEngine engine = newExecutionEngine()) {
+            executeAndGetTestCases(engine, plan, parameters);
+
+            // The history of the first execution is ignored: the test cases are still started in the order of the plan
+            Map<String, ReportNode> testCases = executeAndGetTestCases(engine, plan, parameters);
+            assertTrue(testCases.get("Long").getExecutionTime() > testCases.get("Short").getExecutionTime());
+        }
+    }
+
+    private ExecutionEngine newExecutionEngine() {
+        return ExecutionEngine.builder().withPlugin(new BaseArtefactPlugin()).withPlugin(new ThreadPoolPlugin())
+            .withPlugin(new BasePlugin()).build();
+    }
+
+    private Plan newPlanWithTestCasesOfDifferentDurations() {
+        TestSet testSet = BaseArtefacts.testSet();
+        testSet.setThreads(new DynamicValue<>(2));
+        return PlanBuilder.create().startBlock(testSet)
+            .startBlock(BaseArtefacts.testCase("Short")).add(BaseArtefacts.sleep(50)).endBlock()
+            .startBlock(BaseArtefacts.testCase("Medium")).add(BaseArtefacts.sleep(200)).endBlock()
+            .startBlock(BaseArtefacts.testCase("Long")).add(BaseArtefacts.sleep(400)).endBlock()
+            .endBlock().build();
+    }
+
+    private Map<String, ReportNode> executeAndGetTestCases(ExecutionEngine engine, Plan plan, Map<String, String> parameters) {
+        String executionId = engine.execute(plan, parameters).getExecutionId();
+        engine.getExecutionEngineContext().get(ReportNodeTimeSeries.class).flush();
+        return engine.getExecutionEngineContext().getReportNodeAccessor().getReportNodesByExecutionID(executionId)
+            .filter(n -> n.getResolvedArtefact() instanceof TestCase)
+            .collect(Collectors.toMap(ReportNode::getName, Function.identity()));
+    }
+
     private Check passedCheck() {
         Check passedCheck = new Check();
         passedCheck.setExpression(new DynamicValue<Boolean>(true));
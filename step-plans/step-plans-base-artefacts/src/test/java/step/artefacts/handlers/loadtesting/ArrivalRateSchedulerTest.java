@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers.loadtesting;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ArrivalRateSchedulerTest {
+
+    @Test
+    public void testConstantProfile() {
+        ArrivalRateProfile profile = ArrivalRateProfile.constant(10, 1000, 1000);
+        assertEquals(1000, profile.getDurationMs());
+        assertEquals(0, profile.getArrivalOffsetNanos(0));
+        assertEquals(100, offsetMs(profile, 1));
+        assertEquals(900, offsetMs(profile, 9));
+        assertEquals(-1, profile.getArrivalOffsetNanos(10));
+
+        // Unbounded profile limited by the number of iterations only
+        profile = ArrivalRateProfile.constant(2, 1, 0);
+        assertEquals(0, profile.getDurationMs());
+        assertEquals(500, offsetMs(profile, 1000));
+    }
+
+    @Test
+    public void testRampingProfile() {
+        // Ramp from 0 to 10/s in 1s: A(t) = 5t^2
+        ArrivalRateProfile profile = ArrivalRateProfile.staged(0, 1000, List.of(new ArrivalRateProfile.Stage(1000, 10)), 0);
+        assertEquals(1000, profile.getDurationMs());
+        assertEquals(0, profile.getArrivalOffsetNanos(0));
+        assertEquals(447, offsetMs(profile, 1));
+        assertEquals(894, offsetMs(profile, 4));
+        assertEquals(-1, profile.getArrivalOffsetNanos(5));
+        assertEquals(0.005, profile.getRatePerMs(500), 1e-9);
+
+        // Ramp down from 10/s to 0 in 1s: A(t) = 10t - 5t^2
+        profile = ArrivalRateProfile.staged(10, 1000, List.of(new ArrivalRateProfile.Stage(1000, 0)), 0);
+        assertEquals(105, offsetMs(profile, 1));
+        assertEquals(552, offsetMs(profile, 4));
+        assertEquals(-1, profile.getArrivalOffsetNanos(5));
+
+        // Ramp up followed by an unbounded constant stage
+        profile = ArrivalRateProfile.staged(0, 1000, List.of(new ArrivalRateProfile.Stage(1000, 10), new ArrivalRateProfile.Stage(0, 10)), 0);
+        assertEquals(0, profile.getDurationMs());
+        assertEquals(1000, offsetMs(profile, 5));
+        assertEquals(1100, offsetMs(profile, 6));
+        assertEquals(2000, offsetMs(profile, 15));
+
+        // Same profile limited by a maximum duration
+        profile = ArrivalRateProfile.staged(0, 1000, List.of(new ArrivalRateProfile.Stage(1000, 10), new ArrivalRateProfile.Stage(0, 10)), 1500);
+        assertEquals(1500, profile.getDurationMs());
+        assertEquals(1400, offsetMs(profile, 9));
+        assertEquals(-1, profile.getArrivalOffsetNanos(10));
+    }
+
+    @Test
+    public void testInvalidProfiles() {
+        assertThrows(IllegalArgumentException.class, () -> ArrivalRateProfile.constant(10, 0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> ArrivalRateProfile.staged(10, 1000, List.of(), 0));
+        assertThrows(IllegalArgumentException.class, () -> ArrivalRateProfile.staged(10, 1000,
+            List.of(new ArrivalRateProfile.Stage(0, 10), new ArrivalRateProfile.Stage(1000, 10)), 0));
+        assertThrows(IllegalArgumentException.class, () -> ArrivalRateProfile.staged(10, 1000,
+            List.of(new ArrivalRateProfile.Stage(1000, -1)), 0));
+    }
+
+    @Test
+    public void testDroppedIterations() throws InterruptedException {
+        // 1 iteration per ms with a single worker executing iterations of 10ms
+        ArrivalRateProfile profile = ArrivalRateProfile.constant(1, 1, 0);
+        ArrivalRateScheduler scheduler = new ArrivalRateScheduler(profile, 100, 1, 1, 20, 0, 1000, null);
+        Thread dispatcher = new Thread(() -> scheduler.dispatch(() -> false));
+        dispatcher.start();
+
+        ArrivalRateScheduler.Ticket ticket;
+        while ((ticket = scheduler.nextTicket(() -> false)) != null) {
+            assertTrue(ticket.getIndex() < 100);
+            Thread.sleep(10);
+            scheduler.iterationCompleted();
+        }
+        dispatcher.join();
+
+        assertEquals(100, scheduler.getScheduledIterations());
+        assertTrue(scheduler.getDroppedIterations() > 0);
+        assertEquals(100, scheduler.getStartedIterations() + scheduler.getDroppedIterations());
+        assertTrue(scheduler.getDelayedIterations() > 0);
+        assertTrue(scheduler.getMaxStartLatencyMs() <= 20 + 1);
+        assertEquals(1, scheduler.getPeakWorkers());
+    }
+
+    @Test
+    public void testElasticWorkers() throws InterruptedException {
+        List<Long> startLatencies = new ArrayList<>();
+        ArrivalRateProfile profile = ArrivalRateProfile.constant(1, 1, 0);
+        // No ticket is consumed: all activated workers remain busy and new workers are activated up to the maximum
+        ArrivalRateScheduler scheduler = new ArrivalRateScheduler(profile, 20, 1, 5, 0, 0, 1000, new ArrivalRateScheduler.Listener() {
+            @Override
+            public void onIterationStarted(long startLatencyNanos, boolean delayed) {
+                startLatencies.add(startLatencyNanos);
+            }
+        });
+        scheduler.dispatch(() -> false);
+
+        assertTrue(scheduler.isFinished());
+        assertEquals(20, scheduler.getScheduledIterations());
+        assertEquals(5, scheduler.getPeakWorkers());
+
+        Iterator<Integer> workerIterator = scheduler.workerIterator(() -> false);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, (int) workerIterator.next());
+        }
+        assertNull(workerIterator.next());
+
+        // Tickets are never dropped without maximum delay
+        int count = 0;
+        while (scheduler.nextTicket(() -> false) != null) {
+            count++;
+        }
+        assertEquals(20, count);
+        assertEquals(0, scheduler.getDroppedIterations());
+        assertEquals(20, startLatencies.size());
+    }
+
+    @Test
+    public void testMissedArrivals() throws InterruptedException {
+        // No ticket is consumed while dispatching: the arrivals exceeding the maximum number of pending iterations are missed
+        ArrivalRateProfile profile = ArrivalRateProfile.constant(1, 1, 0);
+        ArrivalRateScheduler scheduler = new ArrivalRateScheduler(profile, 20, 1, 1, 0, 0, 1000, 5, 0, null);
+        scheduler.dispatch(() -> false);
+
+        assertEquals(20, scheduler.getScheduledIterations());
+        assertEquals(15, scheduler.getMissedIterations());
+        assertEquals(15, scheduler.getDroppedIterations());
+
+        int count = 0;
+        while (scheduler.nextTicket(() -> false) != null) {
+            count++;
+        }
+        assertEquals(5, count);
+    }
+
+    @Test
+    public void testIdleWorkersStopped() throws InterruptedException {
+        // 1 iteration every 200ms with an idle timeout of 50ms
+        ArrivalRateProfile profile = ArrivalRateProfile.constant(1, 200, 0);
+        ArrivalRateScheduler scheduler = new ArrivalRateScheduler(profile, 0, 1, 3, 0, 0, 1000, 100, 50, null);
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread dispatcher = new Thread(() -> scheduler.dispatch(stopped::get));
+        dispatcher.start();
+        try {
+            // The first 3 iterations are started before any of them completes: an additional worker is activated for
+            // the second and the third iteration
+            assertNotNull(scheduler.nextTicket(() -> false));
+            for (int i = 2; i <= 3; i++) {
+                long timeout = System.currentTimeMillis() + 5000;
+                while (scheduler.getActiveWorkers() < i && System.currentTimeMillis() < timeout) {
+                    Thread.sleep(1);
+                }
+                assertEquals(i, scheduler.getActiveWorkers());
+                assertNotNull(scheduler.nextTicket(() -> false));
+            }
+            for (int i = 0; i < 3; i++) {
+                scheduler.iterationCompleted();
+            }
+
+            // The next iteration is only scheduled in 200ms: the idle worker is stopped
+            assertNull(scheduler.nextTicket(() -> false));
+            scheduler.workerStopped();
+            assertEquals(2, scheduler.getActiveWorkers());
+        } finally {
+            stopped.set(true);
+            dispatcher.join();
+        }
+    }
+
+    @Test
+    public void testInterruption() throws InterruptedException {
+        ArrivalRateProfile profile = ArrivalRateProfile.constant(1, 1000, 0);
+        ArrivalRateScheduler scheduler = new ArrivalRateScheduler(profile, 0, 1, 1, 0, 0, 1000, null);
+        long t1 = System.nanoTime();
+        Thread dispatcher = new Thread(() -> scheduler.dispatch(() -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t1) > 200));
+        dispatcher.start();
+        dispatcher.join(5000);
+
+        assertTrue(scheduler.isFinished());
+        // Only the first iteration has been scheduled before the interruption
+        assertEquals(1, scheduler.getScheduledIterations());
+    }
+
+    private static long offsetMs(ArrivalRateProfile profile, long index) {
+        return TimeUnit.NANOSECONDS.toMillis(profile.getArrivalOffsetNanos(index));
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.artefacts.handlers.scheduler;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.artefacts.Sequence;
+import step.core.artefacts.AbstractArtefact;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryBasedTestSetSchedulerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryBasedTestSetSchedulerTest.class);
+
+    @Test
+    public void testOrderTestCases() {
+        List<AbstractArtefact> testCases = createTestCases(5);
+        Map<AbstractArtefact, Long> durations = new HashMap<>();
+        durations.put(testCases.get(0), 10L);
+        durations.put(testCases.get(1), 50L);
+        durations.put(testCases.get(3), 30L);
+        durations.put(testCases.get(4), 50L);
+
+        List<AbstractArtefact> orderedTestCases = new HistoryBasedTestSetScheduler(durations::get).orderTestCases(testCases);
+        // The unknown test case 2 is expected to last the average duration (35ms). Test cases of the same duration keep their order
+        assertEquals(List.of(testCases.get(1), testCases.get(4), testCases.get(2), testCases.get(3), testCases.get(0)), orderedTestCases);
+    }
+
+    @Test
+    public void testOrderWithoutHistory() {
+        List<AbstractArtefact> testCases = createTestCases(5);
+        HistoryBasedTestSetScheduler scheduler = new HistoryBasedTestSetScheduler(t -> null);
+        assertSame(testCases, scheduler.orderTestCases(testCases));
+
+        List<TestCaseBundle> bundles = scheduler.bundleTestCases(testCases, 2);
+        assertEquals(List.of(testCases.get(0), testCases.get(2), testCases.get(4)), bundles.get(0).getTestcases());
+        assertEquals(List.of(testCases.get(1), testCases.get(3)), bundles.get(1).getTestcases());
+    }
+
+    @Test
+    public void testBundleTestCases() {
+        List<AbstractArtefact> testCases = createTestCases(6);
+        List<Long> durations = List.of(20L, 70L, 30L, 40L, 10L, 30L);
+        HistoryBasedTestSetScheduler scheduler = new HistoryBasedTestSetScheduler(t -> durations.get(testCases.indexOf(t)));
+
+        List<TestCaseBundle> bundles = scheduler.bundleTestCases(testCases, 2);
+        // Each test case is assigned longest first to the bundle with the lowest expected duration
+        assertEquals(List.of(testCases.get(1), testCases.get(5)), bundles.get(0).getTestcases());
+        assertEquals(List.of(testCases.get(3), testCases.get(2), testCases.get(0), testCases.get(4)), bundles.get(1).getTestcases());
+    }
+
+    @Category(PerformanceTest.class)
+    @Test
+    public void benchmarkMakespan() {
+        Random random = new Random(1);
+        int threads = 8;
+        long roundRobinMakespans = 0, dynamicMakespans = 0, historyBasedMakespans = 0;
+        int runs = 100;
+        for (int run = 0; run < runs; run++) {
+            List<AbstractArtefact> testCases = createTestCases(200);
+            // Log-normal durations: mostly short test cases and a few long ones
+            Map<AbstractArtefact, Long> durations = new HashMap<>();
+            Map<AbstractArtefact, Long> historicalDurations = new HashMap<>();
+            for (AbstractArtefact testCase : testCases) {
+                long duration = (long) Math.exp(8 + 1.5 * random.nextGaussian());
+                durations.put(testCase, duration);
+                // The history is a noisy estimation of the actual duration and isn't available for 10% of the test cases
+                if (random.nextInt(10) > 0) {
+                    historicalDurations.put(testCase, (long) (duration * (0.7 + 0.6 * random.nextDouble())));
+                }
+            }
+
+            // Former static distribution of the test cases over the threads
+            roundRobinMakespans += new DefaultTestSetScheduler().bundleTestCases(testCases, threads).stream()
+                .mapToLong(b -> b.getTestcases().stream().mapToLong(durations::get).sum()).max().orElse(0);
+            // Threads pulling the test cases in the order of the plan
+            dynamicMakespans += simulateDynamicQueue(testCases, durations, threads);
+            // Threads pulling the test cases longest first
+            List<AbstractArtefact> orderedTestCases = new HistoryBasedTestSetScheduler(historicalDurations::get).orderTestCases(testCases);
+            historyBasedMakespans += simulateDynamicQueue(orderedTestCases, durations, threads);
+        }
+        logger.info("Average makespan with {} threads: round-robin {}ms, dynamic queue {}ms, history based dynamic queue {}ms",
+            threads, roundRobinMakespans / runs, dynamicMakespans / runs, historyBasedMakespans / runs);
+        assertTrue(historyBasedMakespans <= dynamicMakespans);
+        assertTrue(historyBasedMakespans <= roundRobinMakespans);
+    }
+
+    private static long simulateDynamicQueue(List<AbstractArtefact> testCases, Map<AbstractArtefact, Long> durations, int threads) {
+        // End time of the current test case of each thread. The next test case is pulled by the first available thread
+        PriorityQueue<Long> threadEndTimes = new PriorityQueue<>();
+        for (int i = 0; i < threads; i++) {
+            threadEndTimes.add(0L);
+        }
+        long makespan = 0;
+        for (AbstractArtefact testCase : testCases) {
+            long endTime = threadEndTimes.poll() + durations.get(testCase);
+            makespan = Math.max(makespan, endTime);
+            threadEndTimes.add(endTime);
+        }
+        return makespan;
+    }
+
+    private static List<AbstractArtefact> createTestCases(int count) {
+        List<AbstractArtefact> testCases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            testCases.add(new Sequence());
+        }
+        return testCases;
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.datapool;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.artefacts.AbstractArtefactTest;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.execution.ExecutionContext;
+import step.datapool.file.CSVDataPool;
+import step.datapool.sequence.IntSequenceDataPool;
+import step.threadpool.ThreadPool;
+import step.threadpool.ThreadPool.WorkerController;
+import step.threadpool.WorkerItemConsumerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Measures the throughput of the work distribution of the {@link ThreadPool} over data sets
+ * with and without prefetching, from 1 to 256 workers. The work items are consumed like the ForBlockHandler
+ * does it with row commit enabled.
+ */
+public class DataSetContentionBenchmarkTest extends AbstractArtefactTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSetContentionBenchmarkTest.class);
+
+    private static final int ROWS = 50_000;
+    private static final int[] WORKERS = new int[]{1, 4, 16, 64, 256};
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkIntSequenceDataPool() {
+        IntSequenceDataPool configuration = new IntSequenceDataPool();
+        configuration.setStart(new DynamicValue<>(1));
+        configuration.setEnd(new DynamicValue<>(ROWS));
+        configuration.setInc(new DynamicValue<>(1));
+        benchmark("sequence", context -> DataPoolFactory.getDataPool("sequence", configuration, context));
+    }
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkCSVReaderDataPool() throws IOException {
+        File file = File.createTempFile("benchmark", ".csv");
+        try {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+                writer.println("Col1,Col2,Col3");
+                for (int i = 0; i < ROWS; i++) {
+                    writer.println("row" + i + "1,row" + i + "2,row" + i + "3");
+                }
+            }
+            CSVDataPool configuration = new CSVDataPool();
+            configuration.setFile(new DynamicValue<>(file.getAbsolutePath()));
+            benchmark("csv", context -> DataPoolFactory.getDataPool("csv", configuration, context));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void benchmark(String dataSourceType, Function<ExecutionContext, DataSet<?>> dataSetFactory) {
+        for (int workers : WORKERS) {
+            long withoutPrefetch = run(dataSetFactory, workers, 1);
+            long withPrefetch = run(dataSetFactory, workers, -1);
+            logger.info("{} data set with {} workers: {} rows/s without prefetching, {} rows/s with prefetching",
+                dataSourceType, workers, throughput(withoutPrefetch), throughput(withPrefetch));
+        }
+    }
+
+    private long throughput(long durationNanos) {
+        return ROWS * 1_000_000_000L / Math.max(1, durationNanos);
+    }
+
+    /**
+     * @param prefetchSize the prefetch size or -1 to use the default prefetch size of the {@link ThreadPool}
+     * @return the duration in ns
+     */
+    private long run(Function<ExecutionContext, DataSet<?>> dataSetFactory, int workers, int prefetchSize) {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+        DataSet<?> dataSet = dataSetFactory.apply(context);
+        dataSet.enableRowCommit(true);
+        dataSet.init();
+        LongAdder consumedRows = new LongAdder();
+        long start = System.nanoTime();
+        try {
+            Iterator<DataPoolRow> iterator = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public DataPoolRow next() {
+                    return dataSet.next();
+                }
+            };
+            threadPool.consumeWork(iterator, new WorkerItemConsumerFactory<DataPoolRow>() {
+                @Override
+                public Consumer<DataPoolRow> createWorkItemConsumer(WorkerController<DataPoolRow> control) {
+                    return row -> {
+                        consumedRows.increment();
+                        row.commit();
+                    };
+                }
+
+                @Override
+                public void onWorkItemSkipped(DataPoolRow workItem) {
+                    workItem.commit();
+                }
+            }, workers, prefetchSize > 0 ? prefetchSize : threadPool.getPrefetchSize(workers));
+        } finally {
+            dataSet.close();
+            try {
+                threadPool.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        long duration = System.nanoTime() - start;
+        Assert.assertEquals(ROWS, consumedRows.sum());
+        return duration;
+    }
+}
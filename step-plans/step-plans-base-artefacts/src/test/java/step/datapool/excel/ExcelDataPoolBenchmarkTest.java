@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.datapool.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ch.exense.commons.app.Configuration;
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import step.artefacts.AbstractArtefactTest;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.variables.SimpleStringMap;
+import step.datapool.DataPoolRow;
+
+/**
+ * Compares the heap retained after the first row and the time to first row of the {@link ExcelDataPoolImpl}
+ * in streaming mode and with the POI user model for a sheet of 500'000 rows
+ */
+public class ExcelDataPoolBenchmarkTest extends AbstractArtefactTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExcelDataPoolBenchmarkTest.class);
+
+    private static final int ROWS = 500_000;
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkStreamingVsUserModel() throws IOException {
+        File file = File.createTempFile("benchmark", ".xlsx");
+        try {
+            createWorkbook(file);
+
+            Measurement streaming = measure(file);
+
+            Configuration configuration = new Configuration();
+            configuration.putProperty(ExcelFunctions.ConfigKeys.STREAMING_ENABLED, "false");
+            configuration.putProperty(ExcelFunctions.ConfigKeys.MAXEXCELSIZE, Integer.toString(Integer.MAX_VALUE));
+            ExcelFunctions.setConfiguration(configuration);
+            Measurement userModel;
+            try {
+                userModel = measure(file);
+            } finally {
+                ExcelFunctions.setConfiguration(new Configuration());
+            }
+
+            logger.info("Excel sheet with {} rows ({} bytes). Streaming: {}. User model: {}", ROWS, file.length(), streaming, userModel);
+            Assert.assertEquals(ROWS, streaming.rows);
+            Assert.assertEquals(ROWS, userModel.rows);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void createWorkbook(File file) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            Sheet sheet = workbook.createSheet("Data");
+            Row headers = sheet.createRow(0);
+            headers.createCell(0).setCellValue("Key");
+            headers.createCell(1).setCellValue("Value");
+            headers.createCell(2).setCellValue("Number");
+            headers.createCell(3).setCellValue("Decimal");
+            for (int i = 1; i <= ROWS; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("Key" + i);
+                row.createCell(1).setCellValue("Value" + i);
+                row.createCell(2).setCellValue(i);
+                row.createCell(3).setCellValue(i / 7.0);
+            }
+            workbook.write(outputStream);
+        }
+    }
+
+    private Measurement measure(File file) {
+        ExcelDataPool configuration = new ExcelDataPool();
+        configuration.setFile(new DynamicValue<>(file.getAbsolutePath()));
+        configuration.setHeaders(new DynamicValue<>(true));
+
+        long baselineHeap = getUsedHeapAfterGc();
+        long start = System.nanoTime();
+        ExcelDataPoolImpl pool = new ExcelDataPoolImpl(configuration);
+        pool.setContext(newExecutionContext());
+        pool.init();
+        try {
+            Measurement measurement = new Measurement();
+            DataPoolRow row = pool.next();
+            Assert.assertEquals("Key1", ((SimpleStringMap) row.getValue()).get("Key"));
+            measurement.timeToFirstRowMs = (System.nanoTime() - start) / 1_000_000;
+            measurement.retainedHeapBytes = getUsedHeapAfterGc() - baselineHeap;
+            measurement.rows = 1;
+            while ((row = pool.next()) != null) {
+                ((SimpleStringMap) row.getValue()).get("Decimal");
+                measurement.rows++;
+            }
+            measurement.totalDurationMs = (System.nanoTime() - start) / 1_000_000;
+            return measurement;
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static long getUsedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class Measurement {
+
+        private int rows;
+        private long timeToFirstRowMs;
+        private long retainedHeapBytes;
+        private long totalDurationMs;
+
+        @Override
+        public String toString() {
+            return "time to first row " + timeToFirstRowMs + "ms, heap retained after first row " + retainedHeapBytes / (1024 * 1024)
+                + "MB, " + rows + " rows read in " + totalDurationMs + "ms";
+        }
+    }
+}
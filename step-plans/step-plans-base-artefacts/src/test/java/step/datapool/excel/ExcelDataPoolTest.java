@@ -18,6 +18,10 @@
  ******************************************************************************/
 package step.datapool.excel;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +33,9 @@ import java.util.concurrent.TimeUnit;
 
 import jakarta.json.JsonObject;
 
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
 
 import org.junit.Assert;
@@ -413,4 +420,129 @@ public class ExcelDataPoolTest extends AbstractArtefactTest {
         }
 
     }
+
+    @Test
+    public void testStreaming() {
+        ExcelDataPoolImpl pool = new ExcelDataPoolImpl(getDataSourceConf(true, "ExcelDataPool.xlsx", "WithHeaders"));
+        initPool(pool);
+        Assert.assertNotNull(pool.streamingReader);
+        Assert.assertNull(pool.workbookSet);
+
+        for (int i = 1; i <= 10; i++) {
+            SimpleStringMap row = (SimpleStringMap) pool.next().getValue();
+            Assert.assertEquals("Value" + i, row.get("Values"));
+            Assert.assertEquals("Key" + i, row.get("Keys"));
+            Assert.assertEquals(2, row.size());
+        }
+        Assert.assertNull(pool.next());
+
+        pool.reset();
+        Assert.assertEquals("Key1", ((SimpleStringMap) pool.next().getValue()).get("Keys"));
+
+        // The workbook has never been loaded
+        Assert.assertNotNull(pool.streamingReader);
+        Assert.assertNull(pool.workbookSet);
+        pool.close();
+    }
+
+    @Test
+    public void testStreamingCellTypes() {
+        ExcelDataPoolImpl streamingPool = new ExcelDataPoolImpl(getDataSourceConf(false, "Excel1.xlsx", "CellTypes"));
+        initPool(streamingPool);
+        Assert.assertNotNull(streamingPool.streamingReader);
+
+        ExcelDataPool workbookConf = getDataSourceConf(false, "Excel1.xlsx", "CellTypes");
+        workbookConf.setForWrite(new DynamicValue<>(true));
+        ExcelDataPoolImpl workbookPool = new ExcelDataPoolImpl(workbookConf);
+        initPool(workbookPool);
+        Assert.assertNull(workbookPool.streamingReader);
+
+        List<String> values = new ArrayList<>();
+        DataPoolRow streamedRow;
+        while ((streamedRow = streamingPool.next()) != null) {
+            SimpleStringMap row = (SimpleStringMap) streamedRow.getValue();
+            SimpleStringMap expectedRow = (SimpleStringMap) workbookPool.next().getValue();
+            Assert.assertEquals(expectedRow.get("A"), row.get("A"));
+            Assert.assertEquals(expectedRow.get("B"), row.get("B"));
+            Assert.assertEquals(expectedRow.get("C"), row.get("C"));
+            values.add(row.get("B"));
+        }
+        Assert.assertNull(workbookPool.next());
+        Assert.assertNotNull(streamingPool.streamingReader);
+
+        Assert.assertEquals(List.of("01.01.2016", "12:00:00", "100", "100.1", "true", "String with\nnew line", "0.22", "0.016",
+            "0.01677777777777", "0.01677777777778"), values);
+
+        streamingPool.close();
+        workbookPool.close();
+    }
+
+    @Test
+    public void testStreamingSwitchToWorkbookModel() {
+        // Writing a cell
+        ExcelDataPoolImpl pool = new ExcelDataPoolImpl(getDataSourceConf(true, "ExcelDataPoolValueChanged.xlsx", "DefaultSheet"));
+        initPool(pool);
+        SimpleStringMap row = (SimpleStringMap) pool.next().getValue();
+        Assert.assertEquals("ELSE", row.get("Value"));
+        Assert.assertNotNull(pool.streamingReader);
+        row.put("Actual", "passed");
+        Assert.assertNull(pool.streamingReader);
+        Assert.assertEquals("SKIP", row.get("Value"));
+        Assert.assertNotNull(pool.next());
+        pool.close();
+
+        // Accessing another sheet
+        pool = new ExcelDataPoolImpl(getDataSourceConf(false, "ExcelDataPool.xlsx", "WithoutHeaders"));
+        initPool(pool);
+        row = (SimpleStringMap) pool.next().getValue();
+        Assert.assertEquals("Value1", row.get("B"));
+        Assert.assertNotNull(pool.streamingReader);
+        Assert.assertEquals("Value1", row.get("WithoutHeaders2::B"));
+        Assert.assertNull(pool.streamingReader);
+        Assert.assertEquals("Value2", ((SimpleStringMap) pool.next().getValue()).get("B"));
+        pool.close();
+    }
+
+    @Test
+    public void testStreamingWithFormulasToBeRecalculated() throws IOException {
+        File file = File.createTempFile("streaming", ".xlsx");
+        try {
+            try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+                Sheet sheet = workbook.createSheet("Formulas");
+                Row headers = sheet.createRow(0);
+                headers.createCell(0).setCellValue("Key");
+                headers.createCell(1).setCellValue("Value");
+                headers.createCell(2).setCellValue("Formula");
+                for (int i = 1; i <= 3; i++) {
+                    Row row = sheet.createRow(i);
+                    row.createCell(0).setCellValue("Key" + i);
+                    row.createCell(1).setCellValue(i);
+                    row.createCell(2).setCellFormula("B" + (i + 1) + "*2");
+                }
+                // Like the workbooks saved by the WorkbookFile, no formula value is cached
+                workbook.setForceFormulaRecalculation(true);
+                try (OutputStream outputStream = new FileOutputStream(file)) {
+                    workbook.write(outputStream);
+                }
+            }
+
+            ExcelDataPool conf = new ExcelDataPool();
+            conf.setFile(new DynamicValue<>(file.getAbsolutePath()));
+            conf.setHeaders(new DynamicValue<>(true));
+            ExcelDataPoolImpl pool = new ExcelDataPoolImpl(conf);
+            initPool(pool);
+            Assert.assertNotNull(pool.streamingReader);
+
+            SimpleStringMap row = (SimpleStringMap) pool.next().getValue();
+            Assert.assertNull(pool.streamingReader);
+            Assert.assertEquals("Key1", row.get("Key"));
+            Assert.assertEquals("2", row.get("Formula"));
+            Assert.assertEquals("4", ((SimpleStringMap) pool.next().getValue()).get("Formula"));
+            Assert.assertEquals("6", ((SimpleStringMap) pool.next().getValue()).get("Formula"));
+            Assert.assertNull(pool.next());
+            pool.close();
+        } finally {
+            file.delete();
+        }
+    }
 }
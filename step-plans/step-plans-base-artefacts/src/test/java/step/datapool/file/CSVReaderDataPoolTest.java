@@ -31,11 +31,13 @@ import ch.exense.commons.io.FileHelper;
 import org.junit.Assert;
 import step.artefacts.AbstractArtefactTest;
 import step.core.dynamicbeans.DynamicValue;
+import step.core.execution.ExecutionContext;
 import step.core.plans.runner.PlanRunnerResultAssert;
 import step.core.variables.SimpleStringMap;
 import step.datapool.DataPoolFactory;
 import step.datapool.DataPoolRow;
 import step.datapool.DataSet;
+import step.threadpool.ThreadPool;
 
 public class CSVReaderDataPoolTest extends AbstractArtefactTest {
 
@@ -86,6 +88,37 @@ public class CSVReaderDataPoolTest extends AbstractArtefactTest {
         PlanRunnerResultAssert.assertEquals(getClass(), "testCSVReaderDataPoolPut.expected.csv", tempFile);
     }
 
+    @Test
+    public void testCSVReaderDataPoolPutWithReadAhead() throws IOException, InterruptedException {
+        File tempFile = FileHelper.extractResourceToTempFile(this.getClass(), "testCSVReaderDataPoolPut.csv");
+
+        FileDataPool conf = getCSVDataSourceConf(tempFile);
+        ExecutionContext context = newExecutionContext();
+        DataSet<?> pool = DataPoolFactory.getDataPool("csv", conf, context);
+        pool.enableRowCommit(true);
+        pool.init();
+        pool.enableReadAhead(2, new ThreadPool(context));
+
+        ExecutorService threadPool = Executors.newCachedThreadPool();
+        for (int i = 0; i < 5; i++) {
+            threadPool.submit(() -> {
+                DataPoolRow row = null;
+                while ((row = pool.next()) != null) {
+                    try {
+                        ((SimpleStringMap) row.getValue()).put("Col4", "test");
+                    } finally {
+                        row.commit();
+                    }
+                }
+            });
+        }
+        threadPool.shutdown();
+        threadPool.awaitTermination(1, TimeUnit.MINUTES);
+        pool.close();
+
+        PlanRunnerResultAssert.assertEquals(getClass(), "testCSVReaderDataPoolPut.expected.csv", tempFile);
+    }
+
     @Test
     public void testCSVReaderDataPoolToString() {
         DataSet<?> pool = getDataPool("File2.csv");
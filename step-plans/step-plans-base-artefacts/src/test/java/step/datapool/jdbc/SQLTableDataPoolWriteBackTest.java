@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.datapool.jdbc;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.artefacts.AbstractArtefactTest;
+import step.core.dynamicbeans.DynamicValue;
+import step.core.execution.ExecutionContext;
+import step.datapool.DataPoolFactory;
+import step.datapool.DataPoolRow;
+import step.datapool.DataSet;
+import step.datapool.jdbc.SQLTableDataPool.SQLRowWrapper;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the write-back of the {@link SQLTableDataPool} against an embedded H2 database
+ */
+public class SQLTableDataPoolWriteBackTest extends AbstractArtefactTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(SQLTableDataPoolWriteBackTest.class);
+
+    private String url;
+    private Connection connection;
+
+    @Before
+    public void setup() throws SQLException {
+        url = "jdbc:h2:mem:writeback_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        connection = DriverManager.getConnection(url, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE fruits (id INTEGER NOT NULL, fruit_name VARCHAR(255), color VARCHAR(255), PRIMARY KEY (id))");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("SHUTDOWN");
+        }
+        connection.close();
+    }
+
+    private void insertRows(int count) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO fruits VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= count; i++) {
+                statement.setInt(1, i);
+                statement.setString(2, "fruit" + i);
+                statement.setString(3, "green");
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private DataSet<?> newDataSet(ExecutionContext context, boolean rowCommit) {
+        SQLTableDataPoolConfiguration conf = new SQLTableDataPoolConfiguration();
+        conf.setConnectionString(new DynamicValue<>(url));
+        conf.setQuery(new DynamicValue<>("SELECT * FROM fruits ORDER BY id"));
+        conf.setDriverClass(new DynamicValue<>("org.h2.Driver"));
+        conf.setUser(new DynamicValue<>("sa"));
+        conf.setPassword(new DynamicValue<>(""));
+        conf.setForWrite(new DynamicValue<>(true));
+        conf.setWritePKey(new DynamicValue<>("id"));
+        DataSet<?> dataSet = DataPoolFactory.getDataPool("sql", conf, context);
+        dataSet.enableRowCommit(rowCommit);
+        dataSet.init();
+        return dataSet;
+    }
+
+    private String getValue(int id, String column) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + column + " FROM fruits WHERE id = ?")) {
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    @Test
+    public void testImmediateUpdate() throws SQLException {
+        insertRows(3);
+        DataSet<?> dataSet = newDataSet(newExecutionContext(), false);
+        try {
+            SQLRowWrapper row = (SQLRowWrapper) dataSet.next().getValue();
+            // Values containing quotes are passed as parameters
+            row.put("FRUIT_NAME", "l'orange");
+            // Without row commit, the updates are written and committed immediately
+            Assert.assertEquals("l'orange", getValue(1, "fruit_name"));
+        } finally {
+            dataSet.close();
+        }
+    }
+
+    @Test
+    public void testBatchedUpdates() throws SQLException, InterruptedException {
+        int rows = 250;
+        insertRows(rows);
+        ExecutionContext context = newExecutionContext();
+        context.getConfiguration().putProperty(SQLTableDataPool.COMMIT_BATCH_SIZE_CONFIG, "100");
+        context.getConfiguration().putProperty(SQLTableDataPool.COMMIT_INTERVAL_CONFIG, "60000");
+        DataSet<?> dataSet = newDataSet(context, true);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executorService.submit(() -> {
+                DataPoolRow row;
+                while ((row = dataSet.next()) != null) {
+                    try {
+                        SQLRowWrapper sqlRow = (SQLRowWrapper) row.getValue();
+                        sqlRow.put("FRUIT_NAME", sqlRow.get("FRUIT_NAME") + "_updated");
+                        sqlRow.put("COLOR", "red");
+                    } finally {
+                        row.commit();
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        dataSet.close();
+
+        // The remaining updates are flushed at close
+        for (int i = 1; i <= rows; i++) {
+            Assert.assertEquals("fruit" + i + "_updated", getValue(i, "fruit_name"));
+            Assert.assertEquals("red", getValue(i, "color"));
+        }
+    }
+
+    @Test
+    public void testCommitOnTimer() throws SQLException, InterruptedException {
+        insertRows(3);
+        ExecutionContext context = newExecutionContext();
+        context.getConfiguration().putProperty(SQLTableDataPool.COMMIT_BATCH_SIZE_CONFIG, "100");
+        context.getConfiguration().putProperty(SQLTableDataPool.COMMIT_INTERVAL_CONFIG, "50");
+        DataSet<?> dataSet = newDataSet(context, true);
+        try {
+            DataPoolRow row = dataSet.next();
+            ((SQLRowWrapper) row.getValue()).put("COLOR", "red");
+            row.commit();
+
+            // The update is committed by the timer even if no further row is committed
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!"red".equals(getValue(1, "color")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("red", getValue(1, "color"));
+        } finally {
+            dataSet.close();
+        }
+    }
+
+    @Test
+    public void testFailedUpdatesAreKept() throws SQLException, InterruptedException {
+        insertRows(3);
+        ExecutionContext context = newExecutionContext();
+        context.getConfiguration().putProperty(SQLTableDataPool.COMMIT_BATCH_SIZE_CONFIG, "1");
+        DataSet<?> dataSet = newDataSet(context, true);
+        RuntimeException closeError;
+        try {
+            DataPoolRow row = dataSet.next();
+            // The value exceeds the size of the column: the write-back fails
+            ((SQLRowWrapper) row.getValue()).put("COLOR", "x".repeat(300));
+            row.commit();
+
+            // The error is rethrown by the next update
+            SQLRowWrapper nextRow = (SQLRowWrapper) dataSet.next().getValue();
+            RuntimeException putError = null;
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (putError == null && System.currentTimeMillis() < deadline) {
+                try {
+                    nextRow.put("FRUIT_NAME", "apple");
+                    Thread.sleep(10);
+                } catch (RuntimeException e) {
+                    putError = e;
+                }
+            }
+            Assert.assertNotNull(putError);
+            Assert.assertTrue(putError.getCause().getMessage().startsWith("Could not write back the updates of 1 rows"));
+        } finally {
+            // The failed updates are kept and retried at close which fails again
+            closeError = Assert.assertThrows(RuntimeException.class, dataSet::close);
+        }
+        Assert.assertTrue(closeError.getMessage().startsWith("Could not write back the updates of 1 rows"));
+        Assert.assertEquals("green", getValue(1, "color"));
+    }
+
+    @Test
+    public void testFetchSize() throws SQLException {
+        int rows = 1000;
+        insertRows(rows);
+        ExecutionContext context = newExecutionContext();
+        context.getConfiguration().putProperty(SQLTableDataPool.FETCH_SIZE_CONFIG, "50");
+        DataSet<?> dataSet = newDataSet(context, false);
+        try {
+            int count = 0;
+            while (dataSet.next() != null) {
+                count++;
+            }
+            Assert.assertEquals(rows, count);
+            dataSet.reset();
+            Assert.assertEquals("fruit1", ((SQLRowWrapper) dataSet.next().getValue()).get("FRUIT_NAME"));
+        } finally {
+            dataSet.close();
+        }
+    }
+
+    /**
+     * Compares the write-back of updates with a commit per cell (without row commit) to the batched
+     * write-back through the write queue (with row commit, as used by the ForEach)
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkWriteBack() throws SQLException {
+        int rows = 5000;
+        insertRows(rows);
+
+        long immediateDuration = updateAllRows(newDataSet(newExecutionContext(), false), "immediate");
+        ExecutionContext context = newExecutionContext();
+        // Ensure that all the rows fit in the write queue of the data set
+        context.getConfiguration().putProperty("datasets.write.queue.maxsize", Integer.toString(rows));
+        long batchedDuration = updateAllRows(newDataSet(context, true), "batched");
+
+        logger.info("Write-back of {} rows with 2 updated cells: {}ms with a commit per cell, {}ms batched", rows, immediateDuration, batchedDuration);
+        Assert.assertEquals("batched", getValue(rows, "color"));
+    }
+
+    private long updateAllRows(DataSet<?> dataSet, String value) {
+        long start = System.currentTimeMillis();
+        try {
+            DataPoolRow row;
+            while ((row = dataSet.next()) != null) {
+                try {
+                    SQLRowWrapper sqlRow = (SQLRowWrapper) row.getValue();
+                    sqlRow.put("FRUIT_NAME", value);
+                    sqlRow.put("COLOR", value);
+                } finally {
+                    row.commit();
+                }
+            }
+        } finally {
+            dataSet.close();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
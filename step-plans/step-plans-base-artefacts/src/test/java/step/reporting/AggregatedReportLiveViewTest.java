@@ -0,0 +1,197 @@
+package step.reporting;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import step.artefacts.BaseArtefactPlugin;
+import step.artefacts.Sequence;
+import step.core.artefacts.handlers.ArtefactHandler;
+import step.core.artefacts.reports.ReportNode;
+import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.artefacts.reports.aggregated.*;
+import step.core.execution.ExecutionContext;
+import step.core.execution.ExecutionEngine;
+import step.core.execution.model.Execution;
+import step.core.execution.model.ExecutionAccessor;
+import step.core.execution.model.ExecutionStatus;
+import step.core.plans.Plan;
+import step.core.plans.builder.PlanBuilder;
+import step.core.plans.runner.PlanRunnerResult;
+import step.core.timeseries.bucket.Bucket;
+import step.core.views.AbstractView;
+import step.core.views.ViewManager;
+import step.core.views.ViewModel;
+import step.core.views.ViewPlugin;
+import step.engine.plugins.FunctionPlugin;
+import step.engine.plugins.LocalFunctionPlugin;
+import step.planbuilder.BaseArtefacts;
+import step.planbuilder.FunctionArtefacts;
+import step.threadpool.ThreadPoolPlugin;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static step.planbuilder.BaseArtefacts.check;
+import static step.planbuilder.BaseArtefacts.echo;
+
+public class AggregatedReportLiveViewTest {
+
+    private ExecutionEngine engine;
+
+    @Before
+    public void before() {
+        engine = new ExecutionEngine.Builder()
+            .withPlugin(new BaseArtefactPlugin())
+            .withPlugin(new ThreadPoolPlugin())
+            .withPlugin(new FunctionPlugin())
+            .withPlugin(new LocalFunctionPlugin())
+            .withPlugin(new ViewPlugin()).build();
+    }
+
+    @After
+    public void after() {
+        engine.close();
+    }
+
+    @Test
+    public void testLiveViewMatchesTimeSeries() {
+        Plan plan = PlanBuilder.create()
+            .startBlock(BaseArtefacts.threadGroup(2, 4))
+            .startBlock(FunctionArtefacts.session())
+            .add(echo("'Echo gcounter ' + gcounter"))
+            .add(check("if (gcounter % 3 == 0) { return true} else if (gcounter % 3 == 1) { return false} else if (gcounter % 3 == 2) {return var}"))
+            .endBlock()
+            .endBlock().build();
+        PlanRunnerResult result = engine.execute(plan);
+        String executionId = result.getExecutionId();
+
+        // Build the report from the report node time series
+        AggregatedReport expectedReport = new AggregatedReportViewBuilder(engine.getExecutionEngineContext(), executionId)
+            .buildAggregatedReport(new AggregatedReportViewRequest());
+        assertNull(expectedReport.version);
+
+        // Simulate a running execution by replaying the report nodes through the live view
+        setExecutionStatus(executionId, ExecutionStatus.RUNNING);
+        AbstractView<ViewModel> view = getLiveView();
+        AggregatedReportLiveViewModel model = (AggregatedReportLiveViewModel) view.init();
+        view.addModel(executionId, model);
+        List<ReportNode> reportNodes = engine.getExecutionEngineContext().getReportNodeAccessor().getReportNodesByExecutionID(executionId)
+            // Only the executed nodes trigger the execution hooks
+            .filter(n -> n.getDuration() != null)
+            .sorted(Comparator.comparingLong(ReportNode::getExecutionTime)).collect(Collectors.toList());
+        for (ReportNode reportNode : reportNodes) {
+            reportNode.setArtefactInstance(reportNode.getResolvedArtefact());
+            view.beforeReportNodeExecution(model, reportNode);
+            view.afterReportNodeExecution(model, reportNode);
+        }
+
+        AggregatedReportViewBuilder builder = new AggregatedReportViewBuilder(engine.getExecutionEngineContext(), executionId);
+        AggregatedReport liveReport = builder.buildAggregatedReport(new AggregatedReportViewRequest());
+        assertEquals(Long.valueOf(model.getVersion()), liveReport.version);
+        assertEquals(expectedReport.aggregatedReportView.toString(), liveReport.aggregatedReportView.toString());
+        AggregatedReportView expectedCheck = expectedReport.aggregatedReportView.children.get(0).children.get(1);
+        AggregatedReportView liveCheck = liveReport.aggregatedReportView.children.get(0).children.get(1);
+        assertEquals(expectedCheck.countByErrorMessage, liveCheck.countByErrorMessage);
+        assertEquals(expectedCheck.bucketsByStatus.get(AggregatedReportViewBuilder.MERGED_GROUPS_LABEL).getCount(),
+            liveCheck.bucketsByStatus.get(AggregatedReportViewBuilder.MERGED_GROUPS_LABEL).getCount());
+        assertEquals(expectedReport.aggregatedReportView.children.get(0).countByChildrenErrorMessage,
+            liveReport.aggregatedReportView.children.get(0).countByChildrenErrorMessage);
+
+        // Start a new Echo: only its counters are returned as changes
+        long version = liveReport.version;
+        assertTrue(builder.getAggregatedReportChanges(version).changesByArtefactHash.isEmpty());
+        ReportNode echoReportNode = reportNodes.stream().filter(n -> n.getName().equals("Echo")).findFirst().orElseThrow();
+        ReportNode runningEchoReportNode = new ReportNode();
+        runningEchoReportNode.setExecutionID(executionId);
+        runningEchoReportNode.setArtefactHash(echoReportNode.getArtefactHash());
+        runningEchoReportNode.setArtefactInstance(echoReportNode.getResolvedArtefact());
+        view.beforeReportNodeExecution(model, runningEchoReportNode);
+
+        AggregatedReportChanges changes = builder.getAggregatedReportChanges(version);
+        assertEquals(version + 1, changes.version);
+        assertEquals(1, changes.changesByArtefactHash.size());
+        Map<String, Long> countByStatus = changes.changesByArtefactHash.get(echoReportNode.getArtefactHash()).countByStatus;
+        assertEquals(Map.of("PASSED", 8L, "RUNNING", 1L), countByStatus);
+        assertTrue(builder.buildAggregatedReportView().toString().contains("Echo: 9x: 1 RUNNING, 8 PASSED"));
+
+        // Once the live model is removed, the report is built from the time series again
+        view.removeModel(executionId);
+        assertNull(builder.getAggregatedReportChanges(version));
+        assertNull(builder.buildAggregatedReport(new AggregatedReportViewRequest()).version);
+    }
+
+    @Test
+    public void testRangeRequestUsesTimeSeries() {
+        Plan plan = PlanBuilder.create().startBlock(BaseArtefacts.sequence()).add(echo("'Echo'")).endBlock().build();
+        String executionId = engine.execute(plan).getExecutionId();
+        setExecutionStatus(executionId, ExecutionStatus.RUNNING);
+        AbstractView<ViewModel> view = getLiveView();
+        view.addModel(executionId, view.init());
+
+        AggregatedReportViewBuilder builder = new AggregatedReportViewBuilder(engine.getExecutionEngineContext(), executionId);
+        assertNotNull(builder.buildAggregatedReport(new AggregatedReportViewRequest()).version);
+        // Requests for a time range can only be answered by the time series
+        AggregatedReportViewRequest rangeRequest = new AggregatedReportViewRequest(new ReportNodeTimeSeries.Range(0, Long.MAX_VALUE), null, null, null, null);
+        assertNull(builder.buildAggregatedReport(rangeRequest).version);
+        view.removeModel(executionId);
+    }
+
+    @Test
+    public void testReportNodeTimeSeriesDisabled() {
+        AbstractView<ViewModel> view = getLiveView();
+        AggregatedReportLiveViewModel model = (AggregatedReportLiveViewModel) view.init();
+        ExecutionContext context = engine.newExecutionContext();
+        context.getVariablesManager().putVariable(context.getReport(), ArtefactHandler.TEC_EXECUTION_REPORTNODES_TIMESERIES_ENABLED, false);
+        ReportNode reportNode = newReportNode(100);
+        view.beforeReportNodeExecution(model, context, reportNode);
+        view.afterReportNodeExecution(model, context, reportNode);
+        // Like for the report node time series, the report node isn't counted
+        assertEquals(0, model.getVersion());
+
+        ExecutionContext enabledContext = engine.newExecutionContext();
+        view.beforeReportNodeExecution(model, enabledContext, reportNode);
+        view.afterReportNodeExecution(model, enabledContext, reportNode);
+        assertEquals(2, model.getVersion());
+    }
+
+    @Test
+    public void testDurationDistributionIsBounded() {
+        AbstractView<ViewModel> view = getLiveView();
+        AggregatedReportLiveViewModel model = (AggregatedReportLiveViewModel) view.init();
+        for (int duration = 0; duration < 1_000_000; duration += 7) {
+            view.afterReportNodeExecution(model, newReportNode(duration));
+        }
+        Bucket bucket = model.snapshot().bucketsByArtefactHashAndStatus.get("artefactHash").get(ReportNodeStatus.PASSED.toString());
+        assertEquals(142_858, bucket.getCount());
+        // 100 entries below 1s and at most 90 per order of magnitude above
+        assertTrue(bucket.getDistribution().size() <= 100 + 3 * 90);
+        assertEquals(999_999 / 7 * 7, bucket.getMax());
+        // Durations above 1s are rounded to 2 significant digits
+        assertTrue(bucket.getDistribution().containsKey(990_000L));
+        assertTrue(bucket.getDistribution().containsKey(1_200L));
+    }
+
+    private static ReportNode newReportNode(int duration) {
+        ReportNode reportNode = new ReportNode();
+        reportNode.setArtefactHash("artefactHash");
+        reportNode.setArtefactInstance(new Sequence());
+        reportNode.setStatus(ReportNodeStatus.PASSED);
+        reportNode.setDuration(duration);
+        return reportNode;
+    }
+
+    private AbstractView<ViewModel> getLiveView() {
+        ViewManager viewManager = engine.getExecutionEngineContext().get(ViewManager.class);
+        return viewManager.getView(AggregatedReportLiveView.AGGREGATED_REPORT_LIVE_VIEW);
+    }
+
+    private void setExecutionStatus(String executionId, ExecutionStatus status) {
+        ExecutionAccessor executionAccessor = engine.getExecutionEngineContext().getExecutionAccessor();
+        Execution execution = executionAccessor.get(executionId);
+        execution.setStatus(status);
+        executionAccessor.save(execution);
+    }
+}
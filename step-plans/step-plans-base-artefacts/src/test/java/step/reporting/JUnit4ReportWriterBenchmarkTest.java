@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.reporting;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.artefacts.TestSet;
+import step.core.artefacts.reports.ParentSource;
+import step.core.artefacts.reports.ReportNode;
+import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.artefacts.reports.ReportTreeAccessor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures the duration, the number of report node queries and the heap required to generate the JUnit report
+ * of report trees of 10k, 100k and 1M nodes. The report nodes are generated on the fly by the accessor, so that
+ * the measured heap only reflects the report generation. The number of queries of the former visit (one query
+ * per parent node and parent source, twice) is logged for comparison.
+ */
+public class JUnit4ReportWriterBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JUnit4ReportWriterBenchmarkTest.class);
+
+    private static final String EXECUTION_ID = "ffffffffffffffffffffffff";
+    private static final int FAN_OUT = 10;
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmark() throws IOException {
+        // Warm-up
+        writeReport(10_000);
+        for (int nodes : List.of(10_000, 100_000, 1_000_000)) {
+            writeReport(nodes);
+        }
+    }
+
+    private void writeReport(int nodes) throws IOException {
+        SyntheticReportTreeAccessor accessor = new SyntheticReportTreeAccessor(nodes);
+        CountingWriter writer = new CountingWriter();
+        System.gc();
+        resetPeakHeapUsage();
+        long t1 = System.currentTimeMillis();
+        new JUnit4ReportWriter().writeReport(accessor, EXECUTION_ID, writer);
+        long duration = System.currentTimeMillis() - t1;
+        Assert.assertTrue(writer.count.get() > 0);
+        logger.info("{} report nodes: report of {} chars generated in {}ms with {} queries (former visit: {} queries), peak heap {}MB",
+            nodes, writer.count.get(), duration, accessor.queries.get(), 2L * nodes * ParentSource.values().length,
+            getPeakHeapUsage() / (1024 * 1024));
+    }
+
+    private static void resetPeakHeapUsage() {
+        ManagementFactory.getMemoryPoolMXBeans().stream().filter(p -> p.getType() == MemoryType.HEAP).forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long getPeakHeapUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream().filter(p -> p.getType() == MemoryType.HEAP)
+            .mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+    }
+
+    /**
+     * A report tree of the provided number of nodes in which the node n has the children FAN_OUT * n + 1 to FAN_OUT * n + FAN_OUT.
+     * The root node is a test set
+     */
+    private static class SyntheticReportTreeAccessor implements ReportTreeAccessor {
+
+        private final int nodes;
+        private final AtomicLong queries = new AtomicLong();
+
+        private SyntheticReportTreeAccessor(int nodes) {
+            this.nodes = nodes;
+        }
+
+        private ReportNode newReportNode(long index) {
+            ReportNode node = new ReportNode();
+            node.setId(toId(index));
+            node.setParentID(index == 0 ? new ObjectId(EXECUTION_ID) : toId((index - 1) / FAN_OUT));
+            node.setParentSource(ParentSource.MAIN);
+            node.setExecutionID(EXECUTION_ID);
+            node.setName("Node " + index);
+            node.setExecutionTime(index);
+            node.setDuration(1);
+            node.setStatus(ReportNodeStatus.PASSED);
+            if (index == 0) {
+                node.setResolvedArtefact(new TestSet());
+            }
+            return node;
+        }
+
+        private static ObjectId toId(long index) {
+            return new ObjectId(String.format("%024x", index));
+        }
+
+        private static long toIndex(String id) {
+            return Long.parseLong(id, 16);
+        }
+
+        private List<ReportNode> children(String parentID) {
+            List<ReportNode> children = new ArrayList<>();
+            if (parentID.equals(EXECUTION_ID)) {
+                children.add(newReportNode(0));
+            } else {
+                long parent = toIndex(parentID);
+                for (long i = FAN_OUT * parent + 1; i <= FAN_OUT * parent + FAN_OUT && i < nodes; i++) {
+                    children.add(newReportNode(i));
+                }
+            }
+            return children;
+        }
+
+        @Override
+        public ReportNode get(String id) {
+            return newReportNode(toIndex(id));
+        }
+
+        @Override
+        public Iterator<ReportNode> getChildren(String parentID) {
+            queries.incrementAndGet();
+            return children(parentID).iterator();
+        }
+
+        @Override
+        public Iterator<ReportNode> getChildrenByParentSource(String parentID, ParentSource parentSource) {
+            queries.incrementAndGet();
+            return parentSource == ParentSource.MAIN ? children(parentID).iterator() : List.<ReportNode>of().iterator();
+        }
+
+        @Override
+        public Iterator<ReportNode> getChildrenByParentIDs(List<String> parentIDs) {
+            queries.incrementAndGet();
+            return parentIDs.stream().flatMap(parentID -> children(parentID).stream()).iterator();
+        }
+
+        @Override
+        public Stream<ReportNode> getReportNodesWithContributingErrors(String executionId) {
+            return Stream.empty();
+        }
+    }
+
+    private static class CountingWriter extends Writer {
+
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count.addAndGet(len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
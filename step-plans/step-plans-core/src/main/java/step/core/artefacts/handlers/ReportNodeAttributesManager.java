@@ -43,12 +43,10 @@ public class ReportNodeAttributesManager {
     public Map<String, String> getCustomAttributes() {
         Map<String, String> result = new HashMap<>();
         VariablesManager varMan = context.getVariablesManager();
-        Map<String, Object> allVars = varMan.getAllVariables();
-        for (String varName : allVars.keySet()) {
-            if (varName.startsWith(CUSTOM_ATTRIBUTES_PREFIX)) {
-                String attributeKey = varName.substring(CUSTOM_ATTRIBUTES_PREFIX.length());
-                result.put(attributeKey, (String) allVars.get(varName));
-            }
+        Map<String, Object> customAttributeVars = varMan.getAllVariablesStartingWith(CUSTOM_ATTRIBUTES_PREFIX);
+        for (Map.Entry<String, Object> entry : customAttributeVars.entrySet()) {
+            String attributeKey = entry.getKey().substring(CUSTOM_ATTRIBUTES_PREFIX.length());
+            result.put(attributeKey, (String) entry.getValue());
         }
         return result;
     }
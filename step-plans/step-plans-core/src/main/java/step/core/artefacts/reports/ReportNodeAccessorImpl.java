@@ -19,6 +19,7 @@
 package step.core.artefacts.reports;
 
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.bson.types.ObjectId;
@@ -224,6 +225,15 @@ public class ReportNodeAccessorImpl extends AbstractAccessor<ReportNode> impleme
         return getChildren(new ObjectId(parentID));
     }
 
+    @Override
+    public Iterator<ReportNode> getChildrenByParentIDs(List<String> parentIDs) {
+        if (parentIDs.isEmpty()) {
+            return Collections.emptyIterator();
+        }
+        List<ObjectId> parentObjectIDs = parentIDs.stream().map(ObjectId::new).collect(Collectors.toList());
+        return collectionDriver.find(Filters.in(PARENT_ID_FIELD_NAME, parentObjectIDs), new SearchOrder(EXECUTION_TIME_FIELD_NAME, 1), null, null, 0).iterator();
+    }
+
     @Override
     public Iterator<ReportNode> getChildrenByParentSource(String parentID, ParentSource parentSource) {
         return getChildrenByParentSource(new ObjectId(parentID), parentSource);
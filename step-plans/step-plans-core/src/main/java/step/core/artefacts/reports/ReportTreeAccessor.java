@@ -19,7 +19,11 @@
 package step.core.artefacts.reports;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ReportTreeAccessor {
 
@@ -48,5 +52,16 @@ public interface ReportTreeAccessor {
      */
     public Iterator<ReportNode> getChildrenByParentSource(String parentID, ParentSource parentSource);
 
+    /**
+     * Returns the children of a list of ReportNodes. Implementations backed by a database should override this
+     * method to retrieve the children of all parents in one request
+     *
+     * @param parentIDs the IDs of the parent ReportNodes
+     * @return an Iterator of the children of all parents. The children of each parent are sorted by execution time
+     */
+    default Iterator<ReportNode> getChildrenByParentIDs(List<String> parentIDs) {
+        return parentIDs.stream().flatMap(parentID -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(getChildren(parentID), Spliterator.ORDERED), false)).iterator();
+    }
+
     Stream<ReportNode> getReportNodesWithContributingErrors(String executionId);
 }
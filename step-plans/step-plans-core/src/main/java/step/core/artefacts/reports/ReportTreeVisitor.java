@@ -21,13 +21,53 @@ package step.core.artefacts.reports;
 import java.util.*;
 import java.util.function.Consumer;
 
+/**
+ * Visits the report tree of an execution in depth-first order.
+ * <p>
+ * The children of the report nodes aren't fetched node by node: when the children of a node are required,
+ * the children of the next nodes to be visited are fetched in the same request (see {@link ReportTreeAccessor#getChildrenByParentIDs(List)})
+ * up to the configured batch size. Only the nodes of the current path, their pending siblings and the prefetched
+ * children are kept in memory. The number of children prefetched per parent is capped: the children of the parents
+ * exceeding this cap are excluded from the batch and streamed by parent source when they are visited.
+ */
 public class ReportTreeVisitor {
 
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_PREFETCHED_CHILDREN = 1000;
+
     private final ReportTreeAccessor reportTreeAccessor;
+    private final int batchSize;
+    private final int maxPrefetchedChildren;
 
     public ReportTreeVisitor(ReportTreeAccessor reportTreeAccessor) {
+        this(reportTreeAccessor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param reportTreeAccessor the accessor to be used to retrieve the report nodes
+     * @param batchSize          the maximum number of parent nodes whose children are fetched in one request
+     */
+    public ReportTreeVisitor(ReportTreeAccessor reportTreeAccessor, int batchSize) {
+        this(reportTreeAccessor, batchSize, DEFAULT_MAX_PREFETCHED_CHILDREN);
+    }
+
+    /**
+     * @param reportTreeAccessor    the accessor to be used to retrieve the report nodes
+     * @param batchSize             the maximum number of parent nodes whose children are fetched in one request
+     * @param maxPrefetchedChildren the maximum number of children prefetched per parent node. The children of
+     *                              the parent nodes having more children are streamed when they are visited
+     */
+    public ReportTreeVisitor(ReportTreeAccessor reportTreeAccessor, int batchSize, int maxPrefetchedChildren) {
         super();
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size has to be higher than 0");
+        }
+        if (maxPrefetchedChildren <= 0) {
+            throw new IllegalArgumentException("The maximum number of prefetched children has to be higher than 0");
+        }
         this.reportTreeAccessor = reportTreeAccessor;
+        this.batchSize = batchSize;
+        this.maxPrefetchedChildren = maxPrefetchedChildren;
     }
 
     public ReportNode getRootReportNode(String executionId) {
@@ -45,23 +85,33 @@ public class ReportTreeVisitor {
      * @param reportNodeVisitorEventHandler the event handler to be used
      */
     public void visit(String executionId, ReportNodeVisitorEventHandler reportNodeVisitorEventHandler) {
-        try {
-            ReportNode root = getRootReportNode(executionId);
-            Stack<ReportNode> stack = new Stack<>();
-            visitChildrenWithHandler(root, stack, reportNodeVisitorEventHandler);
-        } catch (NoSuchElementException e) {
-            throw new NoSuchElementException("Unable to find root node for execution " + executionId);
-        }
+        visit(executionId, null, reportNodeVisitorEventHandler::startReportNode, reportNodeVisitorEventHandler::endReportNode);
     }
 
     public void visit(String executionId, Consumer<ReportNodeEvent> consumer) {
+        visit(executionId, null, consumer);
+    }
+
+    /**
+     * Visits the report tree of an execution up to the provided depth
+     *
+     * @param executionId the ID of the execution to be visited
+     * @param maxDepth    the depth of the deepest nodes to be visited (0 for the root node only). null to visit the whole tree
+     * @param consumer    the consumer of the events
+     */
+    public void visit(String executionId, Integer maxDepth, Consumer<ReportNodeEvent> consumer) {
+        visit(executionId, maxDepth, consumer, event -> {
+        });
+    }
+
+    private void visit(String executionId, Integer maxDepth, Consumer<ReportNodeEvent> onStart, Consumer<ReportNodeEvent> onEnd) {
+        ReportNode root;
         try {
-            ReportNode root = getRootReportNode(executionId);
-            Stack<ReportNode> stack = new Stack<>();
-            visitChildrenWithEvents(root, stack, consumer);
+            root = getRootReportNode(executionId);
         } catch (NoSuchElementException e) {
             throw new NoSuchElementException("Unable to find root node for execution " + executionId);
         }
+        visitTree(root, maxDepth, onStart, onEnd);
     }
 
     public static class ReportNodeEvent {
@@ -95,37 +145,192 @@ public class ReportTreeVisitor {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    protected void visitChildrenWithEvents(ReportNode root, Stack<ReportNode> stack, Consumer<ReportNodeEvent> consumer) {
-        ReportNodeEvent event = new ReportNodeEvent();
-        event.node = root;
-        event.stack = (Stack<ReportNode>) stack.clone();
-        consumer.accept(event);
-        stack.push(root);
-        String rootId = root.getId().toString();
-        Arrays.stream(ParentSource.values()).forEach(source -> {
-            reportTreeAccessor.getChildrenByParentSource(rootId, source).forEachRemaining(node -> {
-                visitChildrenWithEvents(node, stack, consumer);
-            });
-        });
+    /**
+     * A node of the current path of the visit
+     */
+    private static class Frame {
 
-        stack.pop();
+        private final ReportNodeEvent event;
+        // The prefetched children. Empty if the children are streamed
+        private List<ReportNode> children;
+        private int nextChild;
+        private Iterator<ReportNode> streamedChildren;
+
+        private Frame(ReportNodeEvent event) {
+            this.event = event;
+        }
+
+        private ReportNode nextChild() {
+            if (streamedChildren != null) {
+                return streamedChildren.hasNext() ? streamedChildren.next() : null;
+            } else if (nextChild < children.size()) {
+                ReportNode child = children.get(nextChild);
+                // Release the reference to the visited node
+                children.set(nextChild++, null);
+                return child;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The children fetched ahead of their visit
+     */
+    private static class PrefetchedChildren {
+
+        private final Map<String, List<ReportNode>> childrenByParentId = new HashMap<>();
+        // The parents whose children exceeded the maximum number of prefetched children
+        private final Set<String> truncatedParentIds = new HashSet<>();
+
+        private boolean contains(String parentId) {
+            return childrenByParentId.containsKey(parentId) || truncatedParentIds.contains(parentId);
+        }
+    }
+
+    private void visitTree(ReportNode root, Integer maxDepth, Consumer<ReportNodeEvent> onStart, Consumer<ReportNodeEvent> onEnd) {
+        // The visit is iterative to support deep trees
+        Stack<ReportNode> stack = new Stack<>();
+        Deque<Frame> frames = new ArrayDeque<>();
+        PrefetchedChildren prefetchedChildren = new PrefetchedChildren();
+        frames.push(enter(root, stack, onStart));
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            if (frame.children == null) {
+                // The depth of the children corresponds to the size of the stack, which contains the node of the current frame
+                if (maxDepth == null || stack.size() <= maxDepth) {
+                    initChildren(frame, frames, maxDepth, prefetchedChildren);
+                } else {
+                    frame.children = List.of();
+                }
+            }
+            ReportNode child = frame.nextChild();
+            if (child != null) {
+                frames.push(enter(child, stack, onStart));
+            } else {
+                frames.pop();
+                onEnd.accept(frame.event);
+                stack.pop();
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
-    protected void visitChildrenWithHandler(ReportNode root, Stack<ReportNode> stack, ReportNodeVisitorEventHandler reportNodeVisitorEventHandler) {
+    private Frame enter(ReportNode node, Stack<ReportNode> stack, Consumer<ReportNodeEvent> onStart) {
         ReportNodeEvent event = new ReportNodeEvent();
-        event.node = root;
+        event.node = node;
         event.stack = (Stack<ReportNode>) stack.clone();
-        stack.push(root);
-        reportNodeVisitorEventHandler.startReportNode(event);
-        String rootId = root.getId().toString();
-        Arrays.stream(ParentSource.values()).forEach(source -> {
-            reportTreeAccessor.getChildrenByParentSource(rootId, source).forEachRemaining(node -> {
-                visitChildrenWithHandler(node, stack, reportNodeVisitorEventHandler);
-            });
-        });
-        reportNodeVisitorEventHandler.endReportNode(event);
-        stack.pop();
+        onStart.accept(event);
+        stack.push(node);
+        return new Frame(event);
+    }
+
+    private void initChildren(Frame current, Deque<Frame> frames, Integer maxDepth, PrefetchedChildren prefetchedChildren) {
+        String id = current.event.node.getId().toString();
+        if (!prefetchedChildren.contains(id)) {
+            // Fetch the children of the current node together with the ones of the next nodes to be visited, i.e.
+            // the pending siblings of the nodes of the current path starting from the deepest one and the prefetched nodes
+            Set<String> parentIds = new LinkedHashSet<>();
+            parentIds.add(id);
+            Iterator<Frame> iterator = frames.iterator();
+            while (iterator.hasNext() && parentIds.size() < batchSize) {
+                Frame frame = iterator.next();
+                // The pending siblings are at the depth of the stack of the frame + 1, their children one level below
+                if (frame.children != null && (maxDepth == null || frame.event.stack.size() + 2 <= maxDepth)) {
+                    for (int i = frame.nextChild; i < frame.children.size() && parentIds.size() < batchSize; i++) {
+                        addParentId(frame.children.get(i), parentIds, prefetchedChildren);
+                    }
+                }
+            }
+            // The depth of the prefetched nodes isn't known. They are only considered when the depth isn't limited
+            if (maxDepth == null) {
+                Iterator<List<ReportNode>> prefetchedIterator = prefetchedChildren.childrenByParentId.values().iterator();
+                while (prefetchedIterator.hasNext() && parentIds.size() < batchSize) {
+                    for (ReportNode node : prefetchedIterator.next()) {
+                        if (parentIds.size() >= batchSize) {
+                            break;
+                        }
+                        addParentId(node, parentIds, prefetchedChildren);
+                    }
+                }
+            }
+            fetchChildren(new ArrayList<>(parentIds), prefetchedChildren);
+        }
+        if (prefetchedChildren.truncatedParentIds.remove(id)) {
+            current.children = List.of();
+            current.streamedChildren = streamChildren(id);
+        } else {
+            current.children = prefetchedChildren.childrenByParentId.remove(id);
+        }
+    }
+
+    private void addParentId(ReportNode node, Set<String> parentIds, PrefetchedChildren prefetchedChildren) {
+        String parentId = node.getId().toString();
+        if (!prefetchedChildren.contains(parentId)) {
+            parentIds.add(parentId);
+        }
+    }
+
+    private void fetchChildren(List<String> parentIds, PrefetchedChildren prefetchedChildren) {
+        Map<String, List<ReportNode>> childrenByParentId;
+        String truncatedParentId;
+        do {
+            childrenByParentId = new HashMap<>();
+            for (String parentId : parentIds) {
+                childrenByParentId.put(parentId, new ArrayList<>());
+            }
+            truncatedParentId = null;
+            Iterator<ReportNode> iterator = reportTreeAccessor.getChildrenByParentIDs(parentIds);
+            while (truncatedParentId == null && iterator.hasNext()) {
+                ReportNode node = iterator.next();
+                // Nodes without parent source aren't part of the tree
+                if (node.getParentSource() != null && node.getParentID() != null) {
+                    String parentId = node.getParentID().toString();
+                    List<ReportNode> children = childrenByParentId.get(parentId);
+                    if (children != null) {
+                        if (children.size() < maxPrefetchedChildren) {
+                            children.add(node);
+                        } else {
+                            truncatedParentId = parentId;
+                        }
+                    }
+                }
+            }
+            if (truncatedParentId != null) {
+                // Too many children to be kept in memory: they will be streamed when the parent is visited. Stop reading
+                // the result and query the children of the other parents again to avoid reading the remaining children of this one
+                prefetchedChildren.truncatedParentIds.add(truncatedParentId);
+                parentIds = new ArrayList<>(parentIds);
+                parentIds.remove(truncatedParentId);
+            }
+        } while (truncatedParentId != null);
+        // The children are visited by parent source and then by execution time. The sort is stable and
+        // the children are returned by execution time
+        childrenByParentId.values().forEach(children -> children.sort(Comparator.comparing(ReportNode::getParentSource)));
+        prefetchedChildren.childrenByParentId.putAll(childrenByParentId);
+    }
+
+    private Iterator<ReportNode> streamChildren(String parentId) {
+        Iterator<ParentSource> parentSources = Arrays.asList(ParentSource.values()).iterator();
+        return new Iterator<>() {
+
+            private Iterator<ReportNode> children = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!children.hasNext() && parentSources.hasNext()) {
+                    children = reportTreeAccessor.getChildrenByParentSource(parentId, parentSources.next());
+                }
+                return children.hasNext();
+            }
+
+            @Override
+            public ReportNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return children.next();
+            }
+        };
     }
 }
@@ -0,0 +1,595 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.artefacts.reports;
+
+import ch.exense.commons.app.Configuration;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.collections.Collection;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ReportNodeAccessor} buffering the writes of report nodes and flushing them
+ * in bulk to the underlying collection.
+ * <p>
+ * Saving a report node stores a snapshot of it in the buffer. Saving the same node again before the
+ * buffer has been flushed replaces the pending snapshot, so that the before and after saves of
+ * an artefact result in a single write. The buffer is flushed asynchronously when it reaches the batch
+ * size or when the flush interval elapses. When the number of pending nodes reaches the configured
+ * maximum, the calling thread performs the flush itself, throttling the producers to the write throughput
+ * of the underlying collection.
+ * <p>
+ * Point lookups ({@link #get(ObjectId)} and {@link #getReportNodeByParentIDAndArtefactID(ObjectId, ObjectId)})
+ * are served from the buffer while writes are pending. All the other reads flush the buffer first.
+ * <p>
+ * If a write fails, the batch is put back into the buffer (unless a newer snapshot of a node has been saved meanwhile)
+ * and the background flush is retried with an exponential backoff. The error of the last failed write is
+ * raised by {@link #close()} if the final flush doesn't succeed either.
+ */
+public class WriteBehindReportNodeAccessor extends ReportNodeAccessorImpl implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindReportNodeAccessor.class);
+
+    public static final String CONF_WRITE_BEHIND_ENABLED = "execution.engine.reportnodes.writebehind.enabled";
+    public static final String CONF_WRITE_BEHIND_BATCH_SIZE = "execution.engine.reportnodes.writebehind.batchsize";
+    public static final String CONF_WRITE_BEHIND_FLUSH_INTERVAL_MS = "execution.engine.reportnodes.writebehind.flushinterval.ms";
+    public static final String CONF_WRITE_BEHIND_MAX_PENDING = "execution.engine.reportnodes.writebehind.maxpending";
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    public static final int DEFAULT_MAX_PENDING = 10000;
+
+    private static final long MAX_RETRY_BACKOFF_MS = 60000;
+
+    // Background flushers shared by all the write-behind accessors
+    private static final ScheduledThreadPoolExecutor flusher = newFlusher();
+    // Constructor and instance fields used by snapshot(), by report node class
+    private static final Map<Class<?>, ReportNodeCopier> copiers = new ConcurrentHashMap<>();
+
+    private final int batchSize;
+    private final int maxPending;
+    private final long flushIntervalMs;
+
+    private final Object bufferLock = new Object();
+    // Guarded by bufferLock
+    private LinkedHashMap<ObjectId, ReportNode> pending = new LinkedHashMap<>();
+    // Batch currently being written. Guarded by bufferLock
+    private Map<ObjectId, ReportNode> inFlight = Map.of();
+    // Index of the pending and in-flight nodes by parent and artefact id. Guarded by bufferLock
+    private final Map<ParentAndArtefactKey, ObjectId> idsByParentAndArtefact = new HashMap<>();
+
+    // Ensures that the batches are written in the order they have been drained
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledFuture<?> flushTask;
+    private volatile boolean closed;
+    // Guarded by flushLock
+    private int consecutiveFailures;
+    private volatile long nextRetryNanos;
+    private volatile RuntimeException lastFlushError;
+
+    private final LongAdder saveCount = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+
+    public WriteBehindReportNodeAccessor(Collection<ReportNode> collectionDriver, Configuration configuration) {
+        this(collectionDriver, configuration.getPropertyAsInteger(CONF_WRITE_BEHIND_BATCH_SIZE, DEFAULT_BATCH_SIZE),
+            configuration.getPropertyAsInteger(CONF_WRITE_BEHIND_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_INTERVAL_MS),
+            configuration.getPropertyAsInteger(CONF_WRITE_BEHIND_MAX_PENDING, DEFAULT_MAX_PENDING));
+    }
+
+    public WriteBehindReportNodeAccessor(Collection<ReportNode> collectionDriver, int batchSize, long flushIntervalMs, int maxPending) {
+        super(collectionDriver);
+        if (batchSize <= 0 || maxPending < batchSize) {
+            throw new IllegalArgumentException("Invalid write-behind settings: the batch size must be positive and lower or equal to the maximum number of pending nodes");
+        }
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.flushIntervalMs = flushIntervalMs;
+        flushTask = flusher.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor newFlusher() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+            Thread thread = new Thread(r, "report-node-write-behind-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Override
+    public ReportNode save(ReportNode reportNode) {
+        if (closed) {
+            return super.save(reportNode);
+        }
+        if (reportNode.getId() == null) {
+            reportNode.setId(new ObjectId());
+        }
+        saveCount.increment();
+        // Take a snapshot as the report node keeps being updated by the execution thread after the save
+        ReportNode snapshot = snapshot(reportNode);
+        int pendingCount;
+        synchronized (bufferLock) {
+            pending.put(snapshot.getId(), snapshot);
+            if (snapshot.getParentID() != null && snapshot.getArtefactID() != null) {
+                idsByParentAndArtefact.put(new ParentAndArtefactKey(snapshot.getParentID(), snapshot.getArtefactID()), snapshot.getId());
+            }
+            pendingCount = pending.size();
+        }
+        if (pendingCount >= maxPending) {
+            // Backpressure: the buffer is full, flush it in the calling thread
+            flush();
+        } else if (pendingCount >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::scheduledFlush);
+        }
+        return reportNode;
+    }
+
+    @Override
+    public void save(Iterable<ReportNode> entities) {
+        entities.forEach(this::save);
+    }
+
+    @Override
+    public ReportNode get(ObjectId id) {
+        ReportNode reportNode = getBuffered(id);
+        return reportNode != null ? reportNode : super.get(id);
+    }
+
+    @Override
+    public ReportNode get(String id) {
+        return get(new ObjectId(id));
+    }
+
+    @Override
+    public ReportNode getReportNodeByParentIDAndArtefactID(ObjectId parentID, ObjectId artefactID) {
+        Objects.requireNonNull(parentID);
+        Objects.requireNonNull(artefactID);
+        ReportNode reportNode = null;
+        synchronized (bufferLock) {
+            ObjectId id = idsByParentAndArtefact.get(new ParentAndArtefactKey(parentID, artefactID));
+            if (id != null) {
+                reportNode = getBufferedUnsynchronized(id);
+            }
+        }
+        return reportNode != null ? reportNode : super.getReportNodeByParentIDAndArtefactID(parentID, artefactID);
+    }
+
+    @Override
+    public void remove(ObjectId id) {
+        synchronized (bufferLock) {
+            ReportNode removed = pending.remove(id);
+            if (removed != null) {
+                removeFromIndex(removed);
+            }
+        }
+        // Wait for a potential in-flight write of this node before removing it
+        flushLock.lock();
+        try {
+            super.remove(id);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeNodesByExecutionID(String executionID) {
+        flush();
+        super.removeNodesByExecutionID(executionID);
+    }
+
+    @Override
+    public List<ReportNode> getReportNodePath(ObjectId id) {
+        flush();
+        return super.getReportNodePath(id);
+    }
+
+    @Override
+    public Iterator<ReportNode> getChildren(ObjectId parentID) {
+        flush();
+        return super.getChildren(parentID);
+    }
+
+    @Override
+    public Iterator<ReportNode> getChildren(ObjectId parentID, int skip, int limit) {
+        flush();
+        return super.getChildren(parentID, skip, limit);
+    }
+
+    @Override
+    public Iterator<ReportNode> getChildrenByParentIDs(List<String> parentIDs) {
+        flush();
+        return super.getChildrenByParentIDs(parentIDs);
+    }
+
+    @Override
+    public Iterator<ReportNode> getChildrenByParentSource(ObjectId parentID, ParentSource parentSource) {
+        flush();
+        return super.getChildrenByParentSource(parentID, parentSource);
+    }
+
+    @Override
+    public Iterator<ReportNode> getChildrenByParentSource(ObjectId parentID, ParentSource parentSource, int skip, int limit) {
+        flush();
+        return super.getChildrenByParentSource(parentID, parentSource, skip, limit);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByExecutionID(String executionID) {
+        flush();
+        return super.getReportNodesByExecutionID(executionID);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByExecutionID(String executionID, Integer limit) {
+        flush();
+        return super.getReportNodesByExecutionID(executionID, limit);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByArtefactHash(String executionId, String artefactPathHash, Integer skip, Integer limit) {
+        flush();
+        return super.getReportNodesByArtefactHash(executionId, artefactPathHash, skip, limit);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByArtefactHash(String executionId, String artefactPathHash, Long from, Long to, Integer skip, Integer limit) {
+        flush();
+        return super.getReportNodesByArtefactHash(executionId, artefactPathHash, from, to, skip, limit);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByExecutionIDAndClass(String executionID, String class_) {
+        flush();
+        return super.getReportNodesByExecutionIDAndClass(executionID, class_);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByExecutionIDAndClass(String executionID, String class_, Integer limit) {
+        flush();
+        return super.getReportNodesByExecutionIDAndClass(executionID, class_, limit);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesByExecutionIDAndCustomAttribute(String executionID, Map<String, String> customAttributes) {
+        flush();
+        return super.getReportNodesByExecutionIDAndCustomAttribute(executionID, customAttributes);
+    }
+
+    @Override
+    public long countReportNodesByArtefactHash(String executionId, String artefactPathHash) {
+        flush();
+        return super.countReportNodesByArtefactHash(executionId, artefactPathHash);
+    }
+
+    @Override
+    public Stream<ReportNode> getRunningReportNodesByExecutionID(String executionID, Long from, Long to) {
+        flush();
+        return super.getRunningReportNodesByExecutionID(executionID, from, to);
+    }
+
+    @Override
+    public ReportNode getRootReportNode(String executionID) {
+        flush();
+        return super.getRootReportNode(executionID);
+    }
+
+    @Override
+    public Stream<ReportNode> getReportNodesWithContributingErrors(String executionId, String ancestorId, Integer skip, Integer limit) {
+        flush();
+        return super.getReportNodesWithContributingErrors(executionId, ancestorId, skip, limit);
+    }
+
+    @Override
+    public ReportNode findByAttributes(Map<String, String> attributes) {
+        flush();
+        return super.findByAttributes(attributes);
+    }
+
+    @Override
+    public ReportNode findByAttributes(Map<String, String> attributes, String attributesMapKey) {
+        flush();
+        return super.findByAttributes(attributes, attributesMapKey);
+    }
+
+    @Override
+    public Spliterator<ReportNode> findManyByAttributes(Map<String, String> attributes) {
+        flush();
+        return super.findManyByAttributes(attributes);
+    }
+
+    @Override
+    public Spliterator<ReportNode> findManyByAttributes(Map<String, String> attributes, String attributesMapKey) {
+        flush();
+        return super.findManyByAttributes(attributes, attributesMapKey);
+    }
+
+    @Override
+    public ReportNode findByCriteria(Map<String, String> criteria) {
+        flush();
+        return super.findByCriteria(criteria);
+    }
+
+    @Override
+    public Stream<ReportNode> findManyByCriteria(Map<String, String> criteria) {
+        flush();
+        return super.findManyByCriteria(criteria);
+    }
+
+    @Override
+    public Stream<ReportNode> findByIds(List<String> ids) {
+        flush();
+        return super.findByIds(ids);
+    }
+
+    @Override
+    public Iterator<ReportNode> getAll() {
+        flush();
+        return super.getAll();
+    }
+
+    @Override
+    public Stream<ReportNode> stream() {
+        flush();
+        return super.stream();
+    }
+
+    @Override
+    public Stream<ReportNode> streamLazy() {
+        flush();
+        return super.streamLazy();
+    }
+
+    @Override
+    public List<ReportNode> getRange(int skip, int limit) {
+        flush();
+        return super.getRange(skip, limit);
+    }
+
+    /**
+     * Writes all the pending report nodes to the underlying collection. Blocks until the write completed.
+     *
+     * @throws RuntimeException if the write failed. The report nodes that couldn't be written remain pending
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            List<ReportNode> batch;
+            synchronized (bufferLock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                inFlight = pending;
+                pending = new LinkedHashMap<>();
+                batch = new ArrayList<>(inFlight.values());
+            }
+            int written = 0;
+            try {
+                for (int i = 0; i < batch.size(); i += batchSize) {
+                    int end = Math.min(i + batchSize, batch.size());
+                    collectionDriver.save(batch.subList(i, end));
+                    written = end;
+                }
+            } catch (RuntimeException e) {
+                requeue(batch.subList(written, batch.size()));
+                onFlushFailure(e);
+                throw e;
+            } finally {
+                writeCount.add(written);
+                synchronized (bufferLock) {
+                    batch.subList(0, written).forEach(n -> {
+                        // Keep the index entry if a newer snapshot of the node is pending
+                        if (!pending.containsKey(n.getId())) {
+                            removeFromIndex(n);
+                        }
+                    });
+                    inFlight = Map.of();
+                }
+            }
+            flushCount.increment();
+            consecutiveFailures = 0;
+            lastFlushError = null;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Puts the report nodes of a failed write back into the buffer, ahead of the nodes saved in the meantime.
+     * Nodes for which a newer snapshot has been saved in the meantime are dropped in favor of the newer one.
+     */
+    private void requeue(List<ReportNode> failed) {
+        synchronized (bufferLock) {
+            LinkedHashMap<ObjectId, ReportNode> merged = new LinkedHashMap<>();
+            failed.forEach(n -> {
+                if (!pending.containsKey(n.getId())) {
+                    merged.put(n.getId(), n);
+                }
+            });
+            merged.putAll(pending);
+            pending = merged;
+        }
+    }
+
+    private void onFlushFailure(RuntimeException e) {
+        lastFlushError = e;
+        consecutiveFailures++;
+        long backoffMs = Math.min(MAX_RETRY_BACKOFF_MS, flushIntervalMs << Math.min(consecutiveFailures, 16));
+        nextRetryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+    }
+
+    private void scheduledFlush() {
+        // Back off after failed writes
+        if (lastFlushError == null || System.nanoTime() - nextRetryNanos >= 0) {
+            flushQuietly();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Throwable e) {
+            logger.error("Error while flushing the buffered report nodes. The write will be retried", e);
+        }
+    }
+
+    /**
+     * @return the number of save requests received by this accessor
+     */
+    public long getSaveCount() {
+        return saveCount.sum();
+    }
+
+    /**
+     * @return the number of report nodes effectively written to the underlying collection
+     */
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    /**
+     * @return the number of bulk writes performed to the underlying collection
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * @return the error of the last write if it failed, null otherwise
+     */
+    public RuntimeException getLastFlushError() {
+        return lastFlushError;
+    }
+
+    /**
+     * Flushes the pending report nodes and stops the background flush of this accessor.
+     * Subsequent saves are written synchronously to the underlying collection.
+     *
+     * @throws RuntimeException if the pending report nodes couldn't be written
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flushTask.cancel(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            int lostCount;
+            synchronized (bufferLock) {
+                lostCount = pending.size();
+            }
+            throw new RuntimeException("Unable to write " + lostCount + " buffered report nodes", e);
+        }
+    }
+
+    private ReportNode getBuffered(ObjectId id) {
+        synchronized (bufferLock) {
+            return getBufferedUnsynchronized(id);
+        }
+    }
+
+    private ReportNode getBufferedUnsynchronized(ObjectId id) {
+        ReportNode reportNode = pending.get(id);
+        if (reportNode == null) {
+            reportNode = inFlight.get(id);
+        }
+        // Return a copy to isolate the buffer from changes made by the caller, as a database read would
+        return reportNode != null ? snapshot(reportNode) : null;
+    }
+
+    private void removeFromIndex(ReportNode reportNode) {
+        if (reportNode.getParentID() != null && reportNode.getArtefactID() != null) {
+            idsByParentAndArtefact.remove(new ParentAndArtefactKey(reportNode.getParentID(), reportNode.getArtefactID()), reportNode.getId());
+        }
+    }
+
+    /**
+     * Copies the fields of the report node, including the ones that are not persisted. The collections held by the
+     * report node (attachments, custom attributes...) are copied as they keep being modified during the execution,
+     * the other referenced objects are shared with the original node.
+     */
+    private static ReportNode snapshot(ReportNode reportNode) {
+        try {
+            ReportNodeCopier copier = copiers.computeIfAbsent(reportNode.getClass(), ReportNodeCopier::new);
+            ReportNode copy = (ReportNode) copier.constructor.newInstance();
+            for (Field field : copier.fields) {
+                field.set(copy, copyValue(field.get(reportNode)));
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unable to copy the report node of type " + reportNode.getClass().getName(), e);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof List) {
+            return new ArrayList<>((List<?>) value);
+        } else if (value instanceof Set) {
+            return new LinkedHashSet<>((Set<?>) value);
+        } else if (value instanceof Map) {
+            return new LinkedHashMap<>((Map<?, ?>) value);
+        } else {
+            return value;
+        }
+    }
+
+    private record ParentAndArtefactKey(ObjectId parentId, ObjectId artefactId) {
+    }
+
+    private static class ReportNodeCopier {
+
+        private final Constructor<?> constructor;
+        private final List<Field> fields = new ArrayList<>();
+
+        private ReportNodeCopier(Class<?> clazz) {
+            try {
+                constructor = clazz.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException("The report node of type " + clazz.getName() + " has no default constructor", e);
+            }
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+        }
+    }
+}
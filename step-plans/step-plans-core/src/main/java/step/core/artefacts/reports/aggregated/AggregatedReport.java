@@ -3,6 +3,8 @@ package step.core.artefacts.reports.aggregated;
 public class AggregatedReport {
     public AggregatedReportView aggregatedReportView;
     public String partialTreeRootNodeId;
+    // The version of the live view the report has been built from (see AggregatedReportLiveViewModel). null if the report has been built from the report node time series
+    public Long version;
 
     public AggregatedReport(AggregatedReportView aggregatedReportView) {
         this.aggregatedReportView = aggregatedReportView;
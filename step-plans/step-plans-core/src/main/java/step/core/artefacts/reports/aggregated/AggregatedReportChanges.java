@@ -0,0 +1,36 @@
+package step.core.artefacts.reports.aggregated;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * The counters of the aggregated report of a running execution that changed since a given version
+ */
+public class AggregatedReportChanges {
+    public final long sinceVersion;
+    public final long version;
+    public final Map<String, ArtefactChanges> changesByArtefactHash;
+
+    @JsonCreator
+    public AggregatedReportChanges(@JsonProperty("sinceVersion") long sinceVersion,
+                                   @JsonProperty("version") long version,
+                                   @JsonProperty("changesByArtefactHash") Map<String, ArtefactChanges> changesByArtefactHash) {
+        this.sinceVersion = sinceVersion;
+        this.version = version;
+        this.changesByArtefactHash = changesByArtefactHash;
+    }
+
+    public static class ArtefactChanges {
+        public final Map<String, Long> countByStatus;
+        public final Map<String, Long> countByErrorMessage;
+
+        @JsonCreator
+        public ArtefactChanges(@JsonProperty("countByStatus") Map<String, Long> countByStatus,
+                               @JsonProperty("countByErrorMessage") Map<String, Long> countByErrorMessage) {
+            this.countByStatus = countByStatus;
+            this.countByErrorMessage = countByErrorMessage;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package step.core.artefacts.reports.aggregated;
+
+import step.core.artefacts.AbstractArtefact;
+import step.core.artefacts.reports.ReportNode;
+import step.core.execution.ExecutionContext;
+import step.core.views.AbstractView;
+import step.core.views.View;
+
+import static step.core.artefacts.handlers.ArtefactHandler.TEC_EXECUTION_REPORTNODES_TIMESERIES_ENABLED;
+
+/**
+ * Maintains the counters of the aggregated report of the running executions from the report node hooks, so that
+ * the {@link AggregatedReportViewBuilder} doesn't have to query the report node time series and the running report
+ * nodes at each refresh. As for the report node time series (see ArtefactHandler), only the report nodes of
+ * non-work artefacts are considered, and only if the ingestion of the report node time series is enabled.
+ */
+@View
+public class AggregatedReportLiveView extends AbstractView<AggregatedReportLiveViewModel> {
+
+    public static final String AGGREGATED_REPORT_LIVE_VIEW = "aggregatedReportLive";
+
+    @Override
+    public AggregatedReportLiveViewModel init() {
+        return new AggregatedReportLiveViewModel();
+    }
+
+    @Override
+    public String getViewId() {
+        return AGGREGATED_REPORT_LIVE_VIEW;
+    }
+
+    @Override
+    public void afterReportNodeSkeletonCreation(AggregatedReportLiveViewModel model, ReportNode node) {
+    }
+
+    @Override
+    public void beforeReportNodeExecution(AggregatedReportLiveViewModel model, ReportNode node) {
+        if (isAggregated(node)) {
+            model.reportNodeStarted(node);
+        }
+    }
+
+    @Override
+    public void beforeReportNodeExecution(AggregatedReportLiveViewModel model, ExecutionContext context, ReportNode node) {
+        if (isTimeSeriesIngestionEnabled(context)) {
+            beforeReportNodeExecution(model, node);
+        }
+    }
+
+    @Override
+    public void afterReportNodeExecution(AggregatedReportLiveViewModel model, ReportNode node) {
+        if (isAggregated(node)) {
+            model.reportNodeEnded(node);
+        }
+    }
+
+    @Override
+    public void afterReportNodeExecution(AggregatedReportLiveViewModel model, ExecutionContext context, ReportNode node) {
+        if (isTimeSeriesIngestionEnabled(context)) {
+            afterReportNodeExecution(model, node);
+        }
+    }
+
+    @Override
+    public void onReportNodeRemoval(AggregatedReportLiveViewModel model, ReportNode node) {
+        // Like for the report node time series, removed nodes remain counted
+    }
+
+    /**
+     * Same conditions as the ingestion of the report nodes into the report node time series in ArtefactHandler
+     */
+    private static boolean isTimeSeriesIngestionEnabled(ExecutionContext context) {
+        ReportNodeTimeSeries reportNodeTimeSeries = context.get(ReportNodeTimeSeries.class);
+        return reportNodeTimeSeries != null && reportNodeTimeSeries.isIngestionEnabled() &&
+            context.getVariablesManager().getVariableAsBoolean(TEC_EXECUTION_REPORTNODES_TIMESERIES_ENABLED, true);
+    }
+
+    private static boolean isAggregated(ReportNode node) {
+        AbstractArtefact artefactInstance = node.getArtefactInstance();
+        return artefactInstance != null && !artefactInstance.isWorkArtefact() && node.getArtefactHash() != null;
+    }
+}
@@ -0,0 +1,187 @@
+package step.core.artefacts.reports.aggregated;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import step.core.artefacts.reports.ReportNode;
+import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.tables.ViewCounterMap;
+import step.core.timeseries.bucket.Bucket;
+import step.core.views.ViewModel;
+
+import java.util.*;
+
+/**
+ * Counters of the report nodes of a running execution by artefact hash, maintained incrementally by the
+ * {@link AggregatedReportLiveView}. Each change increments the version of the model, which allows clients to only
+ * fetch the statistics changed since a given version (see {@link #getChangesSince(long)}).
+ * <p>
+ * The methods are synchronized on the model, which is the lock used by the ViewManager to invoke the view hooks
+ */
+public class AggregatedReportLiveViewModel extends ViewModel {
+
+    public static final int MAX_ERROR_MESSAGES_PER_ARTEFACT = 100;
+    public static final String OTHER_ERROR_MESSAGES = "Other";
+    // Precision in ms of the duration distribution for durations lower than 1s. Higher durations are rounded to
+    // 2 significant digits, which bounds the size of the distribution to 90 entries per order of magnitude
+    private static final long DISTRIBUTION_PRECISION = 10;
+    private static final long DISTRIBUTION_VALUES_PER_PRECISION_STEP = 100;
+
+    private long version = 0;
+
+    // The statistics are only served while the execution is running. Once the execution has ended, the aggregated
+    // report is built from the report node time series and the statistics don't have to be persisted
+    @JsonIgnore
+    private final Map<String, ArtefactStatistics> statisticsByArtefactHash = new HashMap<>();
+    @JsonIgnore
+    private long minExecutionTime = Long.MAX_VALUE;
+    @JsonIgnore
+    private long maxExecutionTime = Long.MIN_VALUE;
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void setVersion(long version) {
+        this.version = version;
+    }
+
+    synchronized void reportNodeStarted(ReportNode node) {
+        ArtefactStatistics statistics = getOrCreateStatistics(node.getArtefactHash());
+        if (node.getId() != null) {
+            statistics.runningReportNodeIds.add(node.getId().toHexString());
+            statistics.version = ++version;
+        }
+    }
+
+    synchronized void reportNodeEnded(ReportNode node) {
+        ArtefactStatistics statistics = getOrCreateStatistics(node.getArtefactHash());
+        if (node.getId() != null) {
+            statistics.runningReportNodeIds.remove(node.getId().toHexString());
+        }
+        String status = node.getStatus().toString();
+        statistics.countByStatus.merge(status, 1L, Long::sum);
+        long duration = node.getDuration() != null ? node.getDuration() : 0;
+        statistics.durationByStatus.computeIfAbsent(status, k -> new DurationStatistics()).add(duration);
+        if (node.getError() != null && node.getError().getMsg() != null) {
+            statistics.countByErrorMessage.incrementForKey(node.getError().getMsg());
+        }
+        minExecutionTime = Math.min(minExecutionTime, node.getExecutionTime());
+        maxExecutionTime = Math.max(maxExecutionTime, node.getExecutionTime());
+        statistics.version = ++version;
+    }
+
+    private ArtefactStatistics getOrCreateStatistics(String artefactHash) {
+        return statisticsByArtefactHash.computeIfAbsent(artefactHash, k -> new ArtefactStatistics());
+    }
+
+    /**
+     * @return a consistent copy of the current statistics in the format of the report node time series queries
+     */
+    public synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(version);
+        long begin = minExecutionTime <= maxExecutionTime ? minExecutionTime : 0;
+        long end = minExecutionTime <= maxExecutionTime ? maxExecutionTime + 1 : 0;
+        statisticsByArtefactHash.forEach((artefactHash, statistics) -> {
+            if (!statistics.durationByStatus.isEmpty()) {
+                Map<String, Bucket> bucketsByStatus = new HashMap<>();
+                statistics.durationByStatus.forEach((status, duration) -> bucketsByStatus.put(status, duration.toBucket(begin, end)));
+                snapshot.bucketsByArtefactHashAndStatus.put(artefactHash, bucketsByStatus);
+            }
+            if (!statistics.countByErrorMessage.isEmpty()) {
+                Map<String, Bucket> bucketsByErrorMessage = new HashMap<>();
+                statistics.countByErrorMessage.forEach((message, count) -> {
+                    Bucket bucket = new Bucket();
+                    bucket.setBegin(begin);
+                    bucket.setEnd(end);
+                    bucket.setCount(count);
+                    bucketsByErrorMessage.put(message, bucket);
+                });
+                snapshot.bucketsByArtefactHashAndErrorMessage.put(artefactHash, bucketsByErrorMessage);
+            }
+            if (!statistics.runningReportNodeIds.isEmpty()) {
+                snapshot.runningReportNodeIdsByArtefactHash.put(artefactHash, new ArrayList<>(statistics.runningReportNodeIds));
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * @param sinceVersion the version of the model last fetched by the client
+     * @return the statistics of the artefacts that changed after the provided version
+     */
+    public synchronized AggregatedReportChanges getChangesSince(long sinceVersion) {
+        Map<String, AggregatedReportChanges.ArtefactChanges> changes = new HashMap<>();
+        statisticsByArtefactHash.forEach((artefactHash, statistics) -> {
+            if (statistics.version > sinceVersion) {
+                Map<String, Long> countByStatus = new HashMap<>(statistics.countByStatus);
+                if (!statistics.runningReportNodeIds.isEmpty()) {
+                    countByStatus.put(ReportNodeStatus.RUNNING.name(), (long) statistics.runningReportNodeIds.size());
+                }
+                Map<String, Long> countByErrorMessage = new HashMap<>();
+                statistics.countByErrorMessage.forEach((message, count) -> countByErrorMessage.put(message, count.longValue()));
+                changes.put(artefactHash, new AggregatedReportChanges.ArtefactChanges(countByStatus, countByErrorMessage));
+            }
+        });
+        return new AggregatedReportChanges(sinceVersion, version, changes);
+    }
+
+    private static class ArtefactStatistics {
+
+        private long version;
+        private final Map<String, Long> countByStatus = new HashMap<>();
+        private final Map<String, DurationStatistics> durationByStatus = new HashMap<>();
+        private final ViewCounterMap countByErrorMessage = new ViewCounterMap(MAX_ERROR_MESSAGES_PER_ARTEFACT, OTHER_ERROR_MESSAGES);
+        private final Set<String> runningReportNodeIds = new LinkedHashSet<>();
+    }
+
+    private static class DurationStatistics {
+
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private final Map<Long, Long> distribution = new HashMap<>();
+
+        private void add(long duration) {
+            count++;
+            sum += duration;
+            min = Math.min(min, duration);
+            max = Math.max(max, duration);
+            distribution.merge(getDistributionKey(duration), 1L, Long::sum);
+        }
+
+        private static long getDistributionKey(long duration) {
+            long precision = DISTRIBUTION_PRECISION;
+            while (duration >= precision * DISTRIBUTION_VALUES_PER_PRECISION_STEP) {
+                precision *= 10;
+            }
+            return duration - duration % precision;
+        }
+
+        private Bucket toBucket(long begin, long end) {
+            Bucket bucket = new Bucket();
+            bucket.setBegin(begin);
+            bucket.setEnd(end);
+            bucket.setCount(count);
+            bucket.setSum(sum);
+            bucket.setMin(min);
+            bucket.setMax(max);
+            bucket.setDistribution(new HashMap<>(distribution));
+            return bucket;
+        }
+    }
+
+    /**
+     * A copy of the statistics of the model at a given version
+     */
+    public static class Snapshot {
+
+        public final long version;
+        public final Map<String, Map<String, Bucket>> bucketsByArtefactHashAndStatus = new HashMap<>();
+        public final Map<String, Map<String, Bucket>> bucketsByArtefactHashAndErrorMessage = new HashMap<>();
+        public final Map<String, List<String>> runningReportNodeIdsByArtefactHash = new HashMap<>();
+
+        private Snapshot(long version) {
+            this.version = version;
+        }
+    }
+}
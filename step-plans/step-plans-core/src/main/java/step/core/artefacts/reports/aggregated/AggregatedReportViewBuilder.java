@@ -23,6 +23,9 @@ import step.core.plugins.threadmanager.ThreadManager;
 import step.core.timeseries.TimeSeriesConfig;
 import step.core.timeseries.bucket.Bucket;
 import step.core.timeseries.bucket.BucketBuilder;
+import step.core.views.AbstractView;
+import step.core.views.ViewManager;
+import step.core.views.ViewModel;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -44,6 +47,7 @@ public class AggregatedReportViewBuilder {
     private final ReportNodeAccessor mainReportNodeAccessor;
     private final boolean defaultResolveSingleInstanceReport;
     private final ThreadManager threadManager;
+    private final ViewManager viewManager;
 
     public AggregatedReportViewBuilder(ExecutionEngineContext executionEngineContext, String executionId) {
         this.executionId = executionId;
@@ -53,6 +57,7 @@ public class AggregatedReportViewBuilder {
         this.defaultResolveSingleInstanceReport = executionEngineContext.getConfiguration().getPropertyAsBoolean(EXECUTION_REPORT_AGGREGATED_TREE_RESOLVE_SINGLE_INSTANCE, true);
         this.mainReportNodesTimeSeries = executionEngineContext.require(ReportNodeTimeSeries.class);
         this.threadManager = executionEngineContext.get(ThreadManager.class);
+        this.viewManager = executionEngineContext.get(ViewManager.class);
     }
 
     public AggregatedReportView buildAggregatedReportView() {
@@ -99,6 +104,11 @@ public class AggregatedReportViewBuilder {
             return null;
         } else if (request.selectedReportNodeId == null) {
             // Full aggregated report requested
+            // While the execution is running, the counters are served by the live view maintained from the report node hooks
+            AggregatedReportLiveViewModel liveModel = (isExecutionRunning || isExecutionAborting) && request.range == null ? getLiveModel() : null;
+            if (liveModel != null) {
+                return buildAggregatedReportFromLiveModel(rootResolvedPlanNode, request, liveModel);
+            }
             // We now (SED-3882) also  wand to get the count for RUNNING artefacts which can only be retrieved from report nodes RAW data
             Map<String, Long> runningCountByArtefactHash = new HashMap<>();
             Map<String, List<Operation>> operationsByArtefactHash = new HashMap<>();
@@ -158,6 +168,44 @@ public class AggregatedReportViewBuilder {
         }
     }
 
+    private AggregatedReport buildAggregatedReportFromLiveModel(ResolvedPlanNode rootResolvedPlanNode, AggregatedReportViewRequest request, AggregatedReportLiveViewModel liveModel) {
+        AggregatedReportLiveViewModel.Snapshot snapshot = liveModel.snapshot();
+        Map<String, Long> runningCountByArtefactHash = new HashMap<>();
+        Map<String, List<Operation>> operationsByArtefactHash = new HashMap<>();
+        snapshot.runningReportNodeIdsByArtefactHash.forEach((artefactHash, reportNodeIds) -> {
+            runningCountByArtefactHash.put(artefactHash, (long) reportNodeIds.size());
+            if (request.fetchCurrentOperations && threadManager != null) {
+                List<Operation> operations = operationsByArtefactHash.computeIfAbsent(artefactHash, k -> new ArrayList<>());
+                reportNodeIds.forEach(reportNodeId -> operations.addAll(threadManager.getCurrentOperationsByReportNodeId(reportNodeId)));
+            }
+        });
+        Range resolvedRange = getResolvedRange(request, snapshot.bucketsByArtefactHashAndStatus);
+        AggregatedReport aggregatedReport = new AggregatedReport(recursivelyBuildAggregatedReportTree(rootResolvedPlanNode, request, snapshot.bucketsByArtefactHashAndStatus,
+            snapshot.bucketsByArtefactHashAndErrorMessage, mainReportNodeAccessor, null, runningCountByArtefactHash, operationsByArtefactHash, resolvedRange));
+        aggregatedReport.version = snapshot.version;
+        return aggregatedReport;
+    }
+
+    /**
+     * @param sinceVersion the version of the aggregated report last fetched by the client (see {@link AggregatedReport#version})
+     * @return the counters changed since the provided version or null if the execution isn't running anymore. In this
+     * case the full aggregated report has to be fetched
+     */
+    public AggregatedReportChanges getAggregatedReportChanges(long sinceVersion) {
+        AggregatedReportLiveViewModel liveModel = getLiveModel();
+        return liveModel != null ? liveModel.getChangesSince(sinceVersion) : null;
+    }
+
+    private AggregatedReportLiveViewModel getLiveModel() {
+        if (viewManager != null) {
+            AbstractView<ViewModel> view = viewManager.getView(AggregatedReportLiveView.AGGREGATED_REPORT_LIVE_VIEW);
+            if (view != null) {
+                return (AggregatedReportLiveViewModel) view.getModel(executionId);
+            }
+        }
+        return null;
+    }
+
     private ReportNodeTimeSeries.Range getResolvedRange(AggregatedReportViewRequest request, Map<String, Map<String, Bucket>> countByHashAndStatus) {
         Bucket firstBucket = countByHashAndStatus.values().stream()
             .flatMap(innerMap -> innerMap.values().stream())
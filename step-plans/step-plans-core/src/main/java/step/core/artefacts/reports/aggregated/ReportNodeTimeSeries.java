@@ -11,6 +11,8 @@ import step.core.timeseries.bucket.Bucket;
 import step.core.timeseries.bucket.BucketAttributes;
 import step.core.timeseries.ingestion.TimeSeriesIngestionPipeline;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -134,6 +136,36 @@ public class ReportNodeTimeSeries implements AutoCloseable {
             ));
     }
 
+    /**
+     * Computes the average duration of the report nodes of the provided artefacts over all the executions
+     *
+     * @param filter         an additional filter on the attributes of the time series (like the canonical plan name)
+     * @param artefactHashes the hashes of the artefacts
+     * @param range          the time range to be considered
+     * @return the average duration in ms by artefact hash. The artefacts without any report node are omitted
+     */
+    public Map<String, Long> queryAverageDurationByArtefactHash(Filter filter, Set<String> artefactHashes, Range range) {
+        Map<String, Long> averageDurations = new HashMap<>();
+        if (artefactHashes.isEmpty()) {
+            return averageDurations;
+        }
+        TimeSeriesAggregationQueryBuilder queryBuilder = new TimeSeriesAggregationQueryBuilder()
+            .withOptimizationType(TimeSeriesOptimizationType.MOST_EFFICIENT)
+            .withFilter(Filters.and(List.of(filter, Filters.in(ATTRIBUTES_PREFIX + ARTEFACT_HASH, new ArrayList<>(artefactHashes)))))
+            .withGroupDimensions(Set.of(ARTEFACT_HASH))
+            .range(range.from, range.to)
+            .split(1);
+        timeSeries.getAggregationPipeline().collect(queryBuilder.build()).getSeries().forEach((attributes, series) -> {
+            String artefactHash = (String) attributes.get(ARTEFACT_HASH);
+            long count = series.values().stream().mapToLong(Bucket::getCount).sum();
+            if (artefactHash != null && count > 0) {
+                long sum = series.values().stream().mapToLong(Bucket::getSum).sum();
+                averageDurations.put(artefactHash, sum / count);
+            }
+        });
+        return averageDurations;
+    }
+
     @Override
     public void close() {
         timeSeries.close();
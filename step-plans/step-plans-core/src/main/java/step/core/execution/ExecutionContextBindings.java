@@ -19,6 +19,7 @@
 package step.core.execution;
 
 import step.automation.packages.AutomationPackageEntity;
+import step.core.variables.VariableScopeMap;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -33,6 +34,10 @@ public class ExecutionContextBindings {
     // Static lazy-loaded configuration value
     private static volatile Boolean allowSensitiveGroovyBindings;
 
+    /**
+     * @param context the current {@link ExecutionContext}
+     * @return an immutable view of the bindings of the current scope. The variables are resolved lazily, see {@link VariableScopeMap}
+     */
     public static Map<String, Object> get(ExecutionContext context) {
         // Thread-safe lazy initialization of static configuration value
         if (allowSensitiveGroovyBindings == null) {
@@ -43,21 +48,26 @@ public class ExecutionContextBindings {
                 }
             }
         }
-        Map<String, Object> bindings = new HashMap<String, Object>();
+        // Bindings shadowed by the variables
+        Map<String, Object> defaults;
         if (allowSensitiveGroovyBindings) {
-            bindings.put("context", context);
-            bindings.put("variables", context.getVariablesManager());
-            bindings.put(BINDING_RESOURCE_MANAGER, context.getResourceManager());
+            defaults = new HashMap<>();
+            defaults.put("context", context);
+            defaults.put("variables", context.getVariablesManager());
+            defaults.put(BINDING_RESOURCE_MANAGER, context.getResourceManager());
+        } else {
+            defaults = Map.of();
         }
-        //Add all variables as binding
-        bindings.putAll(context.getVariablesManager().getAllVariables());
+        // Bindings taking precedence over the variables
+        Map<String, Object> overrides = new HashMap<>();
         //Add plan, useful for activation expression and not sensitive
-        bindings.put("plan", context.getPlan());
+        overrides.put("plan", context.getPlan());
         //Add the current AP id in context, used for the function and plan selection criteria (priority to keywords and plans from same package)
         if (context.getPlan() != null && context.getPlan().getCustomField(AutomationPackageEntity.AUTOMATION_PACKAGE_ID) != null) {
-            bindings.put(BINDING_AP, context.getPlan().getCustomField(AutomationPackageEntity.AUTOMATION_PACKAGE_ID));
+            overrides.put(BINDING_AP, context.getPlan().getCustomField(AutomationPackageEntity.AUTOMATION_PACKAGE_ID));
         }
-        return bindings;
+        //Expose all variables of the current scope without copying them
+        return new VariableScopeMap(context.getVariablesManager(), context.getCurrentReportNode(), defaults, overrides);
     }
 
 }
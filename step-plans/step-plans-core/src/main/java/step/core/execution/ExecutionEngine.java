@@ -28,7 +28,10 @@ import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ch.exense.commons.app.Configuration;
 import step.core.AbstractContext;
+import step.core.artefacts.reports.ReportNodeAccessor;
+import step.core.artefacts.reports.WriteBehindReportNodeAccessor;
 import step.core.execution.model.Execution;
 import step.core.execution.model.ExecutionParameters;
 import step.core.objectenricher.*;
@@ -302,6 +305,9 @@ public class ExecutionEngine implements AutoCloseable {
             lastExecutionEndTime.set(System.currentTimeMillis());
             if (context != null) {
                 plugins.finalizeExecutionContext(executionEngineContext, context);
+                if (context.getReportNodeAccessor() instanceof WriteBehindReportNodeAccessor) {
+                    ((WriteBehindReportNodeAccessor) context.getReportNodeAccessor()).close();
+                }
             }
         }
     }
@@ -334,6 +340,13 @@ public class ExecutionEngine implements AutoCloseable {
         planAccessor.pushAccessor(new InMemoryPlanAccessor());
         executionContext.setPlanAccessor(planAccessor);
 
+        // Optionally buffer the report node writes of this execution and flush them in bulk
+        Configuration configuration = executionEngineContext.getConfiguration();
+        if (configuration.getPropertyAsBoolean(WriteBehindReportNodeAccessor.CONF_WRITE_BEHIND_ENABLED, false)) {
+            ReportNodeAccessor reportNodeAccessor = executionEngineContext.getReportNodeAccessor();
+            executionContext.setReportNodeAccessor(new WriteBehindReportNodeAccessor(reportNodeAccessor.getCollectionDriver(), configuration));
+        }
+
         addObjectHooksToExecutionContext(executionParameters, executionTaskParameters, executionContext);
 
         executionContext.setExecutionCallbacks(plugins);
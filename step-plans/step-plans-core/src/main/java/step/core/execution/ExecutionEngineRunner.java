@@ -26,7 +26,9 @@ import step.core.artefacts.AbstractArtefact;
 import step.core.artefacts.handlers.ArtefactHandlerManager;
 import step.core.artefacts.reports.ReportNode;
 import step.core.artefacts.reports.ParentSource;
+import step.core.artefacts.reports.ReportNodeAccessor;
 import step.core.artefacts.reports.ReportNodeStatus;
+import step.core.artefacts.reports.WriteBehindReportNodeAccessor;
 import step.core.artefacts.reports.aggregated.ReportNodeTimeSeries;
 import step.core.artefacts.reports.resolvedplan.ResolvedPlanBuilder;
 import step.core.artefacts.reports.resolvedplan.ResolvedPlanNode;
@@ -255,11 +257,23 @@ public class ExecutionEngineRunner {
             } catch (Exception e) {
                 logger.error("Unable to flush report nodes time series upon execution end.", e);
             }
+            flushReportNodes();
             // Deprovision the resources provisioned for the execution
             deprovisionRequiredResources();
         }
     }
 
+    private void flushReportNodes() {
+        ReportNodeAccessor reportNodeAccessor = executionContext.getReportNodeAccessor();
+        if (reportNodeAccessor instanceof WriteBehindReportNodeAccessor) {
+            try {
+                ((WriteBehindReportNodeAccessor) reportNodeAccessor).flush();
+            } catch (Exception e) {
+                logger.error("Unable to flush buffered report nodes upon execution end.", e);
+            }
+        }
+    }
+
     private PlanRunnerResult result(String executionId) {
         return new PlanRunnerResult(executionId, executionContext.getExecutionAccessor(), executionContext.getReportNodeAccessor(),
             executionContext.getResourceManager());
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.miscellaneous;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * {@link InputStream} decoding the hexadecimal representation of binary content, as used by the
+ * attachments of the keyword outputs, on the fly. Contrary to AttachmentHelper.hexStringToByteArray
+ * the decoded content is never materialized in memory as a whole.
+ */
+public class HexContentInputStream extends InputStream {
+
+    private final CharSequence hexContent;
+    private final int length;
+    private int position;
+
+    /**
+     * @param hexContent the hexadecimal representation of the content. null is handled as empty content
+     */
+    public HexContentInputStream(CharSequence hexContent) {
+        this.hexContent = hexContent != null ? hexContent : "";
+        this.length = this.hexContent.length();
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hexadecimal content: odd number of characters (" + length + ")");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        return nextByte();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        int count = Math.min(len, available());
+        for (int i = 0; i < count; i++) {
+            b[off + i] = (byte) nextByte();
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, available()));
+        position += (int) (skipped * 2);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (length - position) / 2;
+    }
+
+    private int nextByte() throws IOException {
+        int high = digit(position);
+        int low = digit(position + 1);
+        position += 2;
+        return (high << 4) | low;
+    }
+
+    private int digit(int index) throws IOException {
+        int digit = Character.digit(hexContent.charAt(index), 16);
+        if (digit < 0) {
+            throw new IOException("Invalid hexadecimal content: unexpected character '" + hexContent.charAt(index) + "' at position " + index);
+        }
+        return digit;
+    }
+}
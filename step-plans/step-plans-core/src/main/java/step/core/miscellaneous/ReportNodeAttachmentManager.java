@@ -19,7 +19,9 @@
 package step.core.miscellaneous;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
@@ -112,6 +114,18 @@ public class ReportNodeAttachmentManager {
     }
 
     public AttachmentMeta createAttachment(byte[] content, String filename, String mimeType) {
+        return createAttachment(new ByteArrayInputStream(content), filename, mimeType);
+    }
+
+    /**
+     * Creates an attachment by copying the provided stream to the resource storage without buffering the whole content in memory
+     *
+     * @param content  the content of the attachment. The stream is consumed but not closed by this method
+     * @param filename the name of the attachment
+     * @param mimeType the mime type of the attachment
+     * @return the {@link AttachmentMeta} of the created attachment or a {@link SkippedAttachmentMeta} if the quota is exceeded
+     */
+    public AttachmentMeta createAttachment(InputStream content, String filename, String mimeType) {
         if (checkAndUpateAttachmentQuota()) {
             return createResourceWithoutQuotaCheck(ResourceManager.RESOURCE_TYPE_ATTACHMENT, content, filename, mimeType);
         } else {
@@ -125,6 +139,10 @@ public class ReportNodeAttachmentManager {
     }
 
     public AttachmentMeta createResourceWithoutQuotaCheck(String resourceType, byte[] content, String filename, String mimeType) {
+        return createResourceWithoutQuotaCheck(resourceType, new ByteArrayInputStream(content), filename, mimeType);
+    }
+
+    public AttachmentMeta createResourceWithoutQuotaCheck(String resourceType, InputStream content, String filename, String mimeType) {
         ResourceRevisionContainer container;
         try {
             if (ResourceManager.RESOURCE_TYPE_ATTACHMENT.equals(resourceType) && context == null) {
@@ -136,7 +154,7 @@ public class ReportNodeAttachmentManager {
             }
             try {
                 BufferedOutputStream bos = new BufferedOutputStream(container.getOutputStream());
-                bos.write(content);
+                content.transferTo(bos);
                 bos.close();
             } catch (IOException ex) {
                 logger.error("Unable to write {}", filename, ex);
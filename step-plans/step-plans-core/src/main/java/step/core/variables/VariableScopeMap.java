@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.variables;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.types.ObjectId;
+
+import step.core.artefacts.reports.ReportNode;
+import step.core.variables.VariablesManager.ScopeChainVersion;
+
+/**
+ * Immutable {@link Map} view of the variables visible from a given {@link ReportNode}.
+ * <p>
+ * Contrary to {@link VariablesManager#getAllVariables()}, this view doesn't copy the variables of the scope chain.
+ * Each lookup walks the frames of the report node and its parents until the variable is found.
+ * The resolved {@link Variable}s are cached by the view and the cache is invalidated when
+ * variables are declared, updated or removed in one of the scopes of the chain. Changes in other scopes
+ * don't affect the view.
+ * <p>
+ * The view can additionally expose default bindings (shadowed by the variables) and overriding
+ * bindings (shadowing the variables). The full map is only materialized if the view is iterated.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+public class VariableScopeMap extends AbstractMap<String, Object> {
+
+    private static final Variable UNDEFINED = new Variable(null, VariableType.NORMAL);
+
+    private final VariablesManager variablesManager;
+    private final ReportNode scopeNode;
+    private final Map<String, Object> defaults;
+    private final Map<String, Object> overrides;
+
+    private volatile List<ObjectId> scopeChain;
+    private volatile ResolvedVariables resolved;
+    private volatile MaterializedVariables materialized;
+
+    public VariableScopeMap(VariablesManager variablesManager, ReportNode scopeNode) {
+        this(variablesManager, scopeNode, Map.of(), Map.of());
+    }
+
+    /**
+     * @param variablesManager the {@link VariablesManager} holding the variables
+     * @param scopeNode        the {@link ReportNode} from which the variables are resolved
+     * @param defaults         bindings returned when no variable with the same key is defined in the scope
+     * @param overrides        bindings taking precedence over the variables of the scope
+     */
+    public VariableScopeMap(VariablesManager variablesManager, ReportNode scopeNode, Map<String, Object> defaults, Map<String, Object> overrides) {
+        super();
+        this.variablesManager = variablesManager;
+        this.scopeNode = scopeNode;
+        this.defaults = defaults;
+        this.overrides = overrides;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (overrides.containsKey(key)) {
+            return overrides.get(key);
+        }
+        Variable variable = resolve(key);
+        if (variable != UNDEFINED) {
+            return variable.getValue();
+        } else {
+            return defaults.get(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return overrides.containsKey(key) || resolve(key) != UNDEFINED || defaults.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return materialize().entrySet();
+    }
+
+    @Override
+    public int size() {
+        return materialize().size();
+    }
+
+    private Variable resolve(Object key) {
+        if (!(key instanceof String) || scopeNode == null) {
+            return UNDEFINED;
+        }
+        List<ObjectId> chain = getScopeChain();
+        ResolvedVariables current = resolved;
+        if (current == null || !current.version.isCurrent()) {
+            // The version is taken before the lookups so that concurrent changes invalidate the resolved variables
+            current = new ResolvedVariables(variablesManager.getScopeChainVersion(chain));
+            resolved = current;
+        }
+        Variable variable = current.variables.get(key);
+        if (variable == null) {
+            variable = variablesManager.lookupVariable(chain, (String) key);
+            if (variable == null) {
+                variable = UNDEFINED;
+            }
+            current.variables.put((String) key, variable);
+        }
+        return variable;
+    }
+
+    private Map<String, Object> materialize() {
+        MaterializedVariables current = materialized;
+        if (current == null || (current.version != null && !current.version.isCurrent())) {
+            ScopeChainVersion version = scopeNode != null ? variablesManager.getScopeChainVersion(getScopeChain()) : null;
+            Map<String, Object> result = new HashMap<>(defaults);
+            if (scopeNode != null) {
+                result.putAll(variablesManager.getAllVariables(scopeNode));
+            }
+            result.putAll(overrides);
+            current = new MaterializedVariables(version, Collections.unmodifiableMap(result));
+            materialized = current;
+        }
+        return current.variables;
+    }
+
+    private List<ObjectId> getScopeChain() {
+        List<ObjectId> chain = scopeChain;
+        if (chain == null) {
+            chain = variablesManager.getScopeChain(scopeNode);
+            scopeChain = chain;
+        }
+        return chain;
+    }
+
+    private static class ResolvedVariables {
+
+        private final ScopeChainVersion version;
+        private final Map<String, Variable> variables = new ConcurrentHashMap<>();
+
+        private ResolvedVariables(ScopeChainVersion version) {
+            this.version = version;
+        }
+    }
+
+    private record MaterializedVariables(ScopeChainVersion version, Map<String, Object> variables) {
+    }
+}
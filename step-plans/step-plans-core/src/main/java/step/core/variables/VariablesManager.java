@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,7 +40,7 @@ public class VariablesManager {
 
     private final ReportNodeCache nodeCache;
 
-    private ConcurrentHashMap<ObjectId, Map<String, Variable>> register = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<ObjectId, VariableScope> register = new ConcurrentHashMap<>();
 
     public VariablesManager(ExecutionContext context) {
         super();
@@ -47,18 +49,19 @@ public class VariablesManager {
     }
 
     public void removeVariable(ReportNode node, String key) {
-        Map<String, Variable> variableMap = getVariableMap(node.getId(), false);
-        if (variableMap != null) {
-            variableMap.remove(key);
+        VariableScope scope = register.get(node.getId());
+        if (scope != null && scope.variables.remove(key) != null) {
+            scope.version.incrementAndGet();
         }
     }
 
     public void updateVariable(String key, Object value) throws ImmutableVariableException {
         ReportNode currentNode = context.getCurrentReportNode();
-        Variable closestVariable = getVariable_(currentNode, key, true);
+        ScopedVariable closestVariable = findVariable(currentNode, key, true);
         if (closestVariable != null) {
-            if (closestVariable.getType() == VariableType.NORMAL) {
-                closestVariable.setValue(value);
+            if (closestVariable.variable.getType() == VariableType.NORMAL) {
+                closestVariable.variable.setValue(value);
+                closestVariable.scope.version.incrementAndGet();
             } else {
                 throw new ImmutableVariableException(key);
             }
@@ -72,15 +75,14 @@ public class VariablesManager {
     }
 
     public void putVariable(ReportNode targetNode, VariableType type, String key, Object value) {
-        Map<String, Variable> variableMap;
         ReportNode parentNode = null;
         if (targetNode.setVariableInParentScope() &&
             (parentNode = nodeCache.get(targetNode.getParentID())) != null) {
             putVariable(parentNode, type, key, value);
         } else {
-            variableMap = getVariableMap(targetNode.getId(), true);
-            Variable variable = new Variable(value, type);
-            variableMap.put(key, variable);
+            VariableScope scope = register.computeIfAbsent(targetNode.getId(), id -> new VariableScope());
+            scope.variables.put(key, new Variable(value, type));
+            scope.version.incrementAndGet();
         }
     }
 
@@ -148,66 +150,120 @@ public class VariablesManager {
     }
 
     public Object getVariable(ReportNode node, String key, boolean recursive) {
-        Variable variable = getVariable_(node, key, recursive);
-        return variable != null ? variable.getValue() : null;
+        ScopedVariable variable = findVariable(node, key, recursive);
+        return variable != null ? variable.variable.getValue() : null;
     }
 
-    private Variable getVariable_(ReportNode node, String key, boolean recursive) {
-        Variable variable = null;
-        ReportNode currentNode = node;
-        do {
-            Map<String, Variable> variableMap = getVariableMap(currentNode.getId(), false);
-            if (variableMap != null) {
-                variable = variableMap.get(key);
+    /**
+     * @param scopeChain the ids of the report nodes of the scope chain as returned by {@link #getScopeChain(ReportNode)}
+     * @return the closest variable with the provided key or null if undefined
+     */
+    Variable lookupVariable(List<ObjectId> scopeChain, String key) {
+        for (ObjectId nodeId : scopeChain) {
+            VariableScope scope = register.get(nodeId);
+            if (scope != null) {
+                Variable variable = scope.variables.get(key);
+                if (variable != null) {
+                    return variable;
+                }
             }
-        } while (recursive &&
-            variable == null &&
-            currentNode.getParentID() != null &&
-            (currentNode = nodeCache.get(currentNode.getParentID())) != null);
-        return variable;
+        }
+        return null;
+    }
+
+    /**
+     * @return the ids of the provided report node and of its ancestors, starting with the provided node
+     */
+    List<ObjectId> getScopeChain(ReportNode node) {
+        List<ObjectId> chain = new ArrayList<>();
+        walkScopeChain(node, currentNode -> chain.add(currentNode.getId()));
+        return chain;
     }
 
+    /**
+     * @return the current versions of the scopes of the chain. Used to detect the declaration, update or removal of
+     * variables visible from a given node without being affected by the changes in other scopes
+     */
+    ScopeChainVersion getScopeChainVersion(List<ObjectId> scopeChain) {
+        return new ScopeChainVersion(scopeChain);
+    }
 
-    private Map<String, Variable> getVariableMap(ObjectId nodeId, boolean createIfNotExisting) {
-        Map<String, Variable> variableMap = register.get(nodeId);
-        if (createIfNotExisting && variableMap == null) {
-            variableMap = new ConcurrentHashMap<String, Variable>();
-            Map<String, Variable> previous = register.putIfAbsent(nodeId, variableMap);
-            if (previous != null) {
-                variableMap = previous;
-            }
+    /**
+     * Visits the provided node and its ancestors, starting with the provided node, until the visitor returns false
+     */
+    private void walkScopeChain(ReportNode node, Predicate<ReportNode> visitor) {
+        ReportNode currentNode = node;
+        while (currentNode != null && visitor.test(currentNode) && currentNode.getParentID() != null) {
+            currentNode = nodeCache.get(currentNode.getParentID());
         }
-        return variableMap;
     }
 
+    private ScopedVariable findVariable(ReportNode node, String key, boolean recursive) {
+        ScopedVariable[] result = new ScopedVariable[1];
+        walkScopeChain(node, currentNode -> {
+            VariableScope scope = register.get(currentNode.getId());
+            Variable variable = scope != null ? scope.variables.get(key) : null;
+            if (variable != null) {
+                result[0] = new ScopedVariable(scope, variable);
+            }
+            return recursive && result[0] == null;
+        });
+        return result[0];
+    }
+
+    /**
+     * @return a copy of all the variables visible from the current report node.
+     * Prefer {@link #getVariablesScope()} when the variables are only looked up by key
+     */
     public Map<String, Object> getAllVariables() {
+        return getAllVariables(context.getCurrentReportNode());
+    }
+
+    public Map<String, Object> getAllVariables(ReportNode node) {
+        return collectVariables(node, key -> true);
+    }
+
+    /**
+     * @param prefix the prefix of the variable names
+     * @return a copy of the variables visible from the current report node whose names start with the provided prefix
+     */
+    public Map<String, Object> getAllVariablesStartingWith(String prefix) {
+        return collectVariables(context.getCurrentReportNode(), key -> key.startsWith(prefix));
+    }
+
+    private Map<String, Object> collectVariables(ReportNode node, Predicate<String> keyFilter) {
         Map<String, Object> result = new HashMap<>();
-        ReportNode currentNode = context.getCurrentReportNode();
-        do {
-            Map<String, Variable> variableMap = register.get(currentNode.getId());
-            if (variableMap != null) {
-                for (String variableName : variableMap.keySet()) {
-                    if (!result.containsKey(variableName)) {
-                        Object value = variableMap.get(variableName).getValue();
-                        result.put(variableName, value);
+        walkScopeChain(node, currentNode -> {
+            VariableScope scope = register.get(currentNode.getId());
+            if (scope != null) {
+                for (Map.Entry<String, Variable> entry : scope.variables.entrySet()) {
+                    if (keyFilter.test(entry.getKey()) && !result.containsKey(entry.getKey())) {
+                        result.put(entry.getKey(), entry.getValue().getValue());
                     }
                 }
             }
-        } while (currentNode.getParentID() != null &&
-            (currentNode = nodeCache.get(currentNode.getParentID())) != null);
+            return true;
+        });
         return result;
     }
 
+    /**
+     * @return an immutable {@link Map} view of the variables visible from the current report node.
+     * The variables are resolved lazily through the scope chain without being copied
+     */
+    public Map<String, Object> getVariablesScope() {
+        return new VariableScopeMap(this, context.getCurrentReportNode());
+    }
+
     public List<Object> getAllVariables(String key) {
         List<Object> result = new ArrayList<>();
-        ReportNode currentNode = context.getCurrentReportNode();
-        do {
+        walkScopeChain(context.getCurrentReportNode(), currentNode -> {
             Object variable = getVariable(currentNode, key, false);
             if (variable != null) {
                 result.add(variable);
             }
-        } while (currentNode.getParentID() != null &&
-            (currentNode = nodeCache.get(currentNode.getParentID())) != null);
+            return true;
+        });
         return result;
     }
 
@@ -217,26 +273,72 @@ public class VariablesManager {
     }
 
     public Object getFirstVariableMatching(ReportNode node, Pattern pattern) {
-        Variable result = null;
-        ReportNode currentNode = node;
-        do {
-            Map<String, Variable> variables = register.get(currentNode.getId());
-            if (variables != null) {
+        Variable[] result = new Variable[1];
+        walkScopeChain(node, currentNode -> {
+            VariableScope scope = register.get(currentNode.getId());
+            if (scope != null) {
                 Matcher matcher = pattern.matcher("");
-                for (String variableName : variables.keySet()) {
-                    matcher.reset(variableName);
+                for (Map.Entry<String, Variable> entry : scope.variables.entrySet()) {
+                    matcher.reset(entry.getKey());
                     if (matcher.matches()) {
-                        result = variables.get(variableName);
+                        result[0] = entry.getValue();
                     }
                 }
             }
-        } while (result == null &&
-            currentNode.getParentID() != null &&
-            (currentNode = nodeCache.get(currentNode.getParentID())) != null);
-        return result != null ? result.getValue() : null;
+            return result[0] == null;
+        });
+        return result[0] != null ? result[0].getValue() : null;
     }
 
     public void releaseVariables(ObjectId nodeId) {
         register.remove(nodeId);
     }
+
+    /**
+     * The variables declared in the scope of a report node
+     */
+    private static class VariableScope {
+
+        private final Map<String, Variable> variables = new ConcurrentHashMap<>();
+        // Incremented each time a variable of this scope is declared, updated or removed
+        private final AtomicLong version = new AtomicLong();
+    }
+
+    private record ScopedVariable(VariableScope scope, Variable variable) {
+    }
+
+    /**
+     * The versions of the scopes of a scope chain at a given point in time
+     */
+    final class ScopeChainVersion {
+
+        private final List<ObjectId> scopeChain;
+        private final VariableScope[] scopes;
+        private final long[] versions;
+
+        private ScopeChainVersion(List<ObjectId> scopeChain) {
+            this.scopeChain = scopeChain;
+            int size = scopeChain.size();
+            scopes = new VariableScope[size];
+            versions = new long[size];
+            for (int i = 0; i < size; i++) {
+                VariableScope scope = register.get(scopeChain.get(i));
+                scopes[i] = scope;
+                versions[i] = scope != null ? scope.version.get() : 0;
+            }
+        }
+
+        /**
+         * @return true if no variable of the scope chain has been declared, updated or removed since this version has been taken
+         */
+        boolean isCurrent() {
+            for (int i = 0; i < scopes.length; i++) {
+                VariableScope scope = register.get(scopeChain.get(i));
+                if (scope != scopes[i] || (scope != null && scope.version.get() != versions[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -21,6 +21,7 @@ package step.core.views;
 import java.util.concurrent.ConcurrentHashMap;
 
 import step.core.artefacts.reports.ReportNode;
+import step.core.execution.ExecutionContext;
 
 
 public abstract class AbstractView<V extends ViewModel> {
@@ -45,10 +46,26 @@ public abstract class AbstractView<V extends ViewModel> {
 
     public abstract void beforeReportNodeExecution(V model, ReportNode node);
 
+    /**
+     * This method is called by the execution engine before the execution of a report node. Views which depend on
+     * the {@link ExecutionContext} can override it. Delegates to {@link #beforeReportNodeExecution(ViewModel, ReportNode)} by default
+     */
+    public void beforeReportNodeExecution(V model, ExecutionContext context, ReportNode node) {
+        beforeReportNodeExecution(model, node);
+    }
+
     public abstract void afterReportNodeSkeletonCreation(V model, ReportNode node);
 
     public abstract void afterReportNodeExecution(V model, ReportNode node);
 
+    /**
+     * This method is called by the execution engine after the execution of a report node. Views which depend on
+     * the {@link ExecutionContext} can override it. Delegates to {@link #afterReportNodeExecution(ViewModel, ReportNode)} by default
+     */
+    public void afterReportNodeExecution(V model, ExecutionContext context, ReportNode node) {
+        afterReportNodeExecution(model, node);
+    }
+
     /**
      * This method is called when a report node is removed from the tree.
      *
@@ -27,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import step.core.artefacts.reports.ReportNode;
+import step.core.execution.ExecutionContext;
 import step.core.scanner.CachedAnnotationScanner;
 
 public class ViewManager {
@@ -61,6 +62,10 @@ public class ViewManager {
         }
     }
 
+    public AbstractView<ViewModel> getView(String viewId) {
+        return register.get(viewId);
+    }
+
     public void registerView(String viewId, AbstractView<ViewModel> view) {
         register.put(viewId, view);
     }
@@ -101,10 +106,18 @@ public class ViewManager {
         invokeViewHooks(node, (model, view) -> view.beforeReportNodeExecution(model, node));
     }
 
+    public void beforeReportNodeExecution(ExecutionContext context, ReportNode node) {
+        invokeViewHooks(node, (model, view) -> view.beforeReportNodeExecution(model, context, node));
+    }
+
     public void afterReportNodeExecution(ReportNode node) {
         invokeViewHooks(node, (model, view) -> view.afterReportNodeExecution(model, node));
     }
 
+    public void afterReportNodeExecution(ExecutionContext context, ReportNode node) {
+        invokeViewHooks(node, (model, view) -> view.afterReportNodeExecution(model, context, node));
+    }
+
     public void onReportNodeRemoval(ReportNode node) {
         invokeViewHooks(node, (model, view) -> view.onReportNodeRemoval(model, node));
     }
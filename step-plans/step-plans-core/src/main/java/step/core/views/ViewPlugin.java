@@ -56,7 +56,7 @@ public class ViewPlugin extends AbstractExecutionEnginePlugin {
 
     @Override
     public void beforeReportNodeExecution(ExecutionContext context, ReportNode node) {
-        viewManager.beforeReportNodeExecution(node);
+        viewManager.beforeReportNodeExecution(context, node);
     }
 
     @Override
@@ -65,8 +65,8 @@ public class ViewPlugin extends AbstractExecutionEnginePlugin {
     }
 
     @Override
-    public void afterReportNodeExecution(ReportNode node) {
-        viewManager.afterReportNodeExecution(node);
+    public void afterReportNodeExecution(ExecutionContext context, ReportNode node) {
+        viewManager.afterReportNodeExecution(context, node);
     }
 
     @Override
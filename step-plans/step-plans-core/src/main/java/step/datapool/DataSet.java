@@ -23,12 +23,14 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import step.core.execution.ExecutionContext;
+import step.threadpool.ThreadPool;
 
 public abstract class DataSet<T extends DataPoolConfiguration> {
 
@@ -45,6 +47,16 @@ public abstract class DataSet<T extends DataPoolConfiguration> {
      */
     private LinkedBlockingQueue<DataPoolRow> writeQueue;
     private ExecutorService writeQueueProcessor;
+    private int writeQueueCapacity;
+
+    // A lock instead of synchronized as the rows may be consumed by virtual threads
+    private final ReentrantLock nextLock = new ReentrantLock();
+
+    /**
+     * The buffer serving the rows if the read-ahead has been enabled with {@link #enableReadAhead(int, ThreadPool)}
+     */
+    private volatile ReadAheadBuffer readAheadBuffer;
+    private int readAheadDepth = 0;
 
     protected boolean isRowCommitEnabled = false;
     protected volatile boolean closing;
@@ -69,6 +81,7 @@ public abstract class DataSet<T extends DataPoolConfiguration> {
         if (isWriteQueueSupportEnabled()) {
             Integer maxQueueSize = context.getConfiguration().getPropertyAsInteger("datasets.write.queue.maxsize", 1000);
             writeQueue = new LinkedBlockingQueue<>(maxQueueSize);
+            writeQueueCapacity = maxQueueSize;
 
             BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("dataset-write-thread-%d").build();
             writeQueueProcessor = Executors.newFixedThreadPool(1, factory);
@@ -107,9 +120,36 @@ public abstract class DataSet<T extends DataPoolConfiguration> {
         }
     }
 
+    /**
+     * Enables the read-ahead of the rows: the rows are read by a background task of the provided {@link ThreadPool} into a buffer
+     * of the provided depth from which they are returned by {@link #next()}. Has to be called after {@link #init()}.
+     * The read-ahead is stopped by {@link #close()} and isn't meant to be combined with {@link #reset()}
+     *
+     * @param depth      the maximum number of rows read ahead
+     * @param threadPool the {@link ThreadPool} of the execution running the read-ahead
+     */
+    public void enableReadAhead(int depth, ThreadPool threadPool) {
+        ReadAheadBuffer readAheadBuffer = new ReadAheadBuffer(this::readNext, depth);
+        readAheadBuffer.start(threadPool);
+        this.readAheadBuffer = readAheadBuffer;
+        this.readAheadDepth = depth;
+    }
+
+    /**
+     * @return the usage statistics of the read-ahead buffer or null if the read-ahead isn't enabled
+     */
+    public ReadAheadBuffer.Statistics getReadAheadStatistics() {
+        ReadAheadBuffer readAheadBuffer = this.readAheadBuffer;
+        return readAheadBuffer != null ? readAheadBuffer.getStatistics() : null;
+    }
+
     public abstract void reset();
 
     public void close() {
+        ReadAheadBuffer readAheadBuffer = this.readAheadBuffer;
+        if (readAheadBuffer != null) {
+            readAheadBuffer.stop();
+        }
         closing = true;
         if (isWriteQueueSupportEnabled()) {
             writeQueueProcessor.shutdown();
@@ -128,18 +168,57 @@ public abstract class DataSet<T extends DataPoolConfiguration> {
         return false;
     }
 
+    /**
+     * @return true if {@link #next()} has to wait for the write queue to have capacity when it is full.
+     * Per default, the rows are not written if the write queue is full
+     */
+    protected boolean isWriteQueueBlocking() {
+        return false;
+    }
+
+    /**
+     * @return the maximum number of rows that can be returned by {@link #next()} without being committed before {@link #next()}
+     * blocks on the write queue, or {@link Integer#MAX_VALUE} if {@link #next()} never blocks. The rows read ahead are deducted
+     */
+    public int getMaxUncommittedRows() {
+        if (isWriteQueueSupportEnabled() && isRowCommitEnabled && isWriteQueueBlocking()) {
+            // The producer of the read-ahead holds one more row than the depth of the buffer while the buffer is full
+            int readAheadRows = readAheadBuffer != null ? readAheadDepth + 1 : 0;
+            return Math.max(0, writeQueueCapacity - readAheadRows);
+        } else {
+            return Integer.MAX_VALUE;
+        }
+    }
+
     public boolean isProtectedDataSource() {
         return (configuration.getProtect() != null) ? configuration.getProtect().get() : false;
     }
 
-    public final synchronized DataPoolRow next() {
-        Object nextValue = next_();
-        DataPoolRow dataPoolRow = nextValue != null ? new DataPoolRow(nextValue) : null;
-        if (isWriteQueueSupportEnabled() && dataPoolRow != null) {
-            // Put the row to the write queue
-            writeQueue.offer(dataPoolRow);
+    public final DataPoolRow next() {
+        ReadAheadBuffer readAheadBuffer = this.readAheadBuffer;
+        return readAheadBuffer != null ? readAheadBuffer.next() : readNext();
+    }
+
+    private DataPoolRow readNext() {
+        nextLock.lock();
+        try {
+            Object nextValue = next_();
+            DataPoolRow dataPoolRow = nextValue != null ? new DataPoolRow(nextValue) : null;
+            if (isWriteQueueSupportEnabled() && dataPoolRow != null) {
+                // Put the row to the write queue
+                if (isWriteQueueBlocking()) {
+                    writeQueue.put(dataPoolRow);
+                } else {
+                    writeQueue.offer(dataPoolRow);
+                }
+            }
+            return dataPoolRow;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the write queue of the data set", e);
+        } finally {
+            nextLock.unlock();
         }
-        return dataPoolRow;
     }
 
     public abstract Object next_();
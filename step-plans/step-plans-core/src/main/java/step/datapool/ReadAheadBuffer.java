@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.datapool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.threadpool.ThreadPool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Source of the rows of a {@link DataSet} reading the rows ahead of their consumption. See {@link DataSet#enableReadAhead(int, ThreadPool)}
+ * <p>
+ * The rows are read by a background task of the {@link ThreadPool} of the execution into a bounded buffer of the configured depth.
+ * The consumers calling {@link DataSet#next()} thus don't have to wait for slow data sources (reading from a file, a database,
+ * an Excel workbook...) as long as the buffer isn't empty, and don't contend on the lock of the {@link DataSet}.
+ * <p>
+ * The rows are read through the regular row source of the {@link DataSet} which keeps managing its write queue and the row commit.
+ * Rows that have been read ahead but not consumed when the buffer is stopped are committed without change so that the write
+ * queue of the {@link DataSet} isn't blocked.
+ */
+public class ReadAheadBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadAheadBuffer.class);
+
+    /**
+     * Property of the step.properties defining the number of rows read ahead by the data sets of the ForEach.
+     * 0 (default) to disable the read-ahead
+     */
+    public static final String READ_AHEAD_DEPTH_CONFIG = "datasets.readahead.depth";
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Supplier<DataPoolRow> rowSource;
+    private final BlockingQueue<DataPoolRow> buffer;
+
+    private Future<?> producer;
+    // Guards the producer thread so that it isn't interrupted once it runs another task of the thread pool
+    private final ReentrantLock producerThreadLock = new ReentrantLock();
+    private Thread producerThread;
+    private volatile boolean producerStopped;
+    private volatile boolean producerFinished;
+    private volatile RuntimeException producerError;
+
+    private final LongAdder readRows = new LongAdder();
+    private final LongAdder consumedRows = new LongAdder();
+    private final LongAdder consumerWaits = new LongAdder();
+    private final LongAdder consumerWaitNanos = new LongAdder();
+    private final LongAdder producerWaits = new LongAdder();
+    private final LongAdder producerWaitNanos = new LongAdder();
+    private final LongAdder bufferOccupancySum = new LongAdder();
+
+    /**
+     * @param rowSource the source of the rows to be read ahead
+     * @param depth     the maximum number of rows read ahead
+     */
+    ReadAheadBuffer(Supplier<DataPoolRow> rowSource, int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("The read-ahead depth has to be higher than 0");
+        }
+        this.rowSource = rowSource;
+        this.buffer = new ArrayBlockingQueue<>(depth);
+    }
+
+    void start(ThreadPool threadPool) {
+        producer = threadPool.submitBackgroundTask(this::produce);
+    }
+
+    private void produce() {
+        setProducerThread(Thread.currentThread());
+        try {
+            DataPoolRow row;
+            while (!isProducerStopped() && (row = rowSource.get()) != null) {
+                readRows.increment();
+                if (!buffer.offer(row)) {
+                    // The buffer is full: the consumers are slower than the data source
+                    producerWaits.increment();
+                    long start = System.nanoTime();
+                    try {
+                        while (!buffer.offer(row, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                            if (isProducerStopped()) {
+                                row.commit();
+                                return;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // The row won't be consumed: commit it to unblock the write queue of the data set
+                        row.commit();
+                        if (!producerStopped) {
+                            logger.error("Read-ahead of the data set interrupted", e);
+                        }
+                        return;
+                    }
+                    producerWaitNanos.add(System.nanoTime() - start);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Reading the next row fails if the producer is interrupted by stop() while waiting for the write queue
+            if (!producerStopped) {
+                producerError = e;
+            }
+        } finally {
+            setProducerThread(null);
+            producerFinished = true;
+        }
+    }
+
+    private void setProducerThread(Thread thread) {
+        producerThreadLock.lock();
+        try {
+            producerThread = thread;
+        } finally {
+            producerThreadLock.unlock();
+        }
+    }
+
+    private void interruptProducer() {
+        producerThreadLock.lock();
+        try {
+            if (producerThread != null) {
+                producerThread.interrupt();
+            }
+        } finally {
+            producerThreadLock.unlock();
+        }
+    }
+
+    private boolean isProducerStopped() {
+        return producerStopped || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Stops the background task reading the rows and commits the rows that have been read ahead but not consumed
+     * <p>
+     * The rows are committed while waiting for the termination of the producer: with a blocking write queue, the producer
+     * might be blocked by the full write queue of the {@link DataSet} whose processor waits for the commit of a buffered row.
+     */
+    void stop() {
+        Future<?> producer = this.producer;
+        if (producer != null) {
+            producerStopped = true;
+            interruptProducer();
+            try {
+                while (!producer.isDone()) {
+                    commitBufferedRows();
+                    try {
+                        producer.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        // The producer is still running: commit the rows it has buffered in the meantime
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                producer.cancel(true);
+                logger.error("Interrupted while waiting for the read-ahead of the data set to terminate", e);
+            } catch (ExecutionException | CancellationException e) {
+                logger.error("Error while reading the data set ahead", e);
+            }
+            this.producer = null;
+        }
+        // Commit the rows that have been read ahead but won't be consumed to unblock the write queue of the data set
+        commitBufferedRows();
+    }
+
+    private void commitBufferedRows() {
+        DataPoolRow row;
+        while ((row = buffer.poll()) != null) {
+            row.commit();
+        }
+    }
+
+    DataPoolRow next() {
+        bufferOccupancySum.add(buffer.size());
+        DataPoolRow row = buffer.poll();
+        if (row == null) {
+            row = waitForNextRow();
+        }
+        if (row != null) {
+            consumedRows.increment();
+        }
+        return row;
+    }
+
+    private DataPoolRow waitForNextRow() {
+        long start = System.nanoTime();
+        // The buffer is empty while the producer is running: the data source is slower than the consumers
+        boolean waiting = !producerFinished;
+        try {
+            DataPoolRow row = null;
+            boolean finished = false;
+            while (row == null && !finished) {
+                // Read the flag before polling: if the producer finished, all its rows are already in the buffer
+                finished = producerFinished;
+                row = finished ? buffer.poll() : buffer.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            if (row == null && producerError != null) {
+                throw producerError;
+            }
+            return row;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (waiting) {
+                consumerWaits.increment();
+                consumerWaitNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return the usage statistics of the read-ahead buffer
+     */
+    public Statistics getStatistics() {
+        long consumed = consumedRows.sum();
+        return new Statistics(buffer.remainingCapacity() + buffer.size(), readRows.sum(), consumed,
+            consumed > 0 ? (double) bufferOccupancySum.sum() / consumed : 0,
+            consumerWaits.sum(), consumerWaitNanos.sum() / 1_000_000, producerWaits.sum(), producerWaitNanos.sum() / 1_000_000);
+    }
+
+    /**
+     * Usage statistics of a {@link ReadAheadBuffer}.
+     * Frequent consumer waits with a low average occupancy indicate that the data source is the bottleneck.
+     * Frequent producer waits with a high average occupancy indicate that the consumers are the bottleneck.
+     */
+    public static class Statistics {
+
+        private final int depth;
+        private final long readRows;
+        private final long consumedRows;
+        private final double averageOccupancy;
+        private final long consumerWaits;
+        private final long consumerWaitMs;
+        private final long producerWaits;
+        private final long producerWaitMs;
+
+        public Statistics(int depth, long readRows, long consumedRows, double averageOccupancy, long consumerWaits,
+                          long consumerWaitMs, long producerWaits, long producerWaitMs) {
+            this.depth = depth;
+            this.readRows = readRows;
+            this.consumedRows = consumedRows;
+            this.averageOccupancy = averageOccupancy;
+            this.consumerWaits = consumerWaits;
+            this.consumerWaitMs = consumerWaitMs;
+            this.producerWaits = producerWaits;
+            this.producerWaitMs = producerWaitMs;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return the number of rows read from the data set
+         */
+        public long getReadRows() {
+            return readRows;
+        }
+
+        public long getConsumedRows() {
+            return consumedRows;
+        }
+
+        /**
+         * @return the average number of buffered rows when a row is requested
+         */
+        public double getAverageOccupancy() {
+            return averageOccupancy;
+        }
+
+        /**
+         * @return the number of times a consumer had to wait for the data source because the buffer was empty
+         */
+        public long getConsumerWaits() {
+            return consumerWaits;
+        }
+
+        public long getConsumerWaitMs() {
+            return consumerWaitMs;
+        }
+
+        /**
+         * @return the number of times the producer had to wait for the consumers because the buffer was full
+         */
+        public long getProducerWaits() {
+            return producerWaits;
+        }
+
+        public long getProducerWaitMs() {
+            return producerWaitMs;
+        }
+
+        public boolean isSourceBottleneck() {
+            return consumerWaits > producerWaits;
+        }
+
+        @Override
+        public String toString() {
+            return readRows + " rows read, " + consumedRows + " rows consumed, average occupancy " + String.format("%.1f", averageOccupancy)
+                + "/" + depth + ", consumers waited " + consumerWaits + " times (" + consumerWaitMs + "ms), producer waited "
+                + producerWaits + " times (" + producerWaitMs + "ms)" + (isSourceBottleneck() ? ". The data source is the bottleneck" : "");
+        }
+    }
+}
@@ -31,8 +31,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
+import ch.exense.commons.app.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,11 +47,35 @@ public class ThreadPool implements Closeable {
 
     private static final String EXECUTION_THREADS_AUTO_CONSUMED = "$execution_threads_auto_consumed";
 
+    /**
+     * Execution parameter enabling the execution of the workers on virtual threads. Takes precedence over {@link #VIRTUAL_THREADS_CONFIG}
+     */
+    public static final String EXECUTION_THREADS_VIRTUAL = "execution_threads_virtual";
+
+    /**
+     * Property of the step.properties enabling the execution of the workers on virtual threads by default
+     */
+    public static final String VIRTUAL_THREADS_CONFIG = "execution.engine.threads.virtual.enabled";
+
+    /**
+     * Property of the step.properties defining the maximum number of work items retrieved at once by each worker
+     * when prefetching is used (see {@link #consumeWork(Iterator, WorkerItemConsumerFactory, int, int)}).
+     * Prefetching is disabled per default (1)
+     */
+    public static final String PREFETCH_SIZE_CONFIG = "execution.engine.threads.prefetch.size";
+
+    private static final int DEFAULT_PREFETCH_SIZE = 1;
+
+    // Upper bound of the work items prefetched by all the workers of a batch. This keeps the number of uncommitted rows
+    // of data sets supporting write-back below the default size of their write queue (datasets.write.queue.maxsize)
+    private static final int MAX_PREFETCHED_WORK_ITEMS = 512;
+
     private static final Logger logger = LoggerFactory.getLogger(ThreadPool.class);
 
     private final ExecutionContext executionContext;
 
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    // Created on first use as the execution parameters aren't available when the ThreadPool is created
+    private volatile ExecutorService executorService;
 
     protected ThreadLocal<Stack<BatchContext>> batchContextStack = ThreadLocal.withInitial(() -> new Stack<BatchContext>());
 
@@ -60,7 +86,45 @@ public class ThreadPool implements Closeable {
 
     @Override
     public void close() throws IOException {
-        executorService.shutdown();
+        ExecutorService executorService = this.executorService;
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    private ExecutorService getExecutorService() {
+        ExecutorService executorService = this.executorService;
+        if (executorService == null) {
+            synchronized (this) {
+                executorService = this.executorService;
+                if (executorService == null) {
+                    if (isVirtualThreadsEnabled()) {
+                        // Virtual threads are unmounted from their carrier thread while they're sleeping or blocked in I/O
+                        // which allows to run a much higher number of workers (i.e. simulated users) than with platform threads
+                        logger.info("Running the workers of execution " + executionContext.getExecutionId() + " on virtual threads");
+                        executorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("virtual-worker-", 0).factory());
+                    } else {
+                        executorService = Executors.newCachedThreadPool();
+                    }
+                    this.executorService = executorService;
+                }
+            }
+        }
+        return executorService;
+    }
+
+    /**
+     * @return true if the workers run on virtual threads. Enabled per execution with the execution parameter {@link #EXECUTION_THREADS_VIRTUAL}
+     * or globally with the property {@link #VIRTUAL_THREADS_CONFIG}
+     */
+    public boolean isVirtualThreadsEnabled() {
+        String virtualThreads = executionContext.getVariablesManager().getVariableAsString(EXECUTION_THREADS_VIRTUAL, null);
+        if (virtualThreads != null && !virtualThreads.trim().isEmpty()) {
+            return Boolean.parseBoolean(virtualThreads.trim());
+        } else {
+            Configuration configuration = executionContext.getConfiguration();
+            return configuration != null && configuration.getPropertyAsBoolean(VIRTUAL_THREADS_CONFIG, false);
+        }
     }
 
     private static final class BatchContext {
@@ -102,6 +166,7 @@ public class ThreadPool implements Closeable {
                     workItemConsumer.accept(next);
                     // ensure that a retrieved workitem is always consumed.
                     // break if necessary after the item has been consumed (The ForBlockHandler for instance rely on this guaranty for row commit)
+                    // Prefetched work items that aren't consumed because of the interruption are passed to WorkerItemConsumerFactory.onWorkItemSkipped
                     if (batchContext.executionContext.isInterrupted() || batchContext.isInterrupted.get()) {
                         break;
                     }
@@ -139,22 +204,53 @@ public class ThreadPool implements Closeable {
 
     public <WORK_ITEM> void consumeWork(Iterator<WORK_ITEM> workItemIterator,
                                         WorkerItemConsumerFactory<WORK_ITEM> workItemConsumerFactory, int numberOfThreads) {
-        // Wrapping the iterator to avoid concurrency issues as iterators aren't ThreadSafe
-        Iterator<WORK_ITEM> threadSafeIterator = new Iterator<WORK_ITEM>() {
-            @Override
-            public boolean hasNext() {
-                throw new RuntimeException("This method shouldn't be called");
-            }
+        consumeWork(workItemIterator, workItemConsumerFactory, numberOfThreads, 1);
+    }
 
-            @Override
-            public WORK_ITEM next() {
-                synchronized (this) {
-                    return workItemIterator.next();
+    /**
+     * Consumes the work items of the provided iterator in parallel
+     *
+     * @param workItemIterator        the iterator of the work items. It doesn't have to be thread-safe and signals its end by returning null
+     *                                or throwing a {@link NoSuchElementException}
+     * @param workItemConsumerFactory the factory of the consumer of the work items
+     * @param numberOfThreads         the number of workers
+     * @param prefetchSize            the maximum number of work items retrieved at once by each worker (see {@link WorkDistributor}).
+     *                                Prefetching reduces the contention on the iterator for short work items. It shouldn't be used with iterators
+     *                                that block until a new work item is available. 1 to disable prefetching
+     */
+    public <WORK_ITEM> void consumeWork(Iterator<WORK_ITEM> workItemIterator,
+                                        WorkerItemConsumerFactory<WORK_ITEM> workItemConsumerFactory, int numberOfThreads, int prefetchSize) {
+        final BatchContext batchContext = new BatchContext(executionContext, numberOfThreads > 1);
+
+        WorkDistributor<WORK_ITEM> workDistributor;
+        Iterator<WORK_ITEM> threadSafeIterator;
+        if (numberOfThreads > 1 && prefetchSize > 1) {
+            // Stop prefetching as soon as the batch is interrupted to limit the number of work items to be skipped
+            workDistributor = new WorkDistributor<>(workItemIterator, numberOfThreads, prefetchSize,
+                    () -> batchContext.executionContext.isInterrupted() || batchContext.isInterrupted.get());
+            threadSafeIterator = null;
+        } else {
+            workDistributor = null;
+            // Wrapping the iterator to avoid concurrency issues as iterators aren't ThreadSafe
+            // A lock is used instead of a synchronized block to avoid pinning virtual threads to their carrier while the iterator blocks
+            ReentrantLock iteratorLock = new ReentrantLock();
+            threadSafeIterator = new Iterator<WORK_ITEM>() {
+                @Override
+                public boolean hasNext() {
+                    throw new RuntimeException("This method shouldn't be called");
                 }
-            }
-        };
 
-        final BatchContext batchContext = new BatchContext(executionContext, numberOfThreads > 1);
+                @Override
+                public WORK_ITEM next() {
+                    iteratorLock.lock();
+                    try {
+                        return workItemIterator.next();
+                    } finally {
+                        iteratorLock.unlock();
+                    }
+                }
+            };
+        }
 
         WorkerController<WORK_ITEM> workerController = new WorkerController<>(batchContext);
         Consumer<WORK_ITEM> workItemConsumer = workItemConsumerFactory.createWorkItemConsumer(workerController);
@@ -166,27 +262,131 @@ public class ThreadPool implements Closeable {
             ReportNode currentReportNode = executionContext.getCurrentReportNode();
             List<Future<?>> futures = new ArrayList<>();
             long parentThreadId = Thread.currentThread().getId();
+            ExecutorService executorService = getExecutorService();
             // Create one worker for each "thread"
             for (int i = 0; i < numberOfThreads; i++) {
                 int workerId = i;
+                Iterator<WORK_ITEM> workerIterator = workDistributor != null ? workDistributor.workerIterator(workerId) : threadSafeIterator;
                 futures.add(executorService.submit(() -> {
                     executionContext.associateThread(parentThreadId, currentReportNode);
-                    createWorkerAndRun(batchContext, workItemConsumer, threadSafeIterator, workerId);
+                    createWorkerAndRun(batchContext, workItemConsumer, workerIterator, workerId);
                 }));
             }
 
-            // Wait for the workers to complete
-            for (Future<?> future : futures) {
-                try {
-                    future.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("Error while waiting for worker execution to terminate. Execution ID: " + executionContext.getExecutionId(), e);
-                }
+            awaitWorkers(futures);
+
+            if (workDistributor != null) {
+                workDistributor.releaseRemainingWorkItems(workItemConsumerFactory::onWorkItemSkipped);
+            }
+        }
+    }
+
+    /**
+     * Consumes each work item of the provided iterator in its own worker, started when the work item is returned by the iterator.
+     * Contrary to {@link #consumeWork(Iterator, WorkerItemConsumerFactory, int)}, threads are only taken from the pool
+     * for the work items actually produced, which suits iterators blocking until a new work item is available.
+     *
+     * @param workItemIterator        the blocking iterator of the work items. It is only called by the current thread and signals
+     *                                its end by returning null or throwing a {@link NoSuchElementException}
+     * @param workItemConsumerFactory the factory of the consumer of the work items
+     */
+    public <WORK_ITEM> void consumeWorkOnDemand(Iterator<WORK_ITEM> workItemIterator, WorkerItemConsumerFactory<WORK_ITEM> workItemConsumerFactory) {
+        final BatchContext batchContext = new BatchContext(executionContext, true);
+
+        WorkerController<WORK_ITEM> workerController = new WorkerController<>(batchContext);
+        Consumer<WORK_ITEM> workItemConsumer = workItemConsumerFactory.createWorkItemConsumer(workerController);
+
+        ReportNode currentReportNode = executionContext.getCurrentReportNode();
+        List<Future<?>> futures = new ArrayList<>();
+        long parentThreadId = Thread.currentThread().getId();
+        ExecutorService executorService = getExecutorService();
+        try {
+            WORK_ITEM workItem;
+            while ((workItem = workItemIterator.next()) != null) {
+                int workerId = futures.size();
+                Iterator<WORK_ITEM> workerIterator = singleWorkItemIterator(workItem);
+                futures.add(executorService.submit(() -> {
+                    executionContext.associateThread(parentThreadId, currentReportNode);
+                    createWorkerAndRun(batchContext, workItemConsumer, workerIterator, workerId);
+                }));
             }
+        } catch (NoSuchElementException e) {
+            // Ignore
+        } finally {
+            awaitWorkers(futures);
+        }
+    }
+
+    /**
+     * Runs a task that doesn't execute artefacts but has to run concurrently to the workers of the execution (e.g. a producer
+     * of work items) in a thread of this pool. The thread is associated to the current report node like the threads of the workers.
+     * The caller is responsible for cancelling the returned {@link Future} if the task doesn't terminate by itself.
+     *
+     * @param task the task to be run
+     * @return the {@link Future} of the task
+     */
+    public Future<?> submitBackgroundTask(Runnable task) {
+        ReportNode currentReportNode = executionContext.getCurrentReportNode();
+        long parentThreadId = Thread.currentThread().getId();
+        return getExecutorService().submit(() -> {
+            executionContext.associateThread(parentThreadId, currentReportNode);
+            task.run();
+        });
+    }
 
+    private void awaitWorkers(List<Future<?>> futures) {
+        // Wait for the workers to complete
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Error while waiting for worker execution to terminate. Execution ID: " + executionContext.getExecutionId(), e);
+            }
         }
     }
 
+    private static <WORK_ITEM> Iterator<WORK_ITEM> singleWorkItemIterator(WORK_ITEM workItem) {
+        return new Iterator<>() {
+            private WORK_ITEM next = workItem;
+
+            @Override
+            public boolean hasNext() {
+                throw new RuntimeException("This method shouldn't be called");
+            }
+
+            @Override
+            public WORK_ITEM next() {
+                WORK_ITEM result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * @param numberOfThreads the number of workers of the batch
+     * @return the prefetch size to be used for short work items (see {@link #consumeWork(Iterator, WorkerItemConsumerFactory, int, int)})
+     * as configured by the property {@link #PREFETCH_SIZE_CONFIG}
+     */
+    public int getPrefetchSize(int numberOfThreads) {
+        return getPrefetchSize(numberOfThreads, MAX_PREFETCHED_WORK_ITEMS);
+    }
+
+    /**
+     * @param numberOfThreads         the number of workers of the batch
+     * @param maxUncommittedWorkItems the maximum number of work items that can be retrieved from the iterator before it blocks
+     *                                until the work items already retrieved are consumed (e.g. {@link step.datapool.DataSet#getMaxUncommittedRows()})
+     * @return the prefetch size to be used for short work items as configured by the property {@link #PREFETCH_SIZE_CONFIG}.
+     * The work items held by all the workers are bounded by maxUncommittedWorkItems so that a worker retrieving a batch
+     * never waits for work items prefetched by itself or by another worker. Prefetching is disabled (1) if this isn't possible
+     */
+    public int getPrefetchSize(int numberOfThreads, int maxUncommittedWorkItems) {
+        Configuration configuration = executionContext.getConfiguration();
+        int prefetchSize = configuration != null ? configuration.getPropertyAsInteger(PREFETCH_SIZE_CONFIG, DEFAULT_PREFETCH_SIZE) : DEFAULT_PREFETCH_SIZE;
+        int maxPrefetchedWorkItems = Math.min(MAX_PREFETCHED_WORK_ITEMS, maxUncommittedWorkItems);
+        return Math.max(1, Math.min(prefetchSize, maxPrefetchedWorkItems / Math.max(1, numberOfThreads)));
+    }
+
     public int getEffectiveNumberOfThreads(int specifiedNumberOfThreads) {
         return getEffectiveNumberOfThreads(specifiedNumberOfThreads, Integer.MAX_VALUE);
     }
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.threadpool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Distributes the work items of an iterator to the workers of a {@link ThreadPool} batch.
+ * <p>
+ * Instead of retrieving each work item from the shared (and not thread-safe) iterator under a lock,
+ * the workers retrieve the work items by batches into their own local queue. A worker whose local
+ * queue is empty retrieves the next batch from the iterator or, if the iterator is exhausted or
+ * currently used by another worker, steals a work item from the queue of another worker.
+ * No work items are retrieved from the iterator anymore once the batch has been stopped.
+ * <p>
+ * The work items remaining in the local queues after the workers stopped (i.e. when the batch has been
+ * interrupted) have to be released with {@link #releaseRemainingWorkItems(Consumer)}
+ *
+ * @param <T> the type of the work items
+ */
+class WorkDistributor<T> {
+
+    private final Iterator<T> iterator;
+    private final int prefetchSize;
+    private final List<ConcurrentLinkedDeque<T>> localQueues;
+    private final ReentrantLock iteratorLock = new ReentrantLock();
+    private final BooleanSupplier stopped;
+    private volatile boolean iteratorExhausted = false;
+
+    /**
+     * @param iterator        the iterator of the work items. It returns null or throws a {@link NoSuchElementException} when exhausted
+     * @param numberOfWorkers the number of workers
+     * @param prefetchSize    the maximum number of work items retrieved at once by a worker
+     * @param stopped         returns true if the batch has been stopped
+     */
+    WorkDistributor(Iterator<T> iterator, int numberOfWorkers, int prefetchSize, BooleanSupplier stopped) {
+        this.iterator = iterator;
+        this.prefetchSize = prefetchSize;
+        this.stopped = stopped;
+        this.localQueues = new ArrayList<>(numberOfWorkers);
+        for (int i = 0; i < numberOfWorkers; i++) {
+            localQueues.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * @param workerId the ID of the worker (from 0 to numberOfWorkers - 1)
+     * @return the iterator to be used by the worker
+     */
+    Iterator<T> workerIterator(int workerId) {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                throw new RuntimeException("This method shouldn't be called");
+            }
+
+            @Override
+            public T next() {
+                return WorkDistributor.this.next(workerId);
+            }
+        };
+    }
+
+    /**
+     * @param workerId the ID of the worker
+     * @return the next work item for this worker or null if all work items have been distributed
+     */
+    T next(int workerId) {
+        ConcurrentLinkedDeque<T> localQueue = localQueues.get(workerId);
+        T workItem = localQueue.pollFirst();
+        if (workItem == null && !iteratorExhausted) {
+            if (!iteratorLock.tryLock()) {
+                // Another worker is retrieving a batch. Try to steal a pending work item before waiting for it
+                workItem = steal(workerId);
+                if (workItem != null) {
+                    return workItem;
+                }
+                iteratorLock.lock();
+            }
+            try {
+                workItem = retrieveBatch(localQueue);
+            } finally {
+                iteratorLock.unlock();
+            }
+        }
+        if (workItem == null) {
+            workItem = steal(workerId);
+        }
+        return workItem;
+    }
+
+    /**
+     * Retrieves the next batch of work items from the iterator. Has to be called with the iterator lock held
+     *
+     * @return the first work item of the batch, the remaining ones being added to the provided local queue,
+     * or null if the iterator is exhausted
+     */
+    private T retrieveBatch(ConcurrentLinkedDeque<T> localQueue) {
+        T first = retrieveNext();
+        if (first != null) {
+            T next;
+            for (int i = 1; i < prefetchSize && !stopped.getAsBoolean() && (next = retrieveNext()) != null; i++) {
+                localQueue.addLast(next);
+            }
+        }
+        return first;
+    }
+
+    private T retrieveNext() {
+        if (iteratorExhausted || stopped.getAsBoolean()) {
+            return null;
+        }
+        T next;
+        try {
+            next = iterator.next();
+        } catch (NoSuchElementException e) {
+            next = null;
+        }
+        if (next == null) {
+            iteratorExhausted = true;
+        }
+        return next;
+    }
+
+    private T steal(int workerId) {
+        int numberOfWorkers = localQueues.size();
+        for (int i = 1; i < numberOfWorkers; i++) {
+            // Steal from the tail as the owner of the queue takes from the head
+            T workItem = localQueues.get((workerId + i) % numberOfWorkers).pollLast();
+            if (workItem != null) {
+                return workItem;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Passes the work items that have been retrieved from the iterator but not consumed to the provided consumer.
+     * Has to be called once all the workers stopped.
+     *
+     * @param consumer the consumer of the remaining work items
+     */
+    void releaseRemainingWorkItems(Consumer<T> consumer) {
+        for (ConcurrentLinkedDeque<T> localQueue : localQueues) {
+            T workItem;
+            while ((workItem = localQueue.pollFirst()) != null) {
+                consumer.accept(workItem);
+            }
+        }
+    }
+}
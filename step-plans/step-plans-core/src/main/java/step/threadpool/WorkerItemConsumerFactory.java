@@ -26,4 +26,14 @@ public interface WorkerItemConsumerFactory<T> {
 
     public Consumer<T> createWorkItemConsumer(WorkerController<T> control);
 
+    /**
+     * Called for each work item that has been retrieved from the iterator but won't be consumed because the work
+     * has been interrupted. This only happens when the work items are prefetched by the workers
+     * (see {@link ThreadPool#consumeWork(java.util.Iterator, WorkerItemConsumerFactory, int, int)})
+     *
+     * @param workItem the skipped work item
+     */
+    default void onWorkItemSkipped(T workItem) {
+    }
+
 }
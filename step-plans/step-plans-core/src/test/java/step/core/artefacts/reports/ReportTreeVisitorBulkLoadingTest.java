@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.artefacts.reports;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.artefacts.reports.ReportTreeVisitor.ReportNodeEvent;
+import step.core.collections.inmemory.InMemoryCollection;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ReportTreeVisitorBulkLoadingTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportTreeVisitorBulkLoadingTest.class);
+
+    private CountingReportNodeAccessor accessor;
+    private String executionId;
+    private long executionTime;
+
+    @Before
+    public void before() {
+        accessor = new CountingReportNodeAccessor();
+        executionId = new ObjectId().toHexString();
+        executionTime = 0;
+    }
+
+    @Test
+    public void testVisitOrderAndEvents() {
+        ReportNode root = newNode(new ObjectId(executionId), "root", ParentSource.MAIN);
+        // The children are created in an order that differs from the parent source order
+        ReportNode after = newNode(root.getId(), "after", ParentSource.AFTER);
+        ReportNode main1 = newNode(root.getId(), "main1", ParentSource.MAIN);
+        ReportNode before = newNode(root.getId(), "before", ParentSource.BEFORE);
+        ReportNode main2 = newNode(root.getId(), "main2", ParentSource.MAIN);
+        newNode(root.getId(), "noSource", null);
+        ReportNode main11 = newNode(main1.getId(), "main1.1", ParentSource.MAIN);
+        newNode(main11.getId(), "main1.1.1", ParentSource.MAIN);
+        newNode(main2.getId(), "main2.1", ParentSource.SUB_PLAN);
+        newNode(before.getId(), "before.1", ParentSource.MAIN);
+        newNode(after.getId(), "after.1", ParentSource.MAIN);
+
+        List<String> expected = visitRecursively(root);
+        assertEquals(List.of("root[]", "before[root]", "before.1[root/before]", "main1[root]", "main1.1[root/main1]",
+            "main1.1.1[root/main1/main1.1]", "main2[root]", "main2.1[root/main2]", "after[root]", "after.1[root/after]"), expected);
+
+        for (int batchSize : List.of(1, 2, 100)) {
+            accessor.queries.set(0);
+            List<String> actual = new ArrayList<>();
+            new ReportTreeVisitor(accessor, batchSize).visit(executionId, e -> actual.add(toString(e)));
+            assertEquals(expected, actual);
+        }
+        // With the default batch size, one query per level is required
+        accessor.queries.set(0);
+        new ReportTreeVisitor(accessor).visitNodes(executionId, n -> {
+        });
+        assertEquals(4, accessor.queries.get());
+    }
+
+    @Test
+    public void testEventHandler() {
+        ReportNode root = newNode(new ObjectId(executionId), "root", ParentSource.MAIN);
+        ReportNode child1 = newNode(root.getId(), "child1", ParentSource.MAIN);
+        newNode(child1.getId(), "child1.1", ParentSource.MAIN);
+        newNode(root.getId(), "child2", ParentSource.MAIN);
+
+        List<String> events = new ArrayList<>();
+        new ReportTreeVisitor(accessor).visit(executionId, new ReportNodeVisitorEventHandler() {
+            @Override
+            public void startReportNode(ReportNodeEvent event) {
+                event.attachData("name", event.getNode().getName());
+                events.add("start " + ReportTreeVisitorBulkLoadingTest.toString(event));
+            }
+
+            @Override
+            public void endReportNode(ReportNodeEvent event) {
+                events.add("end " + event.getData("name"));
+            }
+        });
+        assertEquals(List.of("start root[]", "start child1[root]", "start child1.1[root/child1]", "end child1.1", "end child1",
+            "start child2[root]", "end child2", "end root"), events);
+    }
+
+    @Test
+    public void testMaxDepth() {
+        ReportNode root = newNode(new ObjectId(executionId), "root", ParentSource.MAIN);
+        ReportNode child1 = newNode(root.getId(), "child1", ParentSource.MAIN);
+        newNode(child1.getId(), "child1.1", ParentSource.MAIN);
+        newNode(root.getId(), "child2", ParentSource.MAIN);
+
+        List<String> nodes = new ArrayList<>();
+        new ReportTreeVisitor(accessor).visit(executionId, 1, e -> nodes.add(e.getNode().getName()));
+        assertEquals(List.of("root", "child1", "child2"), nodes);
+        // The children of the nodes of the last level aren't queried
+        assertEquals(1, accessor.queries.get());
+
+        nodes.clear();
+        new ReportTreeVisitor(accessor).visit(executionId, 0, e -> nodes.add(e.getNode().getName()));
+        assertEquals(List.of("root"), nodes);
+    }
+
+    @Test
+    public void testRootNotFound() {
+        assertThrows(NoSuchElementException.class, () -> new ReportTreeVisitor(accessor).visitNodes(executionId, n -> {
+        }));
+        assertThrows(IllegalArgumentException.class, () -> new ReportTreeVisitor(accessor, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ReportTreeVisitor(accessor, 1, 0));
+    }
+
+    @Test
+    public void testMaxPrefetchedChildren() {
+        ReportNode root = newNode(new ObjectId(executionId), "root", ParentSource.MAIN);
+        newNode(root.getId(), "after", ParentSource.AFTER);
+        for (int i = 1; i <= 5; i++) {
+            ReportNode child = newNode(root.getId(), "main" + i, ParentSource.MAIN);
+            newNode(child.getId(), "main" + i + ".1", ParentSource.MAIN);
+        }
+        newNode(root.getId(), "before", ParentSource.BEFORE);
+
+        List<String> expected = visitRecursively(root);
+        // The children of the parents exceeding the maximum number of prefetched children are streamed in the same order
+        for (int maxPrefetchedChildren : List.of(1, 2, 100)) {
+            List<String> actual = new ArrayList<>();
+            new ReportTreeVisitor(accessor, ReportTreeVisitor.DEFAULT_BATCH_SIZE, maxPrefetchedChildren).visit(executionId, e -> actual.add(toString(e)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testTruncatedChildrenAreNotRead() {
+        ReportNode root = newNode(new ObjectId(executionId), "root", ParentSource.MAIN);
+        ReportNode big = newNode(root.getId(), "big", ParentSource.MAIN);
+        ReportNode small = newNode(root.getId(), "small", ParentSource.MAIN);
+        for (int i = 1; i <= 10; i++) {
+            newNode(big.getId(), "big." + i, ParentSource.MAIN);
+        }
+        newNode(small.getId(), "small.1", ParentSource.MAIN);
+
+        List<String> expected = visitRecursively(root);
+        List<String> actual = new ArrayList<>();
+        new ReportTreeVisitor(accessor, ReportTreeVisitor.DEFAULT_BATCH_SIZE, 2).visit(executionId, e -> actual.add(toString(e)));
+        assertEquals(expected, actual);
+        // The batched queries stop reading the children of "big" once the cap is exceeded:
+        // the children of root, the first 3 children of big and the child of small after the query is repeated without big
+        assertEquals(6, accessor.readNodes.get());
+    }
+
+    /**
+     * Compares the number of queries and the duration of the visit of a report tree
+     * with one query per node and with the default batch size
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmark() {
+        ReportNode root = newNode(new ObjectId(executionId), "root", ParentSource.MAIN);
+        int nodes = createTree(root.getId(), 2_000, 10, 4);
+        for (int batchSize : List.of(1, ReportTreeVisitor.DEFAULT_BATCH_SIZE)) {
+            accessor.queries.set(0);
+            AtomicInteger visitedNodes = new AtomicInteger();
+            long t1 = System.currentTimeMillis();
+            new ReportTreeVisitor(accessor, batchSize).visitNodes(executionId, n -> visitedNodes.incrementAndGet());
+            long duration = System.currentTimeMillis() - t1;
+            assertEquals(nodes + 1, visitedNodes.get());
+            logger.info("Batch size {}: visited {} report nodes in {}ms with {} queries", batchSize, visitedNodes.get(), duration, accessor.queries.get());
+        }
+    }
+
+    private int createTree(ObjectId parentId, int nodes, int fanOut, int depth) {
+        List<ObjectId> level = List.of(parentId);
+        int created = 0;
+        for (int d = 0; d < depth && created < nodes; d++) {
+            List<ObjectId> nextLevel = new ArrayList<>();
+            for (ObjectId id : level) {
+                for (int i = 0; i < fanOut && created < nodes; i++) {
+                    nextLevel.add(newNode(id, "node", ParentSource.MAIN).getId());
+                    created++;
+                }
+            }
+            level = nextLevel;
+        }
+        return created;
+    }
+
+    private ReportNode newNode(ObjectId parentId, String name, ParentSource parentSource) {
+        ReportNode node = new ReportNode();
+        node.setId(new ObjectId());
+        node.setParentID(parentId);
+        node.setParentSource(parentSource);
+        node.setExecutionID(executionId);
+        node.setName(name);
+        node.setExecutionTime(executionTime++);
+        accessor.save(node);
+        return node;
+    }
+
+    /**
+     * Reference implementation querying the children of each node by parent source
+     */
+    private List<String> visitRecursively(ReportNode root) {
+        List<String> result = new ArrayList<>();
+        visitRecursively(root, new Stack<>(), result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void visitRecursively(ReportNode node, Stack<ReportNode> stack, List<String> result) {
+        ReportNodeEvent event = new ReportNodeEvent();
+        event.node = node;
+        event.stack = (Stack<ReportNode>) stack.clone();
+        result.add(toString(event));
+        stack.push(node);
+        for (ParentSource source : ParentSource.values()) {
+            accessor.getChildrenByParentSource(node.getId().toString(), source).forEachRemaining(child -> visitRecursively(child, stack, result));
+        }
+        stack.pop();
+    }
+
+    private static String toString(ReportNodeEvent event) {
+        return event.getNode().getName() + event.getStack().stream().map(ReportNode::getName).collect(Collectors.joining("/", "[", "]"));
+    }
+
+    private static class CountingReportNodeAccessor extends ReportNodeAccessorImpl {
+
+        private final AtomicInteger queries = new AtomicInteger();
+        private final AtomicInteger readNodes = new AtomicInteger();
+
+        public CountingReportNodeAccessor() {
+            super(new InMemoryCollection<>());
+        }
+
+        @Override
+        public Iterator<ReportNode> getChildrenByParentIDs(List<String> parentIDs) {
+            queries.incrementAndGet();
+            Iterator<ReportNode> iterator = super.getChildrenByParentIDs(parentIDs);
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public ReportNode next() {
+                    readNodes.incrementAndGet();
+                    return iterator.next();
+                }
+            };
+        }
+    }
+}
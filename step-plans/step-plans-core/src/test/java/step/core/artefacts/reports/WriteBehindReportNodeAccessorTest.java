@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.artefacts.reports;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.collections.Collection;
+import step.core.collections.Filters;
+import step.core.collections.filesystem.FilesystemCollection;
+import step.core.collections.inmemory.InMemoryCollection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindReportNodeAccessorTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindReportNodeAccessorTest.class);
+
+    @Test
+    public void testCoalescing() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+            node.setStatus(ReportNodeStatus.RUNNING);
+            accessor.save(node);
+            node.setStatus(ReportNodeStatus.PASSED);
+            accessor.save(node);
+
+            // Nothing has been written yet
+            assertEquals(0, collection.count(Filters.empty(), null));
+            // but the pending node is visible to point lookups
+            assertEquals(ReportNodeStatus.PASSED, accessor.get(node.getId()).getStatus());
+            assertEquals(node.getId(), accessor.getReportNodeByParentIDAndArtefactID(node.getParentID(), node.getArtefactID()).getId());
+
+            accessor.flush();
+            assertEquals(2, accessor.getSaveCount());
+            assertEquals(1, accessor.getWriteCount());
+            assertEquals(ReportNodeStatus.PASSED, new ReportNodeAccessorImpl(collection).get(node.getId()).getStatus());
+        }
+    }
+
+    @Test
+    public void testSnapshotIsolation() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+            node.setStatus(ReportNodeStatus.RUNNING);
+            accessor.save(node);
+            // Changes made after the save must not be persisted until the node is saved again
+            node.setStatus(ReportNodeStatus.FAILED);
+            accessor.flush();
+            assertEquals(ReportNodeStatus.RUNNING, new ReportNodeAccessorImpl(collection).get(node.getId()).getStatus());
+        }
+    }
+
+    @Test
+    public void testTreeQueriesFlushPendingWrites() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ObjectId parentId = new ObjectId();
+            accessor.save(newReportNode(parentId, new ObjectId()));
+            accessor.save(newReportNode(parentId, new ObjectId()));
+
+            List<ReportNode> children = new ArrayList<>();
+            accessor.getChildren(parentId).forEachRemaining(children::add);
+            assertEquals(2, children.size());
+        }
+    }
+
+    @Test
+    public void testExecutionQueriesFlushPendingWrites() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+            node.setArtefactHash("hash");
+            accessor.save(node);
+            assertEquals(1, accessor.countReportNodesByArtefactHash("execution", "hash"));
+
+            accessor.save(newReportNode(new ObjectId(), new ObjectId()));
+            accessor.getReportNodesByExecutionIDAndClass("execution", ReportNode.class.getName(), 10).close();
+            assertEquals(2, collection.count(Filters.empty(), null));
+
+            ReportNode nodeWithAttribute = newReportNode(new ObjectId(), new ObjectId());
+            nodeWithAttribute.addCustomAttribute("key", "value");
+            accessor.save(nodeWithAttribute);
+            accessor.getReportNodesByExecutionIDAndCustomAttribute("execution", Map.of("key", "value")).close();
+            assertEquals(3, collection.count(Filters.empty(), null));
+        }
+    }
+
+    @Test
+    public void testAccessorQueriesFlushPendingWrites() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            accessor.save(newReportNode(new ObjectId(), new ObjectId()));
+            assertEquals(1, accessor.stream().count());
+
+            ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+            accessor.save(node);
+            assertEquals(1, accessor.findByIds(List.of(node.getId().toHexString())).count());
+
+            accessor.save(newReportNode(new ObjectId(), new ObjectId()));
+            List<ReportNode> all = new ArrayList<>();
+            accessor.getAll().forEachRemaining(all::add);
+            assertEquals(3, all.size());
+
+            accessor.save(newReportNode(new ObjectId(), new ObjectId()));
+            assertEquals(4, accessor.getRange(0, 10).size());
+        }
+    }
+
+    @Test
+    public void testRemovePendingNode() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+            accessor.save(node);
+            accessor.remove(node.getId());
+            assertNull(accessor.getReportNodeByParentIDAndArtefactID(node.getParentID(), node.getArtefactID()));
+            accessor.flush();
+            assertEquals(0, accessor.getWriteCount());
+        }
+    }
+
+    @Test
+    public void testBatchSizeAndBackpressure() throws InterruptedException {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 10, 60000, 20)) {
+            for (int i = 0; i < 1000; i++) {
+                accessor.save(newReportNode(new ObjectId(), new ObjectId()));
+            }
+            // The flush interval is never reached. The writes are only triggered by the batch size and the backpressure
+            // At most the pending nodes and one batch in flight may remain unwritten
+            assertTrue(accessor.getWriteCount() >= 1000 - 2 * 20);
+        }
+    }
+
+    @Test
+    public void testCloseFlushesAndWritesThrough() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000);
+        ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+        accessor.save(node);
+        accessor.close();
+        assertNotNull(new ReportNodeAccessorImpl(collection).get(node.getId()));
+
+        ReportNode node2 = newReportNode(new ObjectId(), new ObjectId());
+        accessor.save(node2);
+        assertNotNull(new ReportNodeAccessorImpl(collection).get(node2.getId()));
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() {
+        AtomicInteger remainingFailures = new AtomicInteger(1);
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>() {
+            @Override
+            public void save(Iterable<ReportNode> entities) {
+                if (remainingFailures.getAndDecrement() > 0) {
+                    throw new RuntimeException("Write failed");
+                }
+                super.save(entities);
+            }
+        };
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ReportNode node1 = newReportNode(new ObjectId(), new ObjectId());
+            node1.setStatus(ReportNodeStatus.RUNNING);
+            accessor.save(node1);
+            ReportNode node2 = newReportNode(new ObjectId(), new ObjectId());
+            accessor.save(node2);
+
+            assertThrows(RuntimeException.class, accessor::flush);
+            assertNotNull(accessor.getLastFlushError());
+            // The nodes of the failed write remain pending and visible
+            assertEquals(node1.getId(), accessor.getReportNodeByParentIDAndArtefactID(node1.getParentID(), node1.getArtefactID()).getId());
+            assertEquals(0, collection.count(Filters.empty(), null));
+
+            // A newer snapshot saved after the failure takes precedence over the failed one
+            node1.setStatus(ReportNodeStatus.PASSED);
+            accessor.save(node1);
+
+            accessor.flush();
+            assertNull(accessor.getLastFlushError());
+            assertEquals(2, accessor.getWriteCount());
+            ReportNodeAccessorImpl reportNodeAccessor = new ReportNodeAccessorImpl(collection);
+            assertEquals(ReportNodeStatus.PASSED, reportNodeAccessor.get(node1.getId()).getStatus());
+            assertNotNull(reportNodeAccessor.get(node2.getId()));
+        }
+    }
+
+    @Test
+    public void testCloseRaisesWriteError() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>() {
+            @Override
+            public void save(Iterable<ReportNode> entities) {
+                throw new RuntimeException("Write failed");
+            }
+        };
+        WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000);
+        accessor.save(newReportNode(new ObjectId(), new ObjectId()));
+        assertThrows(RuntimeException.class, accessor::close);
+    }
+
+    @Test
+    public void testSnapshotKeepsTransientState() {
+        InMemoryCollection<ReportNode> collection = new InMemoryCollection<>();
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(collection, 100, 60000, 1000)) {
+            ReportNode node = newReportNode(new ObjectId(), new ObjectId());
+            node.setOrphan(true);
+            accessor.save(node);
+            node.setOrphan(false);
+            assertTrue(accessor.get(node.getId()).isOrphan());
+        }
+    }
+
+    /**
+     * Compares the number of report node writes per second of the synchronous and the write-behind accessors.
+     * Each simulated artefact execution saves its report node twice (before and after the execution).
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmark() throws Exception {
+        int threads = 20;
+        int nodesPerThread = 2000;
+
+        benchmark("in-memory/synchronous", new ReportNodeAccessorImpl(new InMemoryCollection<>()), threads, nodesPerThread);
+        try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(new InMemoryCollection<>(), 500, 1000, 10000)) {
+            benchmark("in-memory/write-behind", accessor, threads, nodesPerThread);
+        }
+
+        File folder = Files.createTempDirectory("reportNodes").toFile();
+        try {
+            benchmark("filesystem/synchronous", new ReportNodeAccessorImpl(newFilesystemCollection(folder, "sync")), threads, nodesPerThread / 10);
+            try (WriteBehindReportNodeAccessor accessor = new WriteBehindReportNodeAccessor(newFilesystemCollection(folder, "writebehind"), 500, 1000, 10000)) {
+                benchmark("filesystem/write-behind", accessor, threads, nodesPerThread / 10);
+            }
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    private void benchmark(String name, ReportNodeAccessor accessor, int threads, int nodesPerThread) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        long t1 = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executorService.submit(() -> {
+                ObjectId parentId = new ObjectId();
+                for (int i = 0; i < nodesPerThread; i++) {
+                    ReportNode node = newReportNode(parentId, new ObjectId());
+                    node.setStatus(ReportNodeStatus.RUNNING);
+                    accessor.save(node);
+                    node.setStatus(ReportNodeStatus.PASSED);
+                    node.setDuration(1);
+                    accessor.save(node);
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.MINUTES));
+        if (accessor instanceof WriteBehindReportNodeAccessor) {
+            ((WriteBehindReportNodeAccessor) accessor).flush();
+        }
+        long durationMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t1));
+        long saves = 2L * threads * nodesPerThread;
+        logger.info("{}: {} report node saves in {}ms ({} saves/s)", name, saves, durationMs, saves * 1000 / durationMs);
+    }
+
+    private static ReportNode newReportNode(ObjectId parentId, ObjectId artefactId) {
+        ReportNode node = new ReportNode();
+        node.setId(new ObjectId());
+        node.setParentID(parentId);
+        node.setArtefactID(artefactId);
+        node.setExecutionID("execution");
+        node.setName("node");
+        node.setExecutionTime(System.currentTimeMillis());
+        node.setStatus(ReportNodeStatus.NORUN);
+        return node;
+    }
+
+    private static Collection<ReportNode> newFilesystemCollection(File folder, String name) {
+        File repository = new File(folder, name);
+        repository.mkdirs();
+        return new FilesystemCollection<>(repository, ReportNode.class);
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.miscellaneous;
+
+import org.junit.Assert;
+import org.junit.Test;
+import step.grid.io.AttachmentHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+public class HexContentInputStreamTest {
+
+    @Test
+    public void testRead() throws IOException {
+        byte[] content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        String hexContent = AttachmentHelper.generateAttachmentFromByteArray(content, "content.bin").getHexContent();
+
+        try (InputStream inputStream = new HexContentInputStream(hexContent)) {
+            Assert.assertEquals(content.length, inputStream.available());
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            inputStream.transferTo(outputStream);
+            Assert.assertArrayEquals(content, outputStream.toByteArray());
+            Assert.assertEquals(-1, inputStream.read());
+        }
+    }
+
+    @Test
+    public void testSingleBytes() throws IOException {
+        InputStream inputStream = new HexContentInputStream("00ff7Fa0");
+        Assert.assertEquals(0x00, inputStream.read());
+        Assert.assertEquals(0xff, inputStream.read());
+        Assert.assertEquals(1, inputStream.skip(1));
+        Assert.assertEquals(0xa0, inputStream.read());
+        Assert.assertEquals(-1, inputStream.read());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Assert.assertEquals(-1, new HexContentInputStream("").read());
+        Assert.assertEquals(-1, new HexContentInputStream(null).read(new byte[10], 0, 10));
+    }
+
+    @Test
+    public void testInvalidContent() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new HexContentInputStream("abc"));
+        Assert.assertThrows(IOException.class, () -> new HexContentInputStream("0g").read());
+    }
+}
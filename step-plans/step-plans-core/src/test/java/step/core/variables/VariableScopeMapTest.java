@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.core.variables;
+
+import ch.exense.commons.test.categories.PerformanceTest;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.artefacts.reports.ReportNode;
+import step.core.execution.ExecutionContext;
+import step.core.execution.ExecutionContextBindings;
+import step.core.execution.ExecutionEngine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class VariableScopeMapTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VariableScopeMapTest.class);
+
+    private ExecutionContext context;
+    private VariablesManager variablesManager;
+
+    @Before
+    public void before() {
+        context = ExecutionEngine.builder().build().newExecutionContext();
+        variablesManager = context.getVariablesManager();
+    }
+
+    @Test
+    public void testScopeChain() {
+        ReportNode root = context.getReport();
+        ReportNode child = newChildNode(root);
+        variablesManager.putVariable(root, "var1", "root1");
+        variablesManager.putVariable(root, "var2", "root2");
+        variablesManager.putVariable(child, "var1", "child1");
+        variablesManager.putVariable(child, "nullVar", null);
+
+        Map<String, Object> scope = new VariableScopeMap(variablesManager, child);
+        assertEquals("child1", scope.get("var1"));
+        assertEquals("root2", scope.get("var2"));
+        assertNull(scope.get("undefined"));
+        assertFalse(scope.containsKey("undefined"));
+        assertTrue(scope.containsKey("nullVar"));
+        assertNull(scope.get("nullVar"));
+
+        // The view is equivalent to the materialized variables
+        assertEquals(variablesManager.getAllVariables(child), new HashMap<>(scope));
+    }
+
+    @Test
+    public void testInvalidation() {
+        ReportNode root = context.getReport();
+        ReportNode child = newChildNode(root);
+        context.setCurrentReportNode(child);
+        variablesManager.putVariable(root, "var1", "root1");
+
+        Map<String, Object> scope = new VariableScopeMap(variablesManager, child);
+        assertEquals("root1", scope.get("var1"));
+        assertFalse(scope.containsKey("var2"));
+        assertEquals(1, scope.size());
+
+        // Shadowing the variable in the child scope
+        variablesManager.putVariable(child, "var1", "child1");
+        variablesManager.putVariable(child, "var2", "child2");
+        assertEquals("child1", scope.get("var1"));
+        assertEquals("child2", scope.get("var2"));
+        assertEquals(2, scope.size());
+
+        // Updating the variable
+        variablesManager.updateVariable("var1", "updated");
+        assertEquals("updated", scope.get("var1"));
+        assertEquals("updated", new HashMap<>(scope).get("var1"));
+
+        // Removing the variable
+        variablesManager.removeVariable(child, "var1");
+        assertEquals("root1", scope.get("var1"));
+    }
+
+    @Test
+    public void testDefaultsAndOverrides() {
+        ReportNode root = context.getReport();
+        variablesManager.putVariable(root, "var1", "variable");
+        variablesManager.putVariable(root, "plan", "variable");
+
+        Map<String, Object> scope = new VariableScopeMap(variablesManager, root, Map.of("var1", "default", "default", "default"), Map.of("plan", "override"));
+        assertEquals("variable", scope.get("var1"));
+        assertEquals("default", scope.get("default"));
+        assertEquals("override", scope.get("plan"));
+        assertEquals(Map.of("var1", "variable", "default", "default", "plan", "override"), new HashMap<>(scope));
+    }
+
+    @Test
+    public void testSiblingScopes() {
+        ReportNode root = context.getReport();
+        ReportNode child1 = newChildNode(root);
+        ReportNode child2 = newChildNode(root);
+        variablesManager.putVariable(root, "var1", "root1");
+
+        Map<String, Object> scope = new VariableScopeMap(variablesManager, child1);
+        assertEquals("root1", scope.get("var1"));
+        // Variables declared in a sibling scope aren't visible
+        variablesManager.putVariable(child2, "var1", "child2");
+        assertEquals("root1", scope.get("var1"));
+        assertEquals(Map.of("var1", "root1"), new HashMap<>(scope));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        ReportNode root = context.getReport();
+        ReportNode child = newChildNode(root);
+        variablesManager.putVariable(root, "var1", "root1");
+        Map<String, Object> scope = new VariableScopeMap(variablesManager, child);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = executorService.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    variablesManager.putVariable(child, "var" + (i % 10), i);
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(executorService.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        assertNotNull(scope.get("var1"));
+                        scope.size();
+                    }
+                }));
+            }
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(variablesManager.getAllVariables(child), new HashMap<>(scope));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        new VariableScopeMap(variablesManager, context.getReport()).put("var", "value");
+    }
+
+    /**
+     * Compares the allocations and the duration of the bindings resolution with the materialization
+     * of all the variables (former implementation of {@link ExecutionContextBindings#get(ExecutionContext)})
+     * and with the scope view. The scope chain simulates a nested ThreadGroup/For/For plan with typical variables
+     * declared at each level.
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmark() {
+        ReportNode node = context.getReport();
+        for (int i = 0; i < 100; i++) {
+            // Parameters declared at the root
+            variablesManager.putVariable(node, "parameter" + i, "value" + i);
+        }
+        for (int level = 0; level < 8; level++) {
+            node = newChildNode(node);
+            variablesManager.putVariable(node, "userId", level);
+            variablesManager.putVariable(node, "gcounter", level);
+            variablesManager.putVariable(node, "item" + level, level);
+            variablesManager.putVariable(node, "currentArtefact", "artefact");
+            variablesManager.putVariable(node, "currentReport", "report");
+            variablesManager.putVariable(node, "report", "report");
+        }
+        context.setCurrentReportNode(node);
+
+        int iterations = 200_000;
+        // Each artefact resolves its bindings 4 times (before, main, after and dynamic bean evaluation) and looks up a few variables
+        Runnable materialized = () -> {
+            Map<String, Object> bindings = new HashMap<>(variablesManager.getAllVariables());
+            bindings.get("item3");
+            bindings.get("gcounter");
+            bindings.get("parameter10");
+        };
+        Runnable scope = () -> {
+            Map<String, Object> bindings = ExecutionContextBindings.get(context);
+            bindings.get("item3");
+            bindings.get("gcounter");
+            bindings.get("parameter10");
+        };
+        // Warm-up
+        measure("materialized", materialized, iterations, false);
+        measure("scope", scope, iterations, false);
+
+        long materializedBytes = measure("materialized", materialized, iterations, true);
+        long scopeBytes = measure("scope", scope, iterations, true);
+        assertTrue(scopeBytes < materializedBytes);
+    }
+
+    private long measure(String name, Runnable runnable, int iterations, boolean log) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long t1 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+        long durationNs = System.nanoTime() - t1;
+        long bytesPerOp = (threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore) / iterations;
+        if (log) {
+            logger.info("{}: {} bytes/op, {} ns/op", name, bytesPerOp, durationNs / iterations);
+        }
+        return bytesPerOp;
+    }
+
+    private ReportNode newChildNode(ReportNode parent) {
+        ReportNode child = new ReportNode();
+        child.setId(new ObjectId());
+        child.setParentID(parent.getId());
+        context.getReportNodeCache().put(child);
+        return child;
+    }
+}
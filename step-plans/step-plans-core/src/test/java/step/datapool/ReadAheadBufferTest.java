@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (C) 2020, exense GmbH
+ *
+ * This file is part of STEP
+ *
+ * STEP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * STEP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with STEP.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package step.datapool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import step.core.execution.ExecutionContext;
+import step.core.execution.ExecutionEngine;
+import step.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReadAheadBufferTest {
+
+    public static class TestConfiguration extends DataPoolConfiguration {
+
+    }
+
+    private static class TestDataSet extends DataSet<TestConfiguration> {
+
+        private final int rows;
+        private final long readDurationMs;
+        private final boolean writeQueue;
+        private final AtomicInteger writtenRows = new AtomicInteger();
+        private int cursor;
+
+        public TestDataSet(int rows, long readDurationMs, boolean writeQueue) {
+            super(new TestConfiguration());
+            this.rows = rows;
+            this.readDurationMs = readDurationMs;
+            this.writeQueue = writeQueue;
+        }
+
+        @Override
+        public void reset() {
+            cursor = 0;
+        }
+
+        @Override
+        public Object next_() {
+            if (readDurationMs > 0) {
+                sleep(readDurationMs);
+            }
+            return cursor < rows ? cursor++ : null;
+        }
+
+        @Override
+        public void addRow(Object row) {
+
+        }
+
+        @Override
+        public void writeRow(DataPoolRow row) {
+            writtenRows.incrementAndGet();
+        }
+
+        @Override
+        protected boolean isWriteQueueSupportEnabled() {
+            return writeQueue;
+        }
+    }
+
+    protected ExecutionContext newExecutionContext() {
+        return ExecutionEngine.builder().build().newExecutionContext();
+    }
+
+    private TestDataSet newReadAheadDataSet(TestDataSet dataSet, int depth) {
+        ExecutionContext context = newExecutionContext();
+        dataSet.setContext(context);
+        dataSet.enableRowCommit(true);
+        dataSet.init();
+        dataSet.enableReadAhead(depth, new ThreadPool(context));
+        return dataSet;
+    }
+
+    @Test
+    public void testReadAhead() {
+        TestDataSet dataSet = newReadAheadDataSet(new TestDataSet(100, 0, false), 10);
+        List<Object> values = new ArrayList<>();
+        DataPoolRow row;
+        while ((row = dataSet.next()) != null) {
+            values.add(row.getValue());
+            row.commit();
+        }
+        // Subsequent calls keep returning null
+        Assert.assertNull(dataSet.next());
+        dataSet.close();
+
+        Assert.assertEquals(100, values.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, values.get(i));
+        }
+        Assert.assertEquals(100, dataSet.getReadAheadStatistics().getConsumedRows());
+    }
+
+    @Test
+    public void testParallelConsumers() throws InterruptedException {
+        TestDataSet testDataSet = new TestDataSet(1000, 0, true);
+        TestDataSet dataSet = newReadAheadDataSet(testDataSet, 16);
+        ConcurrentHashMap<Object, AtomicInteger> values = new ConcurrentHashMap<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executorService.submit(() -> {
+                DataPoolRow row;
+                while ((row = dataSet.next()) != null) {
+                    values.computeIfAbsent(row.getValue(), k -> new AtomicInteger()).incrementAndGet();
+                    row.commit();
+                }
+            });
+        }
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        dataSet.close();
+
+        Assert.assertEquals(1000, values.size());
+        Assert.assertTrue(values.values().stream().allMatch(v -> v.get() == 1));
+        Assert.assertEquals(1000, testDataSet.writtenRows.get());
+    }
+
+    @Test
+    public void testWriteQueueWithUnconsumedRows() {
+        TestDataSet testDataSet = new TestDataSet(100, 0, true);
+        TestDataSet dataSet = newReadAheadDataSet(testDataSet, 10);
+        for (int i = 0; i < 5; i++) {
+            dataSet.next().commit();
+        }
+        long start = System.currentTimeMillis();
+        dataSet.close();
+
+        // The rows read ahead but not consumed are committed at close and don't block the write queue
+        Assert.assertTrue(System.currentTimeMillis() - start < 10_000);
+        long readRows = dataSet.getReadAheadStatistics().getReadRows();
+        Assert.assertTrue(readRows >= 5);
+        Assert.assertEquals(readRows, testDataSet.writtenRows.get());
+    }
+
+    @Test(timeout = 60_000)
+    public void testBlockingWriteQueueSmallerThanDepth() {
+        TestDataSet testDataSet = new TestDataSet(1000, 0, true) {
+            @Override
+            protected boolean isWriteQueueBlocking() {
+                return true;
+            }
+        };
+        ExecutionContext context = newExecutionContext();
+        context.getConfiguration().putProperty("datasets.write.queue.maxsize", "5");
+        testDataSet.setContext(context);
+        testDataSet.enableRowCommit(true);
+        testDataSet.init();
+        // The read-ahead depth exceeds the capacity of the write queue: the producer blocks on the full write queue
+        // whose processor waits for the commit of a buffered row
+        testDataSet.enableReadAhead(50, new ThreadPool(context));
+        for (int i = 0; i < 3; i++) {
+            testDataSet.next().commit();
+        }
+        testDataSet.close();
+
+        long readRows = testDataSet.getReadAheadStatistics().getReadRows();
+        Assert.assertTrue(readRows >= 3);
+        Assert.assertEquals(readRows, testDataSet.writtenRows.get());
+    }
+
+    @Test
+    public void testReadError() {
+        TestDataSet testDataSet = new TestDataSet(100, 0, false) {
+            @Override
+            public Object next_() {
+                Object next = super.next_();
+                if (next.equals(2)) {
+                    throw new RuntimeException("Read error");
+                }
+                return next;
+            }
+        };
+        TestDataSet dataSet = newReadAheadDataSet(testDataSet, 10);
+        Assert.assertEquals(0, dataSet.next().getValue());
+        Assert.assertEquals(1, dataSet.next().getValue());
+        RuntimeException exception = Assert.assertThrows(RuntimeException.class, dataSet::next);
+        Assert.assertEquals("Read error", exception.getMessage());
+        dataSet.close();
+    }
+
+    @Test
+    public void testStatisticsSlowSource() {
+        TestDataSet dataSet = newReadAheadDataSet(new TestDataSet(20, 5, false), 10);
+        while (dataSet.next() != null) {
+        }
+        dataSet.close();
+
+        ReadAheadBuffer.Statistics statistics = dataSet.getReadAheadStatistics();
+        Assert.assertEquals(20, statistics.getConsumedRows());
+        Assert.assertTrue(statistics.getConsumerWaits() > 0);
+        Assert.assertTrue(statistics.isSourceBottleneck());
+    }
+
+    @Test
+    public void testStatisticsSlowConsumer() {
+        TestDataSet dataSet = newReadAheadDataSet(new TestDataSet(20, 0, false), 5);
+        DataPoolRow row;
+        while ((row = dataSet.next()) != null) {
+            sleep(5);
+            row.commit();
+        }
+        dataSet.close();
+
+        ReadAheadBuffer.Statistics statistics = dataSet.getReadAheadStatistics();
+        Assert.assertEquals(20, statistics.getConsumedRows());
+        Assert.assertTrue(statistics.getProducerWaits() > 0);
+        Assert.assertFalse(statistics.isSourceBottleneck());
+        Assert.assertTrue(statistics.getAverageOccupancy() > 1);
+    }
+
+    @Test
+    public void testInvalidDepth() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new ReadAheadBuffer(() -> null, 0));
+    }
+
+    private static void sleep(long durationMs) {
+        try {
+            Thread.sleep(durationMs);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -21,8 +21,11 @@ package step.threadpool;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.OptionalInt;
 import java.util.concurrent.ConcurrentHashMap;
@@ -32,9 +35,14 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
+import ch.exense.commons.test.categories.PerformanceTest;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 
 import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import step.core.artefacts.handlers.CancellableSleep;
 import step.core.artefacts.reports.ReportNode;
 import step.core.execution.ExecutionContext;
 import step.core.execution.ExecutionEngine;
@@ -43,6 +51,8 @@ import step.threadpool.ThreadPool.WorkerController;
 
 public class ThreadPoolTest {
 
+    private static final Logger logger = LoggerFactory.getLogger(ThreadPoolTest.class);
+
     protected ExecutionContext newExecutionContext() {
         return ExecutionEngine.builder().build().newExecutionContext();
     }
@@ -358,4 +368,294 @@ public class ThreadPoolTest {
             }
         }
     }
+
+    @Test
+    public void testVirtualThreads() {
+        ExecutionContext context = newExecutionContext();
+        ReportNode rootReportNode = context.getReport();
+        context.getVariablesManager().putVariable(rootReportNode, ThreadPool.EXECUTION_THREADS_VIRTUAL, "true");
+        context.setCurrentReportNode(rootReportNode);
+        ThreadPool threadPool = new ThreadPool(context);
+        Assert.assertTrue(threadPool.isVirtualThreadsEnabled());
+
+        List<String> itemList = Arrays.asList("item1", "item2", "item3", "item4");
+        ConcurrentHashMap<String, Boolean> virtualByItem = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, ReportNode> reportNodeByItem = new ConcurrentHashMap<>();
+        AtomicInteger nestedItems = new AtomicInteger();
+
+        threadPool.consumeWork(itemList.iterator(), new WorkerItemConsumerFactory<String>() {
+            @Override
+            public Consumer<String> createWorkItemConsumer(WorkerController<String> control) {
+                return item -> {
+                    virtualByItem.put(item, Thread.currentThread().isVirtual());
+                    // The report node of the parent thread is associated to the worker
+                    reportNodeByItem.put(item, context.getCurrentReportNode());
+                    Assert.assertTrue(control.isParallel());
+                    // Nested batches are pushed to the batch context stack of the virtual thread
+                    threadPool.consumeWork(Arrays.asList(1, 2).iterator(), new WorkerItemConsumerFactory<Integer>() {
+                        @Override
+                        public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> nestedControl) {
+                            return nestedItem -> {
+                                Assert.assertFalse(nestedControl.isParallel());
+                                nestedItems.incrementAndGet();
+                            };
+                        }
+                    }, 1);
+                    Assert.assertTrue(control.getWorkerId() >= 0);
+                };
+            }
+        }, threadPool.getEffectiveNumberOfThreads(2));
+
+        Assert.assertEquals(4, virtualByItem.size());
+        Assert.assertTrue(virtualByItem.values().stream().allMatch(v -> v));
+        Assert.assertTrue(reportNodeByItem.values().stream().allMatch(n -> n == rootReportNode));
+        Assert.assertEquals(8, nestedItems.get());
+    }
+
+    @Test
+    public void testVirtualThreadsDisabledByDefault() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+        Assert.assertFalse(threadPool.isVirtualThreadsEnabled());
+
+        ConcurrentHashMap<String, Boolean> virtualByItem = new ConcurrentHashMap<>();
+        threadPool.consumeWork(Arrays.asList("item1", "item2").iterator(), new WorkerItemConsumerFactory<String>() {
+            @Override
+            public Consumer<String> createWorkItemConsumer(WorkerController<String> control) {
+                return item -> virtualByItem.put(item, Thread.currentThread().isVirtual());
+            }
+        }, 2);
+        Assert.assertTrue(virtualByItem.values().stream().noneMatch(v -> v));
+    }
+
+    @Test
+    public void testVirtualThreadsInterrupt() {
+        ExecutionContext context = newExecutionContext();
+        context.getVariablesManager().putVariable(context.getReport(), ThreadPool.EXECUTION_THREADS_VIRTUAL, "true");
+        ThreadPool threadPool = new ThreadPool(context);
+
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+        AtomicInteger processedItems = new AtomicInteger();
+        threadPool.consumeWork(items.iterator(), new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return item -> {
+                    processedItems.incrementAndGet();
+                    if (item == 10) {
+                        context.updateStatus(ExecutionStatus.ABORTING);
+                    }
+                    CancellableSleep.sleep(10, context::isInterrupted, ThreadPoolTest.class);
+                };
+            }
+        }, 4);
+        // Each worker stops after the item it is consuming when the execution is aborted
+        Assert.assertTrue(processedItems.get() < 1000);
+    }
+
+    @Test
+    public void testPrefetch() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+
+        int iterations = 10000;
+        ConcurrentHashMap<Integer, AtomicInteger> processedItems = new ConcurrentHashMap<>();
+        ConcurrentHashMap<Integer, AtomicInteger> itemsByWorker = new ConcurrentHashMap<>();
+        threadPool.consumeWork(new IntegerSequenceIterator(1, iterations, 1), new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return item -> {
+                    processedItems.computeIfAbsent(item, k -> new AtomicInteger()).incrementAndGet();
+                    itemsByWorker.computeIfAbsent(control.getWorkerId(), k -> new AtomicInteger()).incrementAndGet();
+                };
+            }
+        }, 8, 16);
+
+        // Each item is consumed exactly once
+        Assert.assertEquals(iterations, processedItems.size());
+        Assert.assertTrue(processedItems.values().stream().allMatch(v -> v.get() == 1));
+        Assert.assertEquals(iterations, itemsByWorker.values().stream().mapToInt(AtomicInteger::get).sum());
+    }
+
+    @Test
+    public void testPrefetchWorkStealing() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+
+        // Less items than the prefetch size: the first worker retrieves all the items and the other workers have to steal them
+        List<Integer> items = Arrays.asList(1, 2, 3, 4);
+        ConcurrentHashMap<Integer, Integer> workerByItem = new ConcurrentHashMap<>();
+        threadPool.consumeWork(items.iterator(), new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return item -> {
+                    workerByItem.put(item, control.getWorkerId());
+                    CancellableSleep.sleep(200, context::isInterrupted, ThreadPoolTest.class);
+                };
+            }
+        }, 4, 16);
+
+        Assert.assertEquals(4, workerByItem.size());
+        Assert.assertEquals(4, workerByItem.values().stream().distinct().count());
+    }
+
+    @Test
+    public void testPrefetchInterrupt() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+
+        AtomicInteger retrievedItems = new AtomicInteger();
+        Iterator<Integer> iterator = new IntegerSequenceIterator(1, 10000, 1) {
+            @Override
+            public Integer next() {
+                Integer next = super.next();
+                if (next != null) {
+                    retrievedItems.incrementAndGet();
+                }
+                return next;
+            }
+        };
+        AtomicInteger consumedItems = new AtomicInteger();
+        List<Integer> skippedItems = new CopyOnWriteArrayList<>();
+        threadPool.consumeWork(iterator, new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return item -> {
+                    if (consumedItems.incrementAndGet() == 100) {
+                        control.interrupt();
+                    }
+                };
+            }
+
+            @Override
+            public void onWorkItemSkipped(Integer workItem) {
+                skippedItems.add(workItem);
+            }
+        }, 4, 16);
+
+        // Each retrieved item is either consumed or skipped
+        Assert.assertTrue(consumedItems.get() < 10000);
+        Assert.assertEquals(retrievedItems.get(), consumedItems.get() + skippedItems.size());
+    }
+
+    @Test
+    public void testConsumeWorkOnDemand() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+
+        ConcurrentHashMap<Integer, Integer> workerByItem = new ConcurrentHashMap<>();
+        threadPool.consumeWorkOnDemand(new IntegerSequenceIterator(1, 5, 1), new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return item -> {
+                    Assert.assertTrue(control.isParallel());
+                    workerByItem.put(item, control.getWorkerId());
+                    CancellableSleep.sleep(100, context::isInterrupted, ThreadPoolTest.class);
+                };
+            }
+        });
+
+        // Each item is consumed by its own worker
+        Assert.assertEquals(5, workerByItem.size());
+        Assert.assertEquals(5, workerByItem.values().stream().distinct().count());
+    }
+
+    @Test
+    public void testGetPrefetchSize() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+        // Prefetching is disabled per default
+        Assert.assertEquals(1, threadPool.getPrefetchSize(2));
+
+        context.getConfiguration().putProperty(ThreadPool.PREFETCH_SIZE_CONFIG, "16");
+        Assert.assertEquals(16, threadPool.getPrefetchSize(2));
+        // The total number of prefetched work items is bounded
+        Assert.assertEquals(2, threadPool.getPrefetchSize(256));
+        Assert.assertEquals(1, threadPool.getPrefetchSize(2000));
+        // ...and by the number of work items that can be retrieved before the iterator blocks
+        Assert.assertEquals(5, threadPool.getPrefetchSize(2, 10));
+        Assert.assertEquals(1, threadPool.getPrefetchSize(20, 10));
+    }
+
+    @Test
+    public void testPrefetchStopsOnInterrupt() {
+        ExecutionContext context = newExecutionContext();
+        ThreadPool threadPool = new ThreadPool(context);
+
+        AtomicInteger retrievedItems = new AtomicInteger();
+        Iterator<Integer> iterator = new IntegerSequenceIterator(1, 10000, 1) {
+            @Override
+            public Integer next() {
+                Integer next = super.next();
+                if (next != null && retrievedItems.incrementAndGet() == 1) {
+                    // Interrupt the batch while the first worker is retrieving its first batch
+                    context.updateStatus(ExecutionStatus.ABORTING);
+                }
+                return next;
+            }
+        };
+        List<Integer> skippedItems = new CopyOnWriteArrayList<>();
+        threadPool.consumeWork(iterator, new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return item -> {
+                };
+            }
+
+            @Override
+            public void onWorkItemSkipped(Integer workItem) {
+                skippedItems.add(workItem);
+            }
+        }, 4, 16);
+
+        // No more work items are retrieved once the batch has been interrupted
+        Assert.assertEquals(1, retrievedItems.get());
+        Assert.assertTrue(skippedItems.isEmpty());
+    }
+
+    /**
+     * Runs 50'000 concurrent users on virtual threads. Each user paces its iterations with a {@link CancellableSleep}
+     * like the ThreadGroupHandler does. The number of platform threads (carrier threads included) is logged, it stays
+     * bounded by the number of processors whereas each user would require its own thread with platform threads.
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void benchmarkVirtualThreads() {
+        int users = 50_000;
+        ExecutionContext context = newExecutionContext();
+        context.getVariablesManager().putVariable(context.getReport(), ThreadPool.EXECUTION_THREADS_VIRTUAL, "true");
+        ThreadPool threadPool = new ThreadPool(context);
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        int platformThreadsBefore = threadMXBean.getThreadCount();
+        AtomicInteger concurrentUsers = new AtomicInteger();
+        AtomicInteger maxConcurrentUsers = new AtomicInteger();
+        AtomicInteger iterations = new AtomicInteger();
+
+        long t1 = System.currentTimeMillis();
+        threadPool.consumeWork(new IntegerSequenceIterator(1, users, 1), new WorkerItemConsumerFactory<Integer>() {
+            @Override
+            public Consumer<Integer> createWorkItemConsumer(WorkerController<Integer> control) {
+                return userId -> {
+                    maxConcurrentUsers.accumulateAndGet(concurrentUsers.incrementAndGet(), Math::max);
+                    for (int i = 0; i < 3; i++) {
+                        // Pacing
+                        CancellableSleep.sleep(500, context::isInterrupted, ThreadPoolTest.class);
+                        iterations.incrementAndGet();
+                    }
+                    concurrentUsers.decrementAndGet();
+                };
+            }
+        }, users);
+        long duration = System.currentTimeMillis() - t1;
+
+        int peakPlatformThreads = threadMXBean.getPeakThreadCount();
+        logger.info("{} virtual users: {} iterations in {}ms, max concurrent users {}, platform threads before {}, peak platform threads {}",
+            users, iterations.get(), duration, maxConcurrentUsers.get(), platformThreadsBefore, peakPlatformThreads);
+        Assert.assertEquals(users * 3, iterations.get());
+        Assert.assertTrue(maxConcurrentUsers.get() > users / 2);
+    }
 }
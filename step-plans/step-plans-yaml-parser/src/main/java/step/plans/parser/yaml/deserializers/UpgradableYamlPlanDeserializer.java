@@ -107,7 +107,7 @@ public class UpgradableYamlPlanDeserializer extends JsonDeserializer<YamlPlan> {
 
         if (jsonSchema != null) {
             try {
-                JsonSchemaValidator.validate(jsonSchema, planJsonNode.toString());
+                JsonSchemaValidator.validate(jsonSchema, planJsonNode);
             } catch (ValidationException vex) {
                 throw new YamlPlanValidationException(String.join(", ", vex.getAllMessages()), vex);
             } catch (Exception ex) {